@@ -0,0 +1,302 @@
+package com.grahammueller.supermodel.entity;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers events to another listener asynchronously, so a slow listener
+ * doesn't slow down the thread changing the model. Events are queued and
+ * delivered one at a time, in order, by a task on an executor.
+ *
+ * The queue is bounded. When it is full the Overflow policy decides whether
+ * the changing thread waits for room, or delivers the queued events itself.
+ * Use flush to wait until everything queued so far has been delivered.
+ *
+ * A thread the executor delivers on can't wait for room, as only it would
+ * make any, so it always delivers the queued events itself. That happens with
+ * an executor on the event dispatch thread when the model is changed from
+ * Swing. Threads are recognised once they have run a task for this listener,
+ * and one is run as soon as it is created, so create it before the changes
+ * start, or use CALLER_RUNS.
+ *
+ * Delivered events may describe Entities which have changed again since.
+ * Listeners on other threads should read the model through a snapshot.
+ *
+ * Workspaces hold listeners weakly, so keep a reference to this wrapper
+ * for as long as it should receive events.
+ */
+public class AsyncModelEventListener implements ModelEventListener {
+    /**
+     * What to do with an event when the queue is full
+     */
+    public enum Overflow {
+        /** Wait until the listener has made room, unless called on the thread it delivers on */
+        BLOCK,
+        /** Deliver the queued events, then the new one, on the calling thread */
+        CALLER_RUNS
+    }
+
+    /**
+     * Default capacity of the event queue
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Wraps a listener, delivering on the shared event executor
+     * and blocking when more than DEFAULT_CAPACITY events are queued
+     *
+     * @param listener The listener to deliver events to
+     */
+    public AsyncModelEventListener(ModelEventListener listener) {
+        this(listener, getDefaultExecutor(), DEFAULT_CAPACITY, Overflow.BLOCK);
+    }
+
+    /**
+     * Wraps a listener
+     *
+     * @param listener The listener to deliver events to
+     * @param executor Runs the delivery tasks. Use an executor running on the
+     *        event dispatch thread for listeners which update Swing components,
+     *        creating this before the event dispatch thread changes the model.
+     * @param capacity The most events which may be queued
+     * @param overflow What to do when the queue is full
+     * @throws IllegalArgumentException Missing listener or executor, or capacity less than one
+     */
+    public AsyncModelEventListener(ModelEventListener listener, Executor executor, int capacity, Overflow overflow) throws IllegalArgumentException {
+        if (listener == null || executor == null || overflow == null) {
+            throw new IllegalArgumentException("Listener, executor and overflow policy are required");
+        }
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least one");
+        }
+
+        _listener = listener;
+        _executor = executor;
+        _overflow = overflow;
+        _queue = new ArrayBlockingQueue<ModelEvent>(capacity);
+
+        // Learn which thread the executor delivers on before the queue can fill
+        _executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                _deliveryThread = Thread.currentThread();
+            }
+        });
+    }
+
+    /**
+     * Gets the listener events are delivered to
+     * @return The wrapped listener
+     */
+    public ModelEventListener getListener() {
+        return _listener;
+    }
+
+    /**
+     * Queues an event for delivery
+     *
+     * @param event The change
+     */
+    @Override
+    public void modelChanged(ModelEvent event) {
+        _acceptedCount.incrementAndGet();
+
+        if (!_queue.offer(event)) {
+            // Waiting on the delivery thread would never end, as the events making room are delivered by it
+            if (_overflow == Overflow.CALLER_RUNS || Thread.currentThread() == _deliveryThread) {
+                // Hold the delivery lock, so nothing queued earlier is delivered after this event
+                _deliveryLock.lock();
+                try {
+                    deliverQueued();
+                    deliver(event);
+                }
+                finally {
+                    _deliveryLock.unlock();
+                }
+
+                return;
+            }
+
+            try {
+                _queue.put(event);
+            }
+            catch (InterruptedException ie) {
+                _acceptedCount.decrementAndGet();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to queue a model event");
+            }
+        }
+
+        schedule();
+    }
+
+    /**
+     * Waits until every event queued before this call has been delivered.
+     * This must not be called from the thread the executor delivers on.
+     *
+     * @param timeout How long to wait
+     * @param unit The unit of the timeout
+     * @return Whether the events were delivered in time
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = _acceptedCount.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (_flushMonitor) {
+            _flushWaiters++;
+            try {
+                while (_deliveredCount.get() < target) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+
+                    TimeUnit.NANOSECONDS.timedWait(_flushMonitor, remaining);
+                }
+            }
+            finally {
+                _flushWaiters--;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of events waiting to be delivered
+     * @return The queue length
+     */
+    public int getQueuedEventCount() {
+        return _queue.size();
+    }
+
+    /**
+     * Makes sure a delivery task will run, unless one already is
+     */
+    private void schedule() {
+        if (_scheduled.compareAndSet(false, true)) {
+            _executor.execute(_drainTask);
+        }
+    }
+
+    /**
+     * Delivers queued events until the queue is empty. Called with the delivery lock held.
+     */
+    private void deliverQueued() {
+        ModelEvent event;
+        while ((event = _queue.poll()) != null) {
+            deliver(event);
+        }
+    }
+
+    private void deliver(ModelEvent event) {
+        try {
+            _listener.modelChanged(event);
+        }
+        catch (RuntimeException re) {
+            // One failing event shouldn't stop the ones after it
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, re);
+        }
+        finally {
+            _deliveredCount.incrementAndGet();
+
+            if (_flushWaiters > 0) {
+                synchronized (_flushMonitor) {
+                    _flushMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private final Runnable _drainTask = new Runnable() {
+        @Override
+        public void run() {
+            _deliveryThread = Thread.currentThread();
+
+            do {
+                _deliveryLock.lock();
+                try {
+                    deliverQueued();
+                }
+                finally {
+                    _deliveryLock.unlock();
+                }
+
+                _scheduled.set(false);
+
+                // An event queued after the last poll, but before the flag was
+                // cleared, didn't schedule a task, so it has to be picked up here
+            } while (!_queue.isEmpty() && _scheduled.compareAndSet(false, true));
+        }
+    };
+
+    /**
+     * Gets the executor used when none is given. It runs each delivery task on
+     * a virtual thread where the platform has them, and otherwise on a pool
+     * of daemon threads.
+     *
+     * @return The shared executor
+     */
+    public static Executor getDefaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Created on first use, so workspaces without async listeners never start threads
+     */
+    private static class DefaultExecutorHolder {
+        static final ExecutorService EXECUTOR = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            }
+            catch (Exception e) {
+                // Virtual threads aren't available here
+            }
+
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "SuperModel-events-" + _threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+
+                private final AtomicInteger _threadCount = new AtomicInteger();
+            });
+        }
+    }
+
+    private final ModelEventListener _listener;
+    private final Executor _executor;
+    private final Overflow _overflow;
+    private final BlockingQueue<ModelEvent> _queue;
+
+    // Set while a delivery task is scheduled or running, so only one runs at a time
+    private final AtomicBoolean _scheduled = new AtomicBoolean();
+    private final ReentrantLock _deliveryLock = new ReentrantLock();
+
+    // The thread which last ran a task on the executor, which BLOCK must not wait on
+    private volatile Thread _deliveryThread;
+
+    // Events received, and those whose delivery finished, for flush
+    private final AtomicLong _acceptedCount = new AtomicLong();
+    private final AtomicLong _deliveredCount = new AtomicLong();
+    private final Object _flushMonitor = new Object();
+    private volatile int _flushWaiters;
+}
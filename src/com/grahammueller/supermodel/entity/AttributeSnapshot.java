@@ -0,0 +1,53 @@
+package com.grahammueller.supermodel.entity;
+
+/**
+ * An immutable copy of an Attribute, as part of an EntitySnapshot.
+ */
+public final class AttributeSnapshot {
+    AttributeSnapshot(Attribute attribute) {
+        _name = attribute.getName();
+        _type = attribute.getType();
+        _isPrimaryKey = attribute.isPrimaryKey();
+    }
+
+    /**
+     * Creates a snapshot of an Attribute that doesn't exist yet
+     * 
+     * @param name The Attribute's name
+     * @param type The Attribute's type
+     * @param isPrimaryKey Whether the Attribute is its Entity's primary key
+     */
+    public AttributeSnapshot(String name, AttributeType type, boolean isPrimaryKey) {
+        _name = name;
+        _type = type;
+        _isPrimaryKey = isPrimaryKey;
+    }
+
+    /**
+     * Gets the Attribute's name
+     * @return The name
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Gets the attribute's type
+     * @return The type
+     */
+    public AttributeType getType() {
+        return _type;
+    }
+
+    /**
+     * Gets whether the Attribute is a Primary Key
+     * @return Whether this is a Primary Key
+     */
+    public boolean isPrimaryKey() {
+        return _isPrimaryKey;
+    }
+
+    private final String _name;
+    private final AttributeType _type;
+    private final boolean _isPrimaryKey;
+}
@@ -1,5 +1,7 @@
 package com.grahammueller.supermodel.entity;
 
+import java.util.Locale;
+
 /**
  * This enum represents the available data
  * types that an Attribute can be mapped to.
@@ -26,6 +28,29 @@ public enum AttributeType {
         }
     }
 
+    /**
+     * Gets the type best matching a SQLite column's declared type. Declared types
+     * follow SQLite's affinity rules, with common names such as BOOLEAN, DATETIME
+     * and BIGINT recognized first. Columns with NUMERIC affinity, which is what
+     * toSQLiteString produces for every numeric type, are read as DOUBLE.
+     * 
+     * @param declaredType The declared column type, which may be empty or null
+     * @return The matching type
+     */
+    public static AttributeType fromSQLiteString(String declaredType) {
+        String type = declaredType == null ? "" : declaredType.toUpperCase(Locale.ENGLISH);
+
+        if (type.contains("BOOL")) { return BOOLEAN; }
+        if (type.contains("DATE") || type.contains("TIME")) { return DATE; }
+        if (type.contains("BIGINT") || type.contains("LONG")) { return LONG; }
+        if (type.contains("INT")) { return INTEGER; }
+        if (type.contains("CHAR") || type.contains("CLOB") || type.contains("TEXT")) { return STRING; }
+        if (type.contains("BLOB") || type.isEmpty()) { return BLOB; }
+        if (type.contains("FLOA")) { return FLOAT; }
+
+        return DOUBLE;
+    }
+
     /**
      * Gets the string for the SQLite column definition
      * @return This, in SQLite column definition form
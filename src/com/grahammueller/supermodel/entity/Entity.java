@@ -2,7 +2,9 @@ package com.grahammueller.supermodel.entity;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An Entity, represents a Plain Old Java Object, or POJO.
@@ -10,25 +12,69 @@ import java.util.List;
  * for simple data storage and interaction.
  */
 public class Entity {
-    protected String _name;
+    protected volatile String _name;
+    protected final ModelWorkspace _workspace;
     protected List<Attribute> _attributes;
     protected List<Relationship> _relationships;
 
+    // Name lookups for the above, which keep declaration order
+    protected Map<String, Attribute> _attributesByName;
+    protected Map<String, Relationship> _relationshipsByName;
+    protected Attribute _primaryKey;
+
+    // Assigned by the EntityManager, stable across renames
+    protected long _registrationNumber;
+
+    // Dropped whenever this Entity changes
+    private volatile EntitySnapshot _snapshot;
+
+    // Where the contents come from, until they are first used, for Entities opened lazily
+    private volatile EntityLoader _loader;
+    private int _loaderIndex;
+
     /**
-     * Default constructor for an Entity
+     * Default constructor for an Entity, registering it in the default workspace
      * 
      * @param name Name of the Entity. Should not contain characters, or start with a number.
      * @throws IllegalArgumentException Invalid Entity Name specified
      */
     public Entity(String name) throws IllegalArgumentException {
+        this(name, EntityManager.getDefaultWorkspace());
+    }
+
+    /**
+     * Creates an Entity, registering it in a specific workspace
+     * 
+     * @param name Name of the Entity. Should not contain characters, or start with a number.
+     * @param workspace The workspace the Entity belongs to
+     * @throws IllegalArgumentException Invalid Entity Name specified
+     */
+    public Entity(String name, ModelWorkspace workspace) throws IllegalArgumentException {
+        this(name, workspace, true);
+    }
+
+    /**
+     * Creates an Entity, which may be registered later on
+     * 
+     * @param name Name of the Entity. Should not contain characters, or start with a number.
+     * @param workspace The workspace the Entity belongs to
+     * @param register Whether to register the Entity right away
+     * @throws IllegalArgumentException Invalid Entity Name specified
+     */
+    Entity(String name, ModelWorkspace workspace, boolean register) throws IllegalArgumentException {
         EntityManager.validateName(name, "Entity");
 
         _name = name;
+        _workspace = workspace;
         _attributes = new ArrayList<Attribute>();
         _relationships = new ArrayList<Relationship>();
+        _attributesByName = new HashMap<String, Attribute>();
+        _relationshipsByName = new HashMap<String, Relationship>();
 
         // Attempt to register, which throws exception on failure
-        EntityManager.registerEntity(this);
+        if (register) {
+            _workspace.registerEntity(this);
+        }
     }
 
     /**
@@ -40,6 +86,15 @@ public class Entity {
         return _name;
     }
 
+    /**
+     * Gets the workspace the Entity belongs to.
+     * 
+     * @return The Entity's workspace
+     */
+    public ModelWorkspace getWorkspace() {
+        return _workspace;
+    }
+
     /**
      * Attempts to update Entity name, if it is valid and no Entity already exists with the same name
      * 
@@ -47,7 +102,7 @@ public class Entity {
      * @throws IllegalArgumentException Invalid Entity Name specified
      */
     public void setName(String name) throws IllegalArgumentException {
-        EntityManager.updateEntityName(this, name);
+        _workspace.updateEntityName(this, name);
     }
 
     /**
@@ -55,10 +110,22 @@ public class Entity {
      * 
      * @param name The attribute name. Follows same naming convention as an Entity.
      * @param type The type of the attribute. Can be any of the Attribute.Type Enum values.
-     * @throws IllegalArgumentException Invalid Attribute Name specified
+     * @throws IllegalArgumentException Invalid Attribute Name specified, or name already in use
      */
     public void addAttribute(String name, AttributeType type) throws IllegalArgumentException {
-        _attributes.add(new Attribute(name, type));
+        load();
+
+        Attribute attr = new Attribute(name, type);
+
+        if (_attributesByName.containsKey(name)) {
+            throw new IllegalArgumentException("Attribute name in use");
+        }
+
+        _attributes.add(attr);
+        _attributesByName.put(name, attr);
+
+        changed();
+        _workspace.attributeChanged(ModelEvent.Type.ATTRIBUTE_ADDED, this, attr, null, null);
     }
 
     /**
@@ -69,17 +136,13 @@ public class Entity {
      * @throws IllegalArgumentException Invalid Attribute name specified, name already in use, or existing Attribute not found.
      */
     public void updateAttributeName(String oldName, String newName) {
-        Attribute storedAttr = null;
-        for (Attribute attr : _attributes) {
-            // Found stored attribute
-            if (attr.getName().equals(oldName)) {
-                storedAttr = attr;
-            }
+        load();
 
-            // Attribute name is in use
-            if (attr.getName().equals(newName)) {
-                throw new IllegalArgumentException("Attribute name in use");
-            }
+        Attribute storedAttr = _attributesByName.get(oldName);
+
+        // Attribute name is in use
+        if (_attributesByName.containsKey(newName)) {
+            throw new IllegalArgumentException("Attribute name in use");
         }
 
         // No attribute with old name found
@@ -88,6 +151,12 @@ public class Entity {
         }
 
         storedAttr.setName(newName);
+
+        _attributesByName.remove(oldName);
+        _attributesByName.put(newName, storedAttr);
+
+        changed();
+        _workspace.attributeChanged(ModelEvent.Type.ATTRIBUTE_RENAMED, this, storedAttr, oldName, null);
     }
 
     /**
@@ -98,21 +167,33 @@ public class Entity {
      * @throws IllegalArgumentException Attribute not found, or trying to set a primary key with one previously specified.
      */
     public void updateAttributeType(String name, AttributeType type) {
-        for (Attribute attr : _attributes) {
-            // Found stored attribute
-            if (attr.getName().equals(name)) {
-                attr.setType(type);
-
-                // Force clear Primary Key if it is no longer applicable
-                if (attr.getType() != AttributeType.INTEGER && attr.getType() != AttributeType.LONG) {
-                    attr.setPrimaryKey(false);
-                }
+        load();
 
-                return;
+        Attribute attr = _attributesByName.get(name);
+
+        if (attr == null) {
+            throw new IllegalArgumentException("Requested Attribute not found");
+        }
+
+        AttributeType oldType = attr.getType();
+        boolean wasPrimaryKey = attr.isPrimaryKey();
+        attr.setType(type);
+
+        // Force clear Primary Key if it is no longer applicable
+        if (attr.getType() != AttributeType.INTEGER && attr.getType() != AttributeType.LONG) {
+            attr.setPrimaryKey(false);
+
+            if (attr == _primaryKey) {
+                _primaryKey = null;
             }
         }
 
-        throw new IllegalArgumentException("Requested Attribute not found");
+        changed();
+        _workspace.attributeChanged(ModelEvent.Type.ATTRIBUTE_TYPE_CHANGED, this, attr, null, oldType);
+
+        if (wasPrimaryKey && !attr.isPrimaryKey()) {
+            _workspace.attributeChanged(ModelEvent.Type.PRIMARY_KEY_CHANGED, this, attr, null, null);
+        }
     }
 
     /**
@@ -121,13 +202,9 @@ public class Entity {
      * @return The Entity's primary key Attribute or null
      */
     public Attribute getPrimaryKey() {
-        for (Attribute attr : _attributes) {
-            if (attr.isPrimaryKey()) {
-                return attr;
-            }
-        }
+        load();
 
-        return null;
+        return _primaryKey;
     }
 
     /**
@@ -138,18 +215,33 @@ public class Entity {
      * @throws IllegalArgumentException Primary Key already exists, or Specified Attribute could not be found
      */
     public void setPrimaryKey(String name, boolean isPrimaryKey) throws IllegalArgumentException {
+        load();
+
         if (getPrimaryKey() != null && isPrimaryKey) {
             throw new IllegalArgumentException("Already has a primary key");
         }
 
-        for (Attribute attr : _attributes) {
-            if (attr.getName().equals(name)) {
-                attr.setPrimaryKey(isPrimaryKey);
-                return;
-            }
+        Attribute attr = _attributesByName.get(name);
+
+        if (attr == null) {
+            throw new IllegalArgumentException("Requested Attribute not found");
+        }
+
+        boolean wasPrimaryKey = attr.isPrimaryKey();
+        attr.setPrimaryKey(isPrimaryKey);
+
+        if (isPrimaryKey) {
+            _primaryKey = attr;
+        }
+        else if (attr == _primaryKey) {
+            _primaryKey = null;
         }
 
-        throw new IllegalArgumentException("Requested Attribute not found");
+        changed();
+
+        if (wasPrimaryKey != isPrimaryKey) {
+            _workspace.attributeChanged(ModelEvent.Type.PRIMARY_KEY_CHANGED, this, attr, null, null);
+        }
     }
 
     /**
@@ -159,22 +251,31 @@ public class Entity {
      * @throws IllegalArgumentException Attribute not found
      */
     public void removeAttribute(String name) {
-        for (Attribute attr : _attributes) {
-            // Found stored Attribute
-            if (attr.getName().equals(name)) {
-                if (attr.isPrimaryKey()) {
-                    _relationships.clear();
-                    EntityManager.entityClearedRelationships(this);
-                }
+        load();
 
-                _attributes.remove(attr);
+        Attribute attr = _attributesByName.get(name);
 
-                return;
+        // No Attribute with name found
+        if (attr == null) {
+            throw new IllegalArgumentException("Attribute not found");
+        }
+
+        if (attr == _primaryKey) {
+            for (Relationship rltn : _relationships) {
+                _workspace.relationshipRemoved(rltn);
             }
+
+            _relationships.clear();
+            _relationshipsByName.clear();
+            _primaryKey = null;
+            _workspace.entityClearedRelationships(this);
         }
 
-        // No Attribute with name found
-        throw new IllegalArgumentException("Attribute not found");
+        _attributes.remove(attr);
+        _attributesByName.remove(name);
+
+        changed();
+        _workspace.attributeChanged(ModelEvent.Type.ATTRIBUTE_REMOVED, this, attr, null, null);
     }
 
     /**
@@ -183,6 +284,8 @@ public class Entity {
      * @return The Entity's attributes
      */
     public List<Attribute> getAttributes() {
+        load();
+
         return Collections.unmodifiableList(_attributes);
     }
 
@@ -191,20 +294,47 @@ public class Entity {
      * 
      * @param name The relationship name. Follows same naming convention as an Entity.
      * @param entity The other Entity
-     * @throws IllegalArgumentException No Primary Key, Invalid Relationship Name specified, or EntityManager doesn't know about Entity
+     * @throws IllegalArgumentException No Primary Key, Invalid Relationship Name specified, name already in use, or the workspace doesn't know about Entity
      */
     public void addRelationship(String name, Entity entity) throws IllegalArgumentException {
+        addRelationship(name, entity, true);
+    }
+
+    /**
+     * Adds a Relationship, optionally without notifying listeners
+     * 
+     * @param name The relationship name
+     * @param entity The other Entity
+     * @param notify Whether to report the change, which batches skip for Entities they add
+     * @throws IllegalArgumentException No Primary Key, Invalid Relationship Name specified, name already in use, or the workspace doesn't know about Entity
+     */
+    void addRelationship(String name, Entity entity, boolean notify) throws IllegalArgumentException {
+        load();
+
         if (getPrimaryKey() == null) {
             throw new IllegalArgumentException("Must have a primary key Attribute to add Relationships");
         }
 
         EntityManager.validateName(name, "Relationship");
 
-        if (entity == null || !EntityManager.containsEntity(entity)) {
+        if (entity == null || !_workspace.containsEntity(entity)) {
             throw new IllegalArgumentException("Invalid Entity provided");
         }
 
-        _relationships.add(new Relationship(name, entity));
+        if (_relationshipsByName.containsKey(name)) {
+            throw new IllegalArgumentException("Relationship name in use");
+        }
+
+        Relationship rltn = new Relationship(name, entity, this);
+        _relationships.add(rltn);
+        _relationshipsByName.put(name, rltn);
+        _workspace.relationshipAdded(rltn);
+
+        changed();
+
+        if (notify) {
+            _workspace.relationshipChanged(ModelEvent.Type.RELATIONSHIP_ADDED, this, rltn, null, null);
+        }
     }
 
     /**
@@ -215,18 +345,13 @@ public class Entity {
      * @throws IllegalArgumentException Invalid Relationship Name specified, or Relationship not found
      */
     public void updateRelationshipName(String oldName, String newName) {
-        Relationship storedRelationship = null;
+        load();
 
-        for (Relationship relationship : _relationships) {
-            // Found stored attribute
-            if (relationship.getName().equals(oldName)) {
-                storedRelationship = relationship;
-            }
+        Relationship storedRelationship = _relationshipsByName.get(oldName);
 
-            // Relationship name is in use
-            if (relationship.getName().equals(newName)) {
-                throw new IllegalArgumentException("Relationship name in use");
-            }
+        // Relationship name is in use
+        if (_relationshipsByName.containsKey(newName)) {
+            throw new IllegalArgumentException("Relationship name in use");
         }
 
         // No relationship with old name found
@@ -235,6 +360,12 @@ public class Entity {
         }
 
         storedRelationship.setName(newName);
+
+        _relationshipsByName.remove(oldName);
+        _relationshipsByName.put(newName, storedRelationship);
+
+        changed();
+        _workspace.relationshipChanged(ModelEvent.Type.RELATIONSHIP_RENAMED, this, storedRelationship, oldName, null);
     }
 
     /**
@@ -245,20 +376,25 @@ public class Entity {
      * @throws IllegalArgumentException Relationship not found, or invalid Entity
      */
     public void updateRelationshipEntity(String oldName, Entity otherEntity) {
-        for (Relationship relationship : _relationships) {
-            // Found stored attribute
-            if (relationship.getName().equals(oldName)) {
-                if (!EntityManager.containsEntity(otherEntity)) {
-                    throw new IllegalArgumentException("Invalid Entity provided");
-                }
+        load();
 
-                relationship.setEntity(otherEntity);
-                return;
-            }
-        }
+        Relationship relationship = _relationshipsByName.get(oldName);
 
         // No relationship with old name found
-        throw new IllegalArgumentException("Relationship not found");
+        if (relationship == null) {
+            throw new IllegalArgumentException("Relationship not found");
+        }
+
+        if (!_workspace.containsEntity(otherEntity)) {
+            throw new IllegalArgumentException("Invalid Entity provided");
+        }
+
+        Entity oldEntity = relationship.getEntity();
+        relationship.setEntity(otherEntity);
+        _workspace.relationshipRetargeted(relationship, oldEntity);
+
+        changed();
+        _workspace.relationshipChanged(ModelEvent.Type.RELATIONSHIP_RETARGETED, this, relationship, null, oldEntity);
     }
 
     /**
@@ -268,16 +404,20 @@ public class Entity {
      * @throws IllegalArgumentException Relationship not found
      */
     public void removeRelationship(String name) {
-        for (Relationship rltn : _relationships) {
-            // Found stored Relationship
-            if (rltn.getName().equals(name)) {
-                _relationships.remove(rltn);
-                return;
-            }
-        }
+        load();
+
+        Relationship rltn = _relationshipsByName.remove(name);
 
         // No Relationship with name found
-        throw new IllegalArgumentException("Relationship not found");
+        if (rltn == null) {
+            throw new IllegalArgumentException("Relationship not found");
+        }
+
+        _relationships.remove(rltn);
+        _workspace.relationshipRemoved(rltn);
+
+        changed();
+        _workspace.relationshipChanged(ModelEvent.Type.RELATIONSHIP_REMOVED, this, rltn, null, null);
     }
 
     /**
@@ -286,104 +426,222 @@ public class Entity {
      * @return The Entity's relationships
      */
     public List<Relationship> getRelationships() {
+        load();
+
         return Collections.unmodifiableList(_relationships);
     }
 
     /**
-     * @return This Entity in string form
+     * Gets an immutable copy of the Entity. The copy is cached until
+     * the Entity changes, so this should be called from the thread
+     * editing the Entity.
+     * 
+     * @return The Entity's current snapshot
      */
-    public String toString() {
-        StringBuilder sb = new StringBuilder(_name).append('$');
-
-        for (Attribute attribute : _attributes) {
-            sb.append(attribute.getName())
-              .append(':')
-              .append(attribute.getType().name())
-              .append(attribute.isPrimaryKey() ? "_PRIMARY_KEY" : "")
-              .append('#');
-        }
+    public EntitySnapshot snapshot() {
+        EntitySnapshot snapshot = _snapshot;
+
+        if (snapshot == null) {
+            EntityLoader loader = _loader;
 
-        sb.append("$");
-        for (Relationship relationship : _relationships) {
-            sb.append(relationship.getName())
-              .append(':')
-              .append(relationship.getEntity().getName())
-              .append('#');
+            // Unloaded contents are exactly what was saved, so are snapshotted without loading them
+            snapshot = loader != null ? loader.load(_loaderIndex, null) : new EntitySnapshot(this);
+            _snapshot = snapshot;
         }
 
-        return sb.toString();
+        return snapshot;
     }
 
     /**
-     * Generates an Entity from a formatted string
+     * Determines whether the Entity's contents are in memory. Entities opened
+     * lazily from a model file are only loaded once their contents are used.
      * 
-     * @param entityText The formatted Entity string Should be of form NAME$ATTR1NAME:TYPE#ATTR2NAME:TYPE#
-     * @return A new Entity
-     * @throws IllegalArgumentException Improperly named Entity, Attributes, Relationships, or poorly formatted string
+     * @return Whether the Entity is loaded
      */
-    public static Entity fromString(String entityText) throws IllegalArgumentException {
-        Entity retEnt = null;
+    public boolean isLoaded() {
+        return _loader == null;
+    }
 
-        entityText = entityText.replace("$$", "$ $").replaceFirst("\\$$", "\\$ ");
-        String[] pieces = entityText.split("\\$");
+    /**
+     * Defers the Entity's contents to a loader. Only called before the Entity is registered.
+     * 
+     * @param loader Where the contents come from
+     * @param index The Entity's position in the loader
+     */
+    void setLoader(EntityLoader loader, int index) {
+        _loaderIndex = index;
+        _loader = loader;
+    }
 
-        retEnt = new Entity(pieces[0]);
+    /**
+     * Reads which Entities the Entity's Relationships point to, if its contents are
+     * still deferred to a loader, without loading it
+     * 
+     * @param targets Filled with the Entity each Relationship points to
+     * @return Whether the Entity was unloaded, so targets were read
+     * @throws IllegalStateException If the contents can't be read
+     */
+    boolean loadTargets(List<Entity> targets) {
+        synchronized (this) {
+            EntityLoader loader = _loader;
+            if (loader == null) {
+                return false;
+            }
 
-        if (pieces.length != 3) {
-            throw new IllegalArgumentException("Entity malformed");
+            loader.loadTargets(_loaderIndex, targets);
+            return true;
         }
+    }
 
-        String[] attributes = pieces[1].split("#");
-        String[] relationships = pieces[2].split("#");
-
-        for (String attribute : attributes) {
-            // Remove leading and trailing spaces
-            attribute = attribute.trim();
+    /**
+     * Reads in the Entity's contents, if they are still deferred to a loader.
+     * Loading isn't a change, so listeners aren't notified and snapshots stay valid.
+     * 
+     * @throws IllegalStateException If the contents can't be read
+     */
+    void load() {
+        if (_loader == null) {
+            return;
+        }
 
-            // Skip empty attributes
-            if (attribute.isEmpty()) {
-                continue;
+        synchronized (this) {
+            EntityLoader loader = _loader;
+            if (loader == null) {
+                return;
             }
 
-            String[] attrPieces = attribute.split(":");
+            List<Entity> targets = new ArrayList<Entity>();
+            EntitySnapshot contents = loader.load(_loaderIndex, targets);
 
-            if (attrPieces.length != 2) {
-                throw new IllegalArgumentException("Attribute malformed");
+            for (AttributeSnapshot attribute : contents.getAttributes()) {
+                Attribute attr = new Attribute(attribute.getName(), attribute.getType());
+                _attributes.add(attr);
+                _attributesByName.put(attr.getName(), attr);
+
+                if (attribute.isPrimaryKey()) {
+                    attr.setPrimaryKey(true);
+                    _primaryKey = attr;
+                }
             }
 
-            boolean isPrimaryKey = attrPieces[1].contains("_PRIMARY_KEY");
-            if (isPrimaryKey) {
-                attrPieces[1] = attrPieces[1].replace("_PRIMARY_KEY", "");
+            List<RelationshipSnapshot> relationships = contents.getRelationships();
+            for (int i = 0; i < relationships.size(); i++) {
+                Relationship rltn = new Relationship(relationships.get(i).getName(), targets.get(i), this);
+                _relationships.add(rltn);
+                _relationshipsByName.put(rltn.getName(), rltn);
+                _workspace.relationshipAdded(rltn);
             }
 
-            retEnt.addAttribute(attrPieces[0], AttributeType.valueOf(attrPieces[1]));
-            retEnt.setPrimaryKey(attrPieces[0], isPrimaryKey);
+            _loader = null;
+            _workspace.entityLoaded(this);
         }
+    }
 
-        for (String relationship : relationships) {
-            // Remove leading and trailing spaces
-            relationship = relationship.trim();
+    /**
+     * Drops the cached snapshot, after the Entity or an Entity it references changed
+     */
+    void changed() {
+        _snapshot = null;
+        _workspace.entityChanged();
+    }
 
-            // Skip empty relationships
-            if (relationship.isEmpty()) {
-                continue;
-            }
+    /**
+     * @return This Entity in string form
+     */
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Generates an Entity from a formatted string
+     * 
+     * @param entityText The formatted Entity string Should be of form NAME$ATTR1NAME:TYPE#ATTR2NAME:TYPE#
+     * @return A new Entity
+     * @throws IllegalArgumentException Improperly named Entity, Attributes, Relationships, or poorly formatted string
+     */
+    public static Entity fromString(String entityText) throws IllegalArgumentException {
+        return fromString(entityText, EntityManager.getDefaultWorkspace());
+    }
+
+    /**
+     * Generates an Entity from a formatted string, within a specific workspace
+     * 
+     * @param entityText The formatted Entity string Should be of form NAME$ATTR1NAME:TYPE#ATTR2NAME:TYPE#
+     * @param workspace The workspace to create the Entity in, and to find related Entities in
+     * @return A new Entity
+     * @throws IllegalArgumentException Improperly named Entity, Attributes, Relationships, or poorly formatted string
+     */
+    public static Entity fromString(String entityText, ModelWorkspace workspace) throws IllegalArgumentException {
+        return fromSnapshot(EntityParser.parse(entityText), workspace);
+    }
+
+    /**
+     * Generates Entities from formatted strings, in the default workspace
+     * 
+     * @param entityTexts The formatted Entity strings, one Entity each
+     * @return The new Entities, in the same order
+     * @throws UnresolvedEntitiesException Related Entities don't exist, all of which are reported
+     * @throws IllegalArgumentException Improperly named Entity, Attributes, Relationships, or poorly formatted string
+     * @see #fromStrings(List, ModelWorkspace)
+     */
+    public static List<Entity> fromStrings(List<? extends CharSequence> entityTexts) throws IllegalArgumentException {
+        return fromStrings(entityTexts, EntityManager.getDefaultWorkspace());
+    }
+
+    /**
+     * Generates many Entities from formatted strings at once. The strings are parsed in
+     * parallel, then Relationships are linked by name, so they may point at Entities later
+     * in the list, including in cycles. Either every Entity is added, or none are.
+     * 
+     * @param entityTexts The formatted Entity strings, one Entity each
+     * @param workspace The workspace to create the Entities in, and to find other related Entities in
+     * @return The new Entities, in the same order
+     * @throws UnresolvedEntitiesException Related Entities don't exist, all of which are reported
+     * @throws IllegalArgumentException Improperly named Entity, Attributes, Relationships, or poorly formatted string
+     */
+    public static List<Entity> fromStrings(List<? extends CharSequence> entityTexts, ModelWorkspace workspace) throws IllegalArgumentException {
+        return workspace.addEntities(EntityParser.parseAll(entityTexts));
+    }
 
-            String[] relPieces = relationship.split(":");
+    /**
+     * Creates and registers an Entity matching a snapshot, such as one produced by EntityParser.
+     * Related Entities are looked up by name, and must already exist, unless the
+     * Relationship points back at the new Entity itself.
+     * 
+     * @param snapshot The Entity's name, Attributes and Relationships
+     * @param workspace The workspace to create the Entity in, and to find related Entities in
+     * @return A new Entity
+     * @throws IllegalArgumentException Improperly named Entity, Attributes, Relationships, or a related Entity doesn't exist
+     */
+    public static Entity fromSnapshot(EntitySnapshot snapshot, ModelWorkspace workspace) throws IllegalArgumentException {
+        // Find the other Entities first, so nothing is registered if one is missing
+        List<RelationshipSnapshot> relationships = snapshot.getRelationships();
+        Entity[] otherEntities = new Entity[relationships.size()];
 
-            // Report malformed attributes
-            if (relPieces.length != 2) {
-                throw new IllegalArgumentException("Relationship malformed");
+        for (int i = 0; i < otherEntities.length; i++) {
+            String otherEntityName = relationships.get(i).getEntityName();
+
+            if (!otherEntityName.equals(snapshot.getName())) {
+                otherEntities[i] = workspace.getEntityByName(otherEntityName);
+
+                if (otherEntities[i] == null) {
+                    throw new IllegalArgumentException("Other Entity, \"" + otherEntityName + ",\" doesn't exist");
+                }
             }
+        }
+
+        Entity retEnt = new Entity(snapshot.getName(), workspace);
 
-            String otherEntityName = relPieces[1];
-            Entity otherEntity = EntityManager.getEntityByName(otherEntityName);
+        for (AttributeSnapshot attribute : snapshot.getAttributes()) {
+            retEnt.addAttribute(attribute.getName(), attribute.getType());
 
-            if (otherEntity == null) {
-                throw new IllegalArgumentException("Other Entity, \"" + otherEntityName + ",\" doesn't exist");
+            if (attribute.isPrimaryKey()) {
+                retEnt.setPrimaryKey(attribute.getName(), true);
             }
+        }
 
-            retEnt.addRelationship(relPieces[0], otherEntity);
+        for (int i = 0; i < otherEntities.length; i++) {
+            retEnt.addRelationship(relationships.get(i).getName(), otherEntities[i] == null ? retEnt : otherEntities[i]);
         }
 
         return retEnt;
@@ -398,4 +656,15 @@ public class Entity {
     public boolean equals(Object o) {
         return (o instanceof Entity) && _name.equals(((Entity) o).getName());
     }
+
+    /**
+     * Hashes based on name, consistent with equals.
+     * Note that renaming an Entity changes its hash code,
+     * so it shouldn't be renamed while used as a key.
+     * 
+     * @return The hash code
+     */
+    public int hashCode() {
+        return _name.hashCode();
+    }
 }
@@ -0,0 +1,308 @@
+package com.grahammueller.supermodel.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A batch of changes to the Entities of a workspace. Operations are
+ * recorded in order, then validated and applied together by commit.
+ * Either every operation is applied or, if any is invalid, none are.
+ * Listeners are notified once, with the coalesced changes, after the
+ * whole batch has been applied.
+ * 
+ * Entities created by a batch aren't registered until it is committed.
+ * Until then they may be given Attributes, while their Relationships
+ * should be added through the batch.
+ */
+public class EntityBatch {
+    EntityBatch(ModelWorkspace workspace) {
+        _workspace = workspace;
+        _operations = new ArrayList<Operation>();
+    }
+
+    /**
+     * Creates an Entity, which is registered when the batch is committed
+     * 
+     * @param name Name of the Entity. Should not contain characters, or start with a number.
+     * @return The new, not yet registered, Entity
+     * @throws IllegalArgumentException Invalid Entity Name specified
+     */
+    public Entity createEntity(String name) throws IllegalArgumentException {
+        checkOpen();
+
+        Entity e = new Entity(name, _workspace, false);
+        _operations.add(new Operation(Operation.CREATE, e, null, null));
+
+        return e;
+    }
+
+    /**
+     * Renames an Entity when the batch is committed
+     * 
+     * @param e The Entity, registered or created by this batch
+     * @param newName The new name
+     */
+    public void renameEntity(Entity e, String newName) {
+        checkOpen();
+
+        _operations.add(new Operation(Operation.RENAME, e, newName, null));
+    }
+
+    /**
+     * Removes an Entity, and the Relationships to it, when the batch is committed
+     * 
+     * @param e The Entity, registered or created by this batch
+     */
+    public void removeEntity(Entity e) {
+        checkOpen();
+
+        _operations.add(new Operation(Operation.REMOVE, e, null, null));
+    }
+
+    /**
+     * Adds a Relationship when the batch is committed
+     * 
+     * @param source The Entity to add the Relationship to
+     * @param name The Relationship name
+     * @param target The other Entity, registered or created by this batch
+     */
+    public void addRelationship(Entity source, String name, Entity target) {
+        checkOpen();
+
+        _operations.add(new Operation(Operation.RELATIONSHIP, source, name, target));
+    }
+
+    /**
+     * Validates and applies all operations, then notifies listeners
+     * 
+     * @return The coalesced changes
+     * @throws IllegalArgumentException If any operation is invalid, in which case none are applied
+     * @throws IllegalStateException If the batch was already committed
+     */
+    public ModelChangeSet commit() throws IllegalArgumentException {
+        checkOpen();
+        _closed = true;
+
+        return _workspace.commitBatch(this);
+    }
+
+    /**
+     * Checks every operation against the registry as it would be after
+     * the operations before it, without changing anything.
+     * 
+     * @throws IllegalArgumentException For the first invalid operation
+     */
+    void validate() throws IllegalArgumentException {
+        _claimedTables = new HashMap<String, Entity>();
+        _releasedTables = new HashSet<String>();
+        _created = Collections.newSetFromMap(new IdentityHashMap<Entity, Boolean>());
+        _removed = Collections.newSetFromMap(new IdentityHashMap<Entity, Boolean>());
+        _names = new IdentityHashMap<Entity, String>();
+
+        Map<Entity, Set<String>> relationshipNames = new IdentityHashMap<Entity, Set<String>>();
+
+        for (Operation op : _operations) {
+            switch (op.kind) {
+                case Operation.CREATE : {
+                    String tableName = ModelWorkspace.tableName(op.entity.getName());
+                    Entity owner = tableOwner(tableName);
+
+                    if (owner != null) {
+                        if (nameOf(owner).equals(op.entity.getName())) {
+                            throw new IllegalArgumentException("Entity already registered");
+                        }
+
+                        throw new IllegalArgumentException("Entity table name already in use");
+                    }
+
+                    _claimedTables.put(tableName, op.entity);
+                    _created.add(op.entity);
+                    break;
+                }
+                case Operation.RENAME : {
+                    if (!exists(op.entity)) {
+                        throw new IllegalArgumentException("Entity not currently managed");
+                    }
+
+                    Entity owner = op.name == null ? null : tableOwner(ModelWorkspace.tableName(op.name));
+                    if (owner != null && nameOf(owner).equals(op.name)) {
+                        throw new IllegalArgumentException("Entity name already in use");
+                    }
+
+                    EntityManager.validateName(op.name, "Entity");
+
+                    if (owner != null && owner != op.entity) {
+                        throw new IllegalArgumentException("Entity table name already in use");
+                    }
+
+                    releaseTable(ModelWorkspace.tableName(nameOf(op.entity)));
+                    _claimedTables.put(ModelWorkspace.tableName(op.name), op.entity);
+                    _names.put(op.entity, op.name);
+                    break;
+                }
+                case Operation.REMOVE : {
+                    if (!exists(op.entity)) {
+                        throw new IllegalArgumentException("Entity not currently managed");
+                    }
+
+                    releaseTable(ModelWorkspace.tableName(nameOf(op.entity)));
+                    _removed.add(op.entity);
+                    break;
+                }
+                case Operation.RELATIONSHIP : {
+                    if (!exists(op.entity) || !exists(op.target)) {
+                        throw new IllegalArgumentException("Invalid Entity provided");
+                    }
+
+                    if (op.entity.getPrimaryKey() == null) {
+                        throw new IllegalArgumentException("Must have a primary key Attribute to add Relationships");
+                    }
+
+                    EntityManager.validateName(op.name, "Relationship");
+
+                    Set<String> names = relationshipNames.get(op.entity);
+                    if (names == null) {
+                        names = new HashSet<String>();
+                        relationshipNames.put(op.entity, names);
+                    }
+
+                    if (op.entity._relationshipsByName.containsKey(op.name) || !names.add(op.name)) {
+                        throw new IllegalArgumentException("Relationship name in use");
+                    }
+
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies every operation. Only called after validate, while
+     * the workspace holds off any other registry changes.
+     * 
+     * @return The coalesced changes
+     */
+    ModelChangeSet apply() {
+        List<Entity> added = new ArrayList<Entity>();
+        List<Entity> removed = new ArrayList<Entity>();
+        List<Entity> renamed = new ArrayList<Entity>();
+        Map<Entity, String> oldNames = new IdentityHashMap<Entity, String>();
+        Set<Entity> addedSet = Collections.newSetFromMap(new IdentityHashMap<Entity, Boolean>());
+
+        for (Operation op : _operations) {
+            switch (op.kind) {
+                case Operation.CREATE :
+                    _workspace.claimEntity(op.entity);
+                    added.add(op.entity);
+                    addedSet.add(op.entity);
+                    break;
+                case Operation.RENAME :
+                    String oldName = _workspace.renameEntity(op.entity, op.name);
+                    if (!addedSet.contains(op.entity) && !oldNames.containsKey(op.entity)) {
+                        oldNames.put(op.entity, oldName);
+                        renamed.add(op.entity);
+                    }
+                    break;
+                case Operation.REMOVE :
+                    _workspace.unregisterEntity(op.entity);
+                    if (addedSet.remove(op.entity)) {
+                        added.remove(op.entity);
+                    }
+                    else {
+                        // Removed Entities keep their old name, so it's known what was removed
+                        if (oldNames.containsKey(op.entity)) {
+                            renamed.remove(op.entity);
+                        }
+
+                        removed.add(op.entity);
+                    }
+                    break;
+                case Operation.RELATIONSHIP :
+                    // Listeners learn about new Entities whole, from the change set
+                    op.entity.addRelationship(op.name, op.target, !addedSet.contains(op.entity));
+                    break;
+            }
+        }
+
+        // Renamed and then named back is no change at all
+        for (Entity e : new ArrayList<Entity>(renamed)) {
+            if (e.getName().equals(oldNames.get(e))) {
+                renamed.remove(e);
+                oldNames.remove(e);
+            }
+        }
+
+        return new ModelChangeSet(added, removed, renamed, oldNames);
+    }
+
+    private void checkOpen() {
+        if (_closed) {
+            throw new IllegalStateException("Batch already committed");
+        }
+    }
+
+    private boolean exists(Entity e) {
+        return e != null && !_removed.contains(e) && (_created.contains(e) || _workspace.containsEntity(e));
+    }
+
+    private String nameOf(Entity e) {
+        String name = _names.get(e);
+        return name != null ? name : e.getName();
+    }
+
+    private Entity tableOwner(String tableName) {
+        if (_claimedTables.containsKey(tableName)) {
+            return _claimedTables.get(tableName);
+        }
+
+        if (_releasedTables.contains(tableName)) {
+            return null;
+        }
+
+        return _workspace.getTableOwner(tableName);
+    }
+
+    private void releaseTable(String tableName) {
+        _claimedTables.remove(tableName);
+        _releasedTables.add(tableName);
+    }
+
+    /**
+     * A recorded batch operation
+     */
+    private static class Operation {
+        static final int CREATE = 0;
+        static final int RENAME = 1;
+        static final int REMOVE = 2;
+        static final int RELATIONSHIP = 3;
+
+        Operation(int kind, Entity entity, String name, Entity target) {
+            this.kind = kind;
+            this.entity = entity;
+            this.name = name;
+            this.target = target;
+        }
+
+        final int kind;
+        final Entity entity;
+        final String name;
+        final Entity target;
+    }
+
+    private final ModelWorkspace _workspace;
+    private final List<Operation> _operations;
+    private boolean _closed;
+
+    // Simulated registry state, built by validate
+    private Map<String, Entity> _claimedTables;
+    private Set<String> _releasedTables;
+    private Set<Entity> _created;
+    private Set<Entity> _removed;
+    private Map<Entity, String> _names;
+}
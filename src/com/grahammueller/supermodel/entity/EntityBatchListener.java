@@ -0,0 +1,15 @@
+package com.grahammueller.supermodel.entity;
+
+/**
+ * Interface for listeners which would rather receive the result
+ * of an EntityBatch as a whole, than one call per changed Entity.
+ */
+public interface EntityBatchListener extends EntityManagerListener {
+    /**
+     * This method will be called once for each committed EntityBatch
+     * which changed the managed list of Entities
+     * 
+     * @param changes The coalesced changes made by the batch
+     */
+    public void entitiesChanged(ModelChangeSet changes);
+}
@@ -0,0 +1,374 @@
+package com.grahammueller.supermodel.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Relationships of a model as a graph, with an edge from each Entity to
+ * the Entities its Relationships point to.
+ *
+ * Entities which point at one another, directly or through others, form a
+ * strongly connected component, found with Tarjan's algorithm. With each
+ * component taken as a single node the graph has no cycles, so the components
+ * can be ordered and levelled:
+ *   level 0 holds the Entities no other component points to
+ *   every other Entity is one level below the deepest component pointing to it
+ * Entities in the same level don't point to each other, other than within a
+ * cycle, so they can be worked on at the same time, and taking levels in order puts every Entity after those
+ * pointing at it, as a table's foreign keys must come after the tables they reference.
+ *
+ * Graphs only hold Entity names, and are immutable. They're built from a
+ * ModelSnapshot on first use, and carried over to later snapshots until a
+ * Relationship changes, or an Entity is added, removed or renamed.
+ */
+public final class EntityGraph {
+    EntityGraph(ModelSnapshot model) {
+        List<EntitySnapshot> entities = model.getAllEntities();
+        int count = entities.size();
+
+        _names = new String[count];
+        _indices = new HashMap<String, Integer>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            _names[i] = entities.get(i).getName();
+            _indices.put(_names[i], i);
+        }
+
+        // Edges, without duplicates, ignoring any Relationship pointing outside of the model
+        _targets = new int[count][];
+        int[] sourceCounts = new int[count];
+        for (int i = 0; i < count; i++) {
+            List<RelationshipSnapshot> relationships = entities.get(i).getRelationships();
+            int[] targets = new int[relationships.size()];
+            int targetCount = 0;
+
+            for (RelationshipSnapshot relationship : relationships) {
+                Integer target = _indices.get(relationship.getEntityName());
+
+                if (target != null && !contains(targets, targetCount, target)) {
+                    targets[targetCount++] = target;
+                    sourceCounts[target]++;
+                }
+            }
+
+            _targets[i] = Arrays.copyOf(targets, targetCount);
+        }
+
+        _sources = new int[count][];
+        for (int i = 0; i < count; i++) {
+            _sources[i] = new int[sourceCounts[i]];
+            sourceCounts[i] = 0;
+        }
+
+        for (int i = 0; i < count; i++) {
+            for (int target : _targets[i]) {
+                _sources[target][sourceCounts[target]++] = i;
+            }
+        }
+
+        _components = new int[count];
+        int componentCount = findComponents();
+
+        // Members grouped by component, with a counting sort
+        int[] starts = new int[componentCount + 1];
+        for (int i = 0; i < count; i++) {
+            starts[_components[i] + 1]++;
+        }
+
+        for (int component = 0; component < componentCount; component++) {
+            starts[component + 1] += starts[component];
+        }
+
+        int[] members = new int[count];
+        int[] filled = Arrays.copyOf(starts, componentCount);
+        for (int i = 0; i < count; i++) {
+            members[filled[_components[i]]++] = i;
+        }
+
+        // Tarjan's algorithm numbers a component after every component it points to,
+        // so taking them from the highest number down visits each after its sources
+        int[] componentLevels = new int[componentCount];
+        for (int component = componentCount - 1; component >= 0; component--) {
+            for (int m = starts[component]; m < starts[component + 1]; m++) {
+                for (int target : _targets[members[m]]) {
+                    int targetComponent = _components[target];
+
+                    if (targetComponent != component) {
+                        componentLevels[targetComponent] = Math.max(componentLevels[targetComponent], componentLevels[component] + 1);
+                    }
+                }
+            }
+        }
+
+        _levels = new int[count];
+        int depth = 0;
+        for (int i = 0; i < count; i++) {
+            _levels[i] = componentLevels[_components[i]];
+            depth = Math.max(depth, _levels[i] + 1);
+        }
+
+        _depth = depth;
+        _order = order(componentCount);
+    }
+
+    /**
+     * Gets every Entity, each after every Entity pointing to it, unless they're in the same cycle.
+     * Entities are ordered by level, and the members of a cycle are kept together.
+     *
+     * @return The Entity names
+     */
+    public List<String> getTopologicalOrder() {
+        List<String> order = new ArrayList<String>(_order.length);
+        for (int i : _order) {
+            order.add(_names[i]);
+        }
+
+        return Collections.unmodifiableList(order);
+    }
+
+    /**
+     * Gets the strongly connected components, in topological order
+     *
+     * @return The Entity names in each component, which are in a cycle if there's more than one
+     */
+    public List<List<String>> getComponents() {
+        List<List<String>> components = new ArrayList<List<String>>();
+        int current = -1;
+
+        for (int i : _order) {
+            if (_components[i] != current) {
+                components.add(new ArrayList<String>());
+                current = _components[i];
+            }
+
+            components.get(components.size() - 1).add(_names[i]);
+        }
+
+        return Collections.unmodifiableList(components);
+    }
+
+    /**
+     * Gets the Entities in each level, where no Entity points to another in the same level outside of its cycle
+     *
+     * @return The Entity names, by level
+     */
+    public List<List<String>> getLevels() {
+        List<List<String>> levels = new ArrayList<List<String>>(_depth);
+        for (int level = 0; level < _depth; level++) {
+            levels.add(new ArrayList<String>());
+        }
+
+        for (int i : _order) {
+            levels.get(_levels[i]).add(_names[i]);
+        }
+
+        return Collections.unmodifiableList(levels);
+    }
+
+    /**
+     * Gets the level of an Entity
+     *
+     * @param entityName The Entity name
+     * @return Its level, or -1 if it isn't in the graph
+     */
+    public int getLevel(String entityName) {
+        Integer i = _indices.get(entityName);
+        return i == null ? -1 : _levels[i];
+    }
+
+    /**
+     * Determines whether an Entity is in a cycle of Relationships, including one pointing at itself
+     *
+     * @param entityName The Entity name
+     * @return Whether it is in a cycle
+     */
+    public boolean isCyclic(String entityName) {
+        Integer i = _indices.get(entityName);
+        if (i == null) {
+            return false;
+        }
+
+        for (int target : _targets[i]) {
+            if (_components[target] == _components[i]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the Entities an Entity's Relationships point to
+     *
+     * @param entityName The Entity name
+     * @return The other Entity names, without duplicates
+     */
+    public List<String> getTargets(String entityName) {
+        Integer i = _indices.get(entityName);
+        return i == null ? Collections.<String>emptyList() : names(_targets[i]);
+    }
+
+    /**
+     * Gets the Entities with Relationships pointing to an Entity
+     *
+     * @param entityName The Entity name
+     * @return The other Entity names, without duplicates
+     */
+    public List<String> getSources(String entityName) {
+        Integer i = _indices.get(entityName);
+        return i == null ? Collections.<String>emptyList() : names(_sources[i]);
+    }
+
+    /**
+     * Gets the number of levels
+     * @return The depth of the graph
+     */
+    public int getDepth() {
+        return _depth;
+    }
+
+    /**
+     * Finds the strongly connected components with Tarjan's algorithm, using
+     * an explicit stack so long chains of Relationships can't overflow the thread's
+     *
+     * @return The number of components
+     */
+    private int findComponents() {
+        int count = _names.length;
+        int[] index = new int[count];
+        int[] low = new int[count];
+        int[] nextEdge = new int[count];
+        boolean[] onStack = new boolean[count];
+        int[] stack = new int[count];
+        int[] calls = new int[count];
+        int stackSize = 0;
+        int counter = 0;
+        int componentCount = 0;
+
+        Arrays.fill(index, -1);
+
+        for (int root = 0; root < count; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+
+            int top = 0;
+            calls[0] = root;
+            index[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (top >= 0) {
+                int v = calls[top];
+
+                if (nextEdge[v] < _targets[v].length) {
+                    int w = _targets[v][nextEdge[v]++];
+
+                    if (index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        calls[++top] = w;
+                    }
+                    else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+
+                    continue;
+                }
+
+                // Every edge followed, so v is done, and roots a component if nothing reached above it
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        _components[w] = componentCount;
+                    } while (w != v);
+
+                    componentCount++;
+                }
+
+                top--;
+                if (top >= 0) {
+                    int u = calls[top];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+            }
+        }
+
+        return componentCount;
+    }
+
+    /**
+     * Orders Entities by level, then by component, keeping each component's members
+     * together, and otherwise keeping the model's order
+     */
+    private int[] order(int componentCount) {
+        // The first member of each component, in model order, stands for it
+        final int[] firstMembers = new int[componentCount];
+        Arrays.fill(firstMembers, -1);
+        for (int i = 0; i < _names.length; i++) {
+            if (firstMembers[_components[i]] == -1) {
+                firstMembers[_components[i]] = i;
+            }
+        }
+
+        Integer[] order = new Integer[_names.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (_levels[a] != _levels[b]) {
+                    return _levels[a] - _levels[b];
+                }
+
+                int firstA = firstMembers[_components[a]];
+                int firstB = firstMembers[_components[b]];
+                return firstA != firstB ? firstA - firstB : a - b;
+            }
+        });
+
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = order[i];
+        }
+
+        return result;
+    }
+
+    private List<String> names(int[] indices) {
+        List<String> names = new ArrayList<String>(indices.length);
+        for (int i : indices) {
+            names.add(_names[i]);
+        }
+
+        return Collections.unmodifiableList(names);
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private final String[] _names;
+    private final Map<String, Integer> _indices;
+    private final int[][] _targets;
+    private final int[][] _sources;
+    private final int[] _components;
+    private final int[] _levels;
+    private final int[] _order;
+    private final int _depth;
+}
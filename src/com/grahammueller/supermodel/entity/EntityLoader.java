@@ -0,0 +1,29 @@
+package com.grahammueller.supermodel.entity;
+
+import java.util.List;
+
+/**
+ * Supplies the contents of Entities which were registered by name only,
+ * such as those opened lazily from a model file. Each Entity asks for
+ * its contents the first time they are used.
+ */
+interface EntityLoader {
+    /**
+     * Decodes an Entity's contents
+     * 
+     * @param index The Entity's position in the loader
+     * @param targets If not null, filled with the Entity each Relationship points to
+     * @return The Entity's contents, as they were when it was saved
+     * @throws IllegalStateException If the contents can't be read
+     */
+    EntitySnapshot load(int index, List<Entity> targets) throws IllegalStateException;
+
+    /**
+     * Finds the Entity each of an Entity's Relationships points to, without decoding the rest of its contents
+     * 
+     * @param index The Entity's position in the loader
+     * @param targets Filled with the Entity each Relationship points to
+     * @throws IllegalStateException If the contents can't be read
+     */
+    void loadTargets(int index, List<Entity> targets) throws IllegalStateException;
+}
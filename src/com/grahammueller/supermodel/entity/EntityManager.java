@@ -1,39 +1,28 @@
 package com.grahammueller.supermodel.entity;
 
-import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The manager of Entity interaction.
  * Validates interaction with Entity objects.
  * 
+ * The static methods here act on the default ModelWorkspace, which
+ * Entities join unless they are created for a specific workspace.
+ * 
  * TODO It would be nicer if this acted more as a Factory,
  *      Entities were created and updated by interacting
  *      with the manager, rather than the object.
  */
 public class EntityManager {
     /**
-     * Register Entity to the list of registered Entity if one with the same name doesn't exist
+     * Gets the workspace used by the static EntityManager methods
      * 
-     * @param Entity the new Entity
-     * @throws IllegalArgumentException Entity already exists
+     * @return The default workspace
      */
-    protected static void registerEntity(Entity e) {
-        // Don't add if we've already got it
-        if (containsEntity(e)) {
-            throw new IllegalArgumentException("Entity already registered");
-        }
-
-        _entities.add(e);
-
-        // Copy list so we new items can register while we're notifying
-        EntityManagerListener[] listeners = _listeners.toArray(new EntityManagerListener[_listeners.size()]);
-        for (EntityManagerListener listener : listeners) {
-            listener.entityAdded(e);
-        }
+    public static ModelWorkspace getDefaultWorkspace() {
+        return _defaultWorkspace;
     }
 
     /**
@@ -44,72 +33,46 @@ public class EntityManager {
      * @throws IllegalArgumentException Entity is not currently managed
      */
     public static void removeEntity(Entity e) throws IllegalArgumentException {
-        if (!containsEntity(e)) {
-            throw new IllegalArgumentException("Entity not currently managed");
-        }
-
-        for (Entity entity : _entities) {
-            List<Relationship> toRemove = new ArrayList<Relationship>();
-
-            // Get all the Relationships to remove
-            for (Relationship rltn : entity.getRelationships()) {
-                if (rltn.getEntity().equals(e)) {
-                    toRemove.add(rltn);
-                }
-            }
-
-            // Actually remove Relationships
-            for (Relationship rltn : toRemove) {
-                entity.removeRelationship(rltn.getName());
-            }
-        }
-
-        _entities.remove(e);
-
-        for (EntityManagerListener listener : _listeners) {
-            listener.entityRemoved(e);
-        }
+        _defaultWorkspace.removeEntity(e);
     }
 
     /**
-     * Attempts to update Entity name, if it is valid and no Entity already exists with the same name
+     * Starts a batch of changes to the default workspace
      * 
-     * @param e The Entity
-     * @param name The new name
-     * @throws IllegalArgumentException Invalid Entity Name specified, or name already in use
+     * @return The new batch
      */
-    protected static void updateEntityName(Entity e, String newName) throws IllegalArgumentException {
-        if (containsEntity(newName)) {
-            throw new IllegalArgumentException("Entity name already in use");
-        }
-
-        validateName(newName, "Entity");
-
-        Map<String, Object> updates = new HashMap<String, Object>();
-        updates.put("name", "name");
-        updates.put("old", e._name);
-        updates.put("new", newName);
-
-        e._name = newName;
+    public static EntityBatch beginBatch() {
+        return _defaultWorkspace.beginBatch();
+    }
 
-        for (EntityManagerListener listener : _listeners) {
-            listener.entityUpdated(e, updates);
-        }
+    /**
+     * Creates Entities from snapshots in the default workspace, in one batch
+     * 
+     * @param entities The Entities to create
+     * @return The new Entities, in the same order
+     * @throws IllegalArgumentException Improperly named Entity, Attributes, Relationships, a name already in use, or a related Entity doesn't exist
+     */
+    public static List<Entity> addEntities(List<EntitySnapshot> entities) throws IllegalArgumentException {
+        return _defaultWorkspace.addEntities(entities);
     }
 
     /**
-     * Notifies EntityManagerListeners that an Entity has cleared Relationships
+     * Gets an immutable view of the whole default workspace
      * 
-     * @param e The Entity
-     * @throws IllegalArgumentException If Entity is not found
+     * @return The current snapshot
      */
-    protected static void entityClearedRelationships(Entity e) throws IllegalArgumentException {
-        Map<String, Object> updates = new HashMap<String, Object>();
-        updates.put("name", "relationships-cleared");
+    public static ModelSnapshot snapshot() {
+        return _defaultWorkspace.snapshot();
+    }
 
-        for (EntityManagerListener listener : _listeners) {
-            listener.entityUpdated(e, updates);
-        }
+    /**
+     * Gets the Relationships, on any Entity, which point to an Entity
+     * 
+     * @param e The referenced Entity
+     * @return The Relationships referencing it
+     */
+    public static Collection<Relationship> getInboundRelationships(Entity e) {
+        return _defaultWorkspace.getInboundRelationships(e);
     }
 
     /**
@@ -119,17 +82,17 @@ public class EntityManager {
      * @return Whether it is registered
      */
     public static boolean containsEntity(String name) {
-        return getEntityByName(name) != null;
+        return _defaultWorkspace.containsEntity(name);
     }
 
     /**
      * Determines if an Entity is already registered
      * 
-     * @param Name the Name to look for
+     * @param e The Entity to look for
      * @return Whether it is registered
      */
     public static boolean containsEntity(Entity e) {
-        return _entities.contains(e);
+        return _defaultWorkspace.containsEntity(e);
     }
 
     /**
@@ -142,16 +105,24 @@ public class EntityManager {
     protected static void validateName(String name, String caller) throws IllegalArgumentException {
         if (name == null || name.isEmpty()) { throw new IllegalArgumentException(caller + " name not specified"); }
 
-        if (name.matches(".*\\W.*")) { throw new IllegalArgumentException(String.format("Invalid characters in %s name", caller)); }
+        // Word characters only, as matched by \w
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
 
-        if (name.matches("\\d.*")) { throw new IllegalArgumentException(caller + " name can't start with a number"); }
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '_') {
+                throw new IllegalArgumentException(String.format("Invalid characters in %s name", caller));
+            }
+        }
+
+        char first = name.charAt(0);
+        if (first >= '0' && first <= '9') { throw new IllegalArgumentException(caller + " name can't start with a number"); }
     }
 
     /**
      * Removes all registered Entities
      */
     public static void clearRegistry() {
-        _entities.clear();
+        _defaultWorkspace.clearRegistry();
     }
 
     /**
@@ -159,9 +130,7 @@ public class EntityManager {
      * @param eml The EntityManagerListener to be added
      */
     public static void registerForEntityUpdates(EntityManagerListener eml) {
-        if (!_listeners.contains(eml)) {
-            _listeners.add(eml);
-        }
+        _defaultWorkspace.registerForEntityUpdates(eml);
     }
 
     /**
@@ -169,9 +138,43 @@ public class EntityManager {
      * @param eml The EntityManagerListener to be removed
      */
     public static void unregisterForEntityUpdates(EntityManagerListener eml) {
-        if (!_listeners.contains(eml)) {
-            _listeners.remove(eml);
-        }
+        _defaultWorkspace.unregisterForEntityUpdates(eml);
+    }
+
+    /**
+     * Adds the passed listener to the list of listeners for typed model events
+     * @param listener The ModelEventListener to be added
+     */
+    public static void registerForModelEvents(ModelEventListener listener) {
+        _defaultWorkspace.registerForModelEvents(listener);
+    }
+
+    /**
+     * Removes the passed listener from the list of listeners for typed model events
+     * @param listener The ModelEventListener to be removed
+     */
+    public static void unregisterForModelEvents(ModelEventListener listener) {
+        _defaultWorkspace.unregisterForModelEvents(listener);
+    }
+
+    /**
+     * Gets the number of registered listeners which haven't been garbage collected
+     * @return The live listener count
+     */
+    public static int getListenerCount() {
+        return _defaultWorkspace.getListenerCount();
+    }
+
+    /**
+     * Waits until asynchronous listeners have delivered the events sent before this call
+     * 
+     * @param timeout How long to wait, for each listener
+     * @param unit The unit of the timeout
+     * @return Whether all events were delivered in time
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public static boolean flushEvents(long timeout, TimeUnit unit) throws InterruptedException {
+        return _defaultWorkspace.flushEvents(timeout, unit);
     }
 
     /**
@@ -179,7 +182,7 @@ public class EntityManager {
      * @return All the Entity objects
      */
     public static List<Entity> getAllEntities() {
-        return Collections.unmodifiableList(_entities);
+        return _defaultWorkspace.getAllEntities();
     }
 
     /**
@@ -187,15 +190,19 @@ public class EntityManager {
      * @return Entity requested, or null.
      */
     public static Entity getEntityByName(String entityName) {
-        for (Entity entity : _entities) {
-            if (entity.getName().equals(entityName)) {
-                return entity;
-            }
-        }
+        return _defaultWorkspace.getEntityByName(entityName);
+    }
 
-        return null;
+    /**
+     * Tries to get the Entity whose table has the specified name.
+     * Table names are the lower cased Entity names.
+     * 
+     * @param tableName The table name, in any case
+     * @return Entity requested, or null.
+     */
+    public static Entity getEntityByTableName(String tableName) {
+        return _defaultWorkspace.getEntityByTableName(tableName);
     }
 
-    private static ArrayList<Entity> _entities = new ArrayList<Entity>();
-    private static ArrayList<EntityManagerListener> _listeners = new ArrayList<EntityManagerListener>();
+    private static final ModelWorkspace _defaultWorkspace = new ModelWorkspace();
 }
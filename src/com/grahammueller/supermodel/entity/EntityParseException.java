@@ -0,0 +1,30 @@
+package com.grahammueller.supermodel.entity;
+
+/**
+ * Thrown when Entity text can't be parsed. The message is the same one
+ * Entity.fromString has always reported, and the offset tells where in
+ * the input the problem was found.
+ */
+public class EntityParseException extends IllegalArgumentException {
+    /**
+     * @param message What is wrong
+     * @param offset The character offset, from the start of the input, of the offending text
+     */
+    public EntityParseException(String message, long offset) {
+        super(message);
+
+        _offset = offset;
+    }
+
+    /**
+     * Gets where the problem was found
+     * @return The character offset from the start of the input
+     */
+    public long getOffset() {
+        return _offset;
+    }
+
+    private final long _offset;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,418 @@
+package com.grahammueller.supermodel.entity;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses Entities in the form produced by Entity.toString,
+ * NAME$ATTR1NAME:TYPE#ATTR2NAME:TYPE_PRIMARY_KEY#$REL1NAME:ENTITY#
+ *
+ * The input is scanned once, character by character, and the only
+ * strings created are the names in the result. Text can be parsed from
+ * a CharSequence, or from a Reader holding one Entity per line, so large
+ * dumps don't have to be read into memory or split up first.
+ *
+ * The result is an unregistered EntitySnapshot, whose Relationships name
+ * the Entities they point to. Entity.fromSnapshot turns it into an Entity.
+ */
+public class EntityParser {
+    /**
+     * Creates a parser reading one Entity per line from text
+     *
+     * @param text The text to parse
+     */
+    public EntityParser(CharSequence text) {
+        _text = text;
+        _reader = null;
+        _buffer = null;
+    }
+
+    /**
+     * Creates a parser reading one Entity per line from a Reader.
+     * The Reader is buffered internally, and isn't closed by the parser.
+     *
+     * @param reader The Reader to parse from
+     */
+    public EntityParser(Reader reader) {
+        _text = null;
+        _reader = reader;
+        _buffer = new char[8192];
+    }
+
+    /**
+     * Parses text holding exactly one Entity, in which line breaks are treated like any other whitespace
+     *
+     * @param text The Entity text
+     * @return The parsed, unregistered, Entity
+     * @throws EntityParseException Poorly formatted text, or improperly named Entity, Attributes or Relationships
+     */
+    public static EntitySnapshot parse(CharSequence text) throws EntityParseException {
+        EntityParser parser = new EntityParser(text);
+
+        try {
+            return parser.parseEntity(false);
+        }
+        catch (IOException ioe) {
+            // CharSequences are read without IO
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**
+     * Parses many Entities, each from its own text, spreading the work across the
+     * available processors. Relationships aren't resolved, so the texts may be in
+     * any order and refer to each other freely. ModelWorkspace.addEntities links them.
+     * 
+     * @param texts The Entity texts, each holding exactly one Entity
+     * @return The parsed, unregistered, Entities, in the same order
+     * @throws EntityParseException For the first text, in order, which can't be parsed
+     */
+    public static List<EntitySnapshot> parseAll(final List<? extends CharSequence> texts) throws EntityParseException {
+        final EntitySnapshot[] entities = new EntitySnapshot[texts.size()];
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), texts.size() / MIN_PARALLEL_CHUNK);
+
+        if (threads <= 1) {
+            for (int i = 0; i < entities.length; i++) {
+                entities[i] = parse(texts.get(i));
+            }
+
+            return Arrays.asList(entities);
+        }
+
+        // Several chunks per thread, so an uneven chunk doesn't hold up the rest
+        int chunk = Math.max(MIN_PARALLEL_CHUNK, (entities.length + threads * 4 - 1) / (threads * 4));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, PARSER_THREADS);
+
+        try {
+            List<Future<Void>> chunks = new ArrayList<Future<Void>>();
+
+            for (int start = 0; start < entities.length; start += chunk) {
+                final int from = start;
+                final int to = Math.min(entities.length, start + chunk);
+
+                chunks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = from; i < to; i++) {
+                            entities[i] = parse(texts.get(i));
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            // Checked in order, so the failure reported is the earliest one
+            for (Future<Void> future : chunks) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ee.getCause();
+                    }
+
+                    throw (Error) ee.getCause();
+                }
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing", ie);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        return Arrays.asList(entities);
+    }
+
+    /**
+     * Parses the next Entity. Blank lines are skipped.
+     *
+     * @return The parsed, unregistered, Entity, or null if there are no more
+     * @throws IOException If reading fails
+     * @throws EntityParseException Poorly formatted text, or improperly named Entity, Attributes or Relationships
+     */
+    public EntitySnapshot next() throws IOException, EntityParseException {
+        int c = peek();
+        while (c == '\n' || c == '\r') {
+            read();
+            c = peek();
+        }
+
+        if (c == -1) {
+            return null;
+        }
+
+        return parseEntity(true);
+    }
+
+    /**
+     * Gets how far the parser has read
+     *
+     * @return The number of characters read
+     */
+    public long getOffset() {
+        return _offset;
+    }
+
+    /**
+     * Scans one Entity, up to the end of the line when lines separate Entities, or to the end of the input
+     */
+    private EntitySnapshot parseEntity(boolean stopAtLineEnd) throws IOException {
+        long entityStart = _offset;
+        List<AttributeSnapshot> attributes = new ArrayList<AttributeSnapshot>();
+        List<RelationshipSnapshot> relationships = new ArrayList<RelationshipSnapshot>();
+        String name = null;
+        int section = NAME_SECTION;
+
+        startToken();
+
+        while (true) {
+            int c = peek();
+            boolean atEnd = c == -1 || (stopAtLineEnd && (c == '\n' || c == '\r'));
+
+            if (atEnd || c == '$' || (c == '#' && section != NAME_SECTION)) {
+                if (section == NAME_SECTION) {
+                    if (atEnd) {
+                        throw new EntityParseException("Entity malformed", entityStart);
+                    }
+
+                    name = _token.toString();
+                    validateName(name, "Entity", _tokenStart);
+                }
+                else if (section == ATTRIBUTE_SECTION) {
+                    addAttribute(attributes);
+                }
+                else {
+                    addRelationship(relationships);
+                }
+
+                if (atEnd) {
+                    break;
+                }
+
+                if (c == '$') {
+                    if (section == RELATIONSHIP_SECTION) {
+                        throw new EntityParseException("Entity malformed", _offset);
+                    }
+
+                    section++;
+                }
+
+                read();
+                startToken();
+                continue;
+            }
+
+            if (c == ':') {
+                if (_colonCount++ == 0) {
+                    _colon = _token.length();
+                }
+            }
+
+            _token.append((char) read());
+        }
+
+        if (section != RELATIONSHIP_SECTION) {
+            throw new EntityParseException("Entity malformed", entityStart);
+        }
+
+        return new EntitySnapshot(name, attributes, relationships);
+    }
+
+    private void addAttribute(List<AttributeSnapshot> attributes) {
+        if (!trimToken()) {
+            return;
+        }
+
+        if (_colonCount != 1 || _colon == _end - 1) {
+            throw new EntityParseException("Attribute malformed", _tokenStart + _start);
+        }
+
+        String name = _token.substring(_start, _colon);
+        validateName(name, "Attribute", _tokenStart + _start);
+
+        int typeEnd = _end;
+        boolean isPrimaryKey = endsWith(_token, _colon + 1, _end, PRIMARY_KEY_SUFFIX);
+        if (isPrimaryKey) {
+            typeEnd -= PRIMARY_KEY_SUFFIX.length();
+        }
+
+        AttributeType type = null;
+        for (AttributeType candidate : TYPES) {
+            if (regionEquals(_token, _colon + 1, typeEnd, candidate.name())) {
+                type = candidate;
+                break;
+            }
+        }
+
+        if (type == null) {
+            try {
+                // Report unknown types just as AttributeType always has
+                AttributeType.valueOf(_token.substring(_colon + 1, typeEnd));
+            }
+            catch (IllegalArgumentException iae) {
+                throw new EntityParseException(iae.getMessage(), _tokenStart + _colon + 1);
+            }
+        }
+
+        attributes.add(new AttributeSnapshot(name, type, isPrimaryKey));
+    }
+
+    private void addRelationship(List<RelationshipSnapshot> relationships) {
+        if (!trimToken()) {
+            return;
+        }
+
+        if (_colonCount != 1 || _colon == _end - 1) {
+            throw new EntityParseException("Relationship malformed", _tokenStart + _start);
+        }
+
+        String name = _token.substring(_start, _colon);
+        validateName(name, "Relationship", _tokenStart + _start);
+
+        relationships.add(new RelationshipSnapshot(name, _token.substring(_colon + 1, _end)));
+    }
+
+    private void startToken() {
+        _token.setLength(0);
+        _tokenStart = _offset;
+        _colonCount = 0;
+        _colon = -1;
+    }
+
+    /**
+     * Finds the token without leading and trailing whitespace, as String.trim would
+     *
+     * @return Whether anything is left
+     */
+    private boolean trimToken() {
+        _start = 0;
+        _end = _token.length();
+
+        while (_start < _end && _token.charAt(_start) <= ' ') {
+            _start++;
+        }
+
+        while (_end > _start && _token.charAt(_end - 1) <= ' ') {
+            _end--;
+        }
+
+        return _start < _end;
+    }
+
+    private static void validateName(String name, String caller, long offset) {
+        try {
+            EntityManager.validateName(name, caller);
+        }
+        catch (IllegalArgumentException iae) {
+            throw new EntityParseException(iae.getMessage(), offset);
+        }
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length(); i++) {
+            if (text.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean endsWith(CharSequence text, int start, int end, String suffix) {
+        return end - start >= suffix.length() && regionEquals(text, end - suffix.length(), end, suffix);
+    }
+
+    private int peek() throws IOException {
+        if (_text != null) {
+            return _position < _text.length() ? _text.charAt(_position) : -1;
+        }
+
+        if (_bufferIndex == _bufferLength) {
+            _bufferLength = _reader.read(_buffer);
+            _bufferIndex = 0;
+
+            if (_bufferLength <= 0) {
+                _bufferLength = 0;
+                return -1;
+            }
+        }
+
+        return _buffer[_bufferIndex];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+
+        if (c != -1) {
+            if (_text != null) {
+                _position++;
+            }
+            else {
+                _bufferIndex++;
+            }
+
+            _offset++;
+        }
+
+        return c;
+    }
+
+    // Fewer texts than this aren't worth handing to another thread
+    private static final int MIN_PARALLEL_CHUNK = 1024;
+
+    private static final ThreadFactory PARSER_THREADS = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "SuperModel-parser-" + _threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+        private final AtomicInteger _threadCount = new AtomicInteger();
+    };
+
+    private static final int NAME_SECTION = 0;
+    private static final int ATTRIBUTE_SECTION = 1;
+    private static final int RELATIONSHIP_SECTION = 2;
+
+    private static final String PRIMARY_KEY_SUFFIX = "_PRIMARY_KEY";
+    private static final AttributeType[] TYPES = AttributeType.values();
+
+    private final CharSequence _text;
+    private int _position;
+
+    private final Reader _reader;
+    private final char[] _buffer;
+    private int _bufferIndex;
+    private int _bufferLength;
+
+    private long _offset;
+
+    // The text of the current name or segment, where it started, and where its first colon is
+    private final StringBuilder _token = new StringBuilder();
+    private long _tokenStart;
+    private int _colonCount;
+    private int _colon;
+
+    // The current segment's bounds within the token, after trimming
+    private int _start;
+    private int _end;
+}
@@ -0,0 +1,180 @@
+package com.grahammueller.supermodel.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of an Entity. Snapshots are cached by their Entity
+ * until it changes, so unchanged Entities share the same snapshot
+ * between successive ModelSnapshots.
+ */
+public final class EntitySnapshot {
+    EntitySnapshot(Entity entity) {
+        _name = entity.getName();
+
+        List<AttributeSnapshot> attributes = new ArrayList<AttributeSnapshot>(entity._attributes.size());
+        AttributeSnapshot primaryKey = null;
+        for (Attribute attribute : entity._attributes) {
+            AttributeSnapshot attributeSnapshot = new AttributeSnapshot(attribute);
+            attributes.add(attributeSnapshot);
+
+            if (attribute == entity._primaryKey) {
+                primaryKey = attributeSnapshot;
+            }
+        }
+
+        List<RelationshipSnapshot> relationships = new ArrayList<RelationshipSnapshot>(entity._relationships.size());
+        for (Relationship relationship : entity._relationships) {
+            relationships.add(new RelationshipSnapshot(relationship));
+        }
+
+        _attributes = Collections.unmodifiableList(attributes);
+        _relationships = Collections.unmodifiableList(relationships);
+        _primaryKey = primaryKey;
+    }
+
+    /**
+     * Creates a snapshot of an Entity that doesn't exist yet, such as a parsed or imported one.
+     * Nothing is validated until the Entity is created, with ModelWorkspace.addEntities.
+     * 
+     * @param name The Entity's name
+     * @param attributes The Attributes, the first primary key of which is the Entity's primary key
+     * @param relationships The Relationships, naming the Entities they point to
+     */
+    public EntitySnapshot(String name, List<AttributeSnapshot> attributes, List<RelationshipSnapshot> relationships) {
+        AttributeSnapshot primaryKey = null;
+
+        for (AttributeSnapshot attribute : attributes) {
+            if (attribute.isPrimaryKey() && primaryKey == null) {
+                primaryKey = attribute;
+            }
+        }
+
+        _name = name;
+        _attributes = Collections.unmodifiableList(new ArrayList<AttributeSnapshot>(attributes));
+        _relationships = Collections.unmodifiableList(new ArrayList<RelationshipSnapshot>(relationships));
+        _primaryKey = primaryKey;
+    }
+
+    /**
+     * Gets the name of the Entity.
+     * 
+     * @return The Entity's name
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Gets the attributes.
+     * 
+     * @return The Entity's attributes
+     */
+    public List<AttributeSnapshot> getAttributes() {
+        return _attributes;
+    }
+
+    /**
+     * Gets the primary key Attribute.
+     * 
+     * @return The Entity's primary key Attribute or null
+     */
+    public AttributeSnapshot getPrimaryKey() {
+        return _primaryKey;
+    }
+
+    /**
+     * Gets the relationships.
+     * 
+     * @return The Entity's relationships
+     */
+    public List<RelationshipSnapshot> getRelationships() {
+        return _relationships;
+    }
+
+    /**
+     * Gets a 64 bit hash of the Entity's Attributes and Relationships, but not its name,
+     * so Entities with the same contents hash the same whatever they're called.
+     * The hash is computed once, on first use.
+     * 
+     * @return The content hash
+     */
+    public long getContentHash() {
+        long hash = _contentHash;
+
+        // Racing threads compute the same value. Unlike String.hashCode's int, a long
+        // may be written in halves, so the field is volatile to never be seen torn.
+        if (hash == 0) {
+            hash = FNV_OFFSET_BASIS;
+
+            for (AttributeSnapshot attribute : _attributes) {
+                hash = hash(hash, attribute.getName());
+                hash = hash(hash, attribute.getType().name());
+                hash = hash(hash, attribute.isPrimaryKey() ? "1" : "0");
+            }
+
+            hash = hash(hash, "$");
+            for (RelationshipSnapshot relationship : _relationships) {
+                hash = hash(hash, relationship.getName());
+                hash = hash(hash, relationship.getEntityName());
+            }
+
+            // Zero marks a hash not yet computed
+            if (hash == 0) {
+                hash = 1;
+            }
+
+            _contentHash = hash;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Adds a string to an FNV-1a hash, followed by a separator so adjacent strings can't run together
+     */
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+
+        return (hash ^ 0xFF) * FNV_PRIME;
+    }
+
+    /**
+     * @return This Entity in string form, as produced by Entity.toString
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder(_name).append('$');
+
+        for (AttributeSnapshot attribute : _attributes) {
+            sb.append(attribute.getName())
+              .append(':')
+              .append(attribute.getType().name())
+              .append(attribute.isPrimaryKey() ? "_PRIMARY_KEY" : "")
+              .append('#');
+        }
+
+        sb.append("$");
+        for (RelationshipSnapshot relationship : _relationships) {
+            sb.append(relationship.getName())
+              .append(':')
+              .append(relationship.getEntityName())
+              .append('#');
+        }
+
+        return sb.toString();
+    }
+
+    private final String _name;
+    private final List<AttributeSnapshot> _attributes;
+    private final List<RelationshipSnapshot> _relationships;
+    private final AttributeSnapshot _primaryKey;
+    private volatile long _contentHash;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+}
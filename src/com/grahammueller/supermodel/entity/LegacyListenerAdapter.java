@@ -0,0 +1,75 @@
+package com.grahammueller.supermodel.entity;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Delivers typed events to an EntityManagerListener in the map based form
+ * it expects. Only the changes EntityManagerListeners have always been told
+ * about are passed on, and maps are only built for the listeners that need them.
+ */
+class LegacyListenerAdapter extends ModelEventAdapter {
+    LegacyListenerAdapter(EntityManagerListener listener) {
+        // The registry holds the listener weakly, so this mustn't hold it strongly
+        _listener = new WeakReference<EntityManagerListener>(listener);
+    }
+
+    @Override
+    public void entityAdded(Entity e) {
+        EntityManagerListener listener = _listener.get();
+
+        if (listener != null) {
+            listener.entityAdded(e);
+        }
+    }
+
+    @Override
+    public void entityRemoved(Entity e) {
+        EntityManagerListener listener = _listener.get();
+
+        if (listener != null) {
+            listener.entityRemoved(e);
+        }
+    }
+
+    @Override
+    public void entityRenamed(Entity e, String oldName, String newName) {
+        EntityManagerListener listener = _listener.get();
+
+        if (listener != null) {
+            Map<String, Object> updates = new HashMap<String, Object>();
+            updates.put("name", "name");
+            updates.put("old", oldName);
+            updates.put("new", newName);
+
+            listener.entityUpdated(e, updates);
+        }
+    }
+
+    @Override
+    public void entitiesChanged(ModelChangeSet changes) {
+        EntityManagerListener listener = _listener.get();
+
+        if (listener instanceof EntityBatchListener) {
+            ((EntityBatchListener) listener).entitiesChanged(changes);
+        }
+        else if (listener != null) {
+            super.entitiesChanged(changes);
+        }
+    }
+
+    @Override
+    public void relationshipsCleared(Entity e) {
+        EntityManagerListener listener = _listener.get();
+
+        if (listener != null) {
+            Map<String, Object> updates = new HashMap<String, Object>();
+            updates.put("name", "relationships-cleared");
+
+            listener.entityUpdated(e, updates);
+        }
+    }
+
+    private final WeakReference<EntityManagerListener> _listener;
+}
@@ -0,0 +1,177 @@
+package com.grahammueller.supermodel.entity;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The listeners of a workspace, held weakly. A listener which is no longer
+ * used anywhere else, such as the pane of a removed Entity, is collected
+ * and stops receiving events without having to be unregistered.
+ *
+ * Collected listeners are pruned when listeners are added, removed or
+ * counted, so dispatching an event only skips over them.
+ */
+class ListenerRegistry {
+    /**
+     * Adds a listener, unless its owner is already registered
+     *
+     * @param owner The object the caller registered, which is held weakly
+     * @param listener Receives the events. Held strongly when it isn't the owner,
+     *        so it must not refer back to the owner strongly.
+     */
+    void add(Object owner, ModelEventListener listener) {
+        synchronized (_queue) {
+            expungeStaleEntries();
+
+            if (find(owner) == null) {
+                _entries.add(new Entry(owner, listener, _queue));
+            }
+        }
+    }
+
+    /**
+     * Removes a listener
+     *
+     * @param owner The object the caller registered
+     * @return Whether it was registered
+     */
+    boolean remove(Object owner) {
+        synchronized (_queue) {
+            expungeStaleEntries();
+
+            Entry entry = find(owner);
+            if (entry == null) {
+                return false;
+            }
+
+            _entries.remove(entry);
+            entry.clear();
+            return true;
+        }
+    }
+
+    /**
+     * Determines if events have anywhere to go. Entries for collected
+     * listeners count until they are pruned.
+     *
+     * @return Whether there are no listeners
+     */
+    boolean isEmpty() {
+        return _entries.isEmpty();
+    }
+
+    /**
+     * Gets the number of listeners which haven't been collected
+     *
+     * @return The live listener count
+     */
+    int getLiveCount() {
+        synchronized (_queue) {
+            expungeStaleEntries();
+        }
+
+        int count = 0;
+        for (Entry entry : _entries) {
+            if (entry.getListener() != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Delivers an event to every live listener
+     *
+     * @param event The change
+     */
+    void fire(ModelEvent event) {
+        for (Entry entry : _entries) {
+            ModelEventListener listener = entry.getListener();
+
+            if (listener != null) {
+                listener.modelChanged(event);
+            }
+        }
+    }
+
+    /**
+     * Gets the live listeners
+     *
+     * @return A copy of the listeners
+     */
+    List<ModelEventListener> getListeners() {
+        List<ModelEventListener> listeners = new ArrayList<ModelEventListener>(_entries.size());
+
+        for (Entry entry : _entries) {
+            ModelEventListener listener = entry.getListener();
+
+            if (listener != null) {
+                listeners.add(listener);
+            }
+        }
+
+        return listeners;
+    }
+
+    private Entry find(Object owner) {
+        for (Entry entry : _entries) {
+            if (entry.get() == owner) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the entries of collected listeners, in one copy of the list. Called holding the queue's lock.
+     */
+    private void expungeStaleEntries() {
+        List<Object> stale = null;
+
+        Object entry;
+        while ((entry = _queue.poll()) != null) {
+            if (stale == null) {
+                stale = new ArrayList<Object>();
+            }
+
+            stale.add(entry);
+        }
+
+        if (stale != null) {
+            _entries.removeAll(stale);
+        }
+    }
+
+    /**
+     * A weakly held owner, and the listener to deliver its events to
+     */
+    private static class Entry extends WeakReference<Object> {
+        Entry(Object owner, ModelEventListener listener, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+
+            // Holding the owner itself here would keep it from being collected
+            _adapter = listener == owner ? null : listener;
+        }
+
+        ModelEventListener getListener() {
+            Object owner = get();
+
+            if (owner == null) {
+                return null;
+            }
+
+            return _adapter != null ? _adapter : (ModelEventListener) owner;
+        }
+
+        private final ModelEventListener _adapter;
+    }
+
+    // Also guards changes to the entries
+    private final ReferenceQueue<Object> _queue = new ReferenceQueue<Object>();
+    private final CopyOnWriteArrayList<Entry> _entries = new CopyOnWriteArrayList<Entry>();
+}
@@ -0,0 +1,67 @@
+package com.grahammueller.supermodel.entity;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The net effect of an EntityBatch on the managed list of Entities.
+ * Changes are coalesced, so an Entity added and then renamed is only
+ * reported as added, and one added and then removed isn't reported at all.
+ */
+public final class ModelChangeSet {
+    ModelChangeSet(List<Entity> added, List<Entity> removed, List<Entity> renamed, Map<Entity, String> oldNames) {
+        _added = Collections.unmodifiableList(added);
+        _removed = Collections.unmodifiableList(removed);
+        _renamed = Collections.unmodifiableList(renamed);
+        _oldNames = new IdentityHashMap<Entity, String>(oldNames);
+    }
+
+    /**
+     * Gets the Entities which were added
+     * @return The new Entities, in the order they were added
+     */
+    public List<Entity> getAddedEntities() {
+        return _added;
+    }
+
+    /**
+     * Gets the Entities which were removed
+     * @return The removed Entities
+     */
+    public List<Entity> getRemovedEntities() {
+        return _removed;
+    }
+
+    /**
+     * Gets the Entities which were renamed
+     * @return The renamed Entities
+     */
+    public List<Entity> getRenamedEntities() {
+        return _renamed;
+    }
+
+    /**
+     * Gets the name a renamed Entity had before the batch. Removed Entities
+     * which were renamed earlier in the batch also report their old name.
+     * @param e The renamed or removed Entity
+     * @return The old name, or null if the Entity wasn't renamed
+     */
+    public String getOldName(Entity e) {
+        return _oldNames.get(e);
+    }
+
+    /**
+     * Determines if the batch changed anything
+     * @return Whether there are no changes
+     */
+    public boolean isEmpty() {
+        return _added.isEmpty() && _removed.isEmpty() && _renamed.isEmpty();
+    }
+
+    private final List<Entity> _added;
+    private final List<Entity> _removed;
+    private final List<Entity> _renamed;
+    private final Map<Entity, String> _oldNames;
+}
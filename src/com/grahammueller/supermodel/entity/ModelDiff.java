@@ -0,0 +1,374 @@
+package com.grahammueller.supermodel.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The differences between two versions of a model, such as the one last
+ * saved and the one being edited.
+ *
+ * Entities are matched by name. An Entity whose snapshot is the same object,
+ * or whose content hash is the same, is unchanged and isn't looked at any
+ * further, so comparing two versions of a large model costs about as much
+ * as the Entities which actually changed. Content hashes are 64 bits, so
+ * Entities with different contents sharing one are ignored as vanishingly rare.
+ *
+ * Snapshots don't record what an Entity used to be called, so an Entity removed
+ * from one version and another added in the next are taken as a rename when
+ * they have the same content hash, and no other removed or added Entity does.
+ * Relationships to a renamed Entity aren't reported as retargeted.
+ */
+public final class ModelDiff {
+    /**
+     * Compares two versions of a model
+     *
+     * @param from The earlier version
+     * @param to The later version
+     * @return The differences
+     */
+    public static ModelDiff compare(ModelSnapshot from, ModelSnapshot to) {
+        ModelDiff diff = new ModelDiff();
+        List<EntitySnapshot> added = new ArrayList<EntitySnapshot>();
+        List<EntitySnapshot> changed = new ArrayList<EntitySnapshot>();
+
+        for (EntitySnapshot entity : to.getAllEntities()) {
+            EntitySnapshot old = from.getEntityByName(entity.getName());
+
+            if (old == null) {
+                added.add(entity);
+            }
+            else if (old != entity && old.getContentHash() != entity.getContentHash()) {
+                changed.add(entity);
+            }
+        }
+
+        List<EntitySnapshot> removed = new ArrayList<EntitySnapshot>();
+        for (EntitySnapshot entity : from.getAllEntities()) {
+            if (to.getEntityByName(entity.getName()) == null) {
+                removed.add(entity);
+            }
+        }
+
+        // Renames pair up removed and added Entities whose contents match one another, and nothing else
+        Map<Long, EntitySnapshot> removedByHash = uniqueByHash(removed);
+        Map<Long, EntitySnapshot> addedByHash = uniqueByHash(added);
+        Map<String, String> newNames = new HashMap<String, String>();
+        Set<String> renamedTo = new HashSet<String>();
+
+        for (EntitySnapshot entity : added) {
+            EntitySnapshot old = removedByHash.get(entity.getContentHash());
+
+            if (old != null && addedByHash.get(entity.getContentHash()) == entity) {
+                newNames.put(old.getName(), entity.getName());
+                renamedTo.add(entity.getName());
+                diff._renamedEntities.put(old.getName(), entity.getName());
+            }
+        }
+
+        for (EntitySnapshot entity : removed) {
+            if (!newNames.containsKey(entity.getName())) {
+                diff._removedEntities.add(entity.getName());
+            }
+        }
+
+        for (EntitySnapshot entity : added) {
+            if (!renamedTo.contains(entity.getName())) {
+                diff._addedEntities.add(entity.getName());
+            }
+        }
+
+        for (EntitySnapshot entity : changed) {
+            EntityChange change = compare(from.getEntityByName(entity.getName()), entity, newNames);
+
+            if (!change.isEmpty()) {
+                diff._changedEntities.add(change);
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Compares two versions of an Entity, matching Attributes and Relationships by name
+     */
+    private static EntityChange compare(EntitySnapshot from, EntitySnapshot to, Map<String, String> newNames) {
+        EntityChange change = new EntityChange(to.getName());
+
+        Map<String, AttributeSnapshot> oldAttributes = new LinkedHashMap<String, AttributeSnapshot>();
+        for (AttributeSnapshot attribute : from.getAttributes()) {
+            oldAttributes.put(attribute.getName(), attribute);
+        }
+
+        for (AttributeSnapshot attribute : to.getAttributes()) {
+            AttributeSnapshot old = oldAttributes.remove(attribute.getName());
+
+            if (old == null) {
+                change._addedAttributes.add(attribute);
+            }
+            else if (old.getType() != attribute.getType() || old.isPrimaryKey() != attribute.isPrimaryKey()) {
+                change._changedAttributes.add(new Change<AttributeSnapshot>(old, attribute));
+            }
+        }
+
+        change._removedAttributes.addAll(oldAttributes.values());
+
+        Map<String, RelationshipSnapshot> oldRelationships = new LinkedHashMap<String, RelationshipSnapshot>();
+        for (RelationshipSnapshot relationship : from.getRelationships()) {
+            oldRelationships.put(relationship.getName(), relationship);
+        }
+
+        for (RelationshipSnapshot relationship : to.getRelationships()) {
+            RelationshipSnapshot old = oldRelationships.remove(relationship.getName());
+
+            if (old == null) {
+                change._addedRelationships.add(relationship);
+                continue;
+            }
+
+            String oldTarget = old.getEntityName();
+            if (newNames.containsKey(oldTarget)) {
+                oldTarget = newNames.get(oldTarget);
+            }
+
+            if (!oldTarget.equals(relationship.getEntityName())) {
+                change._retargetedRelationships.add(new Change<RelationshipSnapshot>(old, relationship));
+            }
+        }
+
+        change._removedRelationships.addAll(oldRelationships.values());
+
+        return change;
+    }
+
+    /**
+     * Indexes Entities by content hash, mapping hashes shared by several Entities to null
+     */
+    private static Map<Long, EntitySnapshot> uniqueByHash(List<EntitySnapshot> entities) {
+        Map<Long, EntitySnapshot> byHash = new HashMap<Long, EntitySnapshot>();
+
+        for (EntitySnapshot entity : entities) {
+            Long hash = entity.getContentHash();
+            byHash.put(hash, byHash.containsKey(hash) ? null : entity);
+        }
+
+        return byHash;
+    }
+
+    private ModelDiff() {}
+
+    /**
+     * Gets the names of Entities only in the later version
+     * @return The added Entity names
+     */
+    public List<String> getAddedEntities() {
+        return Collections.unmodifiableList(_addedEntities);
+    }
+
+    /**
+     * Gets the names of Entities only in the earlier version
+     * @return The removed Entity names
+     */
+    public List<String> getRemovedEntities() {
+        return Collections.unmodifiableList(_removedEntities);
+    }
+
+    /**
+     * Gets the Entities which were renamed
+     * @return The new name of each renamed Entity, by its old name
+     */
+    public Map<String, String> getRenamedEntities() {
+        return Collections.unmodifiableMap(_renamedEntities);
+    }
+
+    /**
+     * Gets the Entities in both versions whose Attributes or Relationships changed
+     * @return The changes, by Entity
+     */
+    public List<EntityChange> getChangedEntities() {
+        return Collections.unmodifiableList(_changedEntities);
+    }
+
+    /**
+     * Determines whether the versions are the same
+     * @return Whether nothing changed
+     */
+    public boolean isEmpty() {
+        return _addedEntities.isEmpty() && _removedEntities.isEmpty() && _renamedEntities.isEmpty() && _changedEntities.isEmpty();
+    }
+
+    /**
+     * @return The differences, one per line, for reviewing
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (String name : _addedEntities) {
+            sb.append("+ ").append(name).append('\n');
+        }
+
+        for (String name : _removedEntities) {
+            sb.append("- ").append(name).append('\n');
+        }
+
+        for (Map.Entry<String, String> entry : _renamedEntities.entrySet()) {
+            sb.append("> ").append(entry.getKey()).append(" -> ").append(entry.getValue()).append('\n');
+        }
+
+        for (EntityChange change : _changedEntities) {
+            sb.append(change);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * A before and after pair
+     */
+    public static final class Change<T> {
+        Change(T before, T after) {
+            _before = before;
+            _after = after;
+        }
+
+        /**
+         * @return The earlier version
+         */
+        public T getBefore() {
+            return _before;
+        }
+
+        /**
+         * @return The later version
+         */
+        public T getAfter() {
+            return _after;
+        }
+
+        private final T _before;
+        private final T _after;
+    }
+
+    /**
+     * The changes to one Entity's Attributes and Relationships
+     */
+    public static final class EntityChange {
+        EntityChange(String entityName) {
+            _entityName = entityName;
+        }
+
+        /**
+         * @return The Entity's name
+         */
+        public String getEntityName() {
+            return _entityName;
+        }
+
+        /**
+         * @return The Attributes only in the later version
+         */
+        public List<AttributeSnapshot> getAddedAttributes() {
+            return Collections.unmodifiableList(_addedAttributes);
+        }
+
+        /**
+         * @return The Attributes only in the earlier version
+         */
+        public List<AttributeSnapshot> getRemovedAttributes() {
+            return Collections.unmodifiableList(_removedAttributes);
+        }
+
+        /**
+         * @return The Attributes whose type, or whether they're the primary key, changed
+         */
+        public List<Change<AttributeSnapshot>> getChangedAttributes() {
+            return Collections.unmodifiableList(_changedAttributes);
+        }
+
+        /**
+         * @return The Relationships only in the later version
+         */
+        public List<RelationshipSnapshot> getAddedRelationships() {
+            return Collections.unmodifiableList(_addedRelationships);
+        }
+
+        /**
+         * @return The Relationships only in the earlier version
+         */
+        public List<RelationshipSnapshot> getRemovedRelationships() {
+            return Collections.unmodifiableList(_removedRelationships);
+        }
+
+        /**
+         * @return The Relationships which point at a different Entity
+         */
+        public List<Change<RelationshipSnapshot>> getRetargetedRelationships() {
+            return Collections.unmodifiableList(_retargetedRelationships);
+        }
+
+        /**
+         * @return Whether nothing changed, other than the names of Entities it points to
+         */
+        public boolean isEmpty() {
+            return _addedAttributes.isEmpty() && _removedAttributes.isEmpty() && _changedAttributes.isEmpty() &&
+                   _addedRelationships.isEmpty() && _removedRelationships.isEmpty() && _retargetedRelationships.isEmpty();
+        }
+
+        /**
+         * @return The changes, one per line
+         */
+        public String toString() {
+            StringBuilder sb = new StringBuilder("~ ").append(_entityName).append('\n');
+
+            for (AttributeSnapshot attribute : _addedAttributes) {
+                sb.append("  + ").append(attribute.getName()).append(':').append(describe(attribute)).append('\n');
+            }
+
+            for (AttributeSnapshot attribute : _removedAttributes) {
+                sb.append("  - ").append(attribute.getName()).append(':').append(describe(attribute)).append('\n');
+            }
+
+            for (Change<AttributeSnapshot> attribute : _changedAttributes) {
+                sb.append("  ~ ").append(attribute.getAfter().getName()).append(':')
+                  .append(describe(attribute.getBefore())).append(" -> ").append(describe(attribute.getAfter())).append('\n');
+            }
+
+            for (RelationshipSnapshot relationship : _addedRelationships) {
+                sb.append("  + ").append(relationship.getName()).append(" -> ").append(relationship.getEntityName()).append('\n');
+            }
+
+            for (RelationshipSnapshot relationship : _removedRelationships) {
+                sb.append("  - ").append(relationship.getName()).append(" -> ").append(relationship.getEntityName()).append('\n');
+            }
+
+            for (Change<RelationshipSnapshot> relationship : _retargetedRelationships) {
+                sb.append("  ~ ").append(relationship.getAfter().getName()).append(" -> ")
+                  .append(relationship.getBefore().getEntityName()).append(" -> ").append(relationship.getAfter().getEntityName()).append('\n');
+            }
+
+            return sb.toString();
+        }
+
+        private static String describe(AttributeSnapshot attribute) {
+            return attribute.getType().name() + (attribute.isPrimaryKey() ? "_PRIMARY_KEY" : "");
+        }
+
+        private final String _entityName;
+        private final List<AttributeSnapshot> _addedAttributes = new ArrayList<AttributeSnapshot>();
+        private final List<AttributeSnapshot> _removedAttributes = new ArrayList<AttributeSnapshot>();
+        private final List<Change<AttributeSnapshot>> _changedAttributes = new ArrayList<Change<AttributeSnapshot>>();
+        private final List<RelationshipSnapshot> _addedRelationships = new ArrayList<RelationshipSnapshot>();
+        private final List<RelationshipSnapshot> _removedRelationships = new ArrayList<RelationshipSnapshot>();
+        private final List<Change<RelationshipSnapshot>> _retargetedRelationships = new ArrayList<Change<RelationshipSnapshot>>();
+    }
+
+    private final List<String> _addedEntities = new ArrayList<String>();
+    private final List<String> _removedEntities = new ArrayList<String>();
+    private final Map<String, String> _renamedEntities = new LinkedHashMap<String, String>();
+    private final List<EntityChange> _changedEntities = new ArrayList<EntityChange>();
+}
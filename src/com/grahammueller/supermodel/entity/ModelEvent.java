@@ -0,0 +1,229 @@
+package com.grahammueller.supermodel.entity;
+
+/**
+ * A change to a workspace's model. Events are only created when
+ * there are listeners to receive them, and are immutable, so one
+ * event is shared by every listener.
+ *
+ * The type tells which kind of change happened, and which subclass
+ * carries its details. A ModelEventAdapter dispatches events to a
+ * method per type, without any casting or string comparison.
+ */
+public abstract class ModelEvent {
+    /**
+     * The kinds of change reported to ModelEventListeners
+     */
+    public enum Type {
+        ENTITY_ADDED, ENTITY_REMOVED, ENTITY_RENAMED, ENTITIES_CHANGED,
+        ATTRIBUTE_ADDED, ATTRIBUTE_RENAMED, ATTRIBUTE_TYPE_CHANGED, PRIMARY_KEY_CHANGED, ATTRIBUTE_REMOVED,
+        RELATIONSHIP_ADDED, RELATIONSHIP_RENAMED, RELATIONSHIP_RETARGETED, RELATIONSHIP_REMOVED, RELATIONSHIPS_CLEARED
+    }
+
+    ModelEvent(Type type, Entity entity) {
+        _type = type;
+        _entity = entity;
+    }
+
+    /**
+     * Gets the kind of change
+     * @return The type
+     */
+    public Type getType() {
+        return _type;
+    }
+
+    /**
+     * Gets the Entity which changed
+     * @return The Entity, or null for ENTITIES_CHANGED
+     */
+    public Entity getEntity() {
+        return _entity;
+    }
+
+    /**
+     * Calls the adapter method matching this event
+     *
+     * @param adapter The adapter receiving the event
+     */
+    abstract void dispatch(ModelEventAdapter adapter);
+
+    private final Type _type;
+    private final Entity _entity;
+
+    /**
+     * An Entity was added or removed, or had all its Relationships cleared
+     */
+    public static final class EntityEvent extends ModelEvent {
+        EntityEvent(Type type, Entity entity) {
+            super(type, entity);
+        }
+
+        @Override
+        void dispatch(ModelEventAdapter adapter) {
+            switch (getType()) {
+                case ENTITY_ADDED : adapter.entityAdded(getEntity()); break;
+                case ENTITY_REMOVED : adapter.entityRemoved(getEntity()); break;
+                case RELATIONSHIPS_CLEARED : adapter.relationshipsCleared(getEntity()); break;
+                default : break;
+            }
+        }
+    }
+
+    /**
+     * An Entity was renamed
+     */
+    public static final class EntityRenamedEvent extends ModelEvent {
+        EntityRenamedEvent(Entity entity, String oldName, String newName) {
+            super(Type.ENTITY_RENAMED, entity);
+
+            _oldName = oldName;
+            _newName = newName;
+        }
+
+        /**
+         * @return The name before the change
+         */
+        public String getOldName() {
+            return _oldName;
+        }
+
+        /**
+         * @return The name after the change
+         */
+        public String getNewName() {
+            return _newName;
+        }
+
+        @Override
+        void dispatch(ModelEventAdapter adapter) {
+            adapter.entityRenamed(getEntity(), _oldName, _newName);
+        }
+
+        private final String _oldName;
+        private final String _newName;
+    }
+
+    /**
+     * An EntityBatch was committed
+     */
+    public static final class EntitiesChangedEvent extends ModelEvent {
+        EntitiesChangedEvent(ModelChangeSet changes) {
+            super(Type.ENTITIES_CHANGED, null);
+
+            _changes = changes;
+        }
+
+        /**
+         * @return The coalesced changes made by the batch
+         */
+        public ModelChangeSet getChanges() {
+            return _changes;
+        }
+
+        @Override
+        void dispatch(ModelEventAdapter adapter) {
+            adapter.entitiesChanged(_changes);
+        }
+
+        private final ModelChangeSet _changes;
+    }
+
+    /**
+     * An Attribute was added, renamed, retyped, made or unmade the primary key, or removed
+     */
+    public static final class AttributeEvent extends ModelEvent {
+        AttributeEvent(Type type, Entity entity, Attribute attribute, String oldName, AttributeType oldType) {
+            super(type, entity);
+
+            _attribute = attribute;
+            _oldName = oldName;
+            _oldType = oldType;
+        }
+
+        /**
+         * @return The Attribute which changed
+         */
+        public Attribute getAttribute() {
+            return _attribute;
+        }
+
+        /**
+         * @return The name before an ATTRIBUTE_RENAMED change, otherwise null
+         */
+        public String getOldName() {
+            return _oldName;
+        }
+
+        /**
+         * @return The type before an ATTRIBUTE_TYPE_CHANGED change, otherwise null
+         */
+        public AttributeType getOldType() {
+            return _oldType;
+        }
+
+        @Override
+        void dispatch(ModelEventAdapter adapter) {
+            switch (getType()) {
+                case ATTRIBUTE_ADDED : adapter.attributeAdded(getEntity(), _attribute); break;
+                case ATTRIBUTE_RENAMED : adapter.attributeRenamed(getEntity(), _attribute, _oldName); break;
+                case ATTRIBUTE_TYPE_CHANGED : adapter.attributeTypeChanged(getEntity(), _attribute, _oldType); break;
+                case PRIMARY_KEY_CHANGED : adapter.primaryKeyChanged(getEntity(), _attribute); break;
+                case ATTRIBUTE_REMOVED : adapter.attributeRemoved(getEntity(), _attribute); break;
+                default : break;
+            }
+        }
+
+        private final Attribute _attribute;
+        private final String _oldName;
+        private final AttributeType _oldType;
+    }
+
+    /**
+     * A Relationship was added, renamed, pointed at another Entity, or removed
+     */
+    public static final class RelationshipEvent extends ModelEvent {
+        RelationshipEvent(Type type, Entity entity, Relationship relationship, String oldName, Entity oldEntity) {
+            super(type, entity);
+
+            _relationship = relationship;
+            _oldName = oldName;
+            _oldEntity = oldEntity;
+        }
+
+        /**
+         * @return The Relationship which changed
+         */
+        public Relationship getRelationship() {
+            return _relationship;
+        }
+
+        /**
+         * @return The name before a RELATIONSHIP_RENAMED change, otherwise null
+         */
+        public String getOldName() {
+            return _oldName;
+        }
+
+        /**
+         * @return The other Entity before a RELATIONSHIP_RETARGETED change, otherwise null
+         */
+        public Entity getOldEntity() {
+            return _oldEntity;
+        }
+
+        @Override
+        void dispatch(ModelEventAdapter adapter) {
+            switch (getType()) {
+                case RELATIONSHIP_ADDED : adapter.relationshipAdded(getEntity(), _relationship); break;
+                case RELATIONSHIP_RENAMED : adapter.relationshipRenamed(getEntity(), _relationship, _oldName); break;
+                case RELATIONSHIP_RETARGETED : adapter.relationshipRetargeted(getEntity(), _relationship, _oldEntity); break;
+                case RELATIONSHIP_REMOVED : adapter.relationshipRemoved(getEntity(), _relationship); break;
+                default : break;
+            }
+        }
+
+        private final Relationship _relationship;
+        private final String _oldName;
+        private final Entity _oldEntity;
+    }
+}
@@ -0,0 +1,125 @@
+package com.grahammueller.supermodel.entity;
+
+/**
+ * A ModelEventListener with one method per kind of change, which do
+ * nothing by default. Subclasses override the ones they care about.
+ */
+public abstract class ModelEventAdapter implements ModelEventListener {
+    @Override
+    public void modelChanged(ModelEvent event) {
+        event.dispatch(this);
+    }
+
+    /**
+     * An Entity was added
+     * @param e The new Entity
+     */
+    public void entityAdded(Entity e) {}
+
+    /**
+     * An Entity was removed
+     * @param e The removed Entity
+     */
+    public void entityRemoved(Entity e) {}
+
+    /**
+     * An Entity was renamed
+     * @param e The Entity
+     * @param oldName The name before the change
+     * @param newName The name after the change
+     */
+    public void entityRenamed(Entity e, String oldName, String newName) {}
+
+    /**
+     * An EntityBatch was committed. By default, this reports the
+     * removals, renames and additions one at a time, in that order.
+     *
+     * @param changes The coalesced changes made by the batch
+     */
+    public void entitiesChanged(ModelChangeSet changes) {
+        for (Entity e : changes.getRemovedEntities()) {
+            entityRemoved(e);
+        }
+
+        for (Entity e : changes.getRenamedEntities()) {
+            entityRenamed(e, changes.getOldName(e), e.getName());
+        }
+
+        for (Entity e : changes.getAddedEntities()) {
+            entityAdded(e);
+        }
+    }
+
+    /**
+     * An Attribute was added
+     * @param e The Entity
+     * @param attr The new Attribute
+     */
+    public void attributeAdded(Entity e, Attribute attr) {}
+
+    /**
+     * An Attribute was renamed
+     * @param e The Entity
+     * @param attr The Attribute
+     * @param oldName The name before the change
+     */
+    public void attributeRenamed(Entity e, Attribute attr, String oldName) {}
+
+    /**
+     * An Attribute's type was changed
+     * @param e The Entity
+     * @param attr The Attribute
+     * @param oldType The type before the change
+     */
+    public void attributeTypeChanged(Entity e, Attribute attr, AttributeType oldType) {}
+
+    /**
+     * An Attribute was made, or stopped being, the primary key
+     * @param e The Entity
+     * @param attr The Attribute
+     */
+    public void primaryKeyChanged(Entity e, Attribute attr) {}
+
+    /**
+     * An Attribute was removed
+     * @param e The Entity
+     * @param attr The removed Attribute
+     */
+    public void attributeRemoved(Entity e, Attribute attr) {}
+
+    /**
+     * A Relationship was added
+     * @param e The Entity
+     * @param rltn The new Relationship
+     */
+    public void relationshipAdded(Entity e, Relationship rltn) {}
+
+    /**
+     * A Relationship was renamed
+     * @param e The Entity
+     * @param rltn The Relationship
+     * @param oldName The name before the change
+     */
+    public void relationshipRenamed(Entity e, Relationship rltn, String oldName) {}
+
+    /**
+     * A Relationship was pointed at another Entity
+     * @param e The Entity
+     * @param rltn The Relationship
+     * @param oldEntity The Entity it pointed at before the change
+     */
+    public void relationshipRetargeted(Entity e, Relationship rltn, Entity oldEntity) {}
+
+    /**
+     * A Relationship was removed
+     * @param e The Entity
+     * @param rltn The removed Relationship
+     */
+    public void relationshipRemoved(Entity e, Relationship rltn) {}
+
+    /**
+     * All of an Entity's Relationships were removed, along with its primary key
+     * @param e The Entity
+     */
+    public void relationshipsCleared(Entity e) {}
+}
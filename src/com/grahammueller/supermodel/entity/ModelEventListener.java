@@ -0,0 +1,17 @@
+package com.grahammueller.supermodel.entity;
+
+/**
+ * Interface for classes that need to be informed about every
+ * change to a workspace's model, as typed events.
+ *
+ * Extend ModelEventAdapter to receive a method call per kind of change instead.
+ */
+public interface ModelEventListener {
+    /**
+     * This method will be called for each change, on the thread making it.
+     * A committed EntityBatch is reported as one ENTITIES_CHANGED event.
+     *
+     * @param event The change
+     */
+    public void modelChanged(ModelEvent event);
+}
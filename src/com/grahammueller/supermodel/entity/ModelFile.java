@@ -0,0 +1,549 @@
+package com.grahammueller.supermodel.entity;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves and loads whole models in a compact binary form.
+ *
+ * A file is laid out as
+ *   magic "SMDL", format version byte
+ *   string table: count, then each string as its UTF-8 length and bytes
+ *   type table: count, then the string index of each AttributeType name
+ *   entity count, then a 4 byte offset per entity into the records below
+ *   entity records: name, attributes and relationships
+ *
+ * Every name is stored once in the string table and referenced by index.
+ * Attributes store an index into the type table, shifted left with the
+ * primary key flag in the low bit, and Relationships store the index of
+ * the Entity they point to. All counts and indices are unsigned varints.
+ * Types are stored by name, so reordering AttributeType doesn't break files.
+ *
+ * Models can be read whole, or opened lazily, in which case only the
+ * Entity names are read up front and each Entity's record is decoded
+ * the first time its contents are used.
+ */
+public final class ModelFile {
+    private ModelFile() {}
+
+    /**
+     * Saves a model to a file
+     *
+     * @param model The model to save
+     * @param file The file to write, which is replaced if it exists
+     * @throws IOException If writing fails
+     * @throws IllegalArgumentException If a Relationship points outside of the model
+     */
+    public static void write(ModelSnapshot model, File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+
+        try {
+            write(model, out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes a model to a stream, which is left open
+     *
+     * @param model The model to save
+     * @param out The stream to write to
+     * @throws IOException If writing fails
+     * @throws IllegalArgumentException If a Relationship points outside of the model
+     */
+    public static void write(ModelSnapshot model, OutputStream out) throws IOException {
+        List<EntitySnapshot> entities = model.getAllEntities();
+
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        Map<String, Integer> entityIndices = new HashMap<String, Integer>();
+        Map<AttributeType, Integer> types = new LinkedHashMap<AttributeType, Integer>();
+
+        for (int i = 0; i < entities.size(); i++) {
+            entityIndices.put(entities.get(i).getName(), i);
+        }
+
+        // Records first, so their offsets are known for the table ahead of them
+        ByteArrayOutputStream records = new ByteArrayOutputStream(entities.size() * 32);
+        int[] offsets = new int[entities.size()];
+
+        for (int i = 0; i < entities.size(); i++) {
+            EntitySnapshot entity = entities.get(i);
+            offsets[i] = records.size();
+
+            writeVarint(records, intern(strings, entity.getName()));
+
+            writeVarint(records, entity.getAttributes().size());
+            for (AttributeSnapshot attribute : entity.getAttributes()) {
+                Integer type = types.get(attribute.getType());
+                if (type == null) {
+                    type = types.size();
+                    types.put(attribute.getType(), type);
+                }
+
+                writeVarint(records, intern(strings, attribute.getName()));
+                writeVarint(records, (type << 1) | (attribute.isPrimaryKey() ? 1 : 0));
+            }
+
+            writeVarint(records, entity.getRelationships().size());
+            for (RelationshipSnapshot relationship : entity.getRelationships()) {
+                Integer target = entityIndices.get(relationship.getEntityName());
+                if (target == null) {
+                    throw new IllegalArgumentException("Other Entity, \"" + relationship.getEntityName() + ",\" doesn't exist");
+                }
+
+                writeVarint(records, intern(strings, relationship.getName()));
+                writeVarint(records, target);
+            }
+        }
+
+        for (AttributeType type : types.keySet()) {
+            intern(strings, type.name());
+        }
+
+        out.write(MAGIC);
+        out.write(VERSION);
+
+        writeVarint(out, strings.size());
+        for (String string : strings.keySet()) {
+            byte[] bytes = string.getBytes(UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeVarint(out, types.size());
+        for (AttributeType type : types.keySet()) {
+            writeVarint(out, strings.get(type.name()));
+        }
+
+        writeVarint(out, entities.size());
+        for (int offset : offsets) {
+            out.write(offset >>> 24);
+            out.write(offset >>> 16);
+            out.write(offset >>> 8);
+            out.write(offset);
+        }
+
+        records.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Reads a model from a file, whole, through its channel rather than a stream
+     *
+     * @param file The model file
+     * @return The model, whose Entities can be added to a workspace with ModelWorkspace.addEntities
+     * @throws IOException If reading fails, or the file isn't a valid model file
+     */
+    public static ModelSnapshot read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+
+            // Read rather than mapped, so the file can be replaced or deleted once this returns, on any platform
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+
+            return read(buffer);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a model from a buffer, starting at its position
+     *
+     * @param buffer The model file contents
+     * @return The model
+     * @throws IOException If the contents aren't a valid model file
+     */
+    public static ModelSnapshot read(ByteBuffer buffer) throws IOException {
+        try {
+            Header header = new Header(buffer);
+            List<EntitySnapshot> entities = new ArrayList<EntitySnapshot>(header.entityCount);
+
+            for (int i = 0; i < header.entityCount; i++) {
+                entities.add(header.readEntity(i, null));
+            }
+
+            return new ModelSnapshot(0, entities);
+        }
+        catch (BufferUnderflowException bue) {
+            throw new IOException("Model file truncated");
+        }
+        catch (IndexOutOfBoundsException ioobe) {
+            throw new IOException("Model file corrupt");
+        }
+    }
+
+    /**
+     * Reads a model file and adds its Entities to a workspace
+     *
+     * @param file The model file
+     * @param workspace The workspace to add to
+     * @return The new Entities
+     * @throws IOException If reading fails, or the file isn't a valid model file
+     * @throws IllegalArgumentException If the Entities can't be added, in which case none are
+     */
+    public static List<Entity> load(File file, ModelWorkspace workspace) throws IOException {
+        return workspace.addEntities(read(file).getAllEntities());
+    }
+
+    /**
+     * Opens a model file lazily. Every Entity is registered straight away, by name,
+     * but its Attributes and Relationships are only read from the file once they're used.
+     * The file stays mapped until every Entity has been loaded.
+     * 
+     * Snapshots of unloaded Entities are read from the file without loading them.
+     * Renaming or removing an Entity, or looking up its inbound Relationships, loads only
+     * the Entities whose saved Relationships point at it, found from their saved targets.
+     * 
+     * @param file The model file
+     * @param workspace The workspace to add to
+     * @return The new, unloaded, Entities
+     * @throws IOException If reading fails, or the file isn't a valid model file
+     * @throws IllegalArgumentException If an Entity name is invalid or in use, in which case none are added
+     */
+    public static List<Entity> open(File file, ModelWorkspace workspace) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        Header header;
+
+        try {
+            FileChannel channel = raf.getChannel();
+            header = new Header(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        catch (BufferUnderflowException bue) {
+            throw new IOException("Model file truncated");
+        }
+        catch (IndexOutOfBoundsException ioobe) {
+            throw new IOException("Model file corrupt");
+        }
+        finally {
+            raf.close();
+        }
+
+        LazyModel model = new LazyModel(header);
+        EntityBatch batch = workspace.beginBatch();
+
+        for (int i = 0; i < header.entityCount; i++) {
+            String name;
+
+            try {
+                name = header.readEntityName(i);
+            }
+            catch (RuntimeException re) {
+                throw new IOException("Model file corrupt");
+            }
+
+            Entity e = batch.createEntity(name);
+            e.setLoader(model, i);
+            model.entities[i] = e;
+        }
+
+        batch.commit();
+
+        return Arrays.asList(model.entities.clone());
+    }
+
+    /**
+     * Loads Entities opened lazily from their records in a model file
+     */
+    private static final class LazyModel implements EntityLoader {
+        LazyModel(Header header) {
+            _header = header;
+            entities = new Entity[header.entityCount];
+        }
+
+        public EntitySnapshot load(int index, List<Entity> targets) throws IllegalStateException {
+            List<Integer> targetIndices = targets == null ? null : new ArrayList<Integer>();
+            EntitySnapshot contents;
+
+            try {
+                contents = _header.readEntity(index, targetIndices);
+
+                // Checked before anything is built, so a bad record leaves its Entity empty
+                for (AttributeSnapshot attribute : contents.getAttributes()) {
+                    EntityManager.validateName(attribute.getName(), "Attribute");
+                }
+
+                for (RelationshipSnapshot relationship : contents.getRelationships()) {
+                    EntityManager.validateName(relationship.getName(), "Relationship");
+                }
+            }
+            catch (IOException ioe) {
+                throw new IllegalStateException(ioe.getMessage(), ioe);
+            }
+            catch (RuntimeException re) {
+                throw new IllegalStateException("Model file corrupt", re);
+            }
+
+            if (targets != null) {
+                for (int target : targetIndices) {
+                    targets.add(entities[target]);
+                }
+            }
+
+            // Saved names are still current, as renaming an Entity first loads it and the Entities pointing to it
+            return contents;
+        }
+
+        public void loadTargets(int index, List<Entity> targets) throws IllegalStateException {
+            List<Integer> targetIndices = new ArrayList<Integer>();
+
+            try {
+                _header.readTargets(index, targetIndices);
+            }
+            catch (IOException ioe) {
+                throw new IllegalStateException(ioe.getMessage(), ioe);
+            }
+            catch (RuntimeException re) {
+                throw new IllegalStateException("Model file corrupt", re);
+            }
+
+            for (int target : targetIndices) {
+                targets.add(entities[target]);
+            }
+        }
+
+        final Entity[] entities;
+
+        private final Header _header;
+    }
+
+    /**
+     * The decoded string and type tables of a model file, and where its entity records are
+     */
+    static final class Header {
+        Header(ByteBuffer buffer) throws IOException {
+            _buffer = buffer.slice();
+
+            for (byte b : MAGIC) {
+                if (_buffer.get() != b) {
+                    throw new IOException("Not a SuperModel model file");
+                }
+            }
+
+            int version = _buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported model file version " + version);
+            }
+
+            strings = new String[readCount(_buffer)];
+            byte[] scratch = new byte[64];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readCount(_buffer);
+                if (length > scratch.length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+
+                _buffer.get(scratch, 0, length);
+                strings[i] = new String(scratch, 0, length, UTF_8);
+            }
+
+            types = new AttributeType[readCount(_buffer)];
+            for (int i = 0; i < types.length; i++) {
+                String typeName = strings[readVarint(_buffer)];
+
+                try {
+                    types[i] = AttributeType.valueOf(typeName);
+                }
+                catch (IllegalArgumentException iae) {
+                    throw new IOException("Unknown attribute type " + typeName);
+                }
+            }
+
+            entityCount = readCount(_buffer);
+            _offsetTable = _buffer.position();
+            _recordStart = _offsetTable + entityCount * 4;
+
+            if (_recordStart > _buffer.limit()) {
+                throw new BufferUnderflowException();
+            }
+        }
+
+        /**
+         * Gets an Entity's name, without decoding the rest of it
+         */
+        String readEntityName(int index) throws IOException {
+            ByteBuffer record = record(index);
+            return strings[readVarint(record)];
+        }
+
+        /**
+         * Decodes one Entity record
+         *
+         * @param index The Entity's position in the file
+         * @param targets If not null, filled with the index of the Entity each Relationship points to
+         */
+        EntitySnapshot readEntity(int index, List<Integer> targets) throws IOException {
+            ByteBuffer record = record(index);
+            String name = strings[readVarint(record)];
+
+            int attributeCount = readCount(record);
+            List<AttributeSnapshot> attributes = new ArrayList<AttributeSnapshot>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                String attributeName = strings[readVarint(record)];
+                int type = readVarint(record);
+
+                attributes.add(new AttributeSnapshot(attributeName, types[type >>> 1], (type & 1) != 0));
+            }
+
+            int relationshipCount = readCount(record);
+            List<RelationshipSnapshot> relationships = new ArrayList<RelationshipSnapshot>(relationshipCount);
+            for (int i = 0; i < relationshipCount; i++) {
+                String relationshipName = strings[readVarint(record)];
+                int target = readVarint(record);
+
+                if (target >= entityCount) {
+                    throw new IOException("Model file corrupt");
+                }
+
+                if (targets != null) {
+                    targets.add(target);
+                }
+
+                relationships.add(new RelationshipSnapshot(relationshipName, readEntityName(target)));
+            }
+
+            return new EntitySnapshot(name, attributes, relationships);
+        }
+
+        /**
+         * Reads the index of the Entity each of an Entity's Relationships points to, skipping the rest of its record
+         *
+         * @param index The Entity's position in the file
+         * @param targets Filled with the target indices
+         */
+        void readTargets(int index, List<Integer> targets) throws IOException {
+            ByteBuffer record = record(index);
+            readVarint(record);
+
+            int attributeCount = readCount(record);
+            for (int i = 0; i < attributeCount; i++) {
+                readVarint(record);
+                readVarint(record);
+            }
+
+            int relationshipCount = readCount(record);
+            for (int i = 0; i < relationshipCount; i++) {
+                readVarint(record);
+                int target = readVarint(record);
+
+                if (target >= entityCount) {
+                    throw new IOException("Model file corrupt");
+                }
+
+                targets.add(target);
+            }
+        }
+
+        /**
+         * Reads a count or length, each of whose items takes at least a byte, so
+         * a corrupt one can't have an array allocated far larger than the file
+         *
+         * @throws IOException If the count is more than the whole file could hold
+         * @throws BufferUnderflowException If it is more than the rest of the file holds, as when it was cut short
+         */
+        private static int readCount(ByteBuffer buffer) throws IOException {
+            int count = readVarint(buffer);
+
+            if (count < 0 || count > buffer.limit()) {
+                throw new IOException("Model file corrupt");
+            }
+
+            if (count > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+
+            return count;
+        }
+
+        /**
+         * Gets a view of the buffer positioned at an Entity record.
+         * Views are independent, so records can be read from several threads.
+         *
+         * @throws IOException If the record's offset is outside the file
+         */
+        private ByteBuffer record(int index) throws IOException {
+            int offset = _buffer.getInt(_offsetTable + index * 4);
+
+            if (offset < 0 || offset >= _buffer.limit() - _recordStart) {
+                throw new IOException("Model file corrupt");
+            }
+
+            ByteBuffer record = _buffer.duplicate();
+            record.position(_recordStart + offset);
+            return record;
+        }
+
+        final String[] strings;
+        final AttributeType[] types;
+        final int entityCount;
+
+        private final ByteBuffer _buffer;
+        private final int _offsetTable;
+        private final int _recordStart;
+    }
+
+    private static int intern(Map<String, Integer> strings, String string) {
+        Integer index = strings.get(string);
+
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+
+        return index;
+    }
+
+    static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IndexOutOfBoundsException("Varint too long");
+    }
+
+    private static final byte[] MAGIC = { 'S', 'M', 'D', 'L' };
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+}
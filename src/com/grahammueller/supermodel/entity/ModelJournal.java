@@ -0,0 +1,705 @@
+package com.grahammueller.supermodel.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Autosaves a workspace to a directory, so edits survive a crash.
+ *
+ * Every change is appended to a journal file as a small record, holding
+ * the text of the Entity that changed, or the names of those removed or
+ * renamed. Records are written by a background thread, which gathers all
+ * those waiting into one write and one fsync, so a burst of edits costs a
+ * single disk flush. Each record carries its length and a CRC32, so a record
+ * torn by a crash is recognized and dropped when the journal is replayed.
+ *
+ * Once the journal grows past a threshold, the writer saves the whole model
+ * as a ModelFile and starts a fresh journal. Files are numbered by generation,
+ * model-N.smdl holding the model as of journal-N.log's start, and a generation
+ * only replaces the last once its model file is complete.
+ *
+ * A record which can't be applied to the model restored so far ends replay.
+ * What was restored is saved as the next generation, and the journal is
+ * kept aside as journal-N.log.rejected, so a bad record costs the edits
+ * from it on rather than every later start.
+ *
+ * Workspaces hold listeners weakly, so keep a reference to the journal
+ * for as long as it should record changes.
+ */
+public class ModelJournal implements ModelEventListener {
+    /**
+     * Default size the journal may grow to before it is compacted
+     */
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 4 * 1024 * 1024;
+
+    /**
+     * Restores a workspace from a journal directory, then records its changes there
+     *
+     * @param directory The directory holding the journal, which is created if needed
+     * @param workspace The workspace to restore and record
+     * @return The running journal
+     * @throws IOException If the directory can't be read or written, or holds a corrupt journal
+     */
+    public static ModelJournal open(File directory, ModelWorkspace workspace) throws IOException {
+        return open(directory, workspace, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Restores a workspace from a journal directory, then records its changes there
+     *
+     * @param directory The directory holding the journal, which is created if needed
+     * @param workspace The workspace to restore and record
+     * @param compactionThreshold The journal size, in bytes, at which it is compacted
+     * @return The running journal
+     * @throws IOException If the directory can't be read or written, or holds a corrupt model file
+     */
+    public static ModelJournal open(File directory, ModelWorkspace workspace, long compactionThreshold) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+
+        // Newest complete model file, which the journal of the same generation follows
+        long generation = 0;
+        File[] files = directory.listFiles();
+        for (File file : files) {
+            long fileGeneration = generationOf(file.getName(), MODEL_PREFIX, MODEL_SUFFIX);
+            generation = Math.max(generation, fileGeneration);
+        }
+
+        if (generation > 0) {
+            ModelFile.load(modelFile(directory, generation), workspace);
+        }
+
+        File journalFile = journalFile(directory, generation);
+        long journalSize = journalFile.exists() ? replay(journalFile, workspace) : 0;
+
+        if (journalSize < 0) {
+            // The model as restored, perhaps partly by the rejected record, starts the next generation
+            long next = generation + 1;
+            File temp = writeModelFile(directory, next, workspace.snapshot());
+
+            if (!temp.renameTo(modelFile(directory, next))) {
+                throw new IOException("Unable to save model file " + modelFile(directory, next));
+            }
+
+            File rejected = new File(directory, journalFile.getName() + REJECTED_SUFFIX);
+            rejected.delete();
+            journalFile.renameTo(rejected);
+
+            generation = next;
+            journalSize = 0;
+        }
+
+        // Anything from older generations, or left over from an interrupted compaction, is stale
+        for (File file : files) {
+            long modelGeneration = generationOf(file.getName(), MODEL_PREFIX, MODEL_SUFFIX);
+            long journalGeneration = generationOf(file.getName(), JOURNAL_PREFIX, JOURNAL_SUFFIX);
+
+            if ((modelGeneration > 0 && modelGeneration < generation) || (journalGeneration >= 0 && journalGeneration != generation) || file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            }
+        }
+
+        ModelJournal journal = new ModelJournal(directory, workspace, generation, journalSize, compactionThreshold);
+        workspace.registerForModelEvents(journal);
+        return journal;
+    }
+
+    private ModelJournal(File directory, ModelWorkspace workspace, long generation, long journalSize, long compactionThreshold) throws IOException {
+        _directory = directory;
+        _workspace = workspace;
+        _generation = generation;
+        _journalSize = journalSize;
+        _compactionThreshold = compactionThreshold;
+        _channel = openJournal(journalFile(directory, generation));
+
+        _writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "SuperModel-journal");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /**
+     * Records a change. The record is made here, from the model as it is
+     * now, and written to disk in the background.
+     *
+     * @param event The change
+     */
+    @Override
+    public synchronized void modelChanged(ModelEvent event) {
+        if (_closed || _failure != null) {
+            return;
+        }
+
+        byte[] record = createRecord(event, _workspace);
+        if (record == null) {
+            return;
+        }
+
+        _acceptedCount++;
+        _queue.add(new Pending(record, null));
+        _journalSize += record.length;
+
+        if (_journalSize >= _compactionThreshold) {
+            // Snapshots are cheap and immutable, so only the saving happens in the background
+            _queue.add(new Pending(null, _workspace.snapshot()));
+            _journalSize = 0;
+        }
+    }
+
+    /**
+     * Waits until every change recorded before this call is on disk
+     *
+     * @param timeout How long to wait
+     * @param unit The unit of the timeout
+     * @return Whether the changes were written in time
+     * @throws IOException If writing the journal failed, after which no more changes are recorded
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean sync(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        long target;
+        synchronized (this) {
+            target = _acceptedCount;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (_syncMonitor) {
+            while (_durableCount < target && _failure == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(_syncMonitor, remaining);
+            }
+        }
+
+        if (_failure != null) {
+            throw _failure;
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops recording, after writing every change recorded so far
+     *
+     * @throws IOException If writing the journal failed
+     * @throws InterruptedException If interrupted while waiting for the writer
+     */
+    public void close() throws IOException, InterruptedException {
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+
+            _closed = true;
+            _queue.add(new Pending(null, null));
+        }
+
+        _workspace.unregisterForModelEvents(this);
+        _writer.join();
+
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /**
+     * Gets the generation of the current journal, which goes up each time it is compacted
+     * @return The generation
+     */
+    public long getGeneration() {
+        return _generation;
+    }
+
+    /////////////
+    // Records //
+    /////////////
+
+    /**
+     * Describes a change as a record, each holding one operation
+     *   P text - an Entity was added or changed, and now looks like text
+     *   D name - an Entity was removed
+     *   R old new - an Entity was renamed
+     *   B lines - a batch, of -name removals, &gt;old new renames and +text additions
+     *
+     * @return The framed record, or null if the change doesn't need recording
+     */
+    private static byte[] createRecord(ModelEvent event, ModelWorkspace workspace) {
+        Entity e = event.getEntity();
+
+        switch (event.getType()) {
+            case ENTITY_REMOVED :
+                return frame("D" + e.getName());
+            case ENTITY_RENAMED :
+                ModelEvent.EntityRenamedEvent renamed = (ModelEvent.EntityRenamedEvent) event;
+                return frame("R" + renamed.getOldName() + " " + renamed.getNewName());
+            case ENTITIES_CHANGED :
+                return frame(batchPayload(((ModelEvent.EntitiesChangedEvent) event).getChanges()));
+            default :
+                // An Entity removed since is recorded by its removal, and putting it back would revive it
+                if (!workspace.containsEntity(e)) {
+                    return null;
+                }
+
+                // Everything else changes one Entity, which is recorded whole
+                return frame("P" + e.snapshot().toString());
+        }
+    }
+
+    private static String batchPayload(ModelChangeSet changes) {
+        StringBuilder payload = new StringBuilder("B");
+
+        for (Entity e : changes.getRemovedEntities()) {
+            String oldName = changes.getOldName(e);
+            payload.append('\n').append('-').append(oldName != null ? oldName : e.getName());
+        }
+
+        for (Entity e : changes.getRenamedEntities()) {
+            payload.append('\n').append('>').append(changes.getOldName(e)).append(' ').append(e.getName());
+        }
+
+        for (Entity e : changes.getAddedEntities()) {
+            payload.append('\n').append('+').append(e.snapshot().toString());
+        }
+
+        return payload.toString();
+    }
+
+    /**
+     * Frames a record with its length and checksum
+     */
+    private static byte[] frame(String payload) {
+        byte[] bytes = payload.getBytes(UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.length);
+        record.putInt(bytes.length);
+        record.putInt((int) crc.getValue());
+        record.put(bytes);
+
+        return record.array();
+    }
+
+    ////////////
+    // Replay //
+    ////////////
+
+    /**
+     * Applies a journal's records to a workspace. A torn or damaged record ends
+     * the journal, as only the last write can have been interrupted, and the
+     * file is truncated there so new records follow the good ones. A record
+     * which can't be applied ends replay too, leaving the file as it was.
+     *
+     * @return The length of the good part of the journal, or -1 if a record couldn't be applied
+     */
+    private static long replay(File journalFile, ModelWorkspace workspace) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+
+        try {
+            FileChannel channel = raf.getChannel();
+
+            // Read rather than mapped, as a file can't be truncated everywhere while it is mapped
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+
+            if (!hasHeader(buffer)) {
+                // Nothing was ever committed to it
+                channel.truncate(0);
+                return 0;
+            }
+
+            int good = buffer.position();
+
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+
+                if (length < 0 || length > buffer.remaining()) {
+                    break;
+                }
+
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                try {
+                    apply(new String(bytes, UTF_8), workspace);
+                }
+                catch (IllegalArgumentException iae) {
+                    // Records after it were made against a model this one changed
+                    return -1;
+                }
+
+                good = buffer.position();
+            }
+
+            channel.truncate(good);
+            return good;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static void apply(String payload, ModelWorkspace workspace) {
+        String body = payload.substring(1);
+
+        switch (payload.charAt(0)) {
+            case 'P' :
+                put(EntityParser.parse(body), workspace);
+                break;
+            case 'D' :
+                workspace.removeEntity(existing(body, workspace));
+                break;
+            case 'R' :
+                int space = body.indexOf(' ');
+                existing(body.substring(0, space), workspace).setName(body.substring(space + 1));
+                break;
+            case 'B' :
+                applyBatch(body, workspace);
+                break;
+            default :
+                throw new IllegalArgumentException("Unknown record");
+        }
+    }
+
+    private static void applyBatch(String body, ModelWorkspace workspace) {
+        EntityBatch batch = workspace.beginBatch();
+        List<Entity> renamed = new ArrayList<Entity>();
+        List<String> newNames = new ArrayList<String>();
+        List<EntitySnapshot> added = new ArrayList<EntitySnapshot>();
+
+        for (String line : body.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String rest = line.substring(1);
+
+            switch (line.charAt(0)) {
+                case '-' :
+                    batch.removeEntity(existing(rest, workspace));
+                    break;
+                case '>' :
+                    int space = rest.indexOf(' ');
+                    renamed.add(existing(rest.substring(0, space), workspace));
+                    newNames.add(rest.substring(space + 1));
+                    break;
+                case '+' :
+                    added.add(EntityParser.parse(rest));
+                    break;
+                default :
+                    throw new IllegalArgumentException("Unknown batch line");
+            }
+        }
+
+        // Renamed through unused names first, so Entities which swapped names can be replayed
+        for (int i = 0; i < renamed.size(); i++) {
+            batch.renameEntity(renamed.get(i), "__journal" + i + "_" + System.identityHashCode(batch));
+        }
+
+        for (int i = 0; i < renamed.size(); i++) {
+            batch.renameEntity(renamed.get(i), newNames.get(i));
+        }
+
+        batch.commit();
+
+        workspace.addEntities(added);
+    }
+
+    /**
+     * Makes an Entity match its recorded text, creating it if needed
+     */
+    private static void put(EntitySnapshot snapshot, ModelWorkspace workspace) {
+        Entity e = workspace.getEntityByName(snapshot.getName());
+
+        if (e == null) {
+            Entity.fromSnapshot(snapshot, workspace);
+            return;
+        }
+
+        for (Relationship rltn : new ArrayList<Relationship>(e.getRelationships())) {
+            e.removeRelationship(rltn.getName());
+        }
+
+        for (Attribute attr : new ArrayList<Attribute>(e.getAttributes())) {
+            e.removeAttribute(attr.getName());
+        }
+
+        for (AttributeSnapshot attribute : snapshot.getAttributes()) {
+            e.addAttribute(attribute.getName(), attribute.getType());
+
+            if (attribute.isPrimaryKey()) {
+                e.setPrimaryKey(attribute.getName(), true);
+            }
+        }
+
+        for (RelationshipSnapshot relationship : snapshot.getRelationships()) {
+            e.addRelationship(relationship.getName(), existing(relationship.getEntityName(), workspace));
+        }
+    }
+
+    private static Entity existing(String name, ModelWorkspace workspace) {
+        Entity e = workspace.getEntityByName(name);
+
+        if (e == null) {
+            throw new IllegalArgumentException("Entity " + name + " doesn't exist");
+        }
+
+        return e;
+    }
+
+    ////////////
+    // Writer //
+    ////////////
+
+    /**
+     * Runs on the writer thread, writing whatever is waiting as one group
+     */
+    private void write() {
+        try {
+            while (true) {
+                List<Pending> group = new ArrayList<Pending>();
+                group.add(_queue.take());
+                _queue.drainTo(group);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                int records = 0;
+
+                for (Pending pending : group) {
+                    if (pending.record != null) {
+                        bytes.write(pending.record);
+                        records++;
+                        continue;
+                    }
+
+                    // Everything before a compaction or close belongs in the current journal
+                    commit(bytes, records);
+                    bytes.reset();
+                    records = 0;
+
+                    if (pending.compaction == null) {
+                        _channel.close();
+                        return;
+                    }
+
+                    compact(pending.compaction);
+                }
+
+                commit(bytes, records);
+            }
+        }
+        catch (IOException ioe) {
+            fail(ioe);
+        }
+        catch (InterruptedException ie) {
+            fail(new IOException("Journal writer interrupted"));
+        }
+    }
+
+    /**
+     * Writes a group of records, and waits for them to reach the disk
+     */
+    private void commit(ByteArrayOutputStream bytes, int records) throws IOException {
+        if (records == 0) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            _channel.write(buffer);
+        }
+
+        _channel.force(false);
+
+        synchronized (_syncMonitor) {
+            _durableCount += records;
+            _syncMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Saves the model as the next generation, and moves to that generation's empty journal
+     */
+    private void compact(ModelSnapshot model) throws IOException {
+        long next = _generation + 1;
+        File temp = writeModelFile(_directory, next, model);
+        FileChannel nextChannel = openJournal(journalFile(_directory, next));
+
+        // The rename is what makes the new generation the current one
+        if (!temp.renameTo(modelFile(_directory, next))) {
+            nextChannel.close();
+            throw new IOException("Unable to save model file " + modelFile(_directory, next));
+        }
+
+        _channel.close();
+        _channel = nextChannel;
+
+        modelFile(_directory, _generation).delete();
+        journalFile(_directory, _generation).delete();
+        _generation = next;
+    }
+
+    /**
+     * Writes a generation's model file under a temporary name, for the caller to rename once ready
+     *
+     * @return The temporary file
+     */
+    private static File writeModelFile(File directory, long generation, ModelSnapshot model) throws IOException {
+        File temp = new File(directory, MODEL_PREFIX + generation + MODEL_SUFFIX + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+
+        try {
+            ModelFile.write(model, out);
+            out.getChannel().force(true);
+        }
+        finally {
+            out.close();
+        }
+
+        return temp;
+    }
+
+    private void fail(IOException ioe) {
+        synchronized (_syncMonitor) {
+            _failure = ioe;
+            _syncMonitor.notifyAll();
+        }
+
+        _queue.clear();
+
+        try {
+            _channel.close();
+        }
+        catch (IOException e) {
+            // Nothing more to do with it
+        }
+    }
+
+    /**
+     * Opens a journal for appending, writing its header if it's new
+     */
+    private static FileChannel openJournal(File file) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+
+        if (channel.size() == 0) {
+            channel.write(ByteBuffer.wrap(JOURNAL_HEADER));
+            channel.force(true);
+        }
+
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static boolean hasHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < JOURNAL_HEADER.length) {
+            return false;
+        }
+
+        for (byte b : JOURNAL_HEADER) {
+            if (buffer.get() != b) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static File modelFile(File directory, long generation) {
+        return new File(directory, MODEL_PREFIX + generation + MODEL_SUFFIX);
+    }
+
+    private static File journalFile(File directory, long generation) {
+        return new File(directory, JOURNAL_PREFIX + generation + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Gets the generation in a file name
+     * @return The generation, or -1 if the name doesn't match
+     */
+    private static long generationOf(String fileName, String prefix, String suffix) {
+        if (!fileName.startsWith(prefix) || !fileName.endsWith(suffix) || fileName.length() <= prefix.length() + suffix.length()) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(fileName.substring(prefix.length(), fileName.length() - suffix.length()));
+        }
+        catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * A record waiting to be written, a model to compact into, or neither to stop the writer
+     */
+    private static class Pending {
+        Pending(byte[] record, ModelSnapshot compaction) {
+            this.record = record;
+            this.compaction = compaction;
+        }
+
+        final byte[] record;
+        final ModelSnapshot compaction;
+    }
+
+    private final File _directory;
+    private final ModelWorkspace _workspace;
+    private final long _compactionThreshold;
+    private final BlockingQueue<Pending> _queue = new LinkedBlockingQueue<Pending>();
+    private final Thread _writer;
+
+    // Guarded by this, on the threads changing the model
+    private long _acceptedCount;
+    private long _journalSize;
+    private boolean _closed;
+
+    // Only used by the writer thread
+    private FileChannel _channel;
+    private volatile long _generation;
+
+    // Guarded by the sync monitor
+    private final Object _syncMonitor = new Object();
+    private long _durableCount;
+    private volatile IOException _failure;
+
+    private static final byte[] JOURNAL_HEADER = { 'S', 'M', 'J', 'L', 1 };
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String MODEL_PREFIX = "model-";
+    private static final String MODEL_SUFFIX = ".smdl";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String REJECTED_SUFFIX = ".rejected";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+}
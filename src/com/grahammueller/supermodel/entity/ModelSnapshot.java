@@ -0,0 +1,116 @@
+package com.grahammueller.supermodel.entity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable view of a whole workspace at one point in time.
+ * Snapshots are safe to read from any thread, for example to run
+ * generation in the background while the model is still being edited.
+ */
+public final class ModelSnapshot {
+    ModelSnapshot(long version, List<EntitySnapshot> entities) {
+        this(version, -1, entities);
+    }
+
+    ModelSnapshot(long version, long structureVersion, List<EntitySnapshot> entities) {
+        _version = version;
+        _structureVersion = structureVersion;
+        _entities = Collections.unmodifiableList(entities);
+    }
+
+    /**
+     * Gets the workspace modification count this snapshot was taken at
+     * 
+     * @return The version
+     */
+    public long getVersion() {
+        return _version;
+    }
+
+    /**
+     * Gets the workspace's count of changes to its Entities' names and Relationships
+     * 
+     * @return The structure version, or -1 if the snapshot wasn't taken from a workspace
+     */
+    long getStructureVersion() {
+        return _structureVersion;
+    }
+
+    /**
+     * Gets all entities, in registration order.
+     * 
+     * @return All the Entity snapshots
+     */
+    public List<EntitySnapshot> getAllEntities() {
+        return _entities;
+    }
+
+    /**
+     * Tries to get specified Entity.
+     * 
+     * @param entityName The Entity name
+     * @return Entity requested, or null.
+     */
+    public EntitySnapshot getEntityByName(String entityName) {
+        Map<String, EntitySnapshot> entitiesByName = _entitiesByName;
+
+        // Built on first use, racing threads build identical maps
+        if (entitiesByName == null) {
+            entitiesByName = new HashMap<String, EntitySnapshot>(_entities.size() * 2);
+            for (EntitySnapshot entity : _entities) {
+                entitiesByName.put(entity.getName(), entity);
+            }
+
+            _entitiesByName = entitiesByName;
+        }
+
+        return entitiesByName.get(entityName);
+    }
+
+    /**
+     * Gets the graph of the Entities' Relationships, which is built on first use.
+     * Later snapshots of the same workspace share it until a Relationship changes,
+     * or an Entity is added, removed or renamed.
+     * 
+     * @return The graph
+     */
+    public EntityGraph getGraph() {
+        EntityGraph graph = _graph;
+
+        // Racing threads build identical graphs
+        if (graph == null) {
+            graph = new EntityGraph(this);
+            _graph = graph;
+        }
+
+        return graph;
+    }
+
+    /**
+     * Shares an earlier snapshot's graph, if it has been built, as nothing it depends on has changed since
+     * 
+     * @param previous The earlier snapshot
+     */
+    void reuseGraph(ModelSnapshot previous) {
+        _graph = previous._graph;
+    }
+
+    /**
+     * Gets the Entity a Relationship points to.
+     * 
+     * @param relationship The Relationship
+     * @return The other Entity
+     */
+    public EntitySnapshot getEntity(RelationshipSnapshot relationship) {
+        return getEntityByName(relationship.getEntityName());
+    }
+
+    private final long _version;
+    private final long _structureVersion;
+    private final List<EntitySnapshot> _entities;
+    private volatile Map<String, EntitySnapshot> _entitiesByName;
+    private volatile EntityGraph _graph;
+}
@@ -0,0 +1,791 @@
+package com.grahammueller.supermodel.entity;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A self contained model, owning its own Entities and listeners.
+ * Several workspaces can be used side by side, for example to
+ * generate many models in parallel. The EntityManager exposes
+ * a default workspace through its static methods.
+ * 
+ * The registry is safe for use from multiple threads. Registration and
+ * renaming are atomic, and lookups never block. Individual Entity objects
+ * are not synchronized, so each should only be edited by one thread at a time.
+ */
+public class ModelWorkspace {
+    /**
+     * Register Entity to the list of registered Entity if one with the same name doesn't exist
+     * 
+     * @param Entity the new Entity
+     * @throws IllegalArgumentException Entity already exists
+     */
+    void registerEntity(Entity e) {
+        _batchLock.readLock().lock();
+        try {
+            claimEntity(e);
+        }
+        finally {
+            _batchLock.readLock().unlock();
+        }
+
+        fireEntityAdded(e);
+    }
+
+    /**
+     * Removes an Entity from the manager. All corresponding Relationships
+     * to removed Entity will also be removed. Notifications are sent to subscribers.
+     * 
+     * @param e The Entity to remove
+     * @throws IllegalArgumentException Entity is not currently managed
+     */
+    public void removeEntity(Entity e) throws IllegalArgumentException {
+        _batchLock.readLock().lock();
+        try {
+            unregisterEntity(e);
+        }
+        finally {
+            _batchLock.readLock().unlock();
+        }
+
+        fireEntityRemoved(e);
+    }
+
+    /**
+     * Attempts to update Entity name, if it is valid and no Entity already exists with the same name
+     * 
+     * @param e The Entity
+     * @param name The new name
+     * @throws IllegalArgumentException Invalid Entity Name specified, or name already in use
+     */
+    void updateEntityName(Entity e, String newName) throws IllegalArgumentException {
+        String oldName;
+
+        _batchLock.readLock().lock();
+        try {
+            oldName = renameEntity(e, newName);
+        }
+        finally {
+            _batchLock.readLock().unlock();
+        }
+
+        fireEntityRenamed(e, oldName, newName);
+    }
+
+    /**
+     * Starts a batch of registry changes, which are validated and applied
+     * together, with one coalesced notification per listener.
+     * 
+     * @return The new batch
+     */
+    public EntityBatch beginBatch() {
+        return new EntityBatch(this);
+    }
+
+    /**
+     * Creates Entities from snapshots, such as a parsed or loaded model, in one batch.
+     * Relationships may point at any of the new Entities, in any order, or at Entities
+     * already in the workspace. Either every Entity is added, or none are.
+     * 
+     * @param entities The Entities to create
+     * @return The new Entities, in the same order
+     * @throws UnresolvedEntitiesException Related Entities don't exist, all of which are reported
+     * @throws IllegalArgumentException Improperly named Entity, Attributes, Relationships, or a name already in use
+     */
+    public List<Entity> addEntities(List<EntitySnapshot> entities) throws IllegalArgumentException {
+        // Link by name first, so every missing Entity is reported before anything is built
+        Map<String, Integer> indices = new HashMap<String, Integer>(entities.size() * 4 / 3 + 1);
+        for (int i = 0; i < entities.size(); i++) {
+            indices.put(entities.get(i).getName(), i);
+        }
+
+        Set<String> missing = new LinkedHashSet<String>();
+        for (EntitySnapshot snapshot : entities) {
+            for (RelationshipSnapshot relationship : snapshot.getRelationships()) {
+                String otherEntityName = relationship.getEntityName();
+
+                if (!indices.containsKey(otherEntityName) && !containsEntity(otherEntityName)) {
+                    missing.add(otherEntityName);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            throw new UnresolvedEntitiesException(new ArrayList<String>(missing));
+        }
+
+        EntityBatch batch = beginBatch();
+        List<Entity> created = new ArrayList<Entity>(entities.size());
+
+        for (EntitySnapshot snapshot : entities) {
+            Entity e = batch.createEntity(snapshot.getName());
+
+            for (AttributeSnapshot attribute : snapshot.getAttributes()) {
+                e.addAttribute(attribute.getName(), attribute.getType());
+
+                if (attribute.isPrimaryKey()) {
+                    e.setPrimaryKey(attribute.getName(), true);
+                }
+            }
+
+            created.add(e);
+        }
+
+        for (int i = 0; i < created.size(); i++) {
+            for (RelationshipSnapshot relationship : entities.get(i).getRelationships()) {
+                Integer index = indices.get(relationship.getEntityName());
+                Entity otherEntity = index != null ? created.get(index) : getEntityByName(relationship.getEntityName());
+
+                batch.addRelationship(created.get(i), relationship.getName(), otherEntity);
+            }
+        }
+
+        batch.commit();
+
+        return created;
+    }
+
+    /**
+     * Validates and applies a batch while no other registry changes can happen.
+     * Events for changes the batch makes to existing Entities, such as Relationships
+     * it adds or removes, are held back and delivered after the batch's own event,
+     * so listeners always know about the Entities those changes involve. Those for
+     * Entities the batch went on to remove are dropped, as listeners have already
+     * been told they are gone.
+     * 
+     * @param batch The batch to commit
+     * @return The coalesced changes
+     * @throws IllegalArgumentException If any operation in the batch is invalid, in which case none are applied
+     */
+    ModelChangeSet commitBatch(EntityBatch batch) throws IllegalArgumentException {
+        ModelChangeSet changes;
+        List<ModelEvent> deferred = new ArrayList<ModelEvent>();
+
+        _batchLock.writeLock().lock();
+        _deferredEvents.set(deferred);
+        try {
+            batch.validate();
+            changes = batch.apply();
+        }
+        finally {
+            _deferredEvents.remove();
+            _batchLock.writeLock().unlock();
+        }
+
+        fireEntitiesChanged(changes);
+
+        Set<Entity> removed = Collections.newSetFromMap(new IdentityHashMap<Entity, Boolean>());
+        removed.addAll(changes.getRemovedEntities());
+
+        for (ModelEvent event : deferred) {
+            if (!removed.contains(event.getEntity())) {
+                fireModelEvent(event);
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * Adds an Entity to the registry, without notifying listeners
+     * 
+     * @param e The new Entity
+     * @throws IllegalArgumentException Entity already exists
+     */
+    void claimEntity(Entity e) {
+        // The table name index is the source of truth for uniqueness,
+        // as names differing only by case map to the same table
+        Entity existing = _entitiesByTableName.putIfAbsent(tableName(e._name), e);
+        if (existing != null) {
+            if (existing.getName().equals(e._name)) {
+                throw new IllegalArgumentException("Entity already registered");
+            }
+
+            throw new IllegalArgumentException("Entity table name already in use");
+        }
+
+        e._registrationNumber = _registrationSequence.incrementAndGet();
+        _entities.put(e._name, e);
+        _registrationOrder.put(e._registrationNumber, e);
+
+        if (!e.isLoaded()) {
+            _unloaded.put(e._registrationNumber, e);
+        }
+        _version.incrementAndGet();
+        _structureVersion.incrementAndGet();
+        _modificationCount.incrementAndGet();
+    }
+
+    /**
+     * Removes an Entity and the Relationships to it, without notifying listeners
+     * 
+     * @param e The Entity to remove
+     * @throws IllegalArgumentException Entity is not currently managed
+     */
+    void unregisterEntity(Entity e) {
+        if (!containsEntity(e)) {
+            throw new IllegalArgumentException("Entity not currently managed");
+        }
+
+        // Unloaded Entities may point at this one too
+        loadReferencing(e);
+
+        synchronized (e) {
+            if (!_entities.remove(e._name, e)) {
+                throw new IllegalArgumentException("Entity not currently managed");
+            }
+
+            _entitiesByTableName.remove(tableName(e._name), e);
+            _registrationOrder.remove(e._registrationNumber);
+            _version.incrementAndGet();
+            _structureVersion.incrementAndGet();
+            _modificationCount.incrementAndGet();
+        }
+
+        // Drop the Relationships pointing at the removed Entity
+        Set<Relationship> inbound = _inboundRelationships.remove(e._registrationNumber);
+        if (inbound != null) {
+            for (Relationship rltn : inbound) {
+                rltn.getSource().removeRelationship(rltn.getName());
+            }
+        }
+
+        // Its own Relationships no longer count as references to others
+        for (Relationship rltn : e.getRelationships()) {
+            relationshipRemoved(rltn);
+        }
+    }
+
+    /**
+     * Renames a registered Entity, without notifying listeners
+     * 
+     * @param e The Entity
+     * @param newName The new name
+     * @return The old name
+     * @throws IllegalArgumentException Invalid Entity Name specified, name already in use, or Entity not managed
+     */
+    String renameEntity(Entity e, String newName) {
+        if (containsEntity(newName)) {
+            throw new IllegalArgumentException("Entity name already in use");
+        }
+
+        EntityManager.validateName(newName, "Entity");
+
+        // Unloaded Entities, this one included, name it in their saved contents
+        e.load();
+        loadReferencing(e);
+
+        String oldName;
+        synchronized (e) {
+            if (!containsEntity(e)) {
+                throw new IllegalArgumentException("Entity not currently managed");
+            }
+
+            oldName = e._name;
+            String oldTableName = tableName(oldName);
+            String newTableName = tableName(newName);
+
+            // Renaming an Entity by case alone keeps its own table name
+            if (!newTableName.equals(oldTableName)) {
+                Entity tableOwner = _entitiesByTableName.putIfAbsent(newTableName, e);
+                if (tableOwner != null) {
+                    if (tableOwner.getName().equals(newName)) {
+                        throw new IllegalArgumentException("Entity name already in use");
+                    }
+
+                    throw new IllegalArgumentException("Entity table name already in use");
+                }
+            }
+            else if (_entities.putIfAbsent(newName, e) != null) {
+                throw new IllegalArgumentException("Entity name already in use");
+            }
+
+            e._name = newName;
+
+            _entities.put(newName, e);
+            _entities.remove(oldName, e);
+
+            if (!newTableName.equals(oldTableName)) {
+                _entitiesByTableName.remove(oldTableName, e);
+            }
+
+            _version.incrementAndGet();
+            _structureVersion.incrementAndGet();
+        }
+
+        // Referencing Entities now name this one differently
+        e.changed();
+        for (Relationship rltn : getInboundRelationships(e)) {
+            rltn.getSource().changed();
+        }
+
+        return oldName;
+    }
+
+    /**
+     * Gets the Entity currently holding a table name, if any
+     * 
+     * @param tableName The lower cased table name
+     * @return The Entity, or null
+     */
+    Entity getTableOwner(String tableName) {
+        return _entitiesByTableName.get(tableName);
+    }
+
+    private void fireEntityAdded(Entity e) {
+        if (!_listeners.isEmpty()) {
+            fireModelEvent(new ModelEvent.EntityEvent(ModelEvent.Type.ENTITY_ADDED, e));
+        }
+    }
+
+    private void fireEntityRemoved(Entity e) {
+        if (!_listeners.isEmpty()) {
+            fireModelEvent(new ModelEvent.EntityEvent(ModelEvent.Type.ENTITY_REMOVED, e));
+        }
+    }
+
+    private void fireEntityRenamed(Entity e, String oldName, String newName) {
+        if (!_listeners.isEmpty()) {
+            fireModelEvent(new ModelEvent.EntityRenamedEvent(e, oldName, newName));
+        }
+    }
+
+    private void fireEntitiesChanged(ModelChangeSet changes) {
+        if (!changes.isEmpty() && !_listeners.isEmpty()) {
+            fireModelEvent(new ModelEvent.EntitiesChangedEvent(changes));
+        }
+    }
+
+    private void fireModelEvent(ModelEvent event) {
+        List<ModelEvent> deferred = _deferredEvents.get();
+
+        if (deferred != null) {
+            deferred.add(event);
+        }
+        else {
+            _listeners.fire(event);
+        }
+    }
+
+    /**
+     * Notifies listeners that an Entity has cleared Relationships
+     * 
+     * @param e The Entity
+     */
+    void entityClearedRelationships(Entity e) {
+        if (!_listeners.isEmpty()) {
+            fireModelEvent(new ModelEvent.EntityEvent(ModelEvent.Type.RELATIONSHIPS_CLEARED, e));
+        }
+    }
+
+    /**
+     * Notifies listeners that one of an Entity's Attributes changed.
+     * Nothing is allocated unless there are listeners, and changes to
+     * Entities which aren't registered, such as ones a batch will add, aren't reported.
+     * 
+     * @param type The kind of change
+     * @param e The Entity
+     * @param attr The Attribute
+     * @param oldName The previous name, for renames
+     * @param oldType The previous type, for type changes
+     */
+    void attributeChanged(ModelEvent.Type type, Entity e, Attribute attr, String oldName, AttributeType oldType) {
+        if (!_listeners.isEmpty() && containsEntity(e)) {
+            fireModelEvent(new ModelEvent.AttributeEvent(type, e, attr, oldName, oldType));
+        }
+    }
+
+    /**
+     * Notifies listeners that one of an Entity's Relationships changed.
+     * Nothing is allocated unless there are listeners, and changes to
+     * Entities which aren't registered aren't reported.
+     * 
+     * @param type The kind of change
+     * @param e The Entity
+     * @param rltn The Relationship
+     * @param oldName The previous name, for renames
+     * @param oldEntity The previously related Entity, for retargets
+     */
+    void relationshipChanged(ModelEvent.Type type, Entity e, Relationship rltn, String oldName, Entity oldEntity) {
+        if (!_listeners.isEmpty() && containsEntity(e)) {
+            fireModelEvent(new ModelEvent.RelationshipEvent(type, e, rltn, oldName, oldEntity));
+        }
+    }
+
+    /**
+     * Records that an Entity's contents changed
+     */
+    void entityChanged() {
+        _modificationCount.incrementAndGet();
+    }
+
+    /**
+     * Gets an immutable view of the whole model. Entities which haven't
+     * changed since the previous snapshot share their EntitySnapshot with it,
+     * and an unchanged workspace returns the previous snapshot itself.
+     * 
+     * This should be called from the thread editing the model. The
+     * returned snapshot may then be read from any thread.
+     * 
+     * @return The current snapshot
+     */
+    public ModelSnapshot snapshot() {
+        long modificationCount = _modificationCount.get();
+        long structureVersion = _structureVersion.get();
+        ModelSnapshot snapshot = _lastSnapshot;
+
+        if (snapshot == null || snapshot.getVersion() != modificationCount) {
+            List<Entity> entities = getAllEntities();
+            List<EntitySnapshot> entitySnapshots = new ArrayList<EntitySnapshot>(entities.size());
+
+            for (Entity entity : entities) {
+                entitySnapshots.add(entity.snapshot());
+            }
+
+            ModelSnapshot previous = snapshot;
+            snapshot = new ModelSnapshot(modificationCount, structureVersion, entitySnapshots);
+
+            // Edits which only touched Attributes leave the graph as it was
+            if (previous != null && previous.getStructureVersion() == structureVersion) {
+                snapshot.reuseGraph(previous);
+            }
+
+            _lastSnapshot = snapshot;
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Indexes a Relationship that was added to its source Entity
+     * 
+     * @param rltn The new Relationship
+     */
+    void relationshipAdded(Relationship rltn) {
+        _structureVersion.incrementAndGet();
+
+        Long key = rltn.getEntity()._registrationNumber;
+
+        Set<Relationship> inbound = _inboundRelationships.get(key);
+        if (inbound == null) {
+            Set<Relationship> created = Collections.newSetFromMap(new ConcurrentHashMap<Relationship, Boolean>());
+            inbound = _inboundRelationships.putIfAbsent(key, created);
+
+            if (inbound == null) {
+                inbound = created;
+            }
+        }
+
+        inbound.add(rltn);
+    }
+
+    /**
+     * Moves a Relationship in the index after it pointed to a different Entity
+     * 
+     * @param rltn The updated Relationship
+     * @param oldEntity The Entity it used to point to
+     */
+    void relationshipRetargeted(Relationship rltn, Entity oldEntity) {
+        _structureVersion.incrementAndGet();
+
+        Set<Relationship> inbound = _inboundRelationships.get(oldEntity._registrationNumber);
+        if (inbound != null) {
+            inbound.remove(rltn);
+        }
+
+        relationshipAdded(rltn);
+    }
+
+    /**
+     * Drops a Relationship from the index after it was removed from its source Entity
+     * 
+     * @param rltn The removed Relationship
+     */
+    void relationshipRemoved(Relationship rltn) {
+        _structureVersion.incrementAndGet();
+
+        Set<Relationship> inbound = _inboundRelationships.get(rltn.getEntity()._registrationNumber);
+        if (inbound != null) {
+            inbound.remove(rltn);
+        }
+    }
+
+    /**
+     * Records that an Entity opened lazily has read in its contents
+     * 
+     * @param e The loaded Entity
+     */
+    void entityLoaded(Entity e) {
+        _unloaded.remove(e._registrationNumber, e);
+    }
+
+    /**
+     * Loads the Entities opened lazily which have Relationships pointing to an Entity.
+     * Only Entities which are loaded have their Relationships indexed, so this is done
+     * before the index is needed. Which Entities those are is read from the saved
+     * contents of the unloaded ones, without loading the rest.
+     * 
+     * @param e The referenced Entity
+     */
+    void loadReferencing(Entity e) {
+        // Record where the unloaded Entities not yet seen point to, once each
+        for (Entity source : _unloaded.values()) {
+            List<Entity> targets = new ArrayList<Entity>();
+
+            if (source.loadTargets(targets)) {
+                for (Entity target : targets) {
+                    Set<Entity> sources = _unloadedInbound.get(target._registrationNumber);
+                    if (sources == null) {
+                        Set<Entity> created = Collections.newSetFromMap(new ConcurrentHashMap<Entity, Boolean>());
+                        sources = _unloadedInbound.putIfAbsent(target._registrationNumber, created);
+
+                        if (sources == null) {
+                            sources = created;
+                        }
+                    }
+
+                    sources.add(source);
+                }
+            }
+
+            _unloaded.remove(source._registrationNumber, source);
+        }
+
+        Set<Entity> sources = _unloadedInbound.get(e._registrationNumber);
+        if (sources != null) {
+            for (Entity source : sources) {
+                source.load();
+            }
+
+            // Loaded sources are in the Relationship index from now on
+            _unloadedInbound.remove(e._registrationNumber, sources);
+        }
+    }
+
+    /**
+     * Gets the Relationships, on any Entity, which point to an Entity.
+     * Any Entities opened lazily which point to it are loaded first.
+     * 
+     * @param e The referenced Entity
+     * @return The Relationships referencing it
+     */
+    public Collection<Relationship> getInboundRelationships(Entity e) {
+        if (e != null) {
+            loadReferencing(e);
+        }
+
+        Set<Relationship> inbound = e == null ? null : _inboundRelationships.get(e._registrationNumber);
+
+        if (inbound == null) {
+            return Collections.emptySet();
+        }
+
+        return Collections.unmodifiableSet(inbound);
+    }
+
+    /**
+     * Determines if an Entity is already registered
+     * 
+     * @param Name the Name to look for
+     * @return Whether it is registered
+     */
+    public boolean containsEntity(String name) {
+        return getEntityByName(name) != null;
+    }
+
+    /**
+     * Determines if an Entity is registered in this workspace
+     * 
+     * @param e The Entity to look for
+     * @return Whether it is registered
+     */
+    public boolean containsEntity(Entity e) {
+        return e != null && _entities.get(e.getName()) == e;
+    }
+
+    /**
+     * Removes all registered Entities
+     */
+    public void clearRegistry() {
+        _entities.clear();
+        _entitiesByTableName.clear();
+        _registrationOrder.clear();
+        _unloaded.clear();
+        _unloadedInbound.clear();
+        _inboundRelationships.clear();
+        _version.incrementAndGet();
+        _structureVersion.incrementAndGet();
+        _modificationCount.incrementAndGet();
+    }
+
+    /**
+     * Adds the passed listener to the list of listeners for Entity updates.
+     * Listeners are held weakly, and stop being notified once nothing else references them.
+     * @param eml The EntityManagerListener to be added
+     */
+    public void registerForEntityUpdates(EntityManagerListener eml) {
+        _listeners.add(eml, new LegacyListenerAdapter(eml));
+    }
+
+    /**
+     * Removed the passed listener from the list of listeners for Entity updates
+     * @param eml The EntityManagerListener to be removed
+     */
+    public void unregisterForEntityUpdates(EntityManagerListener eml) {
+        _listeners.remove(eml);
+    }
+
+    /**
+     * Adds the passed listener to the list of listeners for typed model events.
+     * Listeners are held weakly, and stop being notified once nothing else references them.
+     * @param listener The ModelEventListener to be added
+     */
+    public void registerForModelEvents(ModelEventListener listener) {
+        _listeners.add(listener, listener);
+    }
+
+    /**
+     * Removes the passed listener from the list of listeners for typed model events
+     * @param listener The ModelEventListener to be removed
+     */
+    public void unregisterForModelEvents(ModelEventListener listener) {
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Gets the number of registered listeners which haven't been garbage collected
+     * @return The live listener count
+     */
+    public int getListenerCount() {
+        return _listeners.getLiveCount();
+    }
+
+    /**
+     * Waits until every AsyncModelEventListener registered with this workspace
+     * has delivered the events it was sent before this call
+     * 
+     * @param timeout How long to wait, for each listener
+     * @param unit The unit of the timeout
+     * @return Whether all events were delivered in time
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean flushEvents(long timeout, TimeUnit unit) throws InterruptedException {
+        boolean delivered = true;
+
+        for (ModelEventListener listener : _listeners.getListeners()) {
+            if (listener instanceof AsyncModelEventListener) {
+                delivered &= ((AsyncModelEventListener) listener).flush(timeout, unit);
+            }
+        }
+
+        return delivered;
+    }
+
+    /**
+     * Gets all entities.
+     * @return All the Entity objects
+     */
+    public List<Entity> getAllEntities() {
+        // Read the version first, so the list built below is at least
+        // as new as it. Rebuilt lazily, only after the registry has changed.
+        long version = _version.get();
+        EntityList cached = _allEntities;
+
+        if (cached == null || cached.version != version) {
+            cached = new EntityList(version, new ArrayList<Entity>(_registrationOrder.values()));
+            _allEntities = cached;
+        }
+
+        return cached.entities;
+    }
+
+    /**
+     * Tries to get specified Entity.
+     * @return Entity requested, or null.
+     */
+    public Entity getEntityByName(String entityName) {
+        return entityName == null ? null : _entities.get(entityName);
+    }
+
+    /**
+     * Tries to get the Entity whose table has the specified name.
+     * Table names are the lower cased Entity names.
+     * 
+     * @param tableName The table name, in any case
+     * @return Entity requested, or null.
+     */
+    public Entity getEntityByTableName(String tableName) {
+        return tableName == null ? null : _entitiesByTableName.get(tableName(tableName));
+    }
+
+    /**
+     * Gets the table name used for an Entity name
+     * 
+     * @param entityName The Entity name
+     * @return The lower cased name, the same in every locale
+     */
+    static String tableName(String entityName) {
+        return entityName.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * An immutable list of Entities, and the registry version it was built from
+     */
+    private static class EntityList {
+        EntityList(long version, List<Entity> entities) {
+            this.version = version;
+            this.entities = Collections.unmodifiableList(entities);
+        }
+
+        final long version;
+        final List<Entity> entities;
+    }
+
+    // Held shared by single registry changes, and exclusively by batch commits
+    private ReentrantReadWriteLock _batchLock = new ReentrantReadWriteLock();
+
+    private ConcurrentMap<String, Entity> _entities = new ConcurrentHashMap<String, Entity>();
+    private ConcurrentMap<String, Entity> _entitiesByTableName = new ConcurrentHashMap<String, Entity>();
+
+    // Registration order is preserved for getAllEntities
+    private AtomicLong _registrationSequence = new AtomicLong();
+    private ConcurrentSkipListMap<Long, Entity> _registrationOrder = new ConcurrentSkipListMap<Long, Entity>();
+    private AtomicLong _version = new AtomicLong();
+    private volatile EntityList _allEntities;
+
+    // Counts every change to the model, including Entity contents
+    private AtomicLong _modificationCount = new AtomicLong();
+    private volatile ModelSnapshot _lastSnapshot;
+
+    // Counts changes to which Entities there are, their names, and their Relationships, which the EntityGraph depends on
+    private AtomicLong _structureVersion = new AtomicLong();
+
+    // Keyed by registration number, since an Entity's hash changes when it is renamed
+    private ConcurrentMap<Long, Set<Relationship>> _inboundRelationships = new ConcurrentHashMap<Long, Set<Relationship>>();
+
+    // Entities opened lazily whose contents haven't been read yet, nor their targets recorded below, by registration number
+    private ConcurrentMap<Long, Entity> _unloaded = new ConcurrentHashMap<Long, Entity>();
+
+    // The unloaded Entities with Relationships pointing to each Entity, by registration number
+    private ConcurrentMap<Long, Set<Entity>> _unloadedInbound = new ConcurrentHashMap<Long, Set<Entity>>();
+
+    // EntityManagerListeners are delivered to through a LegacyListenerAdapter
+    private ListenerRegistry _listeners = new ListenerRegistry();
+
+    // Set on the thread applying a batch, to hold back events until the batch's own is delivered
+    private final ThreadLocal<List<ModelEvent>> _deferredEvents = new ThreadLocal<List<ModelEvent>>();
+}
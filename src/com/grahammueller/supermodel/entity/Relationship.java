@@ -13,8 +13,20 @@ public class Relationship {
      * @param entity The other Entity
      */
     public Relationship(String name, Entity entity) {
+      this(name, entity, null);
+    }
+
+    /**
+     * Creates a Relationship owned by an Entity.
+     * 
+     * @param name The name for the Relationship
+     * @param entity The other Entity
+     * @param source The Entity the Relationship belongs to
+     */
+    Relationship(String name, Entity entity, Entity source) {
       _name = name;
       _entity = entity;
+      _source = source;
     }
 
     /**
@@ -49,6 +61,15 @@ public class Relationship {
         _entity = entity;
     }
 
+    /**
+     * Gets the Entity this Relationship belongs to
+     * @return The owning Entity, or null if not added to one
+     */
+    public Entity getSource() {
+        return _source;
+    }
+
     private String _name;
     private Entity _entity;
+    private Entity _source;
 }
@@ -0,0 +1,43 @@
+package com.grahammueller.supermodel.entity;
+
+/**
+ * An immutable copy of a Relationship, as part of an EntitySnapshot.
+ * The other Entity is referenced by name, and can be found through
+ * the ModelSnapshot the Relationship was taken with.
+ */
+public final class RelationshipSnapshot {
+    RelationshipSnapshot(Relationship relationship) {
+        _name = relationship.getName();
+        _entityName = relationship.getEntity().getName();
+    }
+
+    /**
+     * Creates a snapshot of a Relationship that doesn't exist yet
+     * 
+     * @param name The Relationship's name
+     * @param entityName The name of the Entity it points to
+     */
+    public RelationshipSnapshot(String name, String entityName) {
+        _name = name;
+        _entityName = entityName;
+    }
+
+    /**
+     * Gets the Relationship name
+     * @return The name
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Gets the other Entity's name
+     * @return Other Entity's name
+     */
+    public String getEntityName() {
+        return _entityName;
+    }
+
+    private final String _name;
+    private final String _entityName;
+}
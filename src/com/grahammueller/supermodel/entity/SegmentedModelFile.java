@@ -0,0 +1,666 @@
+package com.grahammueller.supermodel.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Saves models with each Entity in its own segment, so saving after a few
+ * edits only writes out the Entities which changed.
+ *
+ * A file is laid out as
+ *   magic "SMSG", format version byte
+ *   segments: one per Entity, holding its attributes and relationships
+ *   index: next id, segment count, then each segment's id, Entity name, offset, length and CRC32
+ *   trailer: the index's offset, length and CRC32
+ *
+ * Each Entity keeps the id its segment was first saved with, and Relationships
+ * store the id of the Entity they point to, so a segment never holds another
+ * Entity's name. Renaming an Entity only changes the index, and segments which
+ * didn't change are copied from the previous file with FileChannel.transferTo,
+ * rather than being decoded and encoded again, each run of neighbouring ones in
+ * a single transfer. Counts and ids are unsigned varints.
+ *
+ * Files are opened lazily, as with ModelFile.open. The index is checked when
+ * the file is opened, and each segment's checksum when its Entity is loaded.
+ * Segments are read with positional reads rather than by mapping the file, so
+ * nothing holds the file open between loads, and saving can replace it.
+ *
+ * An open file watches its workspace for changes, and workspaces hold listeners
+ * weakly, so keep a reference to it for as long as it should be saved.
+ */
+public final class SegmentedModelFile implements ModelEventListener {
+    /**
+     * Opens a segmented model file lazily, registering its Entities in a workspace
+     *
+     * @param file The model file
+     * @param workspace The workspace to add to
+     * @return The open file, which saves back to the same path
+     * @throws IOException If reading fails, or the file isn't a valid segmented model file
+     * @throws IllegalArgumentException If an Entity name is invalid or in use, in which case none are added
+     */
+    public static SegmentedModelFile open(File file, ModelWorkspace workspace) throws IOException {
+        Index index = Index.read(file);
+        SegmentedModelFile model = new SegmentedModelFile(file, workspace, index.nextId);
+        EntityBatch batch = workspace.beginBatch();
+
+        for (Segment segment : index.segments.values()) {
+            Entity e = batch.createEntity(segment.name);
+            e.setLoader(model._loader, segment.id);
+            model._ids.put(e, segment.id);
+            index.entities.put(segment.id, e);
+        }
+
+        model._index = index;
+        batch.commit();
+
+        workspace.registerForModelEvents(model);
+        return model;
+    }
+
+    /**
+     * Saves a workspace to a new segmented model file
+     *
+     * @param file The file to write, which is replaced if it exists
+     * @param workspace The workspace to save
+     * @return The open file, for saving further changes
+     * @throws IOException If writing fails
+     */
+    public static SegmentedModelFile create(File file, ModelWorkspace workspace) throws IOException {
+        SegmentedModelFile model = new SegmentedModelFile(file, workspace, 0);
+        workspace.registerForModelEvents(model);
+
+        // With no previous file, every Entity is written
+        model.save();
+        return model;
+    }
+
+    private SegmentedModelFile(File file, ModelWorkspace workspace, int nextId) {
+        _file = file;
+        _workspace = workspace;
+        _nextId = nextId;
+    }
+
+    /**
+     * Notes which Entities have changed since the last save
+     *
+     * @param event The change
+     */
+    @Override
+    public synchronized void modelChanged(ModelEvent event) {
+        switch (event.getType()) {
+            case ENTITY_RENAMED :
+                // Names are only kept in the index, which is always written
+                break;
+            case ENTITY_REMOVED :
+                _dirty.remove(event.getEntity());
+                break;
+            case ENTITIES_CHANGED :
+                ModelChangeSet changes = ((ModelEvent.EntitiesChangedEvent) event).getChanges();
+                _dirty.addAll(changes.getAddedEntities());
+
+                for (Entity e : changes.getRemovedEntities()) {
+                    _dirty.remove(e);
+                }
+                break;
+            default :
+                _dirty.add(event.getEntity());
+                break;
+        }
+    }
+
+    /**
+     * Gets the number of Entities which changed since the last save
+     * @return The number of segments the next save will write
+     */
+    public synchronized int getDirtyCount() {
+        return _dirty.size();
+    }
+
+    /**
+     * Saves the workspace back to the file. Only the segments of Entities which
+     * changed are written, and the rest are copied from the previous file.
+     * The new file is written alongside and then moved over the old one.
+     *
+     * @return The number of segments written, rather than copied
+     * @throws IOException If writing fails, in which case the previous file is left as it was
+     */
+    public int save() throws IOException {
+        synchronized (_saveLock) {
+            Set<Entity> dirty;
+            synchronized (this) {
+                dirty = _dirty;
+                _dirty = newIdentitySet();
+            }
+
+            boolean saved = false;
+            try {
+                int written = write(dirty);
+                saved = true;
+                return written;
+            }
+            finally {
+                if (!saved) {
+                    synchronized (this) {
+                        _dirty.addAll(dirty);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops tracking changes to the workspace
+     */
+    public void close() {
+        _workspace.unregisterForModelEvents(this);
+    }
+
+    /**
+     * Gets the file this model saves to
+     * @return The file
+     */
+    public File getFile() {
+        return _file;
+    }
+
+    private int write(Set<Entity> dirty) throws IOException {
+        List<Entity> entities = _workspace.getAllEntities();
+        Index previous = _index;
+
+        // Ids first, as Relationships refer to Entities by id
+        Map<Entity, Integer> ids = new IdentityHashMap<Entity, Integer>();
+        Map<String, Entity> entitiesByName = new HashMap<String, Entity>(entities.size() * 4 / 3 + 1);
+        int nextId = _nextId;
+
+        for (Entity e : entities) {
+            Integer id = _ids.get(e);
+            ids.put(e, id != null ? id : nextId++);
+            entitiesByName.put(e.getName(), e);
+        }
+
+        File temp = new File(_file.getPath() + TEMP_SUFFIX);
+        RandomAccessFile out = new RandomAccessFile(temp, "rw");
+        RandomAccessFile in = previous != null ? new RandomAccessFile(_file, "r") : null;
+        int written = 0;
+
+        try {
+            out.setLength(0);
+            FileChannel outChannel = out.getChannel();
+            outChannel.write(ByteBuffer.wrap(HEADER));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(bytes);
+            writeVarint(index, nextId);
+            writeVarint(index, entities.size());
+
+            ByteArrayOutputStream segment = new ByteArrayOutputStream();
+
+            // Clean segments which were next to each other in the previous file are copied in one transfer
+            long runStart = 0;
+            long runLength = 0;
+
+            for (Entity e : entities) {
+                int id = ids.get(e);
+                long offset = outChannel.position() + runLength;
+                Segment old = previous != null && _ids.containsKey(e) ? previous.segments.get(id) : null;
+                int length;
+                int checksum;
+
+                if (old != null && !dirty.contains(e)) {
+                    if (runLength > 0 && runStart + runLength != old.offset) {
+                        transfer(in.getChannel(), runStart, runLength, outChannel);
+                        runLength = 0;
+                    }
+
+                    if (runLength == 0) {
+                        runStart = old.offset;
+                    }
+
+                    runLength += old.length;
+                    length = old.length;
+                    checksum = old.checksum;
+                }
+                else {
+                    if (runLength > 0) {
+                        transfer(in.getChannel(), runStart, runLength, outChannel);
+                        runLength = 0;
+                    }
+
+                    segment.reset();
+                    writeSegment(e.snapshot(), entitiesByName, ids, segment);
+
+                    CRC32 crc = new CRC32();
+                    crc.update(segment.toByteArray());
+                    length = segment.size();
+                    checksum = (int) crc.getValue();
+
+                    writeFully(outChannel, ByteBuffer.wrap(segment.toByteArray()));
+                    written++;
+                }
+
+                writeVarint(index, id);
+                writeString(index, e.getName());
+                index.writeLong(offset);
+                writeVarint(index, length);
+                index.writeInt(checksum);
+            }
+
+            if (runLength > 0) {
+                transfer(in.getChannel(), runStart, runLength, outChannel);
+            }
+
+            index.flush();
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            trailer.putLong(outChannel.position());
+            trailer.putInt(bytes.size());
+            trailer.putInt((int) crc.getValue());
+            trailer.flip();
+
+            writeFully(outChannel, ByteBuffer.wrap(bytes.toByteArray()));
+            writeFully(outChannel, trailer);
+            outChannel.force(true);
+        }
+        finally {
+            out.close();
+
+            if (in != null) {
+                in.close();
+            }
+        }
+
+        // Loads read the file with the index describing it, so none run while it is replaced
+        _fileLock.writeLock().lock();
+        try {
+            // Renaming over an existing file isn't possible everywhere
+            if (!temp.renameTo(_file) && !(_file.delete() && temp.renameTo(_file))) {
+                temp.delete();
+                throw new IOException("Unable to replace model file " + _file);
+            }
+
+            Index index = Index.read(_file);
+            for (Map.Entry<Entity, Integer> entry : ids.entrySet()) {
+                index.entities.put(entry.getValue(), entry.getKey());
+            }
+
+            // Unloaded Entities read from the new file from here on
+            _index = index;
+        }
+        finally {
+            _fileLock.writeLock().unlock();
+        }
+
+        _ids = ids;
+        _nextId = nextId;
+
+        return written;
+    }
+
+    /**
+     * Encodes an Entity's Attributes and Relationships. Its name is kept in the index.
+     */
+    private static void writeSegment(EntitySnapshot entity, Map<String, Entity> entitiesByName, Map<Entity, Integer> ids, ByteArrayOutputStream out) throws IOException {
+        writeVarint(out, entity.getAttributes().size());
+        for (AttributeSnapshot attribute : entity.getAttributes()) {
+            writeString(out, attribute.getName());
+            writeString(out, attribute.getType().name());
+            out.write(attribute.isPrimaryKey() ? 1 : 0);
+        }
+
+        writeVarint(out, entity.getRelationships().size());
+        for (RelationshipSnapshot relationship : entity.getRelationships()) {
+            Entity target = entitiesByName.get(relationship.getEntityName());
+
+            if (target == null) {
+                throw new IllegalArgumentException("Relationship " + relationship.getName() + " points outside of the model");
+            }
+
+            writeString(out, relationship.getName());
+            writeVarint(out, ids.get(target));
+        }
+    }
+
+    /**
+     * Copies bytes between files, which the OS can do without passing them through the heap
+     */
+    private static void transfer(FileChannel in, long offset, long length, FileChannel out) throws IOException {
+        long done = 0;
+
+        while (done < length) {
+            long count = in.transferTo(offset + done, length - done, out);
+
+            if (count <= 0) {
+                throw new IOException("Model file truncated");
+            }
+
+            done += count;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        ModelFile.writeVarint(out, value);
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[ModelFile.readVarint(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = ModelFile.readVarint(buffer);
+        buffer.position(buffer.position() + length);
+    }
+
+    private static <T> Set<T> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+    }
+
+    /**
+     * Loads Entities opened lazily from their segments, checking each segment's checksum first
+     */
+    private final EntityLoader _loader = new EntityLoader() {
+        public EntitySnapshot load(int id, List<Entity> targets) throws IllegalStateException {
+            _fileLock.readLock().lock();
+            try {
+                Index index = _index;
+                ByteBuffer buffer = readSegment(index, id);
+
+                int attributeCount = ModelFile.readVarint(buffer);
+                List<AttributeSnapshot> attributes = new ArrayList<AttributeSnapshot>(attributeCount);
+                for (int i = 0; i < attributeCount; i++) {
+                    String name = readString(buffer);
+                    AttributeType type = AttributeType.valueOf(readString(buffer));
+
+                    EntityManager.validateName(name, "Attribute");
+                    attributes.add(new AttributeSnapshot(name, type, buffer.get() != 0));
+                }
+
+                int relationshipCount = ModelFile.readVarint(buffer);
+                List<RelationshipSnapshot> relationships = new ArrayList<RelationshipSnapshot>(relationshipCount);
+                List<Entity> relationshipTargets = new ArrayList<Entity>(relationshipCount);
+                for (int i = 0; i < relationshipCount; i++) {
+                    String name = readString(buffer);
+                    Entity target = index.entities.get(ModelFile.readVarint(buffer));
+
+                    if (target == null) {
+                        throw new IllegalStateException("Model file segment " + id + " corrupt");
+                    }
+
+                    EntityManager.validateName(name, "Relationship");
+                    relationships.add(new RelationshipSnapshot(name, target.getName()));
+                    relationshipTargets.add(target);
+                }
+
+                if (targets != null) {
+                    targets.addAll(relationshipTargets);
+                }
+
+                return new EntitySnapshot(index.entities.get(id).getName(), attributes, relationships);
+            }
+            catch (IllegalStateException ise) {
+                throw ise;
+            }
+            catch (RuntimeException re) {
+                throw new IllegalStateException("Model file segment " + id + " corrupt", re);
+            }
+            finally {
+                _fileLock.readLock().unlock();
+            }
+        }
+
+        public void loadTargets(int id, List<Entity> targets) throws IllegalStateException {
+            _fileLock.readLock().lock();
+            try {
+                Index index = _index;
+                ByteBuffer buffer = readSegment(index, id);
+
+                int attributeCount = ModelFile.readVarint(buffer);
+                for (int i = 0; i < attributeCount; i++) {
+                    skipString(buffer);
+                    skipString(buffer);
+                    buffer.get();
+                }
+
+                int relationshipCount = ModelFile.readVarint(buffer);
+                for (int i = 0; i < relationshipCount; i++) {
+                    skipString(buffer);
+                    Entity target = index.entities.get(ModelFile.readVarint(buffer));
+
+                    if (target == null) {
+                        throw new IllegalStateException("Model file segment " + id + " corrupt");
+                    }
+
+                    targets.add(target);
+                }
+            }
+            catch (IllegalStateException ise) {
+                throw ise;
+            }
+            catch (RuntimeException re) {
+                throw new IllegalStateException("Model file segment " + id + " corrupt", re);
+            }
+            finally {
+                _fileLock.readLock().unlock();
+            }
+        }
+    };
+
+    /**
+     * Reads a segment from the file, and checks it against its checksum.
+     * Called with the file lock held, so the file is the one the index describes.
+     *
+     * @return The segment's contents
+     * @throws IllegalStateException If the segment can't be read, or is corrupt
+     */
+    private ByteBuffer readSegment(Index index, int id) throws IllegalStateException {
+        Segment segment = index.segments.get(id);
+
+        if (segment == null) {
+            throw new IllegalStateException("Model file segment " + id + " missing");
+        }
+
+        ByteBuffer buffer;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(_file, "r");
+            try {
+                buffer = read(raf.getChannel(), segment.offset, segment.length);
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch (IOException ioe) {
+            throw new IllegalStateException("Model file segment " + id + " unreadable", ioe);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, segment.length);
+
+        if ((int) crc.getValue() != segment.checksum) {
+            throw new IllegalStateException("Model file segment " + id + " corrupt");
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Reads part of a file with positional reads, which don't move the channel's position
+     *
+     * @throws IOException If reading fails, or the file ends first
+     */
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Model file truncated");
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Where a segment is, and what its contents should checksum to
+     */
+    private static final class Segment {
+        Segment(int id, String name, long offset, int length, int checksum) {
+            this.id = id;
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        final int id;
+        final String name;
+        final long offset;
+        final int length;
+        final int checksum;
+    }
+
+    /**
+     * The decoded index of a segmented model file
+     */
+    private static final class Index {
+        /**
+         * Reads a file's index, checking the index's checksum but none of the segments'
+         */
+        static Index read(File file) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+            try {
+                return new Index(raf.getChannel());
+            }
+            catch (BufferUnderflowException bue) {
+                throw new IOException("Model file truncated");
+            }
+            catch (IndexOutOfBoundsException ioobe) {
+                throw new IOException("Model file corrupt");
+            }
+            catch (IllegalArgumentException iae) {
+                throw new IOException("Model file corrupt");
+            }
+            finally {
+                raf.close();
+            }
+        }
+
+        private Index(FileChannel channel) throws IOException {
+            long size = channel.size();
+            ByteBuffer header = SegmentedModelFile.read(channel, 0, (int) Math.min(size, HEADER.length));
+
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (header.get() != MAGIC[i]) {
+                    throw new IOException("Not a SuperModel segmented model file");
+                }
+            }
+
+            int version = header.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported model file version " + version);
+            }
+
+            if (size < HEADER.length + TRAILER_SIZE) {
+                throw new BufferUnderflowException();
+            }
+
+            long trailerOffset = size - TRAILER_SIZE;
+            ByteBuffer trailer = SegmentedModelFile.read(channel, trailerOffset, TRAILER_SIZE);
+            long indexOffset = trailer.getLong();
+            int indexLength = trailer.getInt();
+            int indexChecksum = trailer.getInt();
+
+            if (indexOffset < HEADER.length || indexLength < 0 || indexOffset + indexLength != trailerOffset) {
+                throw new IOException("Model file corrupt");
+            }
+
+            ByteBuffer index = SegmentedModelFile.read(channel, indexOffset, indexLength);
+            CRC32 crc = new CRC32();
+            crc.update(index.array(), 0, indexLength);
+
+            if ((int) crc.getValue() != indexChecksum) {
+                throw new IOException("Model file corrupt");
+            }
+
+            nextId = ModelFile.readVarint(index);
+            int count = ModelFile.readVarint(index);
+
+            for (int i = 0; i < count; i++) {
+                Segment segment = new Segment(ModelFile.readVarint(index), readString(index), index.getLong(), ModelFile.readVarint(index), index.getInt());
+
+                if (segment.offset < HEADER.length || segment.length < 0 || segment.offset + segment.length > indexOffset) {
+                    throw new IOException("Model file corrupt");
+                }
+
+                segments.put(segment.id, segment);
+            }
+        }
+
+        final int nextId;
+
+        // Segments by id, in file order
+        final Map<Integer, Segment> segments = new LinkedHashMap<Integer, Segment>();
+
+        // The Entity each id belongs to, filled in before the index is used for loading
+        final Map<Integer, Entity> entities = new HashMap<Integer, Entity>();
+    }
+
+    private final File _file;
+    private final ModelWorkspace _workspace;
+    private final Object _saveLock = new Object();
+
+    // Guarded by this
+    private Set<Entity> _dirty = newIdentitySet();
+
+    // Guarded by the save lock
+    private Map<Entity, Integer> _ids = new IdentityHashMap<Entity, Integer>();
+    private int _nextId;
+
+    // Read by the loader, on whichever thread uses an unloaded Entity
+    private volatile Index _index;
+
+    // Held shared while segments are read, and exclusively while the file is replaced
+    private final ReentrantReadWriteLock _fileLock = new ReentrantReadWriteLock();
+
+    private static final byte[] MAGIC = { 'S', 'M', 'S', 'G' };
+    private static final int VERSION = 1;
+    private static final byte[] HEADER = { 'S', 'M', 'S', 'G', VERSION };
+    private static final int TRAILER_SIZE = 16;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+}
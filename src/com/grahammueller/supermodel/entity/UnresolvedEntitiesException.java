@@ -0,0 +1,50 @@
+package com.grahammueller.supermodel.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when Relationships being loaded point at Entities which neither
+ * exist nor are being loaded. Every missing Entity is reported at once.
+ */
+public class UnresolvedEntitiesException extends IllegalArgumentException {
+    /**
+     * @param entityNames The names of the missing Entities, at least one
+     */
+    public UnresolvedEntitiesException(List<String> entityNames) {
+        super(message(entityNames));
+
+        _entityNames = Collections.unmodifiableList(new ArrayList<String>(entityNames));
+    }
+
+    /**
+     * Gets the Entities which couldn't be found
+     * @return The missing Entity names, in the order they were first referenced
+     */
+    public List<String> getEntityNames() {
+        return _entityNames;
+    }
+
+    private static String message(List<String> entityNames) {
+        // A single missing Entity is reported as it always has been
+        if (entityNames.size() == 1) {
+            return "Other Entity, \"" + entityNames.get(0) + ",\" doesn't exist";
+        }
+
+        StringBuilder message = new StringBuilder("Other Entities don't exist: ");
+        for (int i = 0; i < entityNames.size(); i++) {
+            if (i > 0) {
+                message.append(", ");
+            }
+
+            message.append(entityNames.get(i));
+        }
+
+        return message.toString();
+    }
+
+    private final List<String> _entityNames;
+
+    private static final long serialVersionUID = 1L;
+}
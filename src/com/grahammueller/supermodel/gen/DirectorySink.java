@@ -0,0 +1,118 @@
+package com.grahammueller.supermodel.gen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes generated files into a directory. Each file is written to a temporary
+ * file next to it and renamed over it, so readers never see a half written file,
+ * and a failed generation leaves the previous file in place.
+ */
+public final class DirectorySink implements OutputSink {
+    /**
+     * @param dir The directory, which must exist
+     */
+    public DirectorySink(File dir) {
+        _dir = dir;
+    }
+
+    /**
+     * @return The directory files are written into
+     */
+    public File getDirectory() {
+        return _dir;
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return new File(_dir, name).exists();
+    }
+
+    @Override
+    public byte[] read(String name) throws IOException {
+        File file = new File(_dir, name);
+        InputStream in;
+
+        try {
+            in = new FileInputStream(file);
+        }
+        catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                bytes.write(buffer, 0, read);
+            }
+
+            return bytes.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void write(String name, byte[] contents) throws IOException {
+        File file = new File(_dir, name);
+        File temp = File.createTempFile(file.getName(), ".tmp", _dir);
+
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(contents);
+            }
+            finally {
+                out.close();
+            }
+
+            // Renaming over an existing file fails on some platforms, which then takes two steps
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Unable to write " + file);
+            }
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+    @Override
+    public boolean delete(String name) {
+        return new File(_dir, name).delete();
+    }
+
+    /**
+     * Files stay in the directory between runs
+     * @return true
+     */
+    @Override
+    public boolean supportsIncremental() {
+        return true;
+    }
+
+    /**
+     * A directory lists files by name, whenever they were written
+     * @return false
+     */
+    @Override
+    public boolean isOrdered() {
+        return false;
+    }
+
+    /**
+     * Nothing to finish, as each file is complete once written
+     */
+    @Override
+    public void close() {}
+
+    private final File _dir;
+}
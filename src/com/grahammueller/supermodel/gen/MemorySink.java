@@ -0,0 +1,70 @@
+package com.grahammueller.supermodel.gen;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps generated files in memory, for embedding the generators in other
+ * tools, and for tests. Files are held by name, in name order.
+ *
+ * Only the generated files are kept, so generating into the same sink
+ * again generates everything again, leaving alone files which come out
+ * the same, and needs overwrite to replace the files already there.
+ */
+public final class MemorySink implements OutputSink {
+    @Override
+    public synchronized boolean exists(String name) {
+        return _files.containsKey(name);
+    }
+
+    @Override
+    public synchronized byte[] read(String name) {
+        byte[] contents = _files.get(name);
+        return contents == null ? null : contents.clone();
+    }
+
+    @Override
+    public synchronized void write(String name, byte[] contents) {
+        _files.put(name, contents.clone());
+    }
+
+    @Override
+    public synchronized boolean delete(String name) {
+        return _files.remove(name) != null;
+    }
+
+    /**
+     * Holds only what was generated, with nothing recorded alongside
+     * @return false
+     */
+    @Override
+    public boolean supportsIncremental() {
+        return false;
+    }
+
+    /**
+     * Files are kept sorted by name
+     * @return false
+     */
+    @Override
+    public boolean isOrdered() {
+        return false;
+    }
+
+    /**
+     * Gets the files written so far
+     * @return The contents of each file, by name, which mustn't be modified
+     */
+    public synchronized Map<String, byte[]> getFiles() {
+        return Collections.unmodifiableMap(new TreeMap<String, byte[]>(_files));
+    }
+
+    /**
+     * Nothing to finish, the files stay available
+     */
+    @Override
+    public void close() {}
+
+    private final Map<String, byte[]> _files = new TreeMap<String, byte[]>();
+}
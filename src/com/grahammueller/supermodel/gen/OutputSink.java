@@ -0,0 +1,68 @@
+package com.grahammueller.supermodel.gen;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where generated files go, such as a directory, an archive or memory.
+ * Files are named relative to the sink, and written whole.
+ *
+ * Generators may write from several threads at once, so sinks must be
+ * thread safe. Closing a sink finishes its output, for sinks that need it.
+ */
+public interface OutputSink extends Closeable {
+    /**
+     * Determines whether a file is there, without reading it
+     *
+     * @param name The file name
+     * @return Whether it exists
+     * @throws IOException If the sink can't be looked at
+     */
+    boolean exists(String name) throws IOException;
+
+    /**
+     * Reads a file, so that generators can leave alone files which wouldn't change
+     *
+     * @param name The file name
+     * @return Its contents, or null if there's no such file
+     * @throws IOException If the file can't be read
+     */
+    byte[] read(String name) throws IOException;
+
+    /**
+     * Writes a file, replacing any already there
+     *
+     * @param name The file name
+     * @param contents Its contents
+     * @throws IOException If the file can't be written
+     */
+    void write(String name, byte[] contents) throws IOException;
+
+    /**
+     * Deletes a file
+     *
+     * @param name The file name
+     * @return Whether there was a file, which was deleted
+     * @throws IOException If the sink can't be looked at
+     */
+    boolean delete(String name) throws IOException;
+
+    /**
+     * Determines whether files are kept from one generation run to the next, so
+     * generators can record what they generated alongside them and only generate
+     * again what changed. Sinks which start out empty every time, such as an
+     * archive, don't, and are given every file with nothing else alongside them.
+     *
+     * @return Whether generation into the sink is incremental
+     */
+    boolean supportsIncremental();
+
+    /**
+     * Determines whether the order files are written in shows in the output, as
+     * it does in an archive. Generators write the files for such sinks in the same
+     * order however many threads generate them, so the output is the same too.
+     *
+     * @return Whether the sink keeps the order files are written in
+     */
+    boolean isOrdered();
+}
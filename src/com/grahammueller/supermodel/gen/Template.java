@@ -0,0 +1,256 @@
+package com.grahammueller.supermodel.gen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A line of generated code with slots for names and types, parsed once so
+ * that rendering it only appends to the output, without the per call parsing
+ * and intermediate Strings of String.format.
+ *
+ * Slots are written ${n}, n being the index of the argument to fill it with.
+ * An argument can be used by several slots, and can be changed on the way out:
+ *   ${n:capitalized} upper cases its first letter, turning id into Id
+ *   ${n:lower} lower cases it entirely, turning Pokemon into pokemon
+ * $$ is a literal dollar sign. Templates are immutable, so they can be shared between threads.
+ */
+public final class Template {
+    /**
+     * Parses a template
+     *
+     * @param pattern The template text
+     * @return The parsed template
+     * @throws IllegalArgumentException If a slot is malformed
+     */
+    public static Template compile(String pattern) throws IllegalArgumentException {
+        List<String> literals = new ArrayList<String>();
+        List<Integer> slots = new ArrayList<Integer>();
+        List<Integer> modes = new ArrayList<Integer>();
+        StringBuilder literal = new StringBuilder();
+
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+
+            if (c != '$') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+
+            if (pattern.startsWith("$$", i)) {
+                literal.append('$');
+                i += 2;
+                continue;
+            }
+
+            int end = pattern.indexOf('}', i);
+            if (!pattern.startsWith("${", i) || end == -1) {
+                throw new IllegalArgumentException("Malformed slot at " + i + " in " + pattern);
+            }
+
+            String slot = pattern.substring(i + 2, end);
+            int colon = slot.indexOf(':');
+            String index = colon == -1 ? slot : slot.substring(0, colon);
+            String mode = colon == -1 ? "" : slot.substring(colon + 1);
+
+            if (!index.matches("[0-9]")) {
+                throw new IllegalArgumentException("Slot " + slot + " doesn't name an argument from 0 to 9");
+            }
+
+            if (mode.equals("")) {
+                modes.add(AS_IS);
+            }
+            else if (mode.equals("capitalized")) {
+                modes.add(CAPITALIZED);
+            }
+            else if (mode.equals("lower")) {
+                modes.add(LOWER);
+            }
+            else {
+                throw new IllegalArgumentException("Unknown slot modifier " + mode);
+            }
+
+            literals.add(literal.toString());
+            literal.setLength(0);
+            slots.add(Integer.parseInt(index));
+            i = end + 1;
+        }
+
+        literals.add(literal.toString());
+
+        return new Template(pattern, literals, slots, modes);
+    }
+
+    private Template(String pattern, List<String> literals, List<Integer> slots, List<Integer> modes) {
+        _pattern = pattern;
+        _literals = literals.toArray(new String[literals.size()]);
+        _slots = new int[slots.size()];
+        _modes = new int[modes.size()];
+
+        int arity = 0;
+        for (int i = 0; i < _slots.length; i++) {
+            _slots[i] = slots.get(i);
+            _modes[i] = modes.get(i);
+            arity = Math.max(arity, _slots[i] + 1);
+        }
+
+        _arity = arity;
+    }
+
+    /**
+     * Renders a template without slots
+     * @param out Where to render to
+     * @throws IOException If the output can't be appended to
+     */
+    public void render(Appendable out) throws IOException {
+        render(out, 0, null, null, null, null);
+    }
+
+    /**
+     * Renders a template with one argument
+     * @param out Where to render to
+     * @param arg0 The argument for ${0}
+     * @throws IOException If the output can't be appended to
+     */
+    public void render(Appendable out, CharSequence arg0) throws IOException {
+        render(out, 1, arg0, null, null, null);
+    }
+
+    /**
+     * Renders a template with two arguments
+     * @param out Where to render to
+     * @param arg0 The argument for ${0}
+     * @param arg1 The argument for ${1}
+     * @throws IOException If the output can't be appended to
+     */
+    public void render(Appendable out, CharSequence arg0, CharSequence arg1) throws IOException {
+        render(out, 2, arg0, arg1, null, null);
+    }
+
+    /**
+     * Renders a template with three arguments
+     * @param out Where to render to
+     * @param arg0 The argument for ${0}
+     * @param arg1 The argument for ${1}
+     * @param arg2 The argument for ${2}
+     * @throws IOException If the output can't be appended to
+     */
+    public void render(Appendable out, CharSequence arg0, CharSequence arg1, CharSequence arg2) throws IOException {
+        render(out, 3, arg0, arg1, arg2, null);
+    }
+
+    /**
+     * Renders a template with four arguments
+     * @param out Where to render to
+     * @param arg0 The argument for ${0}
+     * @param arg1 The argument for ${1}
+     * @param arg2 The argument for ${2}
+     * @param arg3 The argument for ${3}
+     * @throws IOException If the output can't be appended to
+     */
+    public void render(Appendable out, CharSequence arg0, CharSequence arg1, CharSequence arg2, CharSequence arg3) throws IOException {
+        render(out, 4, arg0, arg1, arg2, arg3);
+    }
+
+    /**
+     * Renders a template with any number of arguments
+     * @param out Where to render to
+     * @param args The arguments, by slot index
+     * @throws IOException If the output can't be appended to
+     */
+    public void render(Appendable out, CharSequence... args) throws IOException {
+        checkArity(args.length);
+
+        for (int i = 0; i < _slots.length; i++) {
+            out.append(_literals[i]);
+            append(out, args[_slots[i]], _modes[i]);
+        }
+
+        out.append(_literals[_slots.length]);
+    }
+
+    /**
+     * Renders a template to a String, for when there's nothing to render into
+     * @param args The arguments, by slot index
+     * @return The rendered text
+     */
+    public String format(CharSequence... args) {
+        StringBuilder sb = new StringBuilder();
+
+        try {
+            render(sb, args);
+        }
+        catch (IOException e) {
+            // StringBuilders don't throw
+            throw new IllegalStateException(e);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Gets the number of arguments the template takes
+     * @return One more than the highest slot index
+     */
+    public int getArity() {
+        return _arity;
+    }
+
+    /**
+     * @return The template text
+     */
+    public String toString() {
+        return _pattern;
+    }
+
+    private void render(Appendable out, int count, CharSequence arg0, CharSequence arg1, CharSequence arg2, CharSequence arg3) throws IOException {
+        checkArity(count);
+
+        for (int i = 0; i < _slots.length; i++) {
+            out.append(_literals[i]);
+
+            switch (_slots[i]) {
+                case 0: append(out, arg0, _modes[i]); break;
+                case 1: append(out, arg1, _modes[i]); break;
+                case 2: append(out, arg2, _modes[i]); break;
+                default: append(out, arg3, _modes[i]); break;
+            }
+        }
+
+        out.append(_literals[_slots.length]);
+    }
+
+    private void checkArity(int count) {
+        if (count != _arity) {
+            throw new IllegalArgumentException("Template takes " + _arity + " arguments, not " + count + ": " + _pattern);
+        }
+    }
+
+    private static void append(Appendable out, CharSequence arg, int mode) throws IOException {
+        int length = arg.length();
+
+        if (mode == AS_IS || length == 0) {
+            out.append(arg);
+        }
+        else if (mode == CAPITALIZED) {
+            out.append(Character.toUpperCase(arg.charAt(0))).append(arg, 1, length);
+        }
+        else {
+            for (int i = 0; i < length; i++) {
+                out.append(Character.toLowerCase(arg.charAt(i)));
+            }
+        }
+    }
+
+    private static final int AS_IS = 0;
+    private static final int CAPITALIZED = 1;
+    private static final int LOWER = 2;
+
+    private final String _pattern;
+    private final String[] _literals;
+    private final int[] _slots;
+    private final int[] _modes;
+    private final int _arity;
+}
@@ -0,0 +1,115 @@
+package com.grahammueller.supermodel.gen;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams generated files into a zip archive, such as a source jar, as they're
+ * written, rather than creating a file for each. The archive is finished when
+ * the sink is closed.
+ *
+ * A fresh archive holds nothing, so every file is generated into it, and nothing
+ * but the generated files is added. Every entry gets the same timestamp, so
+ * generating the same files in the same order gives the same archive.
+ *
+ * Entries are streamed in the order they're written, rather than held back to
+ * be sorted. As the sink is ordered, generators write them in model order
+ * however many threads generate them, so the archive is the same every run.
+ */
+public final class ZipSink implements OutputSink {
+    /**
+     * Creates an archive file
+     *
+     * @param file The archive, replaced if it exists
+     * @param prefix The directory within the archive to put files in, such as com/yourdomain/model/, or empty
+     * @throws IOException If the archive can't be created
+     */
+    public ZipSink(File file, String prefix) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(file)), prefix);
+    }
+
+    /**
+     * Writes an archive to a stream, which is closed with the sink
+     *
+     * @param out Where to write the archive
+     * @param prefix The directory within the archive to put files in, such as com/yourdomain/model/, or empty
+     */
+    public ZipSink(OutputStream out, String prefix) {
+        _zip = new ZipOutputStream(out);
+        _prefix = prefix.length() == 0 || prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return false;
+    }
+
+    @Override
+    public byte[] read(String name) {
+        return null;
+    }
+
+    @Override
+    public synchronized void write(String name, byte[] contents) throws IOException {
+        if (!_names.add(name)) {
+            throw new IOException(name + " was already written to the archive");
+        }
+
+        ZipEntry entry = new ZipEntry(_prefix + name);
+        entry.setTime(ENTRY_TIME);
+
+        _zip.putNextEntry(entry);
+        _zip.write(contents);
+        _zip.closeEntry();
+    }
+
+    /**
+     * Files can't be taken back out of a streamed archive, and there are none to begin with
+     * @return false
+     */
+    @Override
+    public boolean delete(String name) {
+        return false;
+    }
+
+    /**
+     * Every archive starts out empty
+     * @return false
+     */
+    @Override
+    public boolean supportsIncremental() {
+        return false;
+    }
+
+    /**
+     * Entries stay in the order they're written
+     * @return true
+     */
+    @Override
+    public boolean isOrdered() {
+        return true;
+    }
+
+    /**
+     * Finishes the archive, and closes the stream it's written to
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        _zip.close();
+    }
+
+    // 2000-01-01, local time, as zip entries don't hold a time zone
+    private static final long ENTRY_TIME = new GregorianCalendar(2000, 0, 1).getTimeInMillis();
+
+    private final ZipOutputStream _zip;
+    private final String _prefix;
+    private final Set<String> _names = new HashSet<String>();
+}
@@ -0,0 +1,258 @@
+package com.grahammueller.supermodel.gen.sqliteorm;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a compiled class the ClassImporter needs, read straight from
+ * the class file bytes without loading the class. Only the class name, its
+ * fields with their generic signatures and annotations, and its method names
+ * are kept. Everything else is skipped over.
+ */
+class ClassFile {
+    /**
+     * Parses a class file
+     *
+     * @param bytes The class file contents
+     * @throws IOException If the contents aren't a class file
+     */
+    ClassFile(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        readConstantPool(in);
+
+        access = in.readUnsignedShort();
+        name = className(in.readUnsignedShort());
+        in.readUnsignedShort(); // super class
+
+        int interfaceCount = in.readUnsignedShort();
+        in.skipBytes(interfaceCount * 2);
+
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add(readMember(in));
+        }
+
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            methods.add(readMember(in));
+        }
+    }
+
+    /**
+     * Determines whether the class refers to another one, anywhere in its code
+     *
+     * @param internalName The other class, such as java/util/List
+     * @return Whether its constant pool names the class
+     */
+    boolean references(String internalName) {
+        for (int i = 1; i < _classNames.length; i++) {
+            if (internalName.equals(_classNames[i])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A field or method, with its annotations
+     */
+    static class Member {
+        int access;
+        String name;
+        String descriptor;
+        String signature;
+
+        // Annotation descriptors, such as Lcom/example/PrimaryKey;, to their value element, if it's a string
+        final Map<String, String> annotations = new HashMap<String, String>();
+
+        boolean isStatic() {
+            return (access & ACC_STATIC) != 0;
+        }
+    }
+
+    private void readConstantPool(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        _utf8 = new String[count];
+        _classNames = new String[count];
+        int[] classIndices = new int[count];
+
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+
+            switch (tag) {
+                case CONSTANT_UTF8 :
+                    _utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS :
+                    classIndices[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING : case CONSTANT_METHOD_TYPE : case CONSTANT_MODULE : case CONSTANT_PACKAGE :
+                    in.skipBytes(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE :
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_INTEGER : case CONSTANT_FLOAT : case CONSTANT_FIELD_REF : case CONSTANT_METHOD_REF :
+                case CONSTANT_INTERFACE_METHOD_REF : case CONSTANT_NAME_AND_TYPE : case CONSTANT_DYNAMIC : case CONSTANT_INVOKE_DYNAMIC :
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_LONG : case CONSTANT_DOUBLE :
+                    // Eight byte constants take up two entries
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                default :
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        for (int i = 1; i < count; i++) {
+            if (classIndices[i] != 0) {
+                _classNames[i] = utf8(classIndices[i]);
+            }
+        }
+    }
+
+    private Member readMember(DataInputStream in) throws IOException {
+        Member member = new Member();
+        member.access = in.readUnsignedShort();
+        member.name = utf8(in.readUnsignedShort());
+        member.descriptor = utf8(in.readUnsignedShort());
+
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = utf8(in.readUnsignedShort());
+            int length = in.readInt();
+
+            if ("Signature".equals(attributeName)) {
+                member.signature = utf8(in.readUnsignedShort());
+            }
+            else if ("RuntimeVisibleAnnotations".equals(attributeName) || "RuntimeInvisibleAnnotations".equals(attributeName)) {
+                int annotationCount = in.readUnsignedShort();
+
+                for (int j = 0; j < annotationCount; j++) {
+                    readAnnotation(in, member.annotations);
+                }
+            }
+            else {
+                in.skipBytes(length);
+            }
+        }
+
+        return member;
+    }
+
+    private void readAnnotation(DataInputStream in, Map<String, String> annotations) throws IOException {
+        String type = utf8(in.readUnsignedShort());
+        String value = null;
+
+        int pairCount = in.readUnsignedShort();
+        for (int i = 0; i < pairCount; i++) {
+            String elementName = utf8(in.readUnsignedShort());
+            String elementValue = readElementValue(in);
+
+            if ("value".equals(elementName)) {
+                value = elementValue;
+            }
+        }
+
+        if (annotations != null) {
+            annotations.put(type, value);
+        }
+    }
+
+    /**
+     * Reads an annotation element
+     * @return Its value if it's a string, otherwise null
+     */
+    private String readElementValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+
+        switch (tag) {
+            case 's' :
+                return utf8(in.readUnsignedShort());
+            case 'B' : case 'C' : case 'D' : case 'F' : case 'I' : case 'J' : case 'S' : case 'Z' : case 'c' :
+                in.skipBytes(2);
+                return null;
+            case 'e' :
+                in.skipBytes(4);
+                return null;
+            case '@' :
+                readAnnotation(in, null);
+                return null;
+            case '[' :
+                int count = in.readUnsignedShort();
+                for (int i = 0; i < count; i++) {
+                    readElementValue(in);
+                }
+                return null;
+            default :
+                throw new IOException("Unknown annotation element tag " + (char) tag);
+        }
+    }
+
+    private String utf8(int index) throws IOException {
+        if (index <= 0 || index >= _utf8.length || _utf8[index] == null) {
+            throw new IOException("Bad constant pool index " + index);
+        }
+
+        return _utf8[index];
+    }
+
+    private String className(int index) throws IOException {
+        if (index <= 0 || index >= _classNames.length || _classNames[index] == null) {
+            throw new IOException("Bad constant pool index " + index);
+        }
+
+        return _classNames[index];
+    }
+
+    final int access;
+    final String name;
+    final List<Member> fields = new ArrayList<Member>();
+    final List<Member> methods = new ArrayList<Member>();
+
+    private String[] _utf8;
+    private String[] _classNames;
+
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_INTERFACE = 0x0200;
+    static final int ACC_ABSTRACT = 0x0400;
+    static final int ACC_SYNTHETIC = 0x1000;
+    static final int ACC_ANNOTATION = 0x2000;
+    static final int ACC_ENUM = 0x4000;
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+}
@@ -1,18 +1,27 @@
 package com.grahammueller.supermodel.gen.sqliteorm;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.Writer;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import com.grahammueller.supermodel.entity.Attribute;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import com.grahammueller.supermodel.entity.AttributeSnapshot;
 import com.grahammueller.supermodel.entity.AttributeType;
 import com.grahammueller.supermodel.entity.Entity;
 import com.grahammueller.supermodel.entity.EntityManager;
-import com.grahammueller.supermodel.entity.Relationship;
+import com.grahammueller.supermodel.entity.EntitySnapshot;
+import com.grahammueller.supermodel.entity.ModelSnapshot;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.entity.RelationshipSnapshot;
+import com.grahammueller.supermodel.gen.DirectorySink;
+import com.grahammueller.supermodel.gen.OutputSink;
+import com.grahammueller.supermodel.gen.Template;
 
 /**
  * Class generator for SQLiteORM
@@ -25,10 +34,11 @@ public class ClassGenerator {
      * 
      * @param path The path to the directory the files should be output to.
      * @param overwrite Whether or not to overwrite existing files.
+     * @return What was done with each Entity's file
      * @throws Exception Writing issues, as well as if the files exist and overwrite is false.
      */
-    public static void generateEntitiesFiles(String path, boolean overwrite) throws Exception {
-        generateEntitiesFiles(new File(path), overwrite);
+    public static GenerationReport generateEntitiesFiles(String path, boolean overwrite) throws Exception {
+        return generateEntitiesFiles(new File(path), overwrite);
     }
 
     /**
@@ -36,54 +46,322 @@ public class ClassGenerator {
      * 
      * @param dir The directory the files should be output to.
      * @param overwrite Whether or not to overwrite existing files.
+     * @return What was done with each Entity's file
      * @throws Exception Writing issues, as well as if the files exist and overwrite is false.
      */
-    public static void generateEntitiesFiles(File dir, boolean overwrite) throws Exception {
-        List<Entity> entities = EntityManager.getAllEntities();
-        Map<Entity, Map<String, StringBuilder>> entityMap = new HashMap<Entity, Map<String, StringBuilder>>();
+    public static GenerationReport generateEntitiesFiles(File dir, boolean overwrite) throws Exception {
+        return generateEntitiesFiles(EntityManager.getDefaultWorkspace(), dir, overwrite);
+    }
 
-        // Loop through once, create all the Entities
-        // and Maps, ignoring Relationships for now.
-        for (Entity entity : entities) {
-            Map<String, StringBuilder> builders = generateBuilders();
+    /**
+     * Generates the files for the Entities of a specific workspace.
+     * Generation keeps no shared state, so several workspaces can be generated in parallel.
+     * 
+     * @param workspace The workspace whose Entities should be generated.
+     * @param dir The directory the files should be output to.
+     * @param overwrite Whether or not to overwrite existing files.
+     * @return What was done with each Entity's file
+     * @throws Exception Writing issues, as well as if the files exist and overwrite is false.
+     */
+    public static GenerationReport generateEntitiesFiles(ModelWorkspace workspace, File dir, boolean overwrite) throws Exception {
+        return generateEntitiesFiles(workspace.snapshot(), dir, overwrite);
+    }
 
-            parseEntityWithBuilders(entity, builders);
+    /**
+     * Generates the files for the Entities of a model snapshot. As snapshots
+     * are immutable, this may run on a background thread while the model is edited.
+     * 
+     * Generation is incremental. A manifest in the directory records a fingerprint
+     * of everything each file was generated from: its Entity, and the name and
+     * primary key of every Entity with a Relationship to it. Entities whose
+     * fingerprint is unchanged aren't generated again, and files which come out
+     * byte for byte the same aren't rewritten, so their modification times stay put.
+     * Files generated for Entities no longer in the model are deleted.
+     * Only files the manifest doesn't list count as existing files for overwrite.
+     * Every Attribute's type is checked before anything is generated, so an
+     * UNDEFINED one leaves the files and manifest as they were.
+     * 
+     * The Relationships pointing to each Entity are found up front, so each file
+     * is put together and written out by itself, and memory use is bounded by
+     * the largest class rather than the whole model's generated code.
+     * 
+     * @param model The snapshot whose Entities should be generated.
+     * @param dir The directory the files should be output to.
+     * @param overwrite Whether or not to overwrite existing files.
+     * @return What was done with each Entity's file
+     * @throws Exception Writing issues, as well as if the files exist and overwrite is false.
+     */
+    public static GenerationReport generateEntitiesFiles(ModelSnapshot model, File dir, boolean overwrite) throws Exception {
+        return generateEntitiesFiles(model, dir, overwrite, 1);
+    }
+
+    /**
+     * Generates the files for the Entities of a model snapshot, as above, spreading
+     * the Entities across a fork-join pool. Each Entity's file is put together
+     * by itself, gathering what the Entities pointing to it contribute, so the
+     * files come out the same whatever the number of threads.
+     * 
+     * @param model The snapshot whose Entities should be generated.
+     * @param dir The directory the files should be output to.
+     * @param overwrite Whether or not to overwrite existing files.
+     * @param parallelism The number of threads to generate with, 1 generating on the calling thread.
+     * @return What was done with each Entity's file
+     * @throws Exception Writing issues, as well as if the files exist and overwrite is false.
+     */
+    public static GenerationReport generateEntitiesFiles(ModelSnapshot model, File dir, boolean overwrite, int parallelism) throws Exception {
+        return generateEntitiesFiles(model, new DirectorySink(dir), overwrite, parallelism);
+    }
 
-            entityMap.put(entity, builders);
+    /**
+     * Generates the files for the Entities of a model snapshot into a sink, such as an archive
+     * or memory, as above. The sink is left open, for the caller to write more into or close.
+     * The manifest is only kept in sinks which support incremental generation, so other
+     * sinks get every file, and nothing but the generated files. Files come out the same
+     * whatever the number of threads, and ordered sinks get them in model order, as one
+     * thread would write them.
+     * 
+     * @param model The snapshot whose Entities should be generated.
+     * @param sink Where the files should be output to.
+     * @param overwrite Whether or not to overwrite existing files.
+     * @param parallelism The number of threads to generate with, 1 generating on the calling thread.
+     * @return What was done with each Entity's file
+     * @throws Exception Writing issues, as well as if the files exist and overwrite is false.
+     */
+    public static GenerationReport generateEntitiesFiles(ModelSnapshot model, OutputSink sink, boolean overwrite, int parallelism) throws Exception {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
         }
 
-        // Now actually handle the Relationships
-        for (Entity entity : entities) {
-            parseRelationships(entity, entityMap);
+        // Check everything first, so a bad Attribute doesn't leave some files written and the manifest behind them
+        for (EntitySnapshot entity : model.getAllEntities()) {
+            for (AttributeSnapshot attr : entity.getAttributes()) {
+                if (attr.getType() == AttributeType.UNDEFINED) {
+                    throw new IllegalStateException(attr.getName() + " does not have a valid type");
+                }
+            }
         }
 
-        // Finally, write all the files
-        for (Entry<Entity, Map<String, StringBuilder>> entry : entityMap.entrySet()) {
-            generateEntityFile(entry.getKey(), entry.getValue(), dir, overwrite);
+        // Sinks which start out empty have nothing to compare against, so keep no manifest
+        Map<String, String> manifest = sink.supportsIncremental() ? readManifest(sink) : new HashMap<String, String>();
+        Generation generation = new Generation(model, sink, overwrite, manifest);
+        int count = generation._entities.size();
+
+        if (parallelism == 1) {
+            for (int i = 0; i < count; i++) {
+                generation.generate(i);
+            }
         }
+        else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new GenerationTask(generation, 0, count, Math.max(1, count / (parallelism * TASKS_PER_THREAD))));
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+
+        // Report the first failure in model order, whichever thread hit it first
+        for (Exception failure : generation._failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        GenerationReport report = new GenerationReport();
+        Map<String, String> fingerprints = new TreeMap<String, String>();
+
+        for (int i = 0; i < count; i++) {
+            String name = generation._entities.get(i).getName();
+
+            (generation._written[i] ? report._written : report._unchanged).add(name);
+            fingerprints.put(name, generation._fingerprints[i]);
+        }
+
+        // Finally, clean up after Entities which are gone
+        for (String name : generation._manifest.keySet()) {
+            if (!fingerprints.containsKey(name) && sink.delete(entityFileName(name))) {
+                report._removed.add(name);
+            }
+        }
+
+        if (sink.supportsIncremental()) {
+            writeManifest(sink, fingerprints);
+        }
+
+        return report;
+    }
+
+    /**
+     * One run of the generator, with a slot per Entity for each result, so
+     * Entities can be generated in any order, on any thread
+     */
+    private static final class Generation {
+        Generation(ModelSnapshot model, OutputSink sink, boolean overwrite, Map<String, String> manifest) {
+            _sink = sink;
+            _overwrite = overwrite;
+            _manifest = manifest;
+            _entities = model.getAllEntities();
+            _fingerprints = new String[_entities.size()];
+            _written = new boolean[_entities.size()];
+            _failures = new Exception[_entities.size()];
+            _incoming = new IncomingRelationships(model);
+            _ordered = sink.isOrdered() ? new byte[_entities.size()][] : null;
+        }
+
+        /**
+         * Generates an Entity's file, if what it's generated from changed, and writes it if its contents did
+         */
+        void generate(int index) {
+            EntitySnapshot entity = _entities.get(index);
+            byte[] file = null;
+
+            try {
+                String fingerprint = fingerprint(entity, index, _incoming);
+                _fingerprints[index] = fingerprint;
+
+                if (fingerprint.equals(_manifest.get(entity.getName())) && _sink.exists(entityFileName(entity.getName()))) {
+                    return;
+                }
+
+                Map<String, StringBuilder> builders = _builders.get();
+                clearBuilders(builders);
+
+                parseEntityWithBuilders(entity, builders);
+                parseRelationships(entity, index, _incoming, builders);
+
+                file = changedEntityFile(entity, builders, _contents.get(), _sink, _overwrite || _manifest.containsKey(entity.getName()));
+
+                if (file != null && _ordered == null) {
+                    _sink.write(entityFileName(entity.getName()), file);
+                    _written[index] = true;
+                }
+            }
+            catch (Exception e) {
+                _failures[index] = e;
+            }
+            finally {
+                if (_ordered != null) {
+                    writeInOrder(index, file);
+                }
+            }
+        }
+
+        /**
+         * Holds an Entity's file until those before it are written, then writes every
+         * file which is next in model order, so an ordered sink gets the same order
+         * however many threads there are
+         *
+         * @param file The file, or null if there's nothing to write
+         */
+        private void writeInOrder(int index, byte[] file) {
+            synchronized (_ordered) {
+                _ordered[index] = file == null ? NO_FILE : file;
+
+                while (_nextWrite < _ordered.length && _ordered[_nextWrite] != null) {
+                    byte[] next = _ordered[_nextWrite];
+                    _ordered[_nextWrite] = NO_FILE;
+
+                    if (next != NO_FILE) {
+                        try {
+                            _sink.write(entityFileName(_entities.get(_nextWrite).getName()), next);
+                            _written[_nextWrite] = true;
+                        }
+                        catch (IOException ioe) {
+                            _failures[_nextWrite] = ioe;
+                        }
+                    }
+
+                    _nextWrite++;
+                }
+            }
+        }
+
+        final OutputSink _sink;
+        final boolean _overwrite;
+        final Map<String, String> _manifest;
+        final List<EntitySnapshot> _entities;
+        final IncomingRelationships _incoming;
+        final String[] _fingerprints;
+        final boolean[] _written;
+        final Exception[] _failures;
+
+        // For ordered sinks, each Entity's file until it's written, and which is next
+        private final byte[][] _ordered;
+        private int _nextWrite;
+        private static final byte[] NO_FILE = new byte[0];
+
+        // Each thread reuses its buffers from one Entity to the next, so they only grow to the largest class
+        final ThreadLocal<Map<String, StringBuilder>> _builders = new ThreadLocal<Map<String, StringBuilder>>() {
+            @Override
+            protected Map<String, StringBuilder> initialValue() {
+                return generateBuilders();
+            }
+        };
+
+        final ThreadLocal<StringBuilder> _contents = new ThreadLocal<StringBuilder>() {
+            @Override
+            protected StringBuilder initialValue() {
+                return new StringBuilder();
+            }
+        };
+    }
+
+    /**
+     * Generates a range of Entities, splitting it in half until it's small enough
+     */
+    private static final class GenerationTask extends RecursiveAction {
+        GenerationTask(Generation generation, int start, int end, int batchSize) {
+            _generation = generation;
+            _start = start;
+            _end = end;
+            _batchSize = batchSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (_end - _start <= _batchSize) {
+                for (int i = _start; i < _end; i++) {
+                    _generation.generate(i);
+                }
+
+                return;
+            }
+
+            int middle = (_start + _end) >>> 1;
+            invokeAll(new GenerationTask(_generation, _start, middle, _batchSize), new GenerationTask(_generation, middle, _end, _batchSize));
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private final Generation _generation;
+        private final int _start;
+        private final int _end;
+        private final int _batchSize;
     }
 
     ////////////////////
     // Entity Parsing //
     ////////////////////
-    private static void parseEntityWithBuilders(Entity entity, Map<String, StringBuilder> builders) {
+    private static void parseEntityWithBuilders(EntitySnapshot entity, Map<String, StringBuilder> builders) throws IOException {
         StringBuilder importBuilder = builders.get("import");
         StringBuilder staticMethodBuilder = builders.get("static");
 
         importBuilder.append(LIST_IMPORT).append(DATA_CONN_EX_IMPORT).append(SQL_STATEMENT_IMPORT);
 
-        staticMethodBuilder.append(String.format(GET_ALL_FORMAT, entity.getName())).append(String.format(GET_ALL_BODY_FORMAT, entity.getName()));
+        GET_ALL_TEMPLATE.render(staticMethodBuilder, entity.getName());
+        GET_ALL_BODY_TEMPLATE.render(staticMethodBuilder, entity.getName());
 
         parseAttributes(entity, builders);
     }
 
-    private static void parseAttributes(Entity entity, Map<String, StringBuilder> builders) {
+    private static void parseAttributes(EntitySnapshot entity, Map<String, StringBuilder> builders) throws IOException {
         StringBuilder importBuilder = builders.get("import");
         StringBuilder fieldBuilder = builders.get("field");
         StringBuilder fieldMethodBuilder = builders.get("fieldmethod");
         StringBuilder staticMethodBuilder = builders.get("static");
 
-        for (Attribute attr : entity.getAttributes()) {
+        for (AttributeSnapshot attr : entity.getAttributes()) {
             if (attr.getType() == AttributeType.UNDEFINED) {
                 throw new IllegalStateException(attr.getName() + " does not have a valid type");
             }
@@ -92,105 +370,158 @@ public class ClassGenerator {
                 importBuilder.append(AUTO_INCREMENT_ANNOTATION_IMPORT);
                 importBuilder.append(PRIMARY_KEY_ANNOTATION_IMPORT);
                 fieldBuilder.append(PRIMARY_KEY_ANNOTATION);
-                staticMethodBuilder.append(String.format(GET_BY_PRIMARY_KEY_FORMAT, entity.getName(), upCasedName(attr.getName()), attr.getType().toJavaString(), attr.getName()));
-                staticMethodBuilder.append(String.format(GET_BY_PRIMARY_KEY_BODY_FORMAT, entity.getName(), attr.getName(), attr.getName()));
+                GET_BY_PRIMARY_KEY_TEMPLATE.render(staticMethodBuilder, entity.getName(), attr.getName(), attr.getType().toJavaString());
+                GET_BY_PRIMARY_KEY_BODY_TEMPLATE.render(staticMethodBuilder, entity.getName(), attr.getName());
             }
             else {
-                staticMethodBuilder.append(String.format(GET_BY_FIELD_FORMAT, entity.getName(), upCasedName(attr.getName()), attr.getType().toJavaString(), attr.getName()));
-                staticMethodBuilder.append(String.format(GET_BY_FIELD_BODY_FORMAT, entity.getName(), attr.getName(), attr.getName()));
+                GET_BY_FIELD_TEMPLATE.render(staticMethodBuilder, entity.getName(), attr.getName(), attr.getType().toJavaString());
+                GET_BY_FIELD_BODY_TEMPLATE.render(staticMethodBuilder, entity.getName(), attr.getName());
             }
 
-            fieldBuilder.append(String.format(FIELD_DECLARATION_FORMAT, attr.getType().toJavaString(), attr.getName()));
+            FIELD_DECLARATION_TEMPLATE.render(fieldBuilder, attr.getType().toJavaString(), attr.getName());
 
-            fieldMethodBuilder.append(String.format(DECLARATION_FORMAT, attr.getName()));
-            fieldMethodBuilder.append(String.format(GET_FORMAT, attr.getType().toJavaString(), upCasedName(attr.getName()), attr.getName()));
-            fieldMethodBuilder.append(String.format(SET_FORMAT, upCasedName(attr.getName()), attr.getType().toJavaString(), attr.getName(), attr.getName(), attr.getName()));
+            DECLARATION_TEMPLATE.render(fieldMethodBuilder, attr.getName());
+            GET_TEMPLATE.render(fieldMethodBuilder, attr.getType().toJavaString(), attr.getName());
+            SET_TEMPLATE.render(fieldMethodBuilder, attr.getType().toJavaString(), attr.getName());
         }
     }
 
-    private static void parseRelationships(Entity entity, Map<Entity, Map<String, StringBuilder>> entityBuilderMaps) {
+    /**
+     * Adds an Entity's own Relationships, and the foreign keys of those pointing to it. Contributions
+     * are added in model order, the Entity's own in its place among those pointing to it.
+     */
+    private static void parseRelationships(EntitySnapshot entity, int index, IncomingRelationships incoming, Map<String, StringBuilder> builders) throws IOException {
+        boolean ownParsed = false;
+
+        for (IncomingRelationships.Incoming rltn : incoming.get(entity.getName())) {
+            // Relationships to itself are handled along with its own
+            if (rltn.sourceIndex == index) {
+                continue;
+            }
+
+            if (!ownParsed && rltn.sourceIndex > index) {
+                parseOwnRelationships(entity, builders);
+                ownParsed = true;
+            }
+
+            parseForeignKey(rltn.source, rltn.relationship, builders);
+        }
+
+        if (!ownParsed) {
+            parseOwnRelationships(entity, builders);
+        }
+    }
+
+    private static void parseOwnRelationships(EntitySnapshot entity, Map<String, StringBuilder> builders) throws IOException {
         if (entity.getRelationships().size() > 0) {
-            StringBuilder entityImportBuilder = entityBuilderMaps.get(entity).get("import");
+            StringBuilder entityImportBuilder = builders.get("import");
             entityImportBuilder.append(ONE_TO_MANY_ANNOTATION_IMPORT);
         }
 
-        for (Relationship rltn : entity.getRelationships()) {
-            StringBuilder entityFieldBuilder = entityBuilderMaps.get(entity).get("field");
-            StringBuilder entityFieldMethodBuilder = entityBuilderMaps.get(entity).get("fieldmethod");
-            StringBuilder rltnEntityFieldBuilder = entityBuilderMaps.get(rltn.getEntity()).get("field");
-            StringBuilder rltnEntityFieldMethodBuilder = entityBuilderMaps.get(rltn.getEntity()).get("fieldmethod");
-            StringBuilder rltnEntityStaticMethodBuilder = entityBuilderMaps.get(rltn.getEntity()).get("static");
+        StringBuilder entityFieldBuilder = builders.get("field");
+        StringBuilder entityFieldMethodBuilder = builders.get("fieldmethod");
+        AttributeSnapshot primaryKey = entity.getPrimaryKey();
 
-            Attribute primaryKey = entity.getPrimaryKey();
-            entityFieldBuilder.append(String.format(ONE_TO_MANY_ANNOTATION_FORMAT, entity.getName().toLowerCase(), upCasedName(primaryKey.getName())));
-            entityFieldBuilder.append(String.format(FIELD_LIST_DECLARATION_FORMAT, rltn.getEntity().getName(), rltn.getName()));
-            entityFieldMethodBuilder.append(String.format(DECLARATION_FORMAT, rltn.getName()));
-            entityFieldMethodBuilder.append(String.format(GET_LIST_FORMAT, rltn.getEntity().getName(), upCasedName(rltn.getName()), rltn.getName()));
-            entityFieldMethodBuilder.append(String.format(SET_LIST_FORMAT, upCasedName(rltn.getName()), rltn.getEntity().getName(), rltn.getName(), rltn.getName(), rltn.getName()));
+        for (RelationshipSnapshot rltn : entity.getRelationships()) {
+            ONE_TO_MANY_ANNOTATION_TEMPLATE.render(entityFieldBuilder, entity.getName(), primaryKey.getName());
+            FIELD_LIST_DECLARATION_TEMPLATE.render(entityFieldBuilder, rltn.getEntityName(), rltn.getName());
+            DECLARATION_TEMPLATE.render(entityFieldMethodBuilder, rltn.getName());
+            GET_LIST_TEMPLATE.render(entityFieldMethodBuilder, rltn.getEntityName(), rltn.getName());
+            SET_LIST_TEMPLATE.render(entityFieldMethodBuilder, rltn.getEntityName(), rltn.getName());
 
-            rltnEntityFieldBuilder.append(String.format(FIELD_DECLARATION_FORMAT, primaryKey.getType().toJavaString(), mergedEntityAndKeyString(entity, false)));
-            rltnEntityFieldMethodBuilder.append(String.format(FOREIGN_KEY_DECLARATION_FORMAT, mergedEntityAndKeyString(entity, false)));
-            rltnEntityFieldMethodBuilder.append(String.format(GET_FORMAT, primaryKey.getType().toJavaString(), mergedEntityAndKeyString(entity, true), mergedEntityAndKeyString(entity, false)));
-            rltnEntityFieldMethodBuilder.append(String.format(SET_FORMAT, mergedEntityAndKeyString(entity, true), primaryKey.getType().toJavaString(), mergedEntityAndKeyString(entity, false), mergedEntityAndKeyString(entity, false), mergedEntityAndKeyString(entity, false)));
-            rltnEntityStaticMethodBuilder.append(String.format(GET_BY_FIELD_FORMAT, rltn.getEntity().getName(), mergedEntityAndKeyString(entity, true), primaryKey.getType().toJavaString(), mergedEntityAndKeyString(entity, false)));
-            rltnEntityStaticMethodBuilder.append(String.format(GET_BY_FIELD_BODY_FORMAT, rltn.getEntity().getName(), mergedEntityAndKeyString(entity, false), mergedEntityAndKeyString(entity, false)));
+            if (rltn.getEntityName().equals(entity.getName())) {
+                parseForeignKey(entity, rltn, builders);
+            }
         }
     }
 
+    /**
+     * Adds the foreign key a Relationship puts into the Entity it points to
+     */
+    private static void parseForeignKey(EntitySnapshot entity, RelationshipSnapshot rltn, Map<String, StringBuilder> rltnEntityBuilders) throws IOException {
+        StringBuilder rltnEntityFieldBuilder = rltnEntityBuilders.get("field");
+        StringBuilder rltnEntityFieldMethodBuilder = rltnEntityBuilders.get("fieldmethod");
+        StringBuilder rltnEntityStaticMethodBuilder = rltnEntityBuilders.get("static");
+        AttributeSnapshot primaryKey = entity.getPrimaryKey();
+        String keyType = primaryKey.getType().toJavaString();
+
+        FOREIGN_KEY_FIELD_DECLARATION_TEMPLATE.render(rltnEntityFieldBuilder, keyType, entity.getName(), primaryKey.getName());
+        FOREIGN_KEY_DECLARATION_TEMPLATE.render(rltnEntityFieldMethodBuilder, entity.getName(), primaryKey.getName());
+        FOREIGN_KEY_GET_TEMPLATE.render(rltnEntityFieldMethodBuilder, keyType, entity.getName(), primaryKey.getName());
+        FOREIGN_KEY_SET_TEMPLATE.render(rltnEntityFieldMethodBuilder, keyType, entity.getName(), primaryKey.getName());
+        GET_BY_FOREIGN_KEY_TEMPLATE.render(rltnEntityStaticMethodBuilder, rltn.getEntityName(), entity.getName(), primaryKey.getName(), keyType);
+        GET_BY_FOREIGN_KEY_BODY_TEMPLATE.render(rltnEntityStaticMethodBuilder, rltn.getEntityName(), entity.getName(), primaryKey.getName());
+    }
+
     /////////////////
     // File Output //
     /////////////////
     public static void generateEntityFile(Entity entity, Map<String, StringBuilder> builders, File dir, boolean overwrite) throws Exception {
-        String fullPath = String.format("%s%s%s.java", dir.getAbsolutePath(), File.separator, entity.getName());
+        generateEntityFile(entity.snapshot(), builders, dir, overwrite);
+    }
 
-        Writer writer = createWriter(fullPath, overwrite);
+    public static void generateEntityFile(EntitySnapshot entity, Map<String, StringBuilder> builders, File dir, boolean overwrite) throws Exception {
+        OutputSink sink = new DirectorySink(dir);
 
-        writeEntityFromStringBuilders(entity, builders, writer);
+        if (!overwrite && sink.exists(entityFileName(entity.getName()))) {
+            throw new IllegalArgumentException("File already exists");
+        }
+
+        StringBuilder contents = new StringBuilder();
+        writeEntityFromStringBuilders(entity, builders, contents);
+        sink.write(entityFileName(entity.getName()), contents.toString().getBytes(Charset.defaultCharset()));
     }
 
-    private static Writer createWriter(String fullPath, boolean overwrite) throws Exception {
-        File outFile = new File(fullPath);
+    /**
+     * Puts together an Entity's file, unless the sink already holds exactly that
+     * @return The file's contents, or null if it's unchanged
+     */
+    private static byte[] changedEntityFile(EntitySnapshot entity, Map<String, StringBuilder> builders, StringBuilder contents, OutputSink sink, boolean overwrite) throws Exception {
+        contents.setLength(0);
+        writeEntityFromStringBuilders(entity, builders, contents);
+
+        // Written as FileWriter used to, in the default charset
+        String name = entityFileName(entity.getName());
+        byte[] bytes = contents.toString().getBytes(Charset.defaultCharset());
+        byte[] existing = sink.read(name);
+
+        if (existing != null) {
+            if (Arrays.equals(bytes, existing)) {
+                return null;
+            }
 
-        if (outFile.exists()) {
             if (!overwrite) {
                 throw new IllegalArgumentException("File already exists");
             }
         }
-        else {
-            outFile.createNewFile();
-        }
-
-        if (!outFile.canWrite()) {
-            throw new IllegalArgumentException("Missing permissions to write to file.");
-        }
 
-        return new BufferedWriter(new FileWriter(outFile));
+        return bytes;
     }
 
-    private static void writeEntityFromStringBuilders(Entity entity, Map<String, StringBuilder> builders, Writer writer) throws Exception {
-        StringBuilder importBuilder = builders.get("import");
-        StringBuilder fieldBuilder = builders.get("field");
-        StringBuilder fieldMethodBuilder = builders.get("fieldmethod");
-        StringBuilder staticMethodBuilder = builders.get("static");
+    private static String entityFileName(String entityName) {
+        return entityName + ".java";
+    }
 
-        try {
-            writer.write(PACKAGE_DECLARATION);
-            writer.write(importBuilder.toString());
-            writer.append('\n');
-            writer.write(String.format(CLASS_DECLARATION_FORMAT, entity.getName()));
-            writer.write(staticMethodBuilder.toString());
-            writer.write(fieldMethodBuilder.toString());
-            writer.write(fieldBuilder.toString());
-            writer.write("}\n");
-        }
-        finally {
-            writer.close();
-        }
+    private static void writeEntityFromStringBuilders(EntitySnapshot entity, Map<String, StringBuilder> builders, Appendable out) throws IOException {
+        out.append(PACKAGE_DECLARATION);
+        out.append(builders.get("import"));
+        out.append('\n');
+        CLASS_DECLARATION_TEMPLATE.render(out, entity.getName());
+        out.append(builders.get("static"));
+        out.append(builders.get("fieldmethod"));
+        out.append(builders.get("field"));
+        out.append("}\n");
     }
 
     /////////////
     // Utility //
     /////////////
+    private static void clearBuilders(Map<String, StringBuilder> builders) {
+        for (StringBuilder builder : builders.values()) {
+            builder.setLength(0);
+        }
+    }
+
     private static Map<String, StringBuilder> generateBuilders() {
         Map<String, StringBuilder> builders = new HashMap<String, StringBuilder>();
 
@@ -202,20 +533,78 @@ public class ClassGenerator {
         return builders;
     }
 
-    private static String mergedEntityAndKeyString(Entity entity, boolean uppercase) {
-        String entityName = uppercase ? entity.getName() : entity.getName().toLowerCase();
-        String primaryKeyName = upCasedName(entity.getPrimaryKey().getName());
-        return entityName + primaryKeyName;
+    /**
+     * Fingerprints everything an Entity's file is generated from: the Entity itself,
+     * and the name and primary key of each Entity pointing to it, once per Relationship,
+     * along with whether it comes before the Entity in the model, which places its key
+     */
+    private static String fingerprint(EntitySnapshot entity, int index, IncomingRelationships incoming) {
+        StringBuilder inputs = new StringBuilder(GENERATOR_VERSION).append('\n').append(entity.toString());
+
+        for (IncomingRelationships.Incoming rltn : incoming.get(entity.getName())) {
+            AttributeSnapshot primaryKey = rltn.source.getPrimaryKey();
+            inputs.append('\n').append(rltn.source.getName()).append(':').append(primaryKey.getName()).append(':').append(primaryKey.getType().name());
+
+            // Keys from Entities before this one come ahead of its own Relationships, and the rest after
+            inputs.append(':').append(rltn.sourceIndex < index ? "before" : rltn.sourceIndex == index ? "self" : "after");
+        }
+
+        // FNV-1a, 64 bit
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < inputs.length(); i++) {
+            hash = (hash ^ inputs.charAt(i)) * 0x100000001b3L;
+        }
+
+        return String.format("%016x", hash);
     }
 
-    private static String upCasedName(String name) {
-        return String.format("%s%s", name.substring(0, 1).toUpperCase(), name.substring(1));
+    /**
+     * Reads the fingerprints of the files generated last time
+     * @return The fingerprints by Entity name, or none if nothing was generated into the directory
+     */
+    private static Map<String, String> readManifest(OutputSink sink) throws IOException {
+        Map<String, String> manifest = new HashMap<String, String>();
+        byte[] contents = sink.read(MANIFEST_NAME);
+
+        if (contents == null) {
+            return manifest;
+        }
+
+        for (String line : new String(contents, "UTF-8").split("\r?\n")) {
+            int separator = line.indexOf('=');
+
+            if (separator > 0 && !line.startsWith("#")) {
+                manifest.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Saves the fingerprints of the generated files, sorted so the manifest only changes where they do
+     */
+    private static void writeManifest(OutputSink sink, Map<String, String> fingerprints) throws IOException {
+        StringBuilder manifest = new StringBuilder("# Generated by SuperModel, fingerprints of the inputs to each generated file\n");
+
+        for (Entry<String, String> entry : fingerprints.entrySet()) {
+            manifest.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+
+        sink.write(MANIFEST_NAME, manifest.toString().getBytes("UTF-8"));
     }
 
     // Constants
+    private static final String MANIFEST_NAME = ".supermodel-manifest";
+
+    // Ranges of Entities each thread gets, so threads with quicker Entities can take more
+    private static final int TASKS_PER_THREAD = 8;
+
+    // Bumped whenever the generated code changes, so every file is generated again
+    private static final String GENERATOR_VERSION = "1";
+
     private static final String PACKAGE_DECLARATION = "package com.yourdomain.model;\n\n";
     private static final String PRIMARY_KEY_ANNOTATION = "    @AutoIncrement\n    @PrimaryKey\n";
-    private static final String ONE_TO_MANY_ANNOTATION_FORMAT = "    @OneToMany(\"%s%s\")\n";
     private static final String LIST_IMPORT = "import java.util.List;\n";
     private static final String DATA_CONN_EX_IMPORT = "import com.njkremer.Sqlite.DataConnectionException;\n";
     private static final String SQL_STATEMENT_IMPORT = "import com.njkremer.Sqlite.SqlStatement;\n";
@@ -223,20 +612,28 @@ public class ClassGenerator {
     private static final String PRIMARY_KEY_ANNOTATION_IMPORT = "import com.njkremer.Sqlite.Annotations.PrimaryKey;\n";
     private static final String ONE_TO_MANY_ANNOTATION_IMPORT = "import com.njkremer.Sqlite.Annotations.OneToMany;\n";
 
-    // Formats
-    private static final String CLASS_DECLARATION_FORMAT = "public class %s {\n";
-    private static final String FIELD_DECLARATION_FORMAT = "    private %s %s;\n";
-    private static final String FIELD_LIST_DECLARATION_FORMAT = "    private List<%s> %s;\n";
-    private static final String GET_FORMAT = "    public %s get%s() { return this.%s; }\n";
-    private static final String GET_LIST_FORMAT = "    public List<%s> get%s() { return this.%s; }\n";
-    private static final String SET_FORMAT = "    public void set%s(%s %s) { this.%s = %s; }\n\n";
-    private static final String SET_LIST_FORMAT = "    public void set%s(List<%s> %s) { this.%s = %s; }\n\n";
-    private static final String DECLARATION_FORMAT = "    // %s methods\n";
-    private static final String FOREIGN_KEY_DECLARATION_FORMAT = "    // foreign key %s methods\n";
-    private static final String GET_ALL_FORMAT = "    public static List<%s> getAll() throws DataConnectionException {\n";
-    private static final String GET_ALL_BODY_FORMAT = "        return SqlStatement.select(%s.class).getList();\n    }\n\n";
-    private static final String GET_BY_FIELD_FORMAT = "    public static List<%s> getBy%s(%s %s) throws DataConnectionException {\n";
-    private static final String GET_BY_FIELD_BODY_FORMAT = "        return SqlStatement.select(%s.class).where(\"%s\").eq(%s).getList();\n    }\n\n";
-    private static final String GET_BY_PRIMARY_KEY_FORMAT = "    public static %s getBy%s(%s %s) throws DataConnectionException {\n";
-    private static final String GET_BY_PRIMARY_KEY_BODY_FORMAT = "        return SqlStatement.select(%s.class).where(\"%s\").eq(%s).getFirst();\n    }\n\n";
+    // Templates
+    private static final Template CLASS_DECLARATION_TEMPLATE = Template.compile("public class ${0} {\n");
+    private static final Template ONE_TO_MANY_ANNOTATION_TEMPLATE = Template.compile("    @OneToMany(\"${0:lower}${1:capitalized}\")\n");
+    private static final Template FIELD_DECLARATION_TEMPLATE = Template.compile("    private ${0} ${1};\n");
+    private static final Template FIELD_LIST_DECLARATION_TEMPLATE = Template.compile("    private List<${0}> ${1};\n");
+    private static final Template GET_TEMPLATE = Template.compile("    public ${0} get${1:capitalized}() { return this.${1}; }\n");
+    private static final Template GET_LIST_TEMPLATE = Template.compile("    public List<${0}> get${1:capitalized}() { return this.${1}; }\n");
+    private static final Template SET_TEMPLATE = Template.compile("    public void set${1:capitalized}(${0} ${1}) { this.${1} = ${1}; }\n\n");
+    private static final Template SET_LIST_TEMPLATE = Template.compile("    public void set${1:capitalized}(List<${0}> ${1}) { this.${1} = ${1}; }\n\n");
+    private static final Template DECLARATION_TEMPLATE = Template.compile("    // ${0} methods\n");
+    private static final Template GET_ALL_TEMPLATE = Template.compile("    public static List<${0}> getAll() throws DataConnectionException {\n");
+    private static final Template GET_ALL_BODY_TEMPLATE = Template.compile("        return SqlStatement.select(${0}.class).getList();\n    }\n\n");
+    private static final Template GET_BY_FIELD_TEMPLATE = Template.compile("    public static List<${0}> getBy${1:capitalized}(${2} ${1}) throws DataConnectionException {\n");
+    private static final Template GET_BY_FIELD_BODY_TEMPLATE = Template.compile("        return SqlStatement.select(${0}.class).where(\"${1}\").eq(${1}).getList();\n    }\n\n");
+    private static final Template GET_BY_PRIMARY_KEY_TEMPLATE = Template.compile("    public static ${0} getBy${1:capitalized}(${2} ${1}) throws DataConnectionException {\n");
+    private static final Template GET_BY_PRIMARY_KEY_BODY_TEMPLATE = Template.compile("        return SqlStatement.select(${0}.class).where(\"${1}\").eq(${1}).getFirst();\n    }\n\n");
+
+    // Foreign keys are named for the Entity pointing over and its primary key, such as trainerId
+    private static final Template FOREIGN_KEY_FIELD_DECLARATION_TEMPLATE = Template.compile("    private ${0} ${1:lower}${2:capitalized};\n");
+    private static final Template FOREIGN_KEY_DECLARATION_TEMPLATE = Template.compile("    // foreign key ${0:lower}${1:capitalized} methods\n");
+    private static final Template FOREIGN_KEY_GET_TEMPLATE = Template.compile("    public ${0} get${1}${2:capitalized}() { return this.${1:lower}${2:capitalized}; }\n");
+    private static final Template FOREIGN_KEY_SET_TEMPLATE = Template.compile("    public void set${1}${2:capitalized}(${0} ${1:lower}${2:capitalized}) { this.${1:lower}${2:capitalized} = ${1:lower}${2:capitalized}; }\n\n");
+    private static final Template GET_BY_FOREIGN_KEY_TEMPLATE = Template.compile("    public static List<${0}> getBy${1}${2:capitalized}(${3} ${1:lower}${2:capitalized}) throws DataConnectionException {\n");
+    private static final Template GET_BY_FOREIGN_KEY_BODY_TEMPLATE = Template.compile("        return SqlStatement.select(${0}.class).where(\"${1:lower}${2:capitalized}\").eq(${1:lower}${2:capitalized}).getList();\n    }\n\n");
 }
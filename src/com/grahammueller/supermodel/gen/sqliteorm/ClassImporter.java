@@ -0,0 +1,351 @@
+package com.grahammueller.supermodel.gen.sqliteorm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import com.grahammueller.supermodel.entity.AttributeSnapshot;
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.EntitySnapshot;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.entity.RelationshipSnapshot;
+
+/**
+ * Class importer for SQLiteORM, the reverse of the ClassGenerator.
+ *
+ * Compiled classes are read from a directory or jar as bytecode, and are never loaded.
+ * A class is taken to be an Entity if it has a @PrimaryKey or @OneToMany field, is
+ * the element type of a @OneToMany field, or has the static getAll method the
+ * ClassGenerator emits. Each instance field of a type the ClassGenerator uses
+ * becomes an Attribute, and each @OneToMany List field a Relationship. The foreign
+ * key fields the ClassGenerator adds to related classes, which the @OneToMany
+ * annotation names, are left out.
+ */
+public class ClassImporter {
+    /**
+     * Imports the Entity classes in a directory or jar into the default workspace
+     *
+     * @param classPath A directory of class files, or a jar
+     * @return The new Entities
+     * @throws IOException Reading issues, or a malformed class file
+     *         IllegalArgumentException On names which aren't valid, already in use, or related classes which weren't found
+     */
+    public static List<Entity> importClasses(File classPath) throws IOException {
+        return importClasses(EntityManager.getDefaultWorkspace(), classPath);
+    }
+
+    /**
+     * Imports the Entity classes in a directory or jar into a specific workspace, in one batch
+     *
+     * @param workspace The workspace to add the Entities to
+     * @param classPath A directory of class files, or a jar
+     * @return The new Entities
+     * @throws IOException Reading issues, or a malformed class file
+     *         IllegalArgumentException On names which aren't valid, already in use, or related classes which weren't found
+     */
+    public static List<Entity> importClasses(ModelWorkspace workspace, File classPath) throws IOException {
+        return workspace.addEntities(readClasses(classPath));
+    }
+
+    /**
+     * Reads the Entity classes in a directory or jar as unresolved Entities, without adding them anywhere.
+     * Class files are parsed in parallel.
+     *
+     * @param classPath A directory of class files, or a jar
+     * @return The Entities, in class name order
+     * @throws IOException Reading issues, or a malformed class file
+     */
+    public static List<EntitySnapshot> readClasses(File classPath) throws IOException {
+        List<ClassFile> classes;
+
+        if (classPath.isDirectory()) {
+            List<File> files = new ArrayList<File>();
+            findClassFiles(classPath, files);
+            classes = readClassFiles(files, null);
+        }
+        else {
+            ZipFile jar = new ZipFile(classPath);
+
+            try {
+                List<ZipEntry> entries = new ArrayList<ZipEntry>();
+                for (ZipEntry entry : Collections.list(jar.entries())) {
+                    if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                        entries.add(entry);
+                    }
+                }
+
+                classes = readClassFiles(entries, jar);
+            }
+            finally {
+                jar.close();
+            }
+        }
+
+        return createEntities(classes);
+    }
+
+    private static void findClassFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+
+        if (children == null) {
+            return;
+        }
+
+        for (File child : children) {
+            if (child.isDirectory()) {
+                findClassFiles(child, files);
+            }
+            else if (child.getName().endsWith(".class")) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Reads and parses class files, spread across the available processors
+     *
+     * @param sources Files, or entries of the jar
+     * @param jar The jar the entries belong to, or null for files
+     */
+    private static List<ClassFile> readClassFiles(final List<?> sources, final ZipFile jar) throws IOException {
+        final ClassFile[] classes = new ClassFile[sources.size()];
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), (sources.size() + MIN_CLASSES_PER_TASK - 1) / MIN_CLASSES_PER_TASK);
+
+        if (threads <= 1) {
+            for (int i = 0; i < classes.length; i++) {
+                classes[i] = readClassFile(sources.get(i), jar);
+            }
+
+            return Arrays.asList(classes);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<Void>> chunks = new ArrayList<Future<Void>>();
+            int chunk = Math.max(MIN_CLASSES_PER_TASK, (classes.length + threads * 4 - 1) / (threads * 4));
+
+            for (int start = 0; start < classes.length; start += chunk) {
+                final int from = start;
+                final int to = Math.min(classes.length, start + chunk);
+
+                chunks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        for (int i = from; i < to; i++) {
+                            classes[i] = readClassFile(sources.get(i), jar);
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : chunks) {
+                future.get();
+            }
+        }
+        catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+
+            throw (Error) ee.getCause();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading classes");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        return Arrays.asList(classes);
+    }
+
+    private static ClassFile readClassFile(Object source, ZipFile jar) throws IOException {
+        String sourceName = jar == null ? ((File) source).getPath() : ((ZipEntry) source).getName();
+        InputStream in = jar == null ? new FileInputStream((File) source) : jar.getInputStream((ZipEntry) source);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+            byte[] buffer = new byte[8192];
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+
+            return new ClassFile(bytes.toByteArray());
+        }
+        catch (IOException e) {
+            throw new IOException("Malformed class file " + sourceName + " -- " + e.getMessage());
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Finds the Entity classes, and turns them into Entities
+     */
+    private static List<EntitySnapshot> createEntities(List<ClassFile> classes) {
+        Map<String, ClassFile> classesByName = new HashMap<String, ClassFile>();
+        Set<String> entityClasses = new HashSet<String>();
+
+        // Foreign key fields, by the class holding them
+        Map<String, Set<String>> foreignKeys = new HashMap<String, Set<String>>();
+
+        for (ClassFile classFile : classes) {
+            if ((classFile.access & NOT_ENTITY_ACCESS) != 0 || classFile.name.indexOf('$') >= 0) {
+                continue;
+            }
+
+            classesByName.put(classFile.name, classFile);
+
+            for (ClassFile.Member field : classFile.fields) {
+                if (field.annotations.containsKey(PRIMARY_KEY_ANNOTATION)) {
+                    entityClasses.add(classFile.name);
+                }
+
+                String relatedClass = relatedClass(field);
+                if (relatedClass != null) {
+                    entityClasses.add(classFile.name);
+                    entityClasses.add(relatedClass);
+
+                    Set<String> keys = foreignKeys.get(relatedClass);
+                    if (keys == null) {
+                        keys = new HashSet<String>();
+                        foreignKeys.put(relatedClass, keys);
+                    }
+
+                    keys.add(field.annotations.get(ONE_TO_MANY_ANNOTATION));
+                }
+            }
+
+            if (classFile.references(SQL_STATEMENT_CLASS)) {
+                for (ClassFile.Member method : classFile.methods) {
+                    if (method.isStatic() && GET_ALL_METHOD.equals(method.name) && GET_ALL_DESCRIPTOR.equals(method.descriptor)) {
+                        entityClasses.add(classFile.name);
+                    }
+                }
+            }
+        }
+
+        List<String> names = new ArrayList<String>(entityClasses);
+        Collections.sort(names);
+
+        List<EntitySnapshot> entities = new ArrayList<EntitySnapshot>(names.size());
+        for (String name : names) {
+            ClassFile classFile = classesByName.get(name);
+
+            // Related classes which weren't scanned are reported by ModelWorkspace.addEntities
+            if (classFile != null) {
+                Set<String> keys = foreignKeys.get(name);
+                entities.add(createEntity(classFile, keys == null ? Collections.<String>emptySet() : keys));
+            }
+        }
+
+        return entities;
+    }
+
+    private static EntitySnapshot createEntity(ClassFile classFile, Set<String> foreignKeys) {
+        List<AttributeSnapshot> attributes = new ArrayList<AttributeSnapshot>();
+        List<RelationshipSnapshot> relationships = new ArrayList<RelationshipSnapshot>();
+
+        for (ClassFile.Member field : classFile.fields) {
+            if (field.isStatic() || foreignKeys.contains(field.name)) {
+                continue;
+            }
+
+            String relatedClass = relatedClass(field);
+            if (relatedClass != null) {
+                relationships.add(new RelationshipSnapshot(field.name, simpleName(relatedClass)));
+                continue;
+            }
+
+            AttributeType type = FIELD_TYPES.get(field.descriptor);
+            if (type != null) {
+                attributes.add(new AttributeSnapshot(field.name, type, field.annotations.containsKey(PRIMARY_KEY_ANNOTATION)));
+            }
+        }
+
+        return new EntitySnapshot(simpleName(classFile.name), attributes, relationships);
+    }
+
+    /**
+     * Gets the class a @OneToMany List field holds
+     * @return The internal class name, or null if the field isn't a Relationship
+     */
+    private static String relatedClass(ClassFile.Member field) {
+        if (!field.annotations.containsKey(ONE_TO_MANY_ANNOTATION) || field.signature == null) {
+            return null;
+        }
+
+        // Such as Ljava/util/List<Lcom/yourdomain/model/Pokemon;>;
+        if (!field.signature.startsWith(LIST_SIGNATURE_PREFIX) || !field.signature.endsWith(";>;")) {
+            return null;
+        }
+
+        return field.signature.substring(LIST_SIGNATURE_PREFIX.length(), field.signature.length() - 3);
+    }
+
+    private static String simpleName(String internalName) {
+        return internalName.substring(internalName.lastIndexOf('/') + 1);
+    }
+
+    private static Map<String, AttributeType> fieldTypes() {
+        Map<String, AttributeType> types = new HashMap<String, AttributeType>();
+
+        // The Java types AttributeType.toJavaString names, and their boxes
+        types.put("Z", AttributeType.BOOLEAN);
+        types.put("Ljava/lang/Boolean;", AttributeType.BOOLEAN);
+        types.put("D", AttributeType.DOUBLE);
+        types.put("Ljava/lang/Double;", AttributeType.DOUBLE);
+        types.put("F", AttributeType.FLOAT);
+        types.put("Ljava/lang/Float;", AttributeType.FLOAT);
+        types.put("I", AttributeType.INTEGER);
+        types.put("Ljava/lang/Integer;", AttributeType.INTEGER);
+        types.put("J", AttributeType.LONG);
+        types.put("Ljava/lang/Long;", AttributeType.LONG);
+        types.put("Ljava/lang/String;", AttributeType.STRING);
+        types.put("Ljava/util/Date;", AttributeType.DATE);
+        types.put("Ljava/sql/Date;", AttributeType.DATE);
+        types.put("[B", AttributeType.BLOB);
+
+        return types;
+    }
+
+    // Constants
+    private static final int MIN_CLASSES_PER_TASK = 64;
+    private static final int NOT_ENTITY_ACCESS = ClassFile.ACC_INTERFACE | ClassFile.ACC_ABSTRACT | ClassFile.ACC_SYNTHETIC | ClassFile.ACC_ANNOTATION | ClassFile.ACC_ENUM;
+    private static final String PRIMARY_KEY_ANNOTATION = "Lcom/njkremer/Sqlite/Annotations/PrimaryKey;";
+    private static final String ONE_TO_MANY_ANNOTATION = "Lcom/njkremer/Sqlite/Annotations/OneToMany;";
+    private static final String SQL_STATEMENT_CLASS = "com/njkremer/Sqlite/SqlStatement";
+    private static final String GET_ALL_METHOD = "getAll";
+    private static final String GET_ALL_DESCRIPTOR = "()Ljava/util/List;";
+    private static final String LIST_SIGNATURE_PREFIX = "Ljava/util/List<L";
+    private static final Map<String, AttributeType> FIELD_TYPES = fieldTypes();
+}
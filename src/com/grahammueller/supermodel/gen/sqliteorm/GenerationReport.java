@@ -0,0 +1,49 @@
+package com.grahammueller.supermodel.gen.sqliteorm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a run of the ClassGenerator did with each Entity's file
+ */
+public final class GenerationReport {
+    GenerationReport() {}
+
+    /**
+     * Gets the Entities whose files were written
+     * @return The Entity names
+     */
+    public List<String> getWrittenEntities() {
+        return Collections.unmodifiableList(_written);
+    }
+
+    /**
+     * Gets the Entities whose files were left alone, as nothing they're generated from
+     * changed, or they were generated again with the same contents
+     * @return The Entity names
+     */
+    public List<String> getUnchangedEntities() {
+        return Collections.unmodifiableList(_unchanged);
+    }
+
+    /**
+     * Gets the Entities which were generated before, but are no longer in the model,
+     * and whose files were deleted
+     * @return The Entity names
+     */
+    public List<String> getRemovedEntities() {
+        return Collections.unmodifiableList(_removed);
+    }
+
+    /**
+     * @return A one line summary
+     */
+    public String toString() {
+        return String.format("%d written, %d unchanged, %d removed", _written.size(), _unchanged.size(), _removed.size());
+    }
+
+    final List<String> _written = new ArrayList<String>();
+    final List<String> _unchanged = new ArrayList<String>();
+    final List<String> _removed = new ArrayList<String>();
+}
@@ -0,0 +1,67 @@
+package com.grahammueller.supermodel.gen.sqliteorm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.grahammueller.supermodel.entity.EntitySnapshot;
+import com.grahammueller.supermodel.entity.ModelSnapshot;
+import com.grahammueller.supermodel.entity.RelationshipSnapshot;
+
+/**
+ * The Relationships pointing to each Entity of a model, found in one pass over
+ * it. A Relationship puts its Entity's key into the Entity it points to, so
+ * with these at hand each generated class or table can be put together and
+ * written out by itself, without holding what's generated for the others.
+ *
+ * Relationships are kept in model order, by the Entity they belong to and then
+ * their order within it, which is the order their keys are generated in.
+ */
+final class IncomingRelationships {
+    IncomingRelationships(ModelSnapshot model) {
+        List<EntitySnapshot> entities = model.getAllEntities();
+
+        for (int i = 0; i < entities.size(); i++) {
+            EntitySnapshot source = entities.get(i);
+
+            for (RelationshipSnapshot rltn : source.getRelationships()) {
+                List<Incoming> incoming = _incoming.get(rltn.getEntityName());
+
+                if (incoming == null) {
+                    incoming = new ArrayList<Incoming>(2);
+                    _incoming.put(rltn.getEntityName(), incoming);
+                }
+
+                incoming.add(new Incoming(i, source, rltn));
+            }
+        }
+    }
+
+    /**
+     * Gets the Relationships pointing to an Entity, including its own
+     * @param entityName The Entity name
+     * @return The Relationships, in model order
+     */
+    List<Incoming> get(String entityName) {
+        List<Incoming> incoming = _incoming.get(entityName);
+        return incoming == null ? Collections.<Incoming>emptyList() : incoming;
+    }
+
+    /**
+     * A Relationship, along with the Entity it belongs to
+     */
+    static final class Incoming {
+        Incoming(int sourceIndex, EntitySnapshot source, RelationshipSnapshot relationship) {
+            this.sourceIndex = sourceIndex;
+            this.source = source;
+            this.relationship = relationship;
+        }
+
+        final int sourceIndex;
+        final EntitySnapshot source;
+        final RelationshipSnapshot relationship;
+    }
+
+    private final Map<String, List<Incoming>> _incoming = new HashMap<String, List<Incoming>>();
+}
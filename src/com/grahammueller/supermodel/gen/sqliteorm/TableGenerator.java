@@ -1,19 +1,19 @@
 package com.grahammueller.supermodel.gen.sqliteorm;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import com.grahammueller.supermodel.entity.Attribute;
+import java.util.Locale;
+import com.grahammueller.supermodel.entity.AttributeSnapshot;
 import com.grahammueller.supermodel.entity.AttributeType;
-import com.grahammueller.supermodel.entity.Entity;
 import com.grahammueller.supermodel.entity.EntityManager;
-import com.grahammueller.supermodel.entity.Relationship;
+import com.grahammueller.supermodel.entity.EntitySnapshot;
+import com.grahammueller.supermodel.entity.ModelSnapshot;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.gen.Template;
 import com.grahammueller.supermodel.gen.exception.ConnectionException;
 
 /**
@@ -31,19 +31,60 @@ public class TableGenerator {
      *         IllegalArgumentException On Attribute with UNDEFINED type
      */
     public static void generateTables(String pathToDatabase, String databaseName) throws ConnectionException {
-        connectToDatabase(pathToDatabase, databaseName);
+        generateTables(EntityManager.getDefaultWorkspace(), pathToDatabase, databaseName);
+    }
+
+    /**
+     * Method used to generate the tables for the Entities of a specific workspace.
+     * Each call uses its own connection, so several workspaces can be generated in parallel.
+     * The current implementation will drop existing tables, if found.
+     * 
+     * @param workspace The workspace whose Entities should be generated
+     * @param pathToDatabase File location of database
+     * @param databaseName Name of database to use
+     * @throws ExceptionConnection Failure to load JDBC or connect to specified database
+     *         IllegalArgumentException On Attribute with UNDEFINED type
+     */
+    public static void generateTables(ModelWorkspace workspace, String pathToDatabase, String databaseName) throws ConnectionException {
+        generateTables(workspace.snapshot(), pathToDatabase, databaseName);
+    }
+
+    /**
+     * Method used to generate the tables for the Entities of a model snapshot.
+     * As snapshots are immutable, this may run on a background thread while the model is edited.
+     * The current implementation will drop existing tables, if found.
+     * 
+     * @param model The snapshot whose Entities should be generated
+     * @param pathToDatabase File location of database
+     * @param databaseName Name of database to use
+     * @throws ExceptionConnection Failure to load JDBC or connect to specified database
+     *         IllegalArgumentException On Attribute with UNDEFINED type
+     */
+    public static void generateTables(ModelSnapshot model, String pathToDatabase, String databaseName) throws ConnectionException {
+        Connection connection = connectToDatabase(pathToDatabase, databaseName);
 
-        generateTables();
+        try {
+            generateTables(model, connection);
+        }
+        finally {
+            try {
+                connection.close();
+            }
+            catch (SQLException e) {
+                // Nothing more to do with it
+            }
+        }
     }
 
     /**
      * Instantiates the database connection
      * @param pathToDatabase URL/File path to database
      * @param databaseName Actual database name
+     * @return The open connection
      * @throws ExceptionConnection Failure to load JDBC or connect to specified database
      *         IllegalArgumentException On Attribute with UNDEFINED type
      */
-    private static void connectToDatabase(String pathToDatabase, String databaseName) throws ConnectionException {
+    static Connection connectToDatabase(String pathToDatabase, String databaseName) throws ConnectionException {
         try {
             Class.forName("org.sqlite.JDBC");
         }
@@ -53,8 +94,10 @@ public class TableGenerator {
 
         try {
             String connectionString = String.format("jdbc:sqlite:%s%s%s", pathToDatabase, File.separator, databaseName);
-            connection = DriverManager.getConnection(connectionString);
+            Connection connection = DriverManager.getConnection(connectionString);
             connection.setAutoCommit(true);
+
+            return connection;
         }
         catch (SQLException e) {
             throw new ConnectionException("Unable to connect to database -- " + e.getLocalizedMessage());
@@ -62,98 +105,117 @@ public class TableGenerator {
     }
 
     /**
-     * Generates tables for all entities currently managed by the Entity Manager
+     * Generates tables for all entities in a model snapshot
+     * @param model The snapshot whose Entities should be generated
+     * @param connection The database connection
      * @throws IllegalArgumentException On Attribute with UNDEFINED type
      */
-    private static void generateTables() throws IllegalArgumentException {
-        List<Entity> entities = EntityManager.getAllEntities();
-        Map<Entity, StringBuilder> tableBuilders = new HashMap<Entity, StringBuilder>();
-
-        // Iterate first time to generate basic table fields
-        for (Entity entity : entities) {
-            tableBuilders.put(entity, createEntityTableBuilder(entity));
+    private static void generateTables(ModelSnapshot model, Connection connection) throws IllegalArgumentException {
+        // Check everything first, so a bad Attribute doesn't leave the database half generated
+        for (EntitySnapshot entity : model.getAllEntities()) {
+            for (AttributeSnapshot attr : entity.getAttributes()) {
+                if (attr.getType() == AttributeType.UNDEFINED) {
+                    throw new IllegalArgumentException(attr.getName() + " does not have a valid type");
+                }
+            }
         }
 
-        // Iterate again to handle relationships
-        for (Entity entity : entities) {
-            createRelationshipColumns(entity, tableBuilders);
-        }
+        IncomingRelationships incoming = new IncomingRelationships(model);
+        StringBuilder table = new StringBuilder();
+        StringBuilder drop = new StringBuilder();
+
+        try {
+            // Each table comes after the tables whose keys its relationship columns hold,
+            // and is created as soon as it's put together, so only one is held at a time
+            for (String entityName : model.getGraph().getTopologicalOrder()) {
+                EntitySnapshot entity = model.getEntityByName(entityName);
 
-        // Finally actually generate tables
-        generateTables(tableBuilders);
+                table.setLength(0);
+                createEntityTable(entity, incoming, table);
+
+                drop.setLength(0);
+                DROP_TABLE_TEMPLATE.render(drop, entity.getName());
+
+                generateTable(drop, table, connection);
+            }
+        }
+        catch (IOException e) {
+            // Templates only render into StringBuilders here, which don't throw
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
-     * Generates the table for a specific Entity
+     * Puts together the table for a specific Entity, with a column for each Relationship pointing to it
      * @param entity The Entity whose table will be generated
-     * @throws IllegalArgumentException On Attribute with UNDEFINED type
+     * @param incoming The Relationships pointing to each Entity
+     * @param tableBuilder Where to put the table's SQL
      */
-    private static StringBuilder createEntityTableBuilder(Entity entity) throws IllegalArgumentException {
-        StringBuilder tableBuilder = new StringBuilder(String.format(CREATE_TABLE_FORMAT, entity.getName().toLowerCase()));
+    private static void createEntityTable(EntitySnapshot entity, IncomingRelationships incoming, StringBuilder tableBuilder) throws IOException {
+        CREATE_TABLE_TEMPLATE.render(tableBuilder, entity.getName());
 
         // Build up attribute strings
-        for (Attribute attr : entity.getAttributes()) {
-            if (attr.getType() == AttributeType.UNDEFINED) {
-                throw new IllegalArgumentException(attr.getName() + " does not have a valid type");
-            }
-
+        for (AttributeSnapshot attr : entity.getAttributes()) {
             if (attr.isPrimaryKey()) {
-                tableBuilder.append(String.format(ATTR_COLUMN_DEFN_FORMAT, attr.getName(), PRIMARY_KEY_DEFN)).append(",\n");
+                ATTR_COLUMN_DEFN_TEMPLATE.render(tableBuilder, attr.getName(), PRIMARY_KEY_DEFN);
             }
             else {
-                tableBuilder.append(String.format(ATTR_COLUMN_DEFN_FORMAT, attr.getName(), attr.getType().toSQLiteString())).append(",\n");
+                ATTR_COLUMN_DEFN_TEMPLATE.render(tableBuilder, attr.getName(), attr.getType().toSQLiteString());
             }
+
+            tableBuilder.append(",\n");
+        }
+
+        // Then the extra columns for Relationships
+        for (IncomingRelationships.Incoming rltn : incoming.get(entity.getName())) {
+            AttributeSnapshot primaryKey = rltn.source.getPrimaryKey();
+
+            RELATIONSHIP_COLUMN_DEFN_TEMPLATE.render(tableBuilder, rltn.source.getName(), primaryKey.getName(), primaryKey.getType().toSQLiteString());
+            tableBuilder.append(",\n");
         }
 
         //Drop last newline and comma, append parenthesis
         tableBuilder.delete(tableBuilder.length() - 2, tableBuilder.length() - 1).append(");");
-
-        return tableBuilder;
     }
 
     /**
-     * Generates the extra columns for Relationships
-     * @param entity The Entity whose Relationships will be parsed
-     * @param tableBuilders The Map of StringBuilders to edit
+     * Names the column added to a related Entity's table for a Relationship
+     * @param entityName The name of the Entity owning the Relationship
+     * @param primaryKeyName The name of that Entity's primary key
+     * @return The column name, such as pokemonId
      */
-    private static void createRelationshipColumns(Entity entity, Map<Entity, StringBuilder> tableBuilders) {
-        for (Relationship rltn : entity.getRelationships()) {
-            StringBuilder rltnBuilder = tableBuilders.get(rltn.getEntity());
-
-            Attribute primaryKey = entity.getPrimaryKey();
-            String mergedNameAndKey = entity.getName().toLowerCase() + primaryKey.getName().substring(0, 1).toUpperCase() + primaryKey.getName().substring(1);
-
-            rltnBuilder.insert(rltnBuilder.length() - 3, ",\n" + String.format(ATTR_COLUMN_DEFN_FORMAT, mergedNameAndKey, primaryKey.getType().toSQLiteString()));
-        }
+    static String relationshipColumnName(String entityName, String primaryKeyName) {
+        return entityName.toLowerCase(Locale.ROOT) + primaryKeyName.substring(0, 1).toUpperCase(Locale.ROOT) + primaryKeyName.substring(1);
     }
 
     /**
-     * Actual generates the tables in the database
-     * @param tableBuilders The Map of StringBuilders to use to execute the queries
+     * Actual generates a table in the database
+     * @param drop The query dropping any pre-existing table
+     * @param create The query creating the table
+     * @param connection The database connection
      */
-    private static void generateTables(Map<Entity, StringBuilder> tableBuilders) {
-        for (Entry<Entity, StringBuilder> builder : tableBuilders.entrySet()) {
-            try {
-                Statement stmt = connection.createStatement();
+    private static void generateTable(CharSequence drop, CharSequence create, Connection connection) {
+        try {
+            Statement stmt = connection.createStatement();
 
-                // Drop any pre-existing table
-                stmt.execute(String.format(DROP_TABLE_FORMAT, builder.getKey().getName().toLowerCase()));
+            // Drop any pre-existing table
+            stmt.execute(drop.toString());
 
-                // Create entity's table
-                stmt.execute(builder.getValue().toString());
-            }
-            catch (SQLException e1) {
-                // TODO Auto-generated catch block
-                e1.printStackTrace();
-            }
+            // Create entity's table
+            stmt.execute(create.toString());
+        }
+        catch (SQLException e1) {
+            // TODO Auto-generated catch block
+            e1.printStackTrace();
         }
     }
 
-     private static Connection connection;
-
     // Constants
     private static final String PRIMARY_KEY_DEFN = "INTEGER PRIMARY KEY AUTOINCREMENT";
-    private static final String DROP_TABLE_FORMAT = "drop table if exists %s;\n";
-    private static final String CREATE_TABLE_FORMAT = "create table %s (\n";
-    private static final String ATTR_COLUMN_DEFN_FORMAT = "  %s %s";
+    private static final Template DROP_TABLE_TEMPLATE = Template.compile("drop table if exists ${0:lower};\n");
+    private static final Template CREATE_TABLE_TEMPLATE = Template.compile("create table ${0:lower} (\n");
+    private static final Template ATTR_COLUMN_DEFN_TEMPLATE = Template.compile("  ${0} ${1}");
+
+    // Named as relationshipColumnName does
+    private static final Template RELATIONSHIP_COLUMN_DEFN_TEMPLATE = Template.compile("  ${0:lower}${1:capitalized} ${2}");
 }
@@ -0,0 +1,338 @@
+package com.grahammueller.supermodel.gen.sqliteorm;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import com.grahammueller.supermodel.entity.AttributeSnapshot;
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.EntitySnapshot;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.entity.RelationshipSnapshot;
+import com.grahammueller.supermodel.gen.exception.ConnectionException;
+
+/**
+ * Table Importer for the SQLiteORM, the reverse of the TableGenerator.
+ *
+ * Each table becomes an Entity, named after the table with its first letter
+ * capitalized, and each column an Attribute, typed by AttributeType.fromSQLiteString.
+ * A single integer primary key column becomes the Entity's primary key.
+ *
+ * A column is read as a Relationship, rather than an Attribute, when it has
+ * a foreign key to another table, or when it is named the way the TableGenerator
+ * names Relationship columns, such as pokemonId for the id of the pokemon table.
+ * As the TableGenerator puts those columns in the related Entity's table, the
+ * Relationship belongs to the referenced table's Entity, and is named after the
+ * table holding the column.
+ */
+public class TableImporter {
+    /**
+     * Imports every table of a database into the default workspace
+     *
+     * @param pathToDatabase File location of database
+     * @param databaseName Name of database to use
+     * @return The new Entities
+     * @throws ConnectionException Failure to load JDBC, connect to, or read the specified database
+     *         IllegalArgumentException On names which aren't valid, or already in use, in which case nothing is imported
+     */
+    public static List<Entity> importTables(String pathToDatabase, String databaseName) throws ConnectionException {
+        return importTables(EntityManager.getDefaultWorkspace(), pathToDatabase, databaseName);
+    }
+
+    /**
+     * Imports every table of a database into a specific workspace, in one batch
+     *
+     * @param workspace The workspace to add the Entities to
+     * @param pathToDatabase File location of database
+     * @param databaseName Name of database to use
+     * @return The new Entities
+     * @throws ConnectionException Failure to load JDBC, connect to, or read the specified database
+     *         IllegalArgumentException On names which aren't valid, or already in use, in which case nothing is imported
+     */
+    public static List<Entity> importTables(ModelWorkspace workspace, String pathToDatabase, String databaseName) throws ConnectionException {
+        return workspace.addEntities(readTables(pathToDatabase, databaseName));
+    }
+
+    /**
+     * Reads the tables of a database as unresolved Entities, without adding them anywhere.
+     * Tables are introspected in parallel, each thread using its own connection.
+     *
+     * @param pathToDatabase File location of database
+     * @param databaseName Name of database to use
+     * @return The Entities, in table name order
+     * @throws ConnectionException Failure to load JDBC, connect to, or read the specified database
+     */
+    public static List<EntitySnapshot> readTables(String pathToDatabase, String databaseName) throws ConnectionException {
+        List<String> tableNames = readTableNames(pathToDatabase, databaseName);
+        List<Table> tables = readTables(tableNames, pathToDatabase, databaseName);
+
+        return createEntities(tables);
+    }
+
+    /**
+     * Lists the user tables of a database
+     */
+    private static List<String> readTableNames(String pathToDatabase, String databaseName) throws ConnectionException {
+        Connection connection = TableGenerator.connectToDatabase(pathToDatabase, databaseName);
+
+        try {
+            List<String> tableNames = new ArrayList<String>();
+            Statement stmt = connection.createStatement();
+            ResultSet results = stmt.executeQuery(LIST_TABLES_QUERY);
+
+            while (results.next()) {
+                tableNames.add(results.getString(1));
+            }
+
+            results.close();
+            stmt.close();
+
+            return tableNames;
+        }
+        catch (SQLException e) {
+            throw new ConnectionException("Unable to read database -- " + e.getLocalizedMessage());
+        }
+        finally {
+            close(connection);
+        }
+    }
+
+    /**
+     * Introspects tables, splitting them between threads with a connection each
+     */
+    private static List<Table> readTables(List<String> tableNames, final String pathToDatabase, final String databaseName) throws ConnectionException {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), (tableNames.size() + MIN_TABLES_PER_THREAD - 1) / MIN_TABLES_PER_THREAD);
+
+        if (threads <= 1) {
+            return readTables(tableNames, TableGenerator.connectToDatabase(pathToDatabase, databaseName));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<List<Table>>> chunks = new ArrayList<Future<List<Table>>>();
+            int chunk = (tableNames.size() + threads - 1) / threads;
+
+            for (int start = 0; start < tableNames.size(); start += chunk) {
+                final List<String> chunkNames = tableNames.subList(start, Math.min(tableNames.size(), start + chunk));
+
+                chunks.add(executor.submit(new Callable<List<Table>>() {
+                    @Override
+                    public List<Table> call() throws ConnectionException {
+                        return readTables(chunkNames, TableGenerator.connectToDatabase(pathToDatabase, databaseName));
+                    }
+                }));
+            }
+
+            List<Table> tables = new ArrayList<Table>(tableNames.size());
+            for (Future<List<Table>> future : chunks) {
+                tables.addAll(future.get());
+            }
+
+            return tables;
+        }
+        catch (ExecutionException ee) {
+            if (ee.getCause() instanceof ConnectionException) {
+                throw (ConnectionException) ee.getCause();
+            }
+
+            throw new ConnectionException("Unable to read database -- " + ee.getCause());
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException("Interrupted while reading database");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Introspects tables over one connection, which is closed afterwards
+     */
+    private static List<Table> readTables(List<String> tableNames, Connection connection) throws ConnectionException {
+        try {
+            List<Table> tables = new ArrayList<Table>(tableNames.size());
+            Statement stmt = connection.createStatement();
+
+            for (String tableName : tableNames) {
+                Table table = new Table(tableName);
+                String quotedName = "\"" + tableName.replace("\"", "\"\"") + "\"";
+
+                ResultSet columns = executePragma(stmt, String.format(TABLE_INFO_FORMAT, quotedName));
+                while (columns != null && columns.next()) {
+                    table.columnNames.add(columns.getString("name"));
+                    table.columnTypes.add(AttributeType.fromSQLiteString(columns.getString("type")));
+
+                    if (columns.getInt("pk") > 0) {
+                        table.primaryKeyCount++;
+                        table.primaryKey = columns.getString("name");
+                    }
+                }
+                close(columns);
+
+                ResultSet foreignKeys = executePragma(stmt, String.format(FOREIGN_KEY_LIST_FORMAT, quotedName));
+                while (foreignKeys != null && foreignKeys.next()) {
+                    table.foreignKeys.put(foreignKeys.getString("from"), foreignKeys.getString("table"));
+                }
+                close(foreignKeys);
+
+                tables.add(table);
+            }
+
+            stmt.close();
+
+            return tables;
+        }
+        catch (SQLException e) {
+            throw new ConnectionException("Unable to read database -- " + e.getLocalizedMessage());
+        }
+        finally {
+            close(connection);
+        }
+    }
+
+    /**
+     * Turns introspected tables into Entities, finding the Relationship columns among them
+     */
+    private static List<EntitySnapshot> createEntities(List<Table> tables) {
+        Map<String, Table> tablesByName = new HashMap<String, Table>();
+        Map<String, Table> tablesByRelationshipColumn = new HashMap<String, Table>();
+
+        for (Table table : tables) {
+            tablesByName.put(table.name.toLowerCase(Locale.ROOT), table);
+
+            if (table.getPrimaryKeyType() != null) {
+                tablesByRelationshipColumn.put(TableGenerator.relationshipColumnName(table.name, table.primaryKey), table);
+            }
+        }
+
+        Map<Table, List<AttributeSnapshot>> attributes = new HashMap<Table, List<AttributeSnapshot>>();
+        Map<Table, List<RelationshipSnapshot>> relationships = new HashMap<Table, List<RelationshipSnapshot>>();
+        Map<Table, Set<String>> relationshipNames = new HashMap<Table, Set<String>>();
+
+        for (Table table : tables) {
+            attributes.put(table, new ArrayList<AttributeSnapshot>());
+            relationships.put(table, new ArrayList<RelationshipSnapshot>());
+            relationshipNames.put(table, new HashSet<String>());
+        }
+
+        for (Table table : tables) {
+            AttributeType primaryKeyType = table.getPrimaryKeyType();
+
+            for (int i = 0; i < table.columnNames.size(); i++) {
+                String columnName = table.columnNames.get(i);
+
+                if (primaryKeyType != null && columnName.equals(table.primaryKey)) {
+                    attributes.get(table).add(new AttributeSnapshot(columnName, primaryKeyType, true));
+                    continue;
+                }
+
+                String referencedName = table.foreignKeys.get(columnName);
+                Table owner = referencedName != null ? tablesByName.get(referencedName.toLowerCase(Locale.ROOT)) : tablesByRelationshipColumn.get(columnName);
+
+                // Only Entities with a primary key can have Relationships
+                if (owner == null || owner.getPrimaryKeyType() == null) {
+                    attributes.get(table).add(new AttributeSnapshot(columnName, table.columnTypes.get(i), false));
+                    continue;
+                }
+
+                String relationshipName = table.name;
+                if (!relationshipNames.get(owner).add(relationshipName)) {
+                    relationshipName = table.name + capitalize(columnName);
+                    relationshipNames.get(owner).add(relationshipName);
+                }
+
+                relationships.get(owner).add(new RelationshipSnapshot(relationshipName, entityName(table.name)));
+            }
+        }
+
+        List<EntitySnapshot> entities = new ArrayList<EntitySnapshot>(tables.size());
+        for (Table table : tables) {
+            entities.add(new EntitySnapshot(entityName(table.name), attributes.get(table), relationships.get(table)));
+        }
+
+        return entities;
+    }
+
+    /**
+     * Runs a pragma, which has no result set at all when it has no rows
+     * @return The results, or null
+     */
+    private static ResultSet executePragma(Statement stmt, String pragma) throws SQLException {
+        return stmt.execute(pragma) ? stmt.getResultSet() : null;
+    }
+
+    private static String entityName(String tableName) {
+        return capitalize(tableName);
+    }
+
+    private static String capitalize(String name) {
+        return name.isEmpty() ? name : name.substring(0, 1).toUpperCase(Locale.ROOT) + name.substring(1);
+    }
+
+    private static void close(ResultSet results) throws SQLException {
+        if (results != null) {
+            results.close();
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        }
+        catch (SQLException e) {
+            // Nothing more to do with it
+        }
+    }
+
+    /**
+     * The columns of one table, as introspected
+     */
+    private static class Table {
+        Table(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the type of the table's primary key, if it has one an Entity can use
+         * @return INTEGER or LONG, or null
+         */
+        AttributeType getPrimaryKeyType() {
+            if (primaryKeyCount != 1) {
+                return null;
+            }
+
+            AttributeType type = columnTypes.get(columnNames.indexOf(primaryKey));
+            return type == AttributeType.INTEGER || type == AttributeType.LONG ? type : null;
+        }
+
+        final String name;
+        final List<String> columnNames = new ArrayList<String>();
+        final List<AttributeType> columnTypes = new ArrayList<AttributeType>();
+        final Map<String, String> foreignKeys = new HashMap<String, String>();
+        int primaryKeyCount;
+        String primaryKey;
+    }
+
+    // Constants
+    private static final int MIN_TABLES_PER_THREAD = 16;
+    // SQLite's own tables start with sqlite_, where an unescaped _ would match any character
+    private static final String LIST_TABLES_QUERY = "select name from sqlite_master where type = 'table' and name not like 'sqlite\\_%' escape '\\' order by name;";
+    private static final String TABLE_INFO_FORMAT = "pragma table_info(%s);";
+    private static final String FOREIGN_KEY_LIST_FORMAT = "pragma foreign_key_list(%s);";
+}
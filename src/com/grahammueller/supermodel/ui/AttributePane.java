@@ -82,7 +82,13 @@ public class AttributePane extends JPanel  implements ActionListener, PropertyCh
         if (e.getSource().equals(_addButton)) {
             String newEntityName = "attr" + _attributeCount++;
 
-            _storedEntity.addAttribute(newEntityName, AttributeType.UNDEFINED);
+            try {
+                _storedEntity.addAttribute(newEntityName, AttributeType.UNDEFINED);
+            }
+            catch (IllegalArgumentException iae) {
+                JOptionPane.showMessageDialog(this, iae.getMessage());
+                return;
+            }
 
             _attributeModel.addRow(new Object[] { newEntityName, AttributeType.UNDEFINED, Boolean.FALSE });
 
@@ -3,15 +3,31 @@ package com.grahammueller.supermodel.ui;
 import java.awt.BorderLayout;
 import java.awt.CardLayout;
 import java.awt.Component;
-import java.util.Map;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import com.grahammueller.supermodel.entity.Entity;
 import com.grahammueller.supermodel.entity.EntityManager;
-import com.grahammueller.supermodel.entity.EntityManagerListener;
-
-public class MainWindow extends JFrame implements EntityManagerListener {
-    public static void main(String args[]) { windowInstance =  new MainWindow(); }
+import com.grahammueller.supermodel.entity.ModelEventAdapter;
+import com.grahammueller.supermodel.entity.ModelJournal;
+
+public class MainWindow extends JFrame {
+    public static void main(String args[]) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                windowInstance = new MainWindow();
+
+                // Restoring the autosave fires events for every Entity, which the window must be ready for
+                windowInstance.openJournal();
+            }
+        });
+    }
 
     public MainWindow() {
         super("SuperModel");
@@ -22,7 +38,7 @@ public class MainWindow extends JFrame implements EntityManagerListener {
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setJMenuBar(new MenuBar());
 
-        EntityManager.registerForEntityUpdates(this);
+        EntityManager.registerForModelEvents(_modelListener);
 
         _entityPane = new EntityPane();
 
@@ -37,41 +53,66 @@ public class MainWindow extends JFrame implements EntityManagerListener {
     }
 
     public static void setSelectedEntityBodyPane(String entityName) {
+        windowInstance.showEntityBodyPane(entityName);
+    }
+
+    private void showEntityBodyPane(String entityName) {
         // Use the root entity body pane's layout to show the selected entity
-        windowInstance._rootLayout.show(windowInstance._rootEntityBodyPane, entityName);
+        _rootLayout.show(_rootEntityBodyPane, entityName);
+    }
+
+    /**
+     * Restores the last session's model from the autosave journal, and keeps saving to it
+     */
+    private void openJournal() {
+        try {
+            _journal = ModelJournal.open(AUTOSAVE_DIRECTORY, EntityManager.getDefaultWorkspace());
+        }
+        catch (IOException ioe) {
+            JOptionPane.showMessageDialog(this, "Unable to open autosave -- " + ioe.getMessage());
+            return;
+        }
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent event) {
+                try {
+                    _journal.close();
+                }
+                catch (IOException ioe) {
+                    JOptionPane.showMessageDialog(MainWindow.this, "Unable to autosave -- " + ioe.getMessage());
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
     }
 
-    @Override
-    public void entityAdded(Entity entity) {
+    private void entityAdded(Entity entity) {
         // Generate the new entity body pane
         EntityBodyPane newEntityPane = new EntityBodyPane(entity);
 
         // Add it to our card layout
-        windowInstance._rootEntityBodyPane.add(newEntityPane, entity.getName());
+        _rootEntityBodyPane.add(newEntityPane, entity.getName());
 
         // Set it to the actively displayed item
-        setSelectedEntityBodyPane(entity.getName());
+        showEntityBodyPane(entity.getName());
     }
 
-    @Override
-    public void entityUpdated(Entity e, Map<String, Object> updateInfo) {
-        if (updateInfo.get("name").equals("name")) {
-            String oldName = (String) updateInfo.get("old");
-            String newName = (String) updateInfo.get("new");
-            for (Component c : _rootEntityBodyPane.getComponents()) {
-                // We check old name again c.name in case the components name is null
-                if (oldName.equals(c.getName())) {
-                    c.setName(newName);
-                    _rootEntityBodyPane.remove(c);
-                    _rootEntityBodyPane.add(c, newName);
-                }
+    private void entityRenamed(String oldName, String newName) {
+        for (Component c : _rootEntityBodyPane.getComponents()) {
+            // We check old name again c.name in case the components name is null
+            if (oldName.equals(c.getName())) {
+                c.setName(newName);
+                _rootEntityBodyPane.remove(c);
+                _rootEntityBodyPane.add(c, newName);
             }
-            setSelectedEntityBodyPane(newName);
         }
+        showEntityBodyPane(newName);
     }
 
-    @Override
-    public void entityRemoved(Entity e) {
+    private void entityRemoved(Entity e) {
         for(Component c : _rootEntityBodyPane.getComponents()) {
             if (e.getName().equals(c.getName())) {
                 _rootEntityBodyPane.remove(c);
@@ -79,10 +120,29 @@ public class MainWindow extends JFrame implements EntityManagerListener {
         }
     }
 
+    private final ModelEventAdapter _modelListener = new ModelEventAdapter() {
+        @Override
+        public void entityAdded(Entity e) {
+            MainWindow.this.entityAdded(e);
+        }
+
+        @Override
+        public void entityRenamed(Entity e, String oldName, String newName) {
+            MainWindow.this.entityRenamed(oldName, newName);
+        }
+
+        @Override
+        public void entityRemoved(Entity e) {
+            MainWindow.this.entityRemoved(e);
+        }
+    };
+
     private static final long serialVersionUID = 1L;
     private static MainWindow windowInstance;
+    private static final File AUTOSAVE_DIRECTORY = new File(System.getProperty("user.home"), ".supermodel" + File.separator + "autosave");
 
     private EntityPane _entityPane;
     private JPanel _rootEntityBodyPane;
     private CardLayout _rootLayout;
+    private ModelJournal _journal;
 }
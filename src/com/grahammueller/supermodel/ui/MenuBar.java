@@ -4,6 +4,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.io.File;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JFileChooser;
 import javax.swing.JMenu;
@@ -11,6 +12,10 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.ModelFile;
+import com.grahammueller.supermodel.entity.ModelSnapshot;
 import com.grahammueller.supermodel.gen.sqliteorm.ClassGenerator;
 import com.grahammueller.supermodel.gen.sqliteorm.TableGenerator;
 
@@ -18,6 +23,21 @@ public class MenuBar extends JMenuBar implements ActionListener {
     public MenuBar() {
         super();
 
+        _open = new JMenuItem("Open Model...", KeyEvent.VK_O);
+        _open.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, ActionEvent.CTRL_MASK));
+        _open.addActionListener(this);
+
+        _save = new JMenuItem("Save Model...", KeyEvent.VK_S);
+        _save.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, ActionEvent.CTRL_MASK));
+        _save.addActionListener(this);
+
+        JMenu fileMenu = new JMenu("File");
+        fileMenu.setMnemonic(KeyEvent.VK_F);
+        fileMenu.add(_open);
+        fileMenu.add(_save);
+
+        add(fileMenu);
+
         _genCode = new JMenuItem("Generate Code files", KeyEvent.VK_G);
         _genCode.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, ActionEvent.CTRL_MASK));
         _genCode.addActionListener(this);
@@ -41,7 +61,13 @@ public class MenuBar extends JMenuBar implements ActionListener {
     }
 
     public void actionPerformed(ActionEvent e) {
-        if (e.getSource() == _genCode) {
+        if (e.getSource() == _open) {
+            openModel();
+        }
+        else if (e.getSource() == _save) {
+            saveModel();
+        }
+        else if (e.getSource() == _genCode) {
             generateCodeFiles();
         }
         else if (e.getSource() == _genDB) {
@@ -52,6 +78,70 @@ public class MenuBar extends JMenuBar implements ActionListener {
         }
     }
 
+    private void openModel() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        int retVal = chooser.showOpenDialog(this);
+
+        if (retVal != JFileChooser.APPROVE_OPTION) { return; }
+
+        final File file = chooser.getSelectedFile();
+
+        new SwingWorker<ModelSnapshot, Void>() {
+            @Override
+            protected ModelSnapshot doInBackground() throws Exception {
+                return ModelFile.read(file);
+            }
+
+            @Override
+            protected void done() {
+                Throwable failure = getFailure(this);
+
+                if (failure == null) {
+                    try {
+                        // Added on the EDT, as one batch, so the panes update once
+                        EntityManager.addEntities(get().getAllEntities());
+                    }
+                    catch (Exception ex) {
+                        failure = ex;
+                    }
+                }
+
+                if (failure != null) {
+                    JOptionPane.showMessageDialog(MenuBar.this, failure.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void saveModel() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        int retVal = chooser.showSaveDialog(this);
+
+        if (retVal != JFileChooser.APPROVE_OPTION) { return; }
+
+        final File file = chooser.getSelectedFile();
+        final ModelSnapshot model = EntityManager.snapshot();
+
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                ModelFile.write(model, file);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                Throwable failure = getFailure(this);
+
+                if (failure != null) {
+                    JOptionPane.showMessageDialog(MenuBar.this, failure.getMessage());
+                }
+            }
+        }.execute();
+    }
+
     private void generateCodeFiles() {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
@@ -59,24 +149,32 @@ public class MenuBar extends JMenuBar implements ActionListener {
 
         if (retVal != JFileChooser.APPROVE_OPTION) { return; }
 
-        File directory = chooser.getSelectedFile();
+        // Snapshot here, so generation sees a consistent model while editing continues
+        generateCodeFiles(EntityManager.snapshot(), chooser.getSelectedFile(), false);
+    }
 
-        try {
-            ClassGenerator.generateEntitiesFiles(directory, false);
-        }
-        catch (IllegalArgumentException iae) {
-            try {
-                if (JOptionPane.showConfirmDialog(this, "Overwrite existing files?") == JOptionPane.OK_OPTION) {
-                    ClassGenerator.generateEntitiesFiles(directory, true);
-                }
+    private void generateCodeFiles(final ModelSnapshot model, final File directory, final boolean overwrite) {
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                ClassGenerator.generateEntitiesFiles(model, directory, overwrite);
+                return null;
             }
-            catch (Exception e) {
-                JOptionPane.showMessageDialog(this, e.getMessage());
+
+            @Override
+            protected void done() {
+                Throwable failure = getFailure(this);
+
+                if (failure instanceof IllegalArgumentException && !overwrite) {
+                    if (JOptionPane.showConfirmDialog(MenuBar.this, "Overwrite existing files?") == JOptionPane.OK_OPTION) {
+                        generateCodeFiles(model, directory, true);
+                    }
+                }
+                else if (failure != null) {
+                    JOptionPane.showMessageDialog(MenuBar.this, failure.getMessage());
+                }
             }
-        }
-        catch (Exception e) {
-            JOptionPane.showMessageDialog(this, e.getMessage());
-        }
+        }.execute();
     }
 
     private void generateDatabaseFile() {
@@ -86,29 +184,48 @@ public class MenuBar extends JMenuBar implements ActionListener {
 
         if (retVal != JFileChooser.APPROVE_OPTION) { return; }
 
-        File file = chooser.getSelectedFile();
+        // Snapshot here, so generation sees a consistent model while editing continues
+        generateDatabaseFile(EntityManager.snapshot(), chooser.getSelectedFile(), false);
+    }
+
+    private void generateDatabaseFile(final ModelSnapshot model, final File file, final boolean overwrite) {
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                TableGenerator.generateTables(model, file.getParent(), file.getName());
+                return null;
+            }
 
-        try {
-            TableGenerator.generateTables(file.getParent(), file.getName());
-        }
-        catch (Exception e) {
-            if (e instanceof IllegalArgumentException) {
-                try {
-                    if (JOptionPane.showConfirmDialog(this, "Overwrite existing database file?") == JOptionPane.OK_OPTION) {
-                        TableGenerator.generateTables(file.getParent(), file.getName());
+            @Override
+            protected void done() {
+                Throwable failure = getFailure(this);
+
+                if (failure instanceof IllegalArgumentException && !overwrite) {
+                    if (JOptionPane.showConfirmDialog(MenuBar.this, "Overwrite existing database file?") == JOptionPane.OK_OPTION) {
+                        generateDatabaseFile(model, file, true);
                     }
                 }
-                catch (Exception inner) {
-                    inner.printStackTrace();
+                else if (failure != null) {
+                    failure.printStackTrace();
                 }
             }
-            else {
-                e.printStackTrace();
-            }
+        }.execute();
+    }
+
+    private static Throwable getFailure(SwingWorker<?, ?> worker) {
+        try {
+            worker.get();
+            return null;
+        }
+        catch (ExecutionException ee) {
+            return ee.getCause();
+        }
+        catch (InterruptedException ie) {
+            return ie;
         }
     }
 
     private static final long serialVersionUID = 1L;
 
-    private JMenuItem _genCode, _genDB, _exit;
+    private JMenuItem _open, _save, _genCode, _genDB, _exit;
 }
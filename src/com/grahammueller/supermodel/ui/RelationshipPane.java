@@ -10,7 +10,6 @@ import java.awt.event.ItemListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.List;
-import java.util.Map;
 import javax.swing.DefaultCellEditor;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
@@ -23,14 +22,15 @@ import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableColumn;
 import com.grahammueller.supermodel.entity.Entity;
 import com.grahammueller.supermodel.entity.EntityManager;
-import com.grahammueller.supermodel.entity.EntityManagerListener;
+import com.grahammueller.supermodel.entity.ModelChangeSet;
+import com.grahammueller.supermodel.entity.ModelEventAdapter;
 import com.grahammueller.supermodel.entity.Relationship;
 
-public class RelationshipPane extends JPanel  implements ActionListener, PropertyChangeListener, ItemListener, EntityManagerListener {
+public class RelationshipPane extends JPanel  implements ActionListener, PropertyChangeListener, ItemListener {
     public RelationshipPane(Entity entity) {
         super(new BorderLayout());
 
-        EntityManager.registerForEntityUpdates(this);
+        EntityManager.registerForModelEvents(_modelListener);
 
         setPreferredSize(new Dimension(400, 190));
         _storedEntity = entity;
@@ -168,36 +168,61 @@ public class RelationshipPane extends JPanel  implements ActionListener, Propert
         }
     }
 
-    @Override
-    public void entityAdded(Entity e) {
-        setEntityList();
-    }
-
-    @Override
-    public void entityUpdated(Entity e, Map<String, Object> updates) {
-        if (updates.get("name").equals("name")) {
-            String oldName = (String) updates.get("old");
-            String newName = (String) updates.get("new");
+    private final ModelEventAdapter _modelListener = new ModelEventAdapter() {
+        @Override
+        public void entityAdded(Entity e) {
+            setEntityList();
+        }
 
-            for (int row = 0; row < _relationshipModel.getRowCount(); row++) {
-                String relationship = (String) _relationshipModel.getValueAt(row, 1);
+        @Override
+        public void entityRenamed(Entity e, String oldName, String newName) {
+            renameDestinations(oldName, newName);
+            setEntityList();
+        }
 
-                if (relationship.equals(oldName)) {
-                    _relationshipModel.setValueAt(newName, row, 1);
+        @Override
+        public void relationshipsCleared(Entity e) {
+            if (e == _storedEntity) {
+                for (int row = 0; row < _relationshipModel.getRowCount(); row++) {
+                    _relationshipModel.removeRow(row);
                 }
             }
         }
-        else if (updates.get("name").equals("relationships-cleared") && e.equals(_storedEntity)) {
-            for (int row = 0; row < _relationshipModel.getRowCount(); row++) {
-                _relationshipModel.removeRow(row);
+
+        @Override
+        public void entityRemoved(Entity e) {
+            refreshRelationships();
+
+            // Update combo box
+            setEntityList();
+        }
+
+        @Override
+        public void entitiesChanged(ModelChangeSet changes) {
+            for (Entity e : changes.getRenamedEntities()) {
+                renameDestinations(changes.getOldName(e), e.getName());
             }
+
+            if (!changes.getRemovedEntities().isEmpty()) {
+                refreshRelationships();
+            }
+
+            // Rebuild the combo box once for the whole batch
+            setEntityList();
         }
+    };
 
-        setEntityList();
+    private void renameDestinations(String oldName, String newName) {
+        for (int row = 0; row < _relationshipModel.getRowCount(); row++) {
+            String relationship = (String) _relationshipModel.getValueAt(row, 1);
+
+            if (relationship.equals(oldName)) {
+                _relationshipModel.setValueAt(newName, row, 1);
+            }
+        }
     }
 
-    @Override
-    public void entityRemoved(Entity e) {
+    private void refreshRelationships() {
         // Check for discrepancies indicating one of our Relationships was removed
         List<Relationship> relationships = _storedEntity.getRelationships();
         if (_relationshipModel.getRowCount() != relationships.size()) {
@@ -210,9 +235,6 @@ public class RelationshipPane extends JPanel  implements ActionListener, Propert
 
             _relationshipTable.setModel(_relationshipModel);
         }
-
-        // Update combo box
-        setEntityList();
     }
 
     private static final long serialVersionUID = 1L;
@@ -0,0 +1,70 @@
+package test.com.grahammueller.supermodel;
+
+import java.util.concurrent.TimeUnit;
+
+import com.grahammueller.supermodel.entity.AsyncModelEventListener;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.ModelEvent;
+import com.grahammueller.supermodel.entity.ModelEventListener;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+
+/**
+ * Times changing a model with a slow listener, delivered to directly and through
+ * an AsyncModelEventListener. Run by hand, with the number of changes and the
+ * microseconds each event takes the listener as optional arguments.
+ */
+public class AsyncModelEventListenerBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long listenerNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 1 ? Long.parseLong(args[1]) : 50);
+
+        // Warm up, so the first timing isn't mostly the JIT
+        change(count, listenerNanos, false);
+        change(count, listenerNanos, true);
+
+        long[] sync = change(count, listenerNanos, false);
+        long[] async = change(count, listenerNanos, true);
+
+        System.out.println(String.format("sync:  %6d ms changing, %6d ms delivered", sync[0] / 1000000, sync[1] / 1000000));
+        System.out.println(String.format("async: %6d ms changing, %6d ms delivered, %.2fx faster changing",
+                async[0] / 1000000, async[1] / 1000000, (double) sync[0] / async[0]));
+    }
+
+    /**
+     * Adds Entities to a fresh workspace with a slow listener registered
+     * @return The time taken to make the changes, and until every event was delivered, in nanoseconds
+     */
+    private static long[] change(int count, final long listenerNanos, boolean async) throws Exception {
+        ModelWorkspace workspace = new ModelWorkspace();
+        ModelEventListener listener = new ModelEventListener() {
+            @Override
+            public void modelChanged(ModelEvent event) {
+                // Stands in for a listener repainting or saving
+                long end = System.nanoTime() + listenerNanos;
+                while (System.nanoTime() < end) {
+                    Thread.yield();
+                }
+            }
+        };
+
+        // Room for every event, so the changes are timed without waiting on the listener
+        ModelEventListener registered = async ? new AsyncModelEventListener(listener, AsyncModelEventListener.getDefaultExecutor(),
+                count, AsyncModelEventListener.Overflow.BLOCK) : listener;
+        workspace.registerForModelEvents(registered);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            new Entity("Entity" + i, workspace);
+        }
+        long changed = System.nanoTime() - start;
+
+        if (!workspace.flushEvents(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Events weren't delivered in time");
+        }
+
+        long delivered = System.nanoTime() - start;
+        workspace.unregisterForModelEvents(registered);
+
+        return new long[] { changed, delivered };
+    }
+}
@@ -0,0 +1,253 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AsyncModelEventListener;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.ModelEvent;
+import com.grahammueller.supermodel.entity.ModelEventListener;
+
+public class AsyncModelEventListenerDriver {
+    private AsyncModelEventListener async;
+
+    @Before
+    public void setUp() {
+        EntityManager.clearRegistry();
+        async = null;
+    }
+
+    @After
+    public void tearDown() {
+        if (async != null) {
+            EntityManager.unregisterForModelEvents(async);
+        }
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockChanges() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+
+        async = new AsyncModelEventListener(new ModelEventListener() {
+            @Override
+            public void modelChanged(ModelEvent event) {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+
+                names.add(event.getEntity().getName());
+            }
+        });
+        EntityManager.registerForModelEvents(async);
+
+        for (int i = 0; i < 50; i++) {
+            new Entity("Pokemon" + i);
+        }
+
+        // Every change completed while the listener was still stuck on the first event
+        assertTrue(names.isEmpty());
+        assertFalse(EntityManager.flushEvents(10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(EntityManager.flushEvents(5, TimeUnit.SECONDS));
+
+        assertEquals(50, names.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("Pokemon" + i, names.get(i));
+        }
+    }
+
+    @Test
+    public void testCallerRunsWhenFull() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+        async = new AsyncModelEventListener(recorder, executor, 2, AsyncModelEventListener.Overflow.CALLER_RUNS);
+        EntityManager.registerForModelEvents(async);
+
+        new Entity("Trainer");
+        new Entity("Gym");
+        assertTrue(recorder.names.isEmpty());
+        assertEquals(2, async.getQueuedEventCount());
+
+        // No room for the third, so it and those before it are delivered right away
+        new Entity("Pokemon");
+        assertEquals(3, recorder.names.size());
+        assertEquals("Trainer", recorder.names.get(0));
+        assertEquals("Gym", recorder.names.get(1));
+        assertEquals("Pokemon", recorder.names.get(2));
+        assertTrue(async.flush(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testBlockWhenFull() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+        async = new AsyncModelEventListener(recorder, executor, 1, AsyncModelEventListener.Overflow.BLOCK);
+        EntityManager.registerForModelEvents(async);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                new Entity("Trainer");
+                new Entity("Gym");
+                new Entity("Pokemon");
+            }
+        });
+        producer.start();
+
+        // The producer waits for room once the queue is full
+        long deadline = System.currentTimeMillis() + 5000;
+        while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, producer.getState());
+        assertTrue(recorder.names.isEmpty());
+
+        while (producer.isAlive() || executor.hasTasks()) {
+            executor.runTasks();
+            Thread.sleep(1);
+        }
+
+        assertEquals(3, recorder.names.size());
+        assertEquals("Trainer", recorder.names.get(0));
+        assertEquals("Pokemon", recorder.names.get(2));
+    }
+
+    @Test
+    public void testBlockDoesNotWaitOnDeliveryThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Recorder recorder = new Recorder();
+        async = new AsyncModelEventListener(recorder, executor, 2, AsyncModelEventListener.Overflow.BLOCK);
+        EntityManager.registerForModelEvents(async);
+
+        try {
+            // Changing the model on the delivery thread, as Swing code does with an event dispatch thread executor
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10; i++) {
+                        new Entity("Pokemon" + i);
+                    }
+                }
+            }).get(5, TimeUnit.SECONDS);
+
+            assertTrue(async.flush(5, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(10, recorder.names.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Pokemon" + i, recorder.names.get(i));
+        }
+    }
+
+    @Test
+    public void testFailingListenerDoesNotStopDelivery() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        final List<String> names = new ArrayList<String>();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        async = new AsyncModelEventListener(new ModelEventListener() {
+            @Override
+            public void modelChanged(ModelEvent event) {
+                if (event.getEntity().getName().equals("Missingno")) {
+                    throw new IllegalStateException("Bad event");
+                }
+
+                names.add(event.getEntity().getName());
+            }
+        }, executor, 10, AsyncModelEventListener.Overflow.BLOCK);
+        EntityManager.registerForModelEvents(async);
+
+        new Entity("Missingno");
+        new Entity("Pokemon");
+
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                failures.add(e);
+            }
+        });
+
+        try {
+            executor.runTasks();
+        }
+        finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+
+        assertEquals(1, failures.size());
+        assertEquals(1, names.size());
+        assertEquals("Pokemon", names.get(0));
+    }
+
+    @Test
+    public void testCapacityMustBePositive() {
+        String failureMessage = null;
+
+        try {
+            new AsyncModelEventListener(new Recorder(), new ManualExecutor(), 0, AsyncModelEventListener.Overflow.BLOCK);
+        }
+        catch (IllegalArgumentException iae) {
+            failureMessage = iae.getMessage();
+        }
+
+        assertEquals("Capacity must be at least one", failureMessage);
+    }
+
+    private static class Recorder implements ModelEventListener {
+        final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void modelChanged(ModelEvent event) {
+            names.add(event.getEntity().getName());
+        }
+    }
+
+    /**
+     * Holds tasks until the test runs them
+     */
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        synchronized boolean hasTasks() {
+            return !tasks.isEmpty();
+        }
+
+        void runTasks() {
+            List<Runnable> pending;
+
+            synchronized (this) {
+                pending = new ArrayList<Runnable>(tasks);
+                tasks.clear();
+            }
+
+            for (Runnable task : pending) {
+                task.run();
+            }
+        }
+    }
+}
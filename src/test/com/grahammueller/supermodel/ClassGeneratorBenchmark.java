@@ -0,0 +1,91 @@
+package test.com.grahammueller.supermodel;
+
+import java.io.File;
+import java.util.Random;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.ModelSnapshot;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.gen.sqliteorm.ClassGenerator;
+
+/**
+ * Times generating a large model with 1 thread up to one per processor.
+ * Run by hand, with the number of Entities and the most threads as optional arguments.
+ */
+public class ClassGeneratorBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        ModelSnapshot model = model(count);
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        // Warm up, so the first timing isn't mostly the JIT
+        generate(model, 1);
+        generate(model, maxThreads);
+
+        long serial = generate(model, 1);
+        int threads = 1;
+
+        while (true) {
+            long elapsed = threads == 1 ? serial : generate(model, threads);
+            System.out.println(String.format("%2d threads: %6d ms, %.2fx", threads, elapsed / 1000000, (double) serial / elapsed));
+
+            if (threads == maxThreads) {
+                break;
+            }
+
+            threads = Math.min(threads * 2, maxThreads);
+        }
+    }
+
+    private static ModelSnapshot model(int count) {
+        ModelWorkspace workspace = new ModelWorkspace();
+        Random random = new Random(42);
+        Entity[] entities = new Entity[count];
+
+        for (int i = 0; i < count; i++) {
+            entities[i] = new Entity("Entity" + i, workspace);
+            entities[i].addAttribute("id", AttributeType.INTEGER);
+            entities[i].setPrimaryKey("id", true);
+            entities[i].addAttribute("name", AttributeType.STRING);
+            entities[i].addAttribute("created", AttributeType.DATE);
+            entities[i].addAttribute("value", AttributeType.DOUBLE);
+        }
+
+        for (int i = 0; i < count * 2; i++) {
+            entities[random.nextInt(count)].addRelationship("rltn" + i, entities[random.nextInt(count)]);
+        }
+
+        return workspace.snapshot();
+    }
+
+    /**
+     * Generates everything into a fresh directory
+     * @return The time taken, in nanoseconds
+     */
+    private static long generate(ModelSnapshot model, int threads) throws Exception {
+        File dir = File.createTempFile("benchmark", "");
+        dir.delete();
+        dir.mkdirs();
+
+        try {
+            long start = System.nanoTime();
+            ClassGenerator.generateEntitiesFiles(model, dir, false, threads);
+            return System.nanoTime() - start;
+        }
+        finally {
+            delete(dir);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
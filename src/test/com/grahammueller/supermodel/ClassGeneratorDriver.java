@@ -0,0 +1,277 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.gen.sqliteorm.ClassGenerator;
+import com.grahammueller.supermodel.gen.sqliteorm.GenerationReport;
+
+public class ClassGeneratorDriver {
+    private File dir;
+    private ModelWorkspace workspace;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("generated", "");
+        dir.delete();
+        dir.mkdirs();
+
+        workspace = new ModelWorkspace();
+
+        Entity trainer = new Entity("Trainer", workspace);
+        trainer.addAttribute("id", AttributeType.INTEGER);
+        trainer.setPrimaryKey("id", true);
+        trainer.addAttribute("name", AttributeType.STRING);
+
+        Entity pokemon = new Entity("Pokemon", workspace);
+        pokemon.addAttribute("id", AttributeType.INTEGER);
+        pokemon.setPrimaryKey("id", true);
+        pokemon.addAttribute("level", AttributeType.INTEGER);
+        trainer.addRelationship("pokemon", pokemon);
+
+        Entity gym = new Entity("Gym", workspace);
+        gym.addAttribute("badge", AttributeType.STRING);
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void testFirstRunWritesEverything() throws Exception {
+        GenerationReport report = ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+
+        assertEquals(Arrays.asList("Trainer", "Pokemon", "Gym"), report.getWrittenEntities());
+        assertTrue(report.getUnchangedEntities().isEmpty());
+        assertTrue(new File(dir, "Pokemon.java").exists());
+    }
+
+    @Test
+    public void testUnchangedModelWritesNothing() throws Exception {
+        ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+        File pokemon = new File(dir, "Pokemon.java");
+        pokemon.setLastModified(1000);
+
+        GenerationReport report = ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+
+        assertTrue(report.getWrittenEntities().isEmpty());
+        assertEquals(3, report.getUnchangedEntities().size());
+        assertEquals(1000, pokemon.lastModified());
+    }
+
+    @Test
+    public void testOnlyChangedEntitiesAreWritten() throws Exception {
+        ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+
+        workspace.getEntityByName("Gym").addAttribute("city", AttributeType.STRING);
+        GenerationReport report = ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+
+        assertEquals(Collections.singletonList("Gym"), report.getWrittenEntities());
+
+        // Pokemon holds Trainer's primary key, so changing it changes both
+        workspace.getEntityByName("Trainer").updateAttributeType("id", AttributeType.LONG);
+        report = ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+
+        assertEquals(Arrays.asList("Trainer", "Pokemon"), report.getWrittenEntities());
+    }
+
+    @Test
+    public void testSameOutputIsNotRewritten() throws Exception {
+        ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+        File trainer = new File(dir, "Trainer.java");
+        trainer.setLastModified(1000);
+
+        // Without a manifest everything is generated again, but nothing differs
+        new File(dir, ".supermodel-manifest").delete();
+        GenerationReport report = ClassGenerator.generateEntitiesFiles(workspace, dir, true);
+
+        assertTrue(report.getWrittenEntities().isEmpty());
+        assertEquals(3, report.getUnchangedEntities().size());
+        assertEquals(1000, trainer.lastModified());
+    }
+
+    @Test
+    public void testRemovedEntitiesAreDeleted() throws Exception {
+        ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+
+        workspace.removeEntity(workspace.getEntityByName("Gym"));
+        GenerationReport report = ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+
+        assertEquals(Collections.singletonList("Gym"), report.getRemovedEntities());
+        assertFalse(new File(dir, "Gym.java").exists());
+    }
+
+    @Test
+    public void testFilesNotGeneratedAreNotOverwritten() throws Exception {
+        Writer writer = new FileWriter(new File(dir, "Gym.java"));
+        writer.write("// Someone else's\n");
+        writer.close();
+
+        try {
+            ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+            fail("Expected an existing file to stop generation");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("File already exists", e.getMessage());
+        }
+
+        GenerationReport report = ClassGenerator.generateEntitiesFiles(workspace, dir, true);
+        assertTrue(report.getWrittenEntities().contains("Gym"));
+    }
+
+    @Test
+    public void testUndefinedTypeWritesNothing() throws Exception {
+        ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+        byte[] manifest = readFile(new File(dir, ".supermodel-manifest"));
+        File trainer = new File(dir, "Trainer.java");
+        trainer.setLastModified(1000);
+
+        // Trainer comes before the bad Gym, but isn't written either
+        workspace.getEntityByName("Trainer").addAttribute("title", AttributeType.STRING);
+        workspace.getEntityByName("Gym").addAttribute("leader", AttributeType.UNDEFINED);
+
+        try {
+            ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+            fail("Expected an undefined type to stop generation");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("leader does not have a valid type", e.getMessage());
+        }
+
+        assertEquals(1000, trainer.lastModified());
+        assertArrayEquals(manifest, readFile(new File(dir, ".supermodel-manifest")));
+    }
+
+    @Test
+    public void testForeignKeysFollowModelOrder() throws Exception {
+        Entity pokemon = workspace.getEntityByName("Pokemon");
+        Entity gym = workspace.getEntityByName("Gym");
+        gym.addAttribute("id", AttributeType.INTEGER);
+        gym.setPrimaryKey("id", true);
+        gym.addRelationship("residents", pokemon);
+        pokemon.addRelationship("evolutions", pokemon);
+
+        ClassGenerator.generateEntitiesFiles(workspace, dir, false);
+        String contents = new String(readFile(new File(dir, "Pokemon.java")), "UTF-8");
+
+        // Trainer's key, then Pokemon's own Relationship and key, then Gym's
+        int trainerId = contents.indexOf("private int trainerId;");
+        int evolutions = contents.indexOf("private List<Pokemon> evolutions;");
+        int pokemonId = contents.indexOf("private int pokemonId;");
+        int gymId = contents.indexOf("private int gymId;");
+
+        assertTrue(trainerId != -1);
+        assertTrue(trainerId < evolutions);
+        assertTrue(evolutions < pokemonId);
+        assertTrue(pokemonId < gymId);
+    }
+
+    @Test
+    public void testReorderedEntitiesAreRegenerated() throws Exception {
+        ModelWorkspace cycle = new ModelWorkspace();
+        Entity a = cycleEntity("A", cycle);
+        Entity b = cycleEntity("B", cycle);
+        a.addRelationship("toB", b);
+        b.addRelationship("toA", a);
+
+        ClassGenerator.generateEntitiesFiles(cycle, dir, false);
+
+        // Recreating A puts it after B, which moves A's key in B.java relative to B's own Relationships
+        cycle.removeEntity(a);
+        a = cycleEntity("A", cycle);
+        a.addRelationship("toB", b);
+        if (b.getRelationships().isEmpty()) {
+            b.addRelationship("toA", a);
+        }
+
+        GenerationReport report = ClassGenerator.generateEntitiesFiles(cycle, dir, false);
+
+        File full = new File(dir, "full");
+        full.mkdirs();
+        ClassGenerator.generateEntitiesFiles(cycle, full, false);
+
+        assertTrue(report.getWrittenEntities().contains("B"));
+        assertArrayEquals(readFile(new File(full, "B.java")), readFile(new File(dir, "B.java")));
+        assertArrayEquals(readFile(new File(full, "A.java")), readFile(new File(dir, "A.java")));
+    }
+
+    @Test
+    public void testParallelOutputMatchesSerial() throws Exception {
+        ModelWorkspace large = new ModelWorkspace();
+        Random random = new Random(42);
+        Entity[] entities = new Entity[500];
+
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = new Entity("Entity" + i, large);
+            entities[i].addAttribute("id", AttributeType.INTEGER);
+            entities[i].setPrimaryKey("id", true);
+            entities[i].addAttribute("value", AttributeType.STRING);
+        }
+
+        for (int i = 0; i < 1500; i++) {
+            entities[random.nextInt(entities.length)].addRelationship("rltn" + i, entities[random.nextInt(entities.length)]);
+        }
+
+        File serial = new File(dir, "serial");
+        File parallel = new File(dir, "parallel");
+        serial.mkdirs();
+        parallel.mkdirs();
+
+        ClassGenerator.generateEntitiesFiles(large.snapshot(), serial, false, 1);
+        GenerationReport report = ClassGenerator.generateEntitiesFiles(large.snapshot(), parallel, false, 4);
+
+        assertEquals(entities.length, report.getWrittenEntities().size());
+        assertEquals("Entity0", report.getWrittenEntities().get(0));
+
+        for (String name : serial.list()) {
+            assertArrayEquals(name, readFile(new File(serial, name)), readFile(new File(parallel, name)));
+        }
+    }
+
+    private static Entity cycleEntity(String name, ModelWorkspace workspace) {
+        Entity entity = new Entity(name, workspace);
+        entity.addAttribute("id", AttributeType.INTEGER);
+        entity.setPrimaryKey("id", true);
+
+        return entity;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+
+        try {
+            in.readFully(bytes);
+        }
+        finally {
+            in.close();
+        }
+
+        return bytes;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
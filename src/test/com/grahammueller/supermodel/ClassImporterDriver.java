@@ -0,0 +1,205 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.entity.UnresolvedEntitiesException;
+import com.grahammueller.supermodel.gen.sqliteorm.ClassGenerator;
+import com.grahammueller.supermodel.gen.sqliteorm.ClassImporter;
+
+public class ClassImporterDriver {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        EntityManager.clearRegistry();
+
+        dir = File.createTempFile("classes", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void testImportGeneratedClasses() throws Exception {
+        compileGeneratedModel();
+
+        ModelWorkspace workspace = new ModelWorkspace();
+        List<Entity> imported = ClassImporter.importClasses(workspace, dir);
+
+        assertEquals(2, imported.size());
+        assertModelImported(workspace);
+    }
+
+    @Test
+    public void testImportJar() throws Exception {
+        compileGeneratedModel();
+
+        File jar = new File(dir, "model.jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        addToJar(out, dir, "");
+        out.close();
+
+        ModelWorkspace workspace = new ModelWorkspace();
+        ClassImporter.importClasses(workspace, jar);
+
+        assertModelImported(workspace);
+    }
+
+    @Test
+    public void testMissingRelatedClassReported() throws Exception {
+        compileGeneratedModel();
+        new File(dir, "com/yourdomain/model/Trainer.class").delete();
+
+        try {
+            ClassImporter.importClasses(new ModelWorkspace(), dir);
+            fail("Imported a Relationship to a missing class");
+        }
+        catch (UnresolvedEntitiesException uee) {
+            assertEquals("Trainer", uee.getEntityNames().get(0));
+        }
+    }
+
+    private void assertModelImported(ModelWorkspace workspace) {
+        Entity pokemon = workspace.getEntityByName("Pokemon");
+        Entity trainer = workspace.getEntityByName("Trainer");
+
+        assertEquals("id", pokemon.getPrimaryKey().getName());
+        assertEquals(AttributeType.INTEGER, pokemon.getPrimaryKey().getType());
+        assertEquals(AttributeType.STRING, pokemon.getAttributes().get(1).getType());
+        assertEquals(AttributeType.BOOLEAN, pokemon.getAttributes().get(2).getType());
+
+        // Trainer's pokemonId foreign key isn't an Attribute
+        assertEquals(2, trainer.getAttributes().size());
+        assertEquals(AttributeType.LONG, trainer.getPrimaryKey().getType());
+        assertEquals(AttributeType.DOUBLE, trainer.getAttributes().get(1).getType());
+
+        assertEquals("owners", pokemon.getRelationships().get(0).getName());
+        assertSame(trainer, pokemon.getRelationships().get(0).getEntity());
+        assertEquals(0, trainer.getRelationships().size());
+    }
+
+    private void compileGeneratedModel() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+
+        Entity pokemon = new Entity("Pokemon");
+        pokemon.addAttribute("id", AttributeType.INTEGER);
+        pokemon.setPrimaryKey("id", true);
+        pokemon.addAttribute("nickname", AttributeType.STRING);
+        pokemon.addAttribute("shiny", AttributeType.BOOLEAN);
+
+        Entity trainer = new Entity("Trainer");
+        trainer.addAttribute("id", AttributeType.LONG);
+        trainer.setPrimaryKey("id", true);
+        trainer.addAttribute("money", AttributeType.DOUBLE);
+
+        pokemon.addRelationship("owners", trainer);
+
+        File modelDir = new File(dir, "com/yourdomain/model");
+        modelDir.mkdirs();
+        ClassGenerator.generateEntitiesFiles(modelDir, true);
+
+        // Just enough of SQLiteORM for the generated classes to compile against
+        List<String> sources = new ArrayList<String>();
+        sources.add(writeSource("com/njkremer/Sqlite/Annotations/PrimaryKey.java",
+                "package com.njkremer.Sqlite.Annotations;\n@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\npublic @interface PrimaryKey {}\n"));
+        sources.add(writeSource("com/njkremer/Sqlite/Annotations/AutoIncrement.java",
+                "package com.njkremer.Sqlite.Annotations;\npublic @interface AutoIncrement {}\n"));
+        sources.add(writeSource("com/njkremer/Sqlite/Annotations/OneToMany.java",
+                "package com.njkremer.Sqlite.Annotations;\n@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\npublic @interface OneToMany { String value(); }\n"));
+        sources.add(writeSource("com/njkremer/Sqlite/DataConnectionException.java",
+                "package com.njkremer.Sqlite;\npublic class DataConnectionException extends Exception {}\n"));
+        sources.add(writeSource("com/njkremer/Sqlite/SqlStatement.java",
+                "package com.njkremer.Sqlite;\npublic class SqlStatement<T> {\n"
+                + "    public static <T> SqlStatement<T> select(Class<T> c) { return new SqlStatement<T>(); }\n"
+                + "    public SqlStatement<T> where(String field) { return this; }\n"
+                + "    public SqlStatement<T> eq(Object value) { return this; }\n"
+                + "    public java.util.List<T> getList() { return null; }\n"
+                + "    public T getFirst() { return null; }\n}\n"));
+        sources.add(new File(modelDir, "Pokemon.java").getPath());
+        sources.add(new File(modelDir, "Trainer.java").getPath());
+
+        List<String> args = new ArrayList<String>();
+        args.add("-nowarn");
+        args.add("-d");
+        args.add(dir.getPath());
+        args.addAll(sources);
+
+        assertEquals(0, compiler.run(null, null, null, args.toArray(new String[args.size()])));
+
+        EntityManager.clearRegistry();
+    }
+
+    private String writeSource(String path, String source) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(source);
+        }
+        finally {
+            writer.close();
+        }
+
+        return file.getPath();
+    }
+
+    private static void addToJar(ZipOutputStream out, File dir, String prefix) throws IOException {
+        for (File child : dir.listFiles()) {
+            if (child.isDirectory()) {
+                addToJar(out, child, prefix + child.getName() + "/");
+            }
+            else if (child.getName().endsWith(".class")) {
+                out.putNextEntry(new ZipEntry(prefix + child.getName()));
+                InputStream in = new FileInputStream(child);
+                try {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+                finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,194 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityBatch;
+import com.grahammueller.supermodel.entity.EntityBatchListener;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.EntityManagerListener;
+import com.grahammueller.supermodel.entity.ModelChangeSet;
+
+public class EntityBatchDriver {
+    private String failureMessage;
+
+    @Before
+    public void setUp() {
+        EntityManager.clearRegistry();
+        failureMessage = null;
+    }
+
+    @Test
+    public void testCommitNotifiesBatchListenerOnce() {
+        BatchRecorder recorder = new BatchRecorder();
+        EntityManager.registerForEntityUpdates(recorder);
+
+        EntityBatch batch = EntityManager.beginBatch();
+        Entity trainer = batch.createEntity("Trainer");
+        Entity pokemon = batch.createEntity("Pokemon");
+
+        assertNull(EntityManager.getEntityByName("Trainer"));
+
+        batch.commit();
+
+        assertEquals(1, recorder.changes.size());
+        assertEquals(2, recorder.changes.get(0).getAddedEntities().size());
+        assertSame(trainer, EntityManager.getEntityByName("Trainer"));
+        assertSame(pokemon, EntityManager.getEntityByName("Pokemon"));
+
+        EntityManager.unregisterForEntityUpdates(recorder);
+    }
+
+    @Test
+    public void testChangesAreCoalesced() {
+        Entity gym = new Entity("Gym");
+
+        EntityBatch batch = EntityManager.beginBatch();
+        Entity trainer = batch.createEntity("Trainer");
+        batch.renameEntity(trainer, "Leader");
+        Entity temporary = batch.createEntity("Temporary");
+        batch.removeEntity(temporary);
+        batch.renameEntity(gym, "Arena");
+        batch.renameEntity(gym, "Gym");
+
+        ModelChangeSet changes = batch.commit();
+
+        assertEquals(1, changes.getAddedEntities().size());
+        assertSame(trainer, changes.getAddedEntities().get(0));
+        assertEquals("Leader", trainer.getName());
+        assertTrue(changes.getRemovedEntities().isEmpty());
+        assertTrue(changes.getRenamedEntities().isEmpty());
+        assertNull(EntityManager.getEntityByName("Temporary"));
+        assertSame(gym, EntityManager.getEntityByName("Gym"));
+    }
+
+    @Test
+    public void testRenameReportsOldName() {
+        Entity gym = new Entity("Gym");
+
+        EntityBatch batch = EntityManager.beginBatch();
+        batch.renameEntity(gym, "Arena");
+        ModelChangeSet changes = batch.commit();
+
+        assertEquals(1, changes.getRenamedEntities().size());
+        assertEquals("Gym", changes.getOldName(gym));
+        assertSame(gym, EntityManager.getEntityByName("Arena"));
+        assertNull(EntityManager.getEntityByName("Gym"));
+    }
+
+    @Test
+    public void testInvalidBatchAppliesNothing() {
+        Entity gym = new Entity("Gym");
+        Recorder recorder = new Recorder();
+        EntityManager.registerForEntityUpdates(recorder);
+
+        EntityBatch batch = EntityManager.beginBatch();
+        batch.createEntity("Trainer");
+        batch.renameEntity(gym, "Arena");
+        batch.createEntity("ARENA");
+
+        try {
+            batch.commit();
+        }
+        catch (IllegalArgumentException iae) {
+            failureMessage = iae.getMessage();
+        }
+
+        assertEquals("Entity table name already in use", failureMessage);
+        assertEquals("Gym", gym.getName());
+        assertNull(EntityManager.getEntityByName("Trainer"));
+        assertEquals(1, EntityManager.getAllEntities().size());
+        assertTrue(recorder.events.isEmpty());
+
+        EntityManager.unregisterForEntityUpdates(recorder);
+    }
+
+    @Test
+    public void testPlainListenersGetCoalescedCallbacks() {
+        Entity gym = new Entity("Gym");
+        Entity old = new Entity("Old");
+        Recorder recorder = new Recorder();
+        EntityManager.registerForEntityUpdates(recorder);
+
+        EntityBatch batch = EntityManager.beginBatch();
+        batch.createEntity("Trainer");
+        batch.renameEntity(gym, "Arena");
+        batch.renameEntity(gym, "Stadium");
+        batch.removeEntity(old);
+        batch.commit();
+
+        assertEquals(3, recorder.events.size());
+        assertEquals("removed Old", recorder.events.get(0));
+        assertEquals("renamed Gym Stadium", recorder.events.get(1));
+        assertEquals("added Trainer", recorder.events.get(2));
+
+        EntityManager.unregisterForEntityUpdates(recorder);
+    }
+
+    @Test
+    public void testRelationshipBetweenNewEntities() {
+        EntityBatch batch = EntityManager.beginBatch();
+        Entity trainer = batch.createEntity("Trainer");
+        Entity pokemon = batch.createEntity("Pokemon");
+        pokemon.addAttribute("id", AttributeType.INTEGER);
+        pokemon.setPrimaryKey("id", true);
+        batch.addRelationship(pokemon, "owner", trainer);
+        batch.commit();
+
+        assertEquals(1, pokemon.getRelationships().size());
+        assertSame(trainer, pokemon.getRelationships().get(0).getEntity());
+        assertEquals(1, EntityManager.getInboundRelationships(trainer).size());
+    }
+
+    @Test
+    public void testBatchCommitsOnce() {
+        EntityBatch batch = EntityManager.beginBatch();
+        batch.createEntity("Trainer");
+        batch.commit();
+
+        try {
+            batch.commit();
+        }
+        catch (IllegalStateException ise) {
+            failureMessage = ise.getMessage();
+        }
+
+        assertEquals("Batch already committed", failureMessage);
+    }
+
+    private static class Recorder implements EntityManagerListener {
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void entityAdded(Entity e) {
+            events.add("added " + e.getName());
+        }
+
+        @Override
+        public void entityUpdated(Entity e, Map<String, Object> updates) {
+            if ("name".equals(updates.get("name"))) {
+                events.add("renamed " + updates.get("old") + " " + updates.get("new"));
+            }
+        }
+
+        @Override
+        public void entityRemoved(Entity e) {
+            events.add("removed " + e.getName());
+        }
+    }
+
+    private static class BatchRecorder extends Recorder implements EntityBatchListener {
+        final List<ModelChangeSet> changes = new ArrayList<ModelChangeSet>();
+
+        @Override
+        public void entitiesChanged(ModelChangeSet changes) {
+            this.changes.add(changes);
+        }
+    }
+}
@@ -136,6 +136,23 @@ public class EntityDriver {
         assertEquals("Attribute name can't start with a number", failureMessage);
     }
 
+    @Test
+    public void testEntityAttributeNameInUseAdd() {
+        Entity e = new Entity("Pokemon");
+
+        e.addAttribute("id", AttributeType.INTEGER);
+
+        try {
+            e.addAttribute("id", AttributeType.STRING);
+        }
+        catch (IllegalArgumentException iae) {
+            failureMessage = iae.getMessage();
+        }
+
+        assertEquals("Attribute name in use", failureMessage);
+        assertEquals(1, e.getAttributes().size());
+    }
+
     @Test
     public void testEntityAttributeNormalNameUpdate() {
         Entity e = new Entity("Pokemon");
@@ -318,6 +335,28 @@ public class EntityDriver {
         }
     }
 
+    @Test
+    public void testEntityPrimaryKeyTracksUpdates() {
+        Entity e = new Entity("Pokemon");
+
+        e.addAttribute("id", AttributeType.INTEGER);
+        e.addAttribute("number", AttributeType.LONG);
+        assertEquals(null, e.getPrimaryKey());
+
+        e.setPrimaryKey("id", true);
+        assertEquals("id", e.getPrimaryKey().getName());
+
+        e.updateAttributeName("id", "pkmnId");
+        assertEquals("pkmnId", e.getPrimaryKey().getName());
+
+        e.setPrimaryKey("pkmnId", false);
+        assertEquals(null, e.getPrimaryKey());
+
+        e.setPrimaryKey("number", true);
+        e.updateAttributeType("number", AttributeType.STRING);
+        assertEquals(null, e.getPrimaryKey());
+    }
+
     @Test
     public void testEntityAttributeRemove() {
         Entity pkmn = new Entity("Pokemon");
@@ -479,6 +518,25 @@ public class EntityDriver {
         assertEquals("Invalid Entity provided", failureMessage);
     }
 
+    @Test
+    public void testRelationshipNameInUse() {
+        Entity e = new Entity("Pokemon");
+        e.addAttribute("id", AttributeType.INTEGER);
+        e.setPrimaryKey("id", true);
+
+        e.addRelationship("twin", e);
+
+        try {
+            e.addRelationship("twin", e);
+        }
+        catch (IllegalArgumentException iae) {
+            failureMessage = iae.getMessage();
+        }
+
+        assertEquals("Relationship name in use", failureMessage);
+        assertEquals(1, e.getRelationships().size());
+    }
+
     @Test
     public void testEntityRelationshipNormalNameUpdate() {
         Entity e = new Entity("Pokemon");
@@ -717,6 +775,16 @@ public class EntityDriver {
         assertTrue(e1.equals(e2));
     }
 
+    @Test
+    public void testEntityHashCodeMatchesEquals() {
+        Entity e = new Entity("Pokemon");
+        EntityManager.clearRegistry();
+        Entity other = new Entity("Pokemon");
+
+        assertTrue(e.equals(other));
+        assertEquals(e.hashCode(), other.hashCode());
+    }
+
     @Test
     public void testEntityEqualsNull() {
         Entity e = new Entity("Pokemon");
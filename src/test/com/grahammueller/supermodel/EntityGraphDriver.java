@@ -0,0 +1,142 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityGraph;
+import com.grahammueller.supermodel.entity.ModelSnapshot;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+
+public class EntityGraphDriver {
+    @Before
+    public void setUp() {
+        _workspace = new ModelWorkspace();
+    }
+
+    @Test
+    public void testTopologicalOrder() {
+        Entity item = entity("Item");
+        Entity pokemon = entity("Pokemon");
+        Entity trainer = entity("Trainer");
+        Entity region = entity("Region");
+
+        region.addRelationship("trainers", trainer);
+        trainer.addRelationship("pokemon", pokemon);
+        trainer.addRelationship("items", item);
+        pokemon.addRelationship("heldItems", item);
+
+        EntityGraph graph = _workspace.snapshot().getGraph();
+
+        assertEquals(Arrays.asList("Region", "Trainer", "Pokemon", "Item"), graph.getTopologicalOrder());
+        assertEquals(4, graph.getDepth());
+        assertEquals(3, graph.getLevel("Item"));
+        assertEquals(Arrays.asList("Pokemon", "Item"), graph.getTargets("Trainer"));
+        assertEquals(Arrays.asList("Pokemon", "Trainer"), graph.getSources("Item"));
+        assertFalse(graph.isCyclic("Trainer"));
+    }
+
+    @Test
+    public void testLevelsGroupIndependentEntities() {
+        Entity trainer = entity("Trainer");
+        Entity gym = entity("Gym");
+        Entity pokemon = entity("Pokemon");
+        Entity badge = entity("Badge");
+
+        trainer.addRelationship("pokemon", pokemon);
+        gym.addRelationship("badges", badge);
+
+        List<List<String>> levels = _workspace.snapshot().getGraph().getLevels();
+
+        assertEquals(2, levels.size());
+        assertEquals(Arrays.asList("Trainer", "Gym"), levels.get(0));
+        assertEquals(Arrays.asList("Pokemon", "Badge"), levels.get(1));
+    }
+
+    @Test
+    public void testCyclesFormComponents() {
+        Entity a = entity("A");
+        Entity b = entity("B");
+        Entity c = entity("C");
+        Entity d = entity("D");
+        Entity self = entity("Self");
+
+        a.addRelationship("b", b);
+        b.addRelationship("c", c);
+        c.addRelationship("a", a);
+        c.addRelationship("d", d);
+        self.addRelationship("parent", self);
+
+        EntityGraph graph = _workspace.snapshot().getGraph();
+        List<List<String>> components = graph.getComponents();
+
+        assertEquals(3, components.size());
+        assertEquals(Arrays.asList("A", "B", "C"), components.get(0));
+        assertEquals(Arrays.asList("Self"), components.get(1));
+        assertEquals(Arrays.asList("D"), components.get(2));
+
+        assertTrue(graph.isCyclic("B"));
+        assertTrue(graph.isCyclic("Self"));
+        assertFalse(graph.isCyclic("D"));
+        assertEquals(0, graph.getLevel("C"));
+        assertEquals(1, graph.getLevel("D"));
+    }
+
+    @Test
+    public void testLongChainDoesNotOverflow() {
+        Entity previous = entity("Entity0");
+
+        for (int i = 1; i < 20000; i++) {
+            Entity e = entity("Entity" + i);
+            previous.addRelationship("next", e);
+            previous = e;
+        }
+
+        // Close the loop, making the whole chain one component
+        previous.addRelationship("first", _workspace.getEntityByName("Entity0"));
+
+        EntityGraph graph = _workspace.snapshot().getGraph();
+
+        assertEquals(1, graph.getComponents().size());
+        assertEquals(1, graph.getDepth());
+    }
+
+    @Test
+    public void testGraphIsReusedUntilRelationshipsChange() {
+        Entity trainer = entity("Trainer");
+        Entity pokemon = entity("Pokemon");
+        trainer.addRelationship("pokemon", pokemon);
+
+        ModelSnapshot first = _workspace.snapshot();
+        EntityGraph graph = first.getGraph();
+
+        pokemon.addAttribute("level", AttributeType.INTEGER);
+        ModelSnapshot second = _workspace.snapshot();
+
+        assertNotSame(first, second);
+        assertSame(graph, second.getGraph());
+
+        pokemon.addRelationship("trainers", trainer);
+        EntityGraph changed = _workspace.snapshot().getGraph();
+
+        assertNotSame(graph, changed);
+        assertTrue(changed.isCyclic("Trainer"));
+
+        pokemon.setName("Monster");
+        assertEquals(Arrays.asList("Trainer", "Monster"), _workspace.snapshot().getGraph().getTopologicalOrder());
+    }
+
+    private Entity entity(String name) {
+        Entity e = new Entity(name, _workspace);
+        e.addAttribute("id", AttributeType.INTEGER);
+        e.setPrimaryKey("id", true);
+
+        return e;
+    }
+
+    private ModelWorkspace _workspace;
+}
@@ -0,0 +1,87 @@
+package test.com.grahammueller.supermodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+
+/**
+ * Times registering and looking up Entities with 1 thread up to one per processor.
+ * Run by hand, with the number of Entities per thread and the most threads as optional arguments.
+ */
+public class EntityManagerConcurrencyBenchmark {
+    public static void main(String[] args) throws Exception {
+        int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        // Warm up, so the first timing isn't mostly the JIT
+        run(perThread, 1);
+        run(perThread, maxThreads);
+
+        int threads = 1;
+
+        while (true) {
+            long elapsed = run(perThread, threads);
+            double perSecond = (double) perThread * threads * 1000000000 / elapsed;
+            System.out.println(String.format("%2d threads: %6d ms, %,10.0f registrations and lookups per second", threads, elapsed / 1000000, perSecond));
+
+            if (threads == maxThreads) {
+                break;
+            }
+
+            threads = Math.min(threads * 2, maxThreads);
+        }
+    }
+
+    /**
+     * Registers Entities from several threads at once, each looking up what it registered
+     * @return The time taken, in nanoseconds
+     */
+    private static long run(final int perThread, int threads) throws Exception {
+        final ModelWorkspace workspace = new ModelWorkspace();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+
+                        for (int i = 0; i < perThread; i++) {
+                            String name = "Entity" + thread + "x" + i;
+                            new Entity(name, workspace);
+
+                            if (workspace.getEntityByName(name) == null) {
+                                throw new IllegalStateException(name + " wasn't registered");
+                            }
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+
+            return System.nanoTime() - begin;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
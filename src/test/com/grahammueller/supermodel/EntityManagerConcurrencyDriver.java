@@ -0,0 +1,173 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+
+public class EntityManagerConcurrencyDriver {
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int ENTITIES_PER_THREAD = 2000;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        EntityManager.clearRegistry();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        EntityManager.clearRegistry();
+    }
+
+    @Test
+    public void testParallelRegisterAndLookup() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    start.await();
+
+                    int found = 0;
+                    for (int i = 0; i < ENTITIES_PER_THREAD; i++) {
+                        String name = "Entity" + thread + "x" + i;
+                        new Entity(name);
+
+                        if (EntityManager.getEntityByName(name) != null) {
+                            found++;
+                        }
+
+                        // Reads of other threads' work must never fail. The list is copied
+                        // after every change, so reading it on every pass would be quadratic.
+                        if (i % 100 == 0) {
+                            EntityManager.getAllEntities().size();
+                        }
+                    }
+
+                    return found;
+                }
+            }));
+        }
+
+        start.countDown();
+        for (Future<Integer> result : results) {
+            assertEquals(ENTITIES_PER_THREAD, result.get().intValue());
+        }
+
+        List<Entity> all = EntityManager.getAllEntities();
+        assertEquals(THREADS * ENTITIES_PER_THREAD, all.size());
+        assertEquals(THREADS * ENTITIES_PER_THREAD, new HashSet<Entity>(all).size());
+    }
+
+    @Test
+    public void testConcurrentRegistrationHasOneWinner() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger successes = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        List<Future<?>> results = new ArrayList<Future<?>>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+
+                    for (int i = 0; i < ENTITIES_PER_THREAD; i++) {
+                        // Alternate case, so table name collisions race too
+                        String name = (thread % 2 == 0 ? "Shared" : "SHARED") + i;
+
+                        try {
+                            new Entity(name);
+                            successes.incrementAndGet();
+                        }
+                        catch (IllegalArgumentException iae) {
+                            failures.incrementAndGet();
+                        }
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+
+        assertEquals(ENTITIES_PER_THREAD, successes.get());
+        assertEquals((THREADS - 1) * ENTITIES_PER_THREAD, failures.get());
+        assertEquals(ENTITIES_PER_THREAD, EntityManager.getAllEntities().size());
+    }
+
+    @Test
+    public void testConcurrentRenamesStayUnique() throws Exception {
+        final List<Entity> entities = new ArrayList<Entity>();
+        for (int i = 0; i < THREADS; i++) {
+            entities.add(new Entity("Pokemon" + i));
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final Entity entity = entities.get(t);
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+
+                    for (int i = 0; i < ENTITIES_PER_THREAD; i++) {
+                        try {
+                            entity.setName("Renamed" + i);
+                        }
+                        catch (IllegalArgumentException iae) {
+                            // Another thread holds this name
+                        }
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+
+        Set<String> names = new HashSet<String>();
+        for (Entity entity : EntityManager.getAllEntities()) {
+            assertTrue(names.add(entity.getName()));
+            assertSame(entity, EntityManager.getEntityByName(entity.getName()));
+        }
+
+        assertEquals(THREADS, names.size());
+
+        // No stale names may be left behind
+        for (int i = 0; i < ENTITIES_PER_THREAD; i++) {
+            Entity entity = EntityManager.getEntityByName("Renamed" + i);
+            assertTrue(entity == null || entity.getName().equals("Renamed" + i));
+        }
+    }
+}
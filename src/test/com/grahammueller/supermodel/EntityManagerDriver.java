@@ -53,6 +53,79 @@ public class EntityManagerDriver {
         assertFalse(EntityManager.containsEntity("Something"));
     }
 
+    @Test
+    public void testGetEntityByName() {
+        Entity pokemon = new Entity("Pokemon");
+
+        assertSame(pokemon, EntityManager.getEntityByName("Pokemon"));
+        assertNull(EntityManager.getEntityByName("pokemon"));
+    }
+
+    @Test
+    public void testGetEntityByNameAfterRename() {
+        Entity pokemon = new Entity("Pokemon");
+        pokemon.setName("Monster");
+
+        assertNull(EntityManager.getEntityByName("Pokemon"));
+        assertSame(pokemon, EntityManager.getEntityByName("Monster"));
+        assertSame(pokemon, EntityManager.getEntityByTableName("monster"));
+    }
+
+    @Test
+    public void testTableNameCollisionNotAllowed() {
+        new Entity("Pokemon");
+
+        String failureMessage = null;
+        try {
+            new Entity("POKEMON");
+        }
+        catch(IllegalArgumentException iae) {
+            failureMessage = iae.getMessage();
+        }
+
+        assertEquals("Entity table name already in use", failureMessage);
+        assertEquals(1, EntityManager.getAllEntities().size());
+    }
+
+    @Test
+    public void testTableNameCollisionOnRename() {
+        new Entity("Pokemon");
+        Entity trainer = new Entity("Trainer");
+
+        String failureMessage = null;
+        try {
+            trainer.setName("pokemon");
+        }
+        catch(IllegalArgumentException iae) {
+            failureMessage = iae.getMessage();
+        }
+
+        assertEquals("Entity table name already in use", failureMessage);
+        assertEquals("Trainer", trainer.getName());
+    }
+
+    @Test
+    public void testRenameCaseOnly() {
+        Entity pokemon = new Entity("Pokemon");
+        pokemon.setName("PokeMon");
+
+        assertSame(pokemon, EntityManager.getEntityByName("PokeMon"));
+        assertSame(pokemon, EntityManager.getEntityByTableName("pokemon"));
+    }
+
+    @Test
+    public void testGetAllEntitiesKeepsRegistrationOrder() {
+        Entity trainer = new Entity("Trainer");
+        Entity pokemon = new Entity("Pokemon");
+        Entity gym = new Entity("Gym");
+
+        EntityManager.removeEntity(pokemon);
+
+        assertEquals(2, EntityManager.getAllEntities().size());
+        assertSame(trainer, EntityManager.getAllEntities().get(0));
+        assertSame(gym, EntityManager.getAllEntities().get(1));
+    }
+
     @Test
     public void testBasicRemoveEntity() {
         Entity trainer = Entity.fromString("Trainer$id:INTEGER#name:STRING#$#");
@@ -73,6 +146,42 @@ public class EntityManagerDriver {
         assertEquals(0, pokemon.getRelationships().size());
     }
 
+    @Test
+    public void testRemoveEntityDropsInboundRelationships() {
+        Entity pokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$");
+        Entity trainer = Entity.fromString("Trainer$id:INTEGER_PRIMARY_KEY#$party:Pokemon#rival:Trainer#");
+        Entity gym = Entity.fromString("Gym$id:INTEGER_PRIMARY_KEY#$leader:Trainer#roster:Pokemon#");
+
+        EntityManager.removeEntity(pokemon);
+
+        assertEquals(1, trainer.getRelationships().size());
+        assertEquals("rival", trainer.getRelationships().get(0).getName());
+        assertEquals(1, gym.getRelationships().size());
+        assertEquals("leader", gym.getRelationships().get(0).getName());
+        assertTrue(EntityManager.getInboundRelationships(pokemon).isEmpty());
+    }
+
+    @Test
+    public void testInboundRelationships() {
+        Entity pokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$");
+        Entity trainer = Entity.fromString("Trainer$id:INTEGER_PRIMARY_KEY#$party:Pokemon#");
+        Entity gym = Entity.fromString("Gym$id:INTEGER_PRIMARY_KEY#$roster:Pokemon#");
+
+        assertEquals(2, EntityManager.getInboundRelationships(pokemon).size());
+        assertTrue(EntityManager.getInboundRelationships(trainer).isEmpty());
+
+        gym.updateRelationshipEntity("roster", trainer);
+        assertEquals(1, EntityManager.getInboundRelationships(pokemon).size());
+        assertEquals(1, EntityManager.getInboundRelationships(trainer).size());
+        assertSame(gym, EntityManager.getInboundRelationships(trainer).iterator().next().getSource());
+
+        trainer.removeRelationship("party");
+        assertTrue(EntityManager.getInboundRelationships(pokemon).isEmpty());
+
+        gym.removeAttribute("id");
+        assertTrue(EntityManager.getInboundRelationships(trainer).isEmpty());
+    }
+
     @Test
     public void testListenerMethodForAdd() {
         EntityManagerListenerImpl addTester = new EntityManagerListenerImpl();
@@ -140,6 +249,16 @@ public class EntityManagerDriver {
         EntityManager.unregisterForEntityUpdates(removeTester);
     }
 
+    @Test
+    public void testUnregisteredListenerNotNotified() {
+        EntityManagerListenerImpl tester = new EntityManagerListenerImpl();
+        EntityManager.registerForEntityUpdates(tester);
+        EntityManager.unregisterForEntityUpdates(tester);
+
+        new Entity("Pokemon");
+        assertFalse(tester.didHitAdded);
+    }
+
     private class EntityManagerListenerImpl implements EntityManagerListener {
         public boolean didHitAdded;
         public boolean didHitUpdated;
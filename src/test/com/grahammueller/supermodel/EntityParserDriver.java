@@ -0,0 +1,237 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.EntityParseException;
+import com.grahammueller.supermodel.entity.EntityParser;
+import com.grahammueller.supermodel.entity.EntitySnapshot;
+import com.grahammueller.supermodel.entity.UnresolvedEntitiesException;
+
+public class EntityParserDriver {
+    private EntityParseException failure;
+
+    @Before
+    public void setUp() {
+        EntityManager.clearRegistry();
+        failure = null;
+    }
+
+    @Test
+    public void testParseEntity() {
+        EntitySnapshot entity = EntityParser.parse("Pokemon$id:INTEGER_PRIMARY_KEY#name:STRING#$owner:Trainer#");
+
+        assertEquals("Pokemon", entity.getName());
+        assertEquals(2, entity.getAttributes().size());
+        assertEquals("id", entity.getPrimaryKey().getName());
+        assertEquals(AttributeType.INTEGER, entity.getPrimaryKey().getType());
+        assertEquals(AttributeType.STRING, entity.getAttributes().get(1).getType());
+        assertFalse(entity.getAttributes().get(1).isPrimaryKey());
+        assertEquals("owner", entity.getRelationships().get(0).getName());
+        assertEquals("Trainer", entity.getRelationships().get(0).getEntityName());
+    }
+
+    @Test
+    public void testParseRoundTrips() {
+        String text = "Pokemon$id:LONG_PRIMARY_KEY#image:BLOB#caught:DATE#$self:Pokemon#";
+
+        assertEquals(text, EntityParser.parse(text).toString());
+    }
+
+    @Test
+    public void testSegmentsAreTrimmed() {
+        EntitySnapshot entity = EntityParser.parse("Pokemon$ id:INTEGER #  # $ owner:Trainer\t#");
+
+        assertEquals(1, entity.getAttributes().size());
+        assertEquals("id", entity.getAttributes().get(0).getName());
+        assertEquals("Trainer", entity.getRelationships().get(0).getEntityName());
+    }
+
+    @Test
+    public void testMalformedAttributeOffset() {
+        parseExpectingFailure("Pokemon$id:INTEGER#name#$");
+
+        assertEquals("Attribute malformed", failure.getMessage());
+        assertEquals(19, failure.getOffset());
+    }
+
+    @Test
+    public void testInvalidNameOffset() {
+        parseExpectingFailure("Pokemon$$owner:Trainer#2nd:Trainer#");
+
+        assertEquals("Relationship name can't start with a number", failure.getMessage());
+        assertEquals(23, failure.getOffset());
+    }
+
+    @Test
+    public void testUnknownTypeOffset() {
+        parseExpectingFailure("Pokemon$id:LONG_LONG#$");
+
+        assertTrue(failure.getMessage().contains("AttributeType.LONG_LONG"));
+        assertEquals(11, failure.getOffset());
+    }
+
+    @Test
+    public void testExtraSectionMalformed() {
+        parseExpectingFailure("Pokemon$$owner:Trainer#$");
+
+        assertEquals("Entity malformed", failure.getMessage());
+        assertEquals(23, failure.getOffset());
+    }
+
+    @Test
+    public void testReaderParsesLines() throws Exception {
+        EntityParser parser = new EntityParser(new StringReader("Trainer$$\r\n\nPokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#\nGym$$"));
+
+        assertEquals("Trainer", parser.next().getName());
+        assertEquals("owner", parser.next().getRelationships().get(0).getName());
+        assertEquals("Gym", parser.next().getName());
+        assertNull(parser.next());
+    }
+
+    @Test
+    public void testReaderOffsetsCountFromStart() throws Exception {
+        EntityParser parser = new EntityParser(new StringReader("Trainer$$\nPokemon$id$"));
+        parser.next();
+
+        try {
+            parser.next();
+        }
+        catch (EntityParseException epe) {
+            failure = epe;
+        }
+
+        assertEquals("Attribute malformed", failure.getMessage());
+        assertEquals(18, failure.getOffset());
+    }
+
+    @Test
+    public void testFromStringRegistersNothingOnFailure() {
+        try {
+            Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected, Trainer doesn't exist
+        }
+
+        try {
+            Entity.fromString("Pokemon$");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+
+        assertEquals(0, EntityManager.getAllEntities().size());
+    }
+
+    @Test
+    public void testFromStringSelfRelationship() {
+        Entity pokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$evolvesFrom:Pokemon#");
+
+        assertSame(pokemon, pokemon.getRelationships().get(0).getEntity());
+    }
+
+    @Test
+    public void testNonAsciiNameInvalid() {
+        parseExpectingFailure("Pok\u00e9mon$$");
+
+        assertEquals("Invalid characters in Entity name", failure.getMessage());
+        assertEquals(0, failure.getOffset());
+    }
+
+    @Test
+    public void testFromStringsLinksForwardAndCycles() {
+        List<Entity> entities = Entity.fromStrings(Arrays.asList(
+                "Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#",
+                "Trainer$id:LONG_PRIMARY_KEY#$favorite:Pokemon#"));
+
+        Entity pokemon = entities.get(0);
+        Entity trainer = entities.get(1);
+
+        assertSame(trainer, pokemon.getRelationships().get(0).getEntity());
+        assertSame(pokemon, trainer.getRelationships().get(0).getEntity());
+        assertSame(trainer, EntityManager.getEntityByName("Trainer"));
+    }
+
+    @Test
+    public void testFromStringsReportsAllUnresolved() {
+        new Entity("Gym");
+        UnresolvedEntitiesException unresolved = null;
+
+        try {
+            Entity.fromStrings(Arrays.asList(
+                    "Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#home:Gym#",
+                    "Move$id:INTEGER_PRIMARY_KEY#$user:Pokemon#type:Element#teacher:Trainer#"));
+        }
+        catch (UnresolvedEntitiesException uee) {
+            unresolved = uee;
+        }
+
+        assertEquals(Arrays.asList("Trainer", "Element"), unresolved.getEntityNames());
+        assertEquals(1, EntityManager.getAllEntities().size());
+    }
+
+    @Test
+    public void testSingleUnresolvedMessage() {
+        try {
+            Entity.fromStrings(Arrays.asList("Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#"));
+            fail("Loaded a Relationship to a missing Entity");
+        }
+        catch (UnresolvedEntitiesException uee) {
+            assertEquals("Other Entity, \"Trainer,\" doesn't exist", uee.getMessage());
+        }
+    }
+
+    @Test
+    public void testParseAllInParallel() {
+        List<String> texts = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            // Each points at the next, so none could be loaded one at a time in this order
+            texts.add("Entity" + i + "$id:INTEGER_PRIMARY_KEY#$next:Entity" + ((i + 1) % 20000) + "#");
+        }
+
+        List<Entity> entities = Entity.fromStrings(texts);
+
+        assertEquals(20000, EntityManager.getAllEntities().size());
+        for (int i = 0; i < entities.size(); i++) {
+            assertEquals("Entity" + i, entities.get(i).getName());
+            assertSame(entities.get((i + 1) % 20000), entities.get(i).getRelationships().get(0).getEntity());
+        }
+    }
+
+    @Test
+    public void testParseAllReportsEarliestFailure() {
+        List<String> texts = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            texts.add(i == 7000 ? "Broken$id#$" : i == 15000 ? "AlsoBroken" : "Entity" + i + "$$");
+        }
+
+        try {
+            EntityParser.parseAll(texts);
+        }
+        catch (EntityParseException epe) {
+            failure = epe;
+        }
+
+        assertEquals("Attribute malformed", failure.getMessage());
+    }
+
+    private void parseExpectingFailure(String text) {
+        try {
+            EntityParser.parse(text);
+        }
+        catch (EntityParseException epe) {
+            failure = epe;
+        }
+
+        assertNotNull(failure);
+    }
+}
@@ -0,0 +1,132 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeSnapshot;
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.ModelDiff;
+import com.grahammueller.supermodel.entity.ModelSnapshot;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+
+public class ModelDiffDriver {
+    @Before
+    public void setUp() {
+        _workspace = new ModelWorkspace();
+
+        Entity trainer = new Entity("Trainer", _workspace);
+        trainer.addAttribute("id", AttributeType.INTEGER);
+        trainer.setPrimaryKey("id", true);
+        trainer.addAttribute("name", AttributeType.STRING);
+
+        Entity pokemon = new Entity("Pokemon", _workspace);
+        pokemon.addAttribute("id", AttributeType.INTEGER);
+        pokemon.setPrimaryKey("id", true);
+        pokemon.addAttribute("level", AttributeType.INTEGER);
+        trainer.addRelationship("pokemon", pokemon);
+
+        Entity gym = new Entity("Gym", _workspace);
+        gym.addAttribute("badge", AttributeType.STRING);
+    }
+
+    @Test
+    public void testNoChanges() {
+        ModelSnapshot before = _workspace.snapshot();
+
+        assertTrue(ModelDiff.compare(before, _workspace.snapshot()).isEmpty());
+    }
+
+    @Test
+    public void testAddedAndRemovedEntities() {
+        ModelSnapshot before = _workspace.snapshot();
+
+        _workspace.removeEntity(_workspace.getEntityByName("Gym"));
+        new Entity("Item", _workspace).addAttribute("cost", AttributeType.INTEGER);
+
+        ModelDiff diff = ModelDiff.compare(before, _workspace.snapshot());
+
+        assertEquals("Item", diff.getAddedEntities().get(0));
+        assertEquals("Gym", diff.getRemovedEntities().get(0));
+        assertTrue(diff.getRenamedEntities().isEmpty());
+        assertTrue(diff.getChangedEntities().isEmpty());
+    }
+
+    @Test
+    public void testRenamedEntity() {
+        ModelSnapshot before = _workspace.snapshot();
+
+        _workspace.getEntityByName("Pokemon").setName("Monster");
+
+        ModelDiff diff = ModelDiff.compare(before, _workspace.snapshot());
+
+        assertEquals("Monster", diff.getRenamedEntities().get("Pokemon"));
+        assertTrue(diff.getAddedEntities().isEmpty());
+        assertTrue(diff.getRemovedEntities().isEmpty());
+
+        // Trainer still points at the same Entity
+        assertTrue(diff.getChangedEntities().isEmpty());
+    }
+
+    @Test
+    public void testAttributeChanges() {
+        ModelSnapshot before = _workspace.snapshot();
+
+        Entity trainer = _workspace.getEntityByName("Trainer");
+        trainer.updateAttributeType("name", AttributeType.BLOB);
+        trainer.setPrimaryKey("id", false);
+        trainer.addAttribute("age", AttributeType.INTEGER);
+
+        ModelDiff diff = ModelDiff.compare(before, _workspace.snapshot());
+        ModelDiff.EntityChange change = diff.getChangedEntities().get(0);
+
+        assertEquals(1, diff.getChangedEntities().size());
+        assertEquals("Trainer", change.getEntityName());
+        assertEquals("age", change.getAddedAttributes().get(0).getName());
+        assertEquals(2, change.getChangedAttributes().size());
+
+        ModelDiff.Change<AttributeSnapshot> retyped = change.getChangedAttributes().get(1);
+        assertEquals(AttributeType.STRING, retyped.getBefore().getType());
+        assertEquals(AttributeType.BLOB, retyped.getAfter().getType());
+        assertTrue(change.getChangedAttributes().get(0).getBefore().isPrimaryKey());
+        assertFalse(change.getChangedAttributes().get(0).getAfter().isPrimaryKey());
+    }
+
+    @Test
+    public void testRelationshipRetargeted() {
+        Entity gym = _workspace.getEntityByName("Gym");
+        gym.addAttribute("id", AttributeType.INTEGER);
+        gym.setPrimaryKey("id", true);
+
+        ModelSnapshot before = _workspace.snapshot();
+
+        _workspace.getEntityByName("Trainer").updateRelationshipEntity("pokemon", gym);
+
+        ModelDiff diff = ModelDiff.compare(before, _workspace.snapshot());
+        ModelDiff.EntityChange change = diff.getChangedEntities().get(0);
+
+        assertEquals("Pokemon", change.getRetargetedRelationships().get(0).getBefore().getEntityName());
+        assertEquals("Gym", change.getRetargetedRelationships().get(0).getAfter().getEntityName());
+        assertTrue(diff.toString().contains("pokemon -> Pokemon -> Gym"));
+    }
+
+    @Test
+    public void testLargeModelOnlyComparesChanges() {
+        ModelWorkspace workspace = new ModelWorkspace();
+
+        for (int i = 0; i < 50000; i++) {
+            new Entity("Entity" + i, workspace).addAttribute("value", AttributeType.INTEGER);
+        }
+
+        ModelSnapshot before = workspace.snapshot();
+        workspace.getEntityByName("Entity25000").updateAttributeType("value", AttributeType.LONG);
+
+        ModelDiff diff = ModelDiff.compare(before, workspace.snapshot());
+
+        assertEquals(1, diff.getChangedEntities().size());
+        assertEquals("Entity25000", diff.getChangedEntities().get(0).getEntityName());
+    }
+
+    private ModelWorkspace _workspace;
+}
@@ -0,0 +1,188 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.Attribute;
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityBatch;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.ModelEvent;
+import com.grahammueller.supermodel.entity.ModelEventAdapter;
+import com.grahammueller.supermodel.entity.ModelEventListener;
+import com.grahammueller.supermodel.entity.Relationship;
+
+public class ModelEventDriver {
+    private EventRecorder recorder;
+
+    @Before
+    public void setUp() {
+        EntityManager.clearRegistry();
+        recorder = new EventRecorder();
+        EntityManager.registerForModelEvents(recorder);
+    }
+
+    @After
+    public void tearDown() {
+        EntityManager.unregisterForModelEvents(recorder);
+    }
+
+    @Test
+    public void testAttributeEvents() {
+        Entity pokemon = new Entity("Pokemon");
+        pokemon.addAttribute("id", AttributeType.INTEGER);
+        pokemon.setPrimaryKey("id", true);
+        pokemon.updateAttributeName("id", "number");
+        pokemon.updateAttributeType("number", AttributeType.STRING);
+        pokemon.removeAttribute("number");
+
+        assertTypes(ModelEvent.Type.ENTITY_ADDED, ModelEvent.Type.ATTRIBUTE_ADDED, ModelEvent.Type.PRIMARY_KEY_CHANGED,
+                ModelEvent.Type.ATTRIBUTE_RENAMED, ModelEvent.Type.ATTRIBUTE_TYPE_CHANGED, ModelEvent.Type.PRIMARY_KEY_CHANGED,
+                ModelEvent.Type.ATTRIBUTE_REMOVED);
+
+        ModelEvent.AttributeEvent renamed = (ModelEvent.AttributeEvent) recorder.events.get(3);
+        assertSame(pokemon, renamed.getEntity());
+        assertEquals("id", renamed.getOldName());
+        assertEquals("number", renamed.getAttribute().getName());
+
+        ModelEvent.AttributeEvent retyped = (ModelEvent.AttributeEvent) recorder.events.get(4);
+        assertEquals(AttributeType.INTEGER, retyped.getOldType());
+        assertEquals(AttributeType.STRING, retyped.getAttribute().getType());
+    }
+
+    @Test
+    public void testUnchangedPrimaryKeyNotReported() {
+        Entity.fromString("Pokemon$name:STRING#$");
+
+        assertTypes(ModelEvent.Type.ENTITY_ADDED, ModelEvent.Type.ATTRIBUTE_ADDED);
+    }
+
+    @Test
+    public void testRelationshipEvents() {
+        Entity trainer = new Entity("Trainer");
+        Entity gym = new Entity("Gym");
+        Entity pokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#");
+        recorder.events.clear();
+
+        pokemon.updateRelationshipName("owner", "trainer");
+        pokemon.updateRelationshipEntity("trainer", gym);
+        pokemon.removeRelationship("trainer");
+
+        assertTypes(ModelEvent.Type.RELATIONSHIP_RENAMED, ModelEvent.Type.RELATIONSHIP_RETARGETED,
+                ModelEvent.Type.RELATIONSHIP_REMOVED);
+
+        ModelEvent.RelationshipEvent retargeted = (ModelEvent.RelationshipEvent) recorder.events.get(1);
+        assertSame(trainer, retargeted.getOldEntity());
+        assertSame(gym, retargeted.getRelationship().getEntity());
+    }
+
+    @Test
+    public void testRemovingPrimaryKeyClearsRelationships() {
+        Entity pokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$self:Pokemon#");
+        recorder.events.clear();
+
+        pokemon.removeAttribute("id");
+
+        assertTypes(ModelEvent.Type.RELATIONSHIPS_CLEARED, ModelEvent.Type.ATTRIBUTE_REMOVED);
+    }
+
+    @Test
+    public void testAdapterDispatchesByType() {
+        final List<String> calls = new ArrayList<String>();
+        ModelEventAdapter adapter = new ModelEventAdapter() {
+            @Override
+            public void entityRenamed(Entity e, String oldName, String newName) {
+                calls.add(oldName + " -> " + newName);
+            }
+
+            @Override
+            public void attributeAdded(Entity e, Attribute attr) {
+                calls.add(e.getName() + "." + attr.getName());
+            }
+
+            @Override
+            public void relationshipAdded(Entity e, Relationship rltn) {
+                calls.add(e.getName() + "." + rltn.getName() + ":" + rltn.getEntity().getName());
+            }
+        };
+        EntityManager.registerForModelEvents(adapter);
+
+        Entity pokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$self:Pokemon#");
+        pokemon.setName("Digimon");
+
+        EntityManager.unregisterForModelEvents(adapter);
+
+        assertEquals(3, calls.size());
+        assertEquals("Pokemon.id", calls.get(0));
+        assertEquals("Pokemon.self:Pokemon", calls.get(1));
+        assertEquals("Pokemon -> Digimon", calls.get(2));
+    }
+
+    @Test
+    public void testBatchIsOneEvent() {
+        Entity gym = new Entity("Gym");
+        recorder.events.clear();
+
+        final List<String> calls = new ArrayList<String>();
+        ModelEventAdapter adapter = new ModelEventAdapter() {
+            @Override
+            public void entityAdded(Entity e) {
+                calls.add("added " + e.getName());
+            }
+
+            @Override
+            public void entityRenamed(Entity e, String oldName, String newName) {
+                calls.add("renamed " + oldName + " " + newName);
+            }
+        };
+        EntityManager.registerForModelEvents(adapter);
+
+        EntityBatch batch = EntityManager.beginBatch();
+        batch.createEntity("Trainer");
+        batch.renameEntity(gym, "Arena");
+        batch.commit();
+
+        EntityManager.unregisterForModelEvents(adapter);
+
+        assertTypes(ModelEvent.Type.ENTITIES_CHANGED);
+
+        ModelEvent.EntitiesChangedEvent event = (ModelEvent.EntitiesChangedEvent) recorder.events.get(0);
+        assertEquals(1, event.getChanges().getAddedEntities().size());
+        assertEquals("Gym", event.getChanges().getOldName(gym));
+
+        // The adapter expands the batch by default
+        assertEquals(2, calls.size());
+        assertEquals("renamed Gym Arena", calls.get(0));
+        assertEquals("added Trainer", calls.get(1));
+    }
+
+    @Test
+    public void testUnregisteredListenerNotNotified() {
+        EntityManager.unregisterForModelEvents(recorder);
+
+        new Entity("Pokemon");
+
+        assertTrue(recorder.events.isEmpty());
+    }
+
+    private void assertTypes(ModelEvent.Type... types) {
+        assertEquals(types.length, recorder.events.size());
+
+        for (int i = 0; i < types.length; i++) {
+            assertEquals(types[i], recorder.events.get(i).getType());
+        }
+    }
+
+    private static class EventRecorder implements ModelEventListener {
+        final List<ModelEvent> events = new ArrayList<ModelEvent>();
+
+        @Override
+        public void modelChanged(ModelEvent event) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.EntitySnapshot;
+import com.grahammueller.supermodel.entity.ModelEvent;
+import com.grahammueller.supermodel.entity.ModelEventListener;
+import com.grahammueller.supermodel.entity.ModelFile;
+import com.grahammueller.supermodel.entity.ModelSnapshot;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+
+public class ModelFileDriver {
+    @Before
+    public void setUp() {
+        EntityManager.clearRegistry();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        buildModel();
+        ModelSnapshot original = EntityManager.snapshot();
+
+        File file = File.createTempFile("model", ".smdl");
+        file.deleteOnExit();
+        ModelFile.write(original, file);
+
+        ModelSnapshot loaded = ModelFile.read(file);
+
+        assertEquals(original.getAllEntities().size(), loaded.getAllEntities().size());
+        for (EntitySnapshot entity : original.getAllEntities()) {
+            assertEquals(entity.toString(), loaded.getEntityByName(entity.getName()).toString());
+        }
+    }
+
+    @Test
+    public void testLoadIntoWorkspace() throws IOException {
+        buildModel();
+
+        File file = File.createTempFile("model", ".smdl");
+        file.deleteOnExit();
+        ModelFile.write(EntityManager.snapshot(), file);
+
+        ModelWorkspace workspace = new ModelWorkspace();
+        List<Entity> loaded = ModelFile.load(file, workspace);
+
+        assertEquals(3, loaded.size());
+        Entity pokemon = workspace.getEntityByName("Pokemon");
+        assertEquals("id", pokemon.getPrimaryKey().getName());
+        assertSame(workspace.getEntityByName("Trainer"), pokemon.getRelationships().get(0).getEntity());
+        assertSame(pokemon, pokemon.getRelationships().get(1).getEntity());
+    }
+
+    @Test
+    public void testNamesAreStoredOnce() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            Entity e = new Entity("Entity" + i);
+            e.addAttribute("identifier", AttributeType.INTEGER);
+            e.addAttribute("description", AttributeType.STRING);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFile.write(EntityManager.snapshot(), out);
+
+        // Each record is a few bytes of indices, rather than repeating the names
+        assertTrue(out.size() < 50 * ("identifier".length() + "description".length()));
+    }
+
+    @Test
+    public void testRejectsOtherFiles() {
+        assertReadFails("Not a SuperModel model file", "Pokemon$$".getBytes());
+        assertReadFails("Unsupported model file version 9", new byte[] { 'S', 'M', 'D', 'L', 9 });
+    }
+
+    @Test
+    public void testRejectsTruncatedFile() throws IOException {
+        buildModel();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFile.write(EntityManager.snapshot(), out);
+        byte[] bytes = out.toByteArray();
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        assertReadFails("Model file truncated", truncated);
+    }
+
+    @Test
+    public void testRejectsImpossibleCounts() throws IOException {
+        buildModel();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFile.write(EntityManager.snapshot(), out);
+        byte[] bytes = out.toByteArray();
+
+        // A string count far beyond the file's length, after the magic and version
+        byte[] corrupt = bytes.clone();
+        corrupt[5] = (byte) 0xFF;
+        corrupt[6] = (byte) 0xFF;
+        corrupt[7] = (byte) 0xFF;
+        corrupt[8] = (byte) 0xFF;
+        corrupt[9] = (byte) 0x07;
+
+        assertReadFails("Model file corrupt", corrupt);
+    }
+
+    @Test
+    public void testRejectsImpossibleRecordOffsets() throws IOException {
+        new Entity("Pokemon");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFile.write(EntityManager.snapshot(), out);
+
+        // The one Entity's offset, just before its three byte record, pointing far past the end of the file
+        byte[] corrupt = out.toByteArray();
+        int offset = corrupt.length - 7;
+        corrupt[offset] = (byte) 0x7F;
+        corrupt[offset + 1] = (byte) 0xFF;
+        corrupt[offset + 2] = (byte) 0xFF;
+        corrupt[offset + 3] = (byte) 0xFF;
+
+        assertReadFails("Model file corrupt", corrupt);
+    }
+
+    @Test
+    public void testLoadNotifiesOnce() throws IOException {
+        buildModel();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFile.write(EntityManager.snapshot(), out);
+        ModelSnapshot model = ModelFile.read(ByteBuffer.wrap(out.toByteArray()));
+
+        EntityManager.clearRegistry();
+        final List<ModelEvent> events = new ArrayList<ModelEvent>();
+        ModelEventListener listener = new ModelEventListener() {
+            public void modelChanged(ModelEvent event) {
+                events.add(event);
+            }
+        };
+        EntityManager.registerForModelEvents(listener);
+
+        EntityManager.addEntities(model.getAllEntities());
+
+        assertEquals(1, events.size());
+        assertEquals(ModelEvent.Type.ENTITIES_CHANGED, events.get(0).getType());
+
+        EntityManager.unregisterForModelEvents(listener);
+    }
+
+    @Test
+    public void testLoadAddsNothingOnFailure() throws IOException {
+        buildModel();
+        ModelSnapshot model = EntityManager.snapshot();
+
+        // Trainer is still registered, so the whole load is refused
+        EntityManager.removeEntity(EntityManager.getEntityByName("Pokemon"));
+        EntityManager.removeEntity(EntityManager.getEntityByName("Gym"));
+
+        try {
+            EntityManager.addEntities(model.getAllEntities());
+            fail("Duplicate Entity loaded");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+
+        assertEquals(1, EntityManager.getAllEntities().size());
+    }
+
+    @Test
+    public void testOpenLoadsOnUse() throws IOException {
+        File file = saveModel();
+
+        List<Entity> opened = ModelFile.open(file, EntityManager.getDefaultWorkspace());
+
+        assertEquals(3, opened.size());
+        assertEquals(3, EntityManager.getAllEntities().size());
+
+        Entity pokemon = EntityManager.getEntityByName("Pokemon");
+        Entity trainer = EntityManager.getEntityByName("Trainer");
+        assertFalse(pokemon.isLoaded());
+        assertFalse(trainer.isLoaded());
+
+        assertEquals("id", pokemon.getPrimaryKey().getName());
+        assertTrue(pokemon.isLoaded());
+
+        // The related Entity is the registered one, and still isn't loaded
+        assertSame(trainer, pokemon.getRelationships().get(0).getEntity());
+        assertFalse(trainer.isLoaded());
+        assertFalse(EntityManager.getEntityByName("Gym").isLoaded());
+    }
+
+    @Test
+    public void testSnapshotDoesNotLoad() throws IOException {
+        buildModel();
+        ModelSnapshot original = EntityManager.snapshot();
+        File file = saveModel();
+
+        ModelFile.open(file, EntityManager.getDefaultWorkspace());
+        ModelSnapshot opened = EntityManager.snapshot();
+
+        for (EntitySnapshot entity : original.getAllEntities()) {
+            assertEquals(entity.toString(), opened.getEntityByName(entity.getName()).toString());
+        }
+
+        for (Entity e : EntityManager.getAllEntities()) {
+            assertFalse(e.isLoaded());
+        }
+    }
+
+    @Test
+    public void testRenameUpdatesUnloadedReferences() throws IOException {
+        ModelFile.open(saveModel(), EntityManager.getDefaultWorkspace());
+
+        EntityManager.getEntityByName("Trainer").setName("Leader");
+
+        assertTrue(EntityManager.getEntityByName("Pokemon").isLoaded());
+        assertEquals("Leader", EntityManager.snapshot().getEntityByName("Pokemon").getRelationships().get(0).getEntityName());
+    }
+
+    @Test
+    public void testRemoveDropsUnloadedReferences() throws IOException {
+        ModelFile.open(saveModel(), EntityManager.getDefaultWorkspace());
+
+        EntityManager.removeEntity(EntityManager.getEntityByName("Trainer"));
+
+        Entity pokemon = EntityManager.getEntityByName("Pokemon");
+        assertEquals(1, pokemon.getRelationships().size());
+        assertEquals("evolvesFrom", pokemon.getRelationships().get(0).getName());
+        assertEquals(1, EntityManager.getInboundRelationships(pokemon).size());
+    }
+
+    @Test
+    public void testOnlyReferencingEntitiesAreLoaded() throws IOException {
+        ModelFile.open(saveModel(), EntityManager.getDefaultWorkspace());
+
+        Entity pokemon = EntityManager.getEntityByName("Pokemon");
+        Entity trainer = EntityManager.getEntityByName("Trainer");
+        Entity gym = EntityManager.getEntityByName("Gym");
+
+        assertEquals(1, EntityManager.getInboundRelationships(trainer).size());
+        assertTrue(pokemon.isLoaded());
+        assertFalse(trainer.isLoaded());
+        assertFalse(gym.isLoaded());
+
+        EntityManager.clearRegistry();
+        ModelFile.open(saveModel(), EntityManager.getDefaultWorkspace());
+        gym = EntityManager.getEntityByName("Gym");
+
+        gym.setName("Stadium");
+        assertTrue(EntityManager.getEntityByName("Trainer").isLoaded());
+        assertFalse(EntityManager.getEntityByName("Pokemon").isLoaded());
+        assertEquals("Stadium", EntityManager.snapshot().getEntityByName("Trainer").getRelationships().get(0).getEntityName());
+
+        EntityManager.removeEntity(gym);
+        assertFalse(EntityManager.getEntityByName("Pokemon").isLoaded());
+        assertTrue(EntityManager.getEntityByName("Trainer").getRelationships().isEmpty());
+    }
+
+    @Test
+    public void testOpenNotifiesOnce() throws IOException {
+        File file = saveModel();
+
+        final List<ModelEvent> events = new ArrayList<ModelEvent>();
+        ModelEventListener listener = new ModelEventListener() {
+            public void modelChanged(ModelEvent event) {
+                events.add(event);
+            }
+        };
+        EntityManager.registerForModelEvents(listener);
+
+        ModelFile.open(file, EntityManager.getDefaultWorkspace());
+        EntityManager.getEntityByName("Pokemon").getAttributes();
+
+        // Loading isn't a change
+        assertEquals(1, events.size());
+        assertEquals(ModelEvent.Type.ENTITIES_CHANGED, events.get(0).getType());
+
+        EntityManager.unregisterForModelEvents(listener);
+    }
+
+    /**
+     * Saves the test model, leaving the default workspace empty
+     */
+    private File saveModel() throws IOException {
+        EntityManager.clearRegistry();
+        buildModel();
+
+        File file = File.createTempFile("model", ".smdl");
+        file.deleteOnExit();
+        ModelFile.write(EntityManager.snapshot(), file);
+
+        EntityManager.clearRegistry();
+        return file;
+    }
+
+    private void buildModel() {
+        // Pokemon points forward to Trainer, which is created after it
+        Entity pokemon = new Entity("Pokemon");
+        Entity trainer = new Entity("Trainer");
+        Entity gym = new Entity("Gym");
+
+        pokemon.addAttribute("id", AttributeType.INTEGER);
+        pokemon.setPrimaryKey("id", true);
+        pokemon.addAttribute("nickname", AttributeType.STRING);
+        pokemon.addAttribute("caught", AttributeType.DATE);
+        pokemon.addRelationship("owner", trainer);
+        pokemon.addRelationship("evolvesFrom", pokemon);
+
+        trainer.addAttribute("id", AttributeType.LONG);
+        trainer.setPrimaryKey("id", true);
+        trainer.addAttribute("name", AttributeType.STRING);
+        trainer.addRelationship("gym", gym);
+
+        gym.addAttribute("badge", AttributeType.BLOB);
+    }
+
+    private void assertReadFails(String message, byte[] bytes) {
+        try {
+            ModelFile.read(ByteBuffer.wrap(bytes));
+            fail("Read " + message);
+        }
+        catch (IOException ioe) {
+            assertEquals(message, ioe.getMessage());
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityBatch;
+import com.grahammueller.supermodel.entity.ModelEventAdapter;
+import com.grahammueller.supermodel.entity.ModelJournal;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+
+public class ModelJournalDriver {
+    @Before
+    public void setUp() throws IOException {
+        _directory = File.createTempFile("journal", "");
+        _directory.delete();
+        _directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : _directory.listFiles()) {
+            file.delete();
+        }
+
+        _directory.delete();
+    }
+
+    @Test
+    public void testReplayRestoresEdits() throws Exception {
+        ModelWorkspace workspace = new ModelWorkspace();
+        ModelJournal journal = ModelJournal.open(_directory, workspace);
+
+        Entity trainer = new Entity("Trainer", workspace);
+        trainer.addAttribute("id", AttributeType.INTEGER);
+        trainer.setPrimaryKey("id", true);
+        trainer.addAttribute("name", AttributeType.STRING);
+
+        Entity pokemon = new Entity("Pokemon", workspace);
+        pokemon.addAttribute("level", AttributeType.INTEGER);
+        trainer.addRelationship("pokemon", pokemon);
+
+        Entity gym = new Entity("Gym", workspace);
+        gym.setName("Stadium");
+        trainer.updateAttributeType("name", AttributeType.DATE);
+        workspace.removeEntity(workspace.getEntityByName("Stadium"));
+
+        assertTrue(journal.sync(5, TimeUnit.SECONDS));
+        journal.close();
+
+        ModelWorkspace restored = new ModelWorkspace();
+        ModelJournal.open(_directory, restored).close();
+
+        assertEquals(workspace.getEntityByName("Trainer").toString(), restored.getEntityByName("Trainer").toString());
+        assertEquals(workspace.getEntityByName("Pokemon").toString(), restored.getEntityByName("Pokemon").toString());
+        assertFalse(restored.containsEntity("Stadium"));
+        assertFalse(restored.containsEntity("Gym"));
+    }
+
+    @Test
+    public void testReplayNotifiesListeners() throws Exception {
+        ModelWorkspace workspace = new ModelWorkspace();
+        ModelJournal journal = ModelJournal.open(_directory, workspace);
+
+        new Entity("Trainer", workspace).addAttribute("name", AttributeType.STRING);
+        new Entity("Pokemon", workspace);
+
+        assertTrue(journal.sync(5, TimeUnit.SECONDS));
+        journal.close();
+
+        // As the main window does, showing each restored Entity as it's added
+        final ModelWorkspace restored = new ModelWorkspace();
+        final List<String> shown = new ArrayList<String>();
+        ModelEventAdapter window = new ModelEventAdapter() {
+            @Override
+            public void entityAdded(Entity e) {
+                assertSame(e, restored.getEntityByName(e.getName()));
+                shown.add(e.getName());
+            }
+        };
+
+        restored.registerForModelEvents(window);
+        ModelJournal.open(_directory, restored).close();
+
+        assertEquals(2, shown.size());
+        assertTrue(shown.containsAll(Arrays.asList("Trainer", "Pokemon")));
+    }
+
+    @Test
+    public void testReplayRestoresBatches() throws Exception {
+        ModelWorkspace workspace = new ModelWorkspace();
+        ModelJournal journal = ModelJournal.open(_directory, workspace);
+
+        Entity first = new Entity("First", workspace);
+        Entity second = new Entity("Second", workspace);
+        first.addAttribute("marker", AttributeType.BOOLEAN);
+
+        // Renames apply in order, so names are swapped through a third
+        EntityBatch batch = workspace.beginBatch();
+        batch.renameEntity(first, "Swap");
+        batch.renameEntity(second, "First");
+        batch.renameEntity(first, "Second");
+        Entity cycleA = batch.createEntity("CycleA");
+        Entity cycleB = batch.createEntity("CycleB");
+        cycleA.addAttribute("id", AttributeType.INTEGER);
+        cycleA.setPrimaryKey("id", true);
+        cycleB.addAttribute("id", AttributeType.INTEGER);
+        cycleB.setPrimaryKey("id", true);
+        batch.addRelationship(cycleA, "b", cycleB);
+        batch.addRelationship(cycleB, "a", cycleA);
+        batch.commit();
+
+        assertTrue(journal.sync(5, TimeUnit.SECONDS));
+        journal.close();
+
+        ModelWorkspace restored = new ModelWorkspace();
+        ModelJournal.open(_directory, restored).close();
+
+        assertEquals(4, restored.getAllEntities().size());
+        assertEquals(workspace.getEntityByName("CycleA").toString(), restored.getEntityByName("CycleA").toString());
+        assertEquals(workspace.getEntityByName("CycleB").toString(), restored.getEntityByName("CycleB").toString());
+        assertTrue(restored.getEntityByName("First").getAttributes().isEmpty());
+        assertEquals("marker", restored.getEntityByName("Second").getAttributes().get(0).getName());
+        assertFalse(restored.containsEntity("Swap"));
+    }
+
+    @Test
+    public void testReplayDoesNotReviveRemovedEntities() throws Exception {
+        ModelWorkspace workspace = new ModelWorkspace();
+        ModelJournal journal = ModelJournal.open(_directory, workspace);
+
+        Entity alpha = new Entity("Alpha", workspace);
+        alpha.addAttribute("id", AttributeType.INTEGER);
+        alpha.setPrimaryKey("id", true);
+        Entity beta = new Entity("Beta", workspace);
+
+        // The Relationship's own change comes after the batch removed its source
+        EntityBatch batch = workspace.beginBatch();
+        batch.addRelationship(alpha, "betas", beta);
+        batch.removeEntity(alpha);
+        batch.commit();
+
+        // And creating Alpha again has to replay too
+        batch = workspace.beginBatch();
+        batch.createEntity("Alpha");
+        batch.commit();
+
+        assertTrue(journal.sync(5, TimeUnit.SECONDS));
+        journal.close();
+
+        ModelWorkspace restored = new ModelWorkspace();
+        ModelJournal.open(_directory, restored).close();
+
+        assertEquals(2, restored.getAllEntities().size());
+        assertEquals(workspace.getEntityByName("Alpha").toString(), restored.getEntityByName("Alpha").toString());
+        assertEquals(workspace.getEntityByName("Beta").toString(), restored.getEntityByName("Beta").toString());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        ModelWorkspace workspace = new ModelWorkspace();
+        ModelJournal journal = ModelJournal.open(_directory, workspace, 512);
+
+        for (int i = 0; i < 50; i++) {
+            Entity e = new Entity("Entity" + i, workspace);
+            e.addAttribute("description", AttributeType.STRING);
+        }
+
+        assertTrue(journal.sync(5, TimeUnit.SECONDS));
+        assertTrue(journal.getGeneration() > 0);
+        journal.close();
+
+        // Only the latest generation is kept
+        assertEquals(2, _directory.listFiles().length);
+
+        ModelWorkspace restored = new ModelWorkspace();
+        ModelJournal.open(_directory, restored).close();
+
+        assertEquals(50, restored.getAllEntities().size());
+        assertEquals("description", restored.getEntityByName("Entity49").getAttributes().get(0).getName());
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        ModelWorkspace workspace = new ModelWorkspace();
+        ModelJournal journal = ModelJournal.open(_directory, workspace);
+
+        new Entity("Kept", workspace);
+        new Entity("Torn", workspace);
+
+        assertTrue(journal.sync(5, TimeUnit.SECONDS));
+        journal.close();
+
+        // Cut the last record short, as a crash mid write would
+        File journalFile = new File(_directory, "journal-0.log");
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        ModelWorkspace restored = new ModelWorkspace();
+        journal = ModelJournal.open(_directory, restored);
+
+        assertTrue(restored.containsEntity("Kept"));
+        assertFalse(restored.containsEntity("Torn"));
+
+        // New records follow the good ones
+        new Entity("Later", restored);
+        assertTrue(journal.sync(5, TimeUnit.SECONDS));
+        journal.close();
+
+        ModelWorkspace again = new ModelWorkspace();
+        ModelJournal.open(_directory, again).close();
+
+        assertTrue(again.containsEntity("Kept"));
+        assertTrue(again.containsEntity("Later"));
+    }
+
+    @Test
+    public void testRejectedRecordStartsNewGeneration() throws Exception {
+        ModelWorkspace workspace = new ModelWorkspace();
+        ModelJournal journal = ModelJournal.open(_directory, workspace);
+
+        new Entity("Kept", workspace);
+
+        assertTrue(journal.sync(5, TimeUnit.SECONDS));
+        journal.close();
+
+        // A whole record, but one removing an Entity the model doesn't have
+        byte[] payload = "DMissing".getBytes("UTF-8");
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        File journalFile = new File(_directory, "journal-0.log");
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        raf.seek(raf.length());
+        raf.writeInt(payload.length);
+        raf.writeInt((int) crc.getValue());
+        raf.write(payload);
+        raf.close();
+
+        ModelWorkspace restored = new ModelWorkspace();
+        journal = ModelJournal.open(_directory, restored);
+
+        assertTrue(restored.containsEntity("Kept"));
+        assertEquals(1, journal.getGeneration());
+        assertTrue(new File(_directory, "journal-0.log.rejected").exists());
+
+        // And later starts aren't held up by it
+        new Entity("Later", restored);
+        assertTrue(journal.sync(5, TimeUnit.SECONDS));
+        journal.close();
+
+        ModelWorkspace again = new ModelWorkspace();
+        ModelJournal.open(_directory, again).close();
+
+        assertTrue(again.containsEntity("Kept"));
+        assertTrue(again.containsEntity("Later"));
+    }
+
+    private File _directory;
+}
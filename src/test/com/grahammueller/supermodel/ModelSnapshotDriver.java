@@ -0,0 +1,88 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.EntitySnapshot;
+import com.grahammueller.supermodel.entity.ModelSnapshot;
+
+public class ModelSnapshotDriver {
+    @Before
+    public void setUp() {
+        EntityManager.clearRegistry();
+    }
+
+    @Test
+    public void testSnapshotCopiesModel() {
+        Entity.fromString("Trainer$id:INTEGER_PRIMARY_KEY#name:STRING#$");
+        Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#");
+
+        ModelSnapshot model = EntityManager.snapshot();
+
+        assertEquals(2, model.getAllEntities().size());
+
+        EntitySnapshot trainer = model.getEntityByName("Trainer");
+        assertEquals(2, trainer.getAttributes().size());
+        assertEquals("id", trainer.getPrimaryKey().getName());
+
+        EntitySnapshot pokemon = model.getEntityByName("Pokemon");
+        assertSame(trainer, model.getEntity(pokemon.getRelationships().get(0)));
+        assertEquals("Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#", pokemon.toString());
+    }
+
+    @Test
+    public void testUnchangedModelReusesSnapshot() {
+        Entity.fromString("Trainer$id:INTEGER_PRIMARY_KEY#$");
+
+        assertSame(EntityManager.snapshot(), EntityManager.snapshot());
+    }
+
+    @Test
+    public void testSnapshotIsUnaffectedByEdits() {
+        Entity trainer = Entity.fromString("Trainer$id:INTEGER_PRIMARY_KEY#$");
+
+        ModelSnapshot before = EntityManager.snapshot();
+
+        trainer.addAttribute("name", AttributeType.STRING);
+        trainer.setName("Leader");
+        new Entity("Pokemon");
+
+        assertEquals(1, before.getAllEntities().size());
+        assertEquals("Trainer$id:INTEGER_PRIMARY_KEY#$", before.getAllEntities().get(0).toString());
+
+        ModelSnapshot after = EntityManager.snapshot();
+        assertEquals(2, after.getAllEntities().size());
+        assertEquals("Leader$id:INTEGER_PRIMARY_KEY#name:STRING#$", after.getAllEntities().get(0).toString());
+    }
+
+    @Test
+    public void testUnchangedEntitiesAreShared() {
+        Entity trainer = Entity.fromString("Trainer$id:INTEGER_PRIMARY_KEY#$");
+        Entity.fromString("Gym$id:INTEGER_PRIMARY_KEY#$");
+
+        ModelSnapshot before = EntityManager.snapshot();
+
+        trainer.addAttribute("name", AttributeType.STRING);
+
+        ModelSnapshot after = EntityManager.snapshot();
+        assertNotSame(before, after);
+        assertNotSame(before.getEntityByName("Trainer"), after.getEntityByName("Trainer"));
+        assertSame(before.getEntityByName("Gym"), after.getEntityByName("Gym"));
+    }
+
+    @Test
+    public void testRenameRefreshesReferencingEntities() {
+        Entity trainer = Entity.fromString("Trainer$id:INTEGER_PRIMARY_KEY#$");
+        Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#");
+
+        EntityManager.snapshot();
+        trainer.setName("Leader");
+
+        EntitySnapshot pokemon = EntityManager.snapshot().getEntityByName("Pokemon");
+        assertEquals("Leader", pokemon.getRelationships().get(0).getEntityName());
+    }
+}
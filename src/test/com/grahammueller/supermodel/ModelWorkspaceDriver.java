@@ -0,0 +1,171 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.EntityManagerListener;
+import com.grahammueller.supermodel.entity.ModelEvent;
+import com.grahammueller.supermodel.entity.ModelEventAdapter;
+import com.grahammueller.supermodel.entity.ModelEventListener;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+
+public class ModelWorkspaceDriver {
+    private String failureMessage;
+
+    @Before
+    public void setUp() {
+        EntityManager.clearRegistry();
+        failureMessage = null;
+    }
+
+    @Test
+    public void testDefaultWorkspaceBacksEntityManager() {
+        Entity pokemon = new Entity("Pokemon");
+
+        assertSame(EntityManager.getDefaultWorkspace(), pokemon.getWorkspace());
+        assertTrue(EntityManager.getDefaultWorkspace().containsEntity(pokemon));
+    }
+
+    @Test
+    public void testWorkspacesAreIndependent() {
+        ModelWorkspace first = new ModelWorkspace();
+        ModelWorkspace second = new ModelWorkspace();
+
+        Entity firstPokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$", first);
+        Entity secondPokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#name:STRING#$", second);
+
+        assertSame(firstPokemon, first.getEntityByName("Pokemon"));
+        assertSame(secondPokemon, second.getEntityByName("Pokemon"));
+        assertEquals(1, first.getAllEntities().size());
+        assertEquals(1, second.getAllEntities().size());
+        assertEquals(0, EntityManager.getAllEntities().size());
+
+        first.removeEntity(firstPokemon);
+
+        assertEquals(0, first.getAllEntities().size());
+        assertSame(secondPokemon, second.getEntityByName("Pokemon"));
+    }
+
+    @Test
+    public void testTableNamesIgnoreDefaultLocale() {
+        ModelWorkspace workspace = new ModelWorkspace();
+        Locale locale = Locale.getDefault();
+
+        // Turkish lower cases I to a dotless i, which would let ITEM and Item get different tables
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            new Entity("Item", workspace);
+            new Entity("ITEM", workspace);
+        }
+        catch (IllegalArgumentException iae) {
+            failureMessage = iae.getMessage();
+        }
+        finally {
+            Locale.setDefault(locale);
+        }
+
+        assertEquals("Entity table name already in use", failureMessage);
+    }
+
+    @Test
+    public void testRelationshipsResolveWithinWorkspace() {
+        ModelWorkspace workspace = new ModelWorkspace();
+
+        Entity trainer = new Entity("Trainer", workspace);
+        Entity pokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#", workspace);
+
+        assertSame(trainer, pokemon.getRelationships().get(0).getEntity());
+        assertEquals(1, workspace.getInboundRelationships(trainer).size());
+    }
+
+    @Test
+    public void testRelationshipToOtherWorkspaceNotAllowed() {
+        ModelWorkspace workspace = new ModelWorkspace();
+
+        Entity pokemon = Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$", workspace);
+        Entity trainer = new Entity("Trainer");
+
+        try {
+            pokemon.addRelationship("owner", trainer);
+        }
+        catch (IllegalArgumentException iae) {
+            failureMessage = iae.getMessage();
+        }
+
+        assertEquals("Invalid Entity provided", failureMessage);
+    }
+
+    @Test
+    public void testFromStringDoesNotSeeOtherWorkspaces() {
+        new Entity("Trainer");
+
+        try {
+            Entity.fromString("Pokemon$id:INTEGER_PRIMARY_KEY#$owner:Trainer#", new ModelWorkspace());
+        }
+        catch (IllegalArgumentException iae) {
+            failureMessage = iae.getMessage();
+        }
+
+        assertEquals("Other Entity, \"Trainer,\" doesn't exist", failureMessage);
+    }
+
+    @Test
+    public void testListenerCount() {
+        ModelWorkspace workspace = new ModelWorkspace();
+        CountingListener listener = new CountingListener();
+
+        workspace.registerForModelEvents(listener);
+        workspace.registerForModelEvents(listener);
+        assertEquals(1, workspace.getListenerCount());
+
+        new Entity("Pokemon", workspace);
+        assertEquals(1, listener.count);
+
+        workspace.unregisterForModelEvents(listener);
+        assertEquals(0, workspace.getListenerCount());
+
+        new Entity("Trainer", workspace);
+        assertEquals(1, listener.count);
+    }
+
+    @Test
+    public void testUnreferencedListenersAreCollected() throws Exception {
+        ModelWorkspace workspace = new ModelWorkspace();
+
+        workspace.registerForModelEvents(new CountingListener());
+        workspace.registerForModelEvents(new ModelEventAdapter() {});
+        workspace.registerForEntityUpdates(new EntityManagerListener() {
+            public void entityAdded(Entity e) {}
+            public void entityUpdated(Entity e, Map<String, Object> updateInfo) {}
+            public void entityRemoved(Entity e) {}
+        });
+
+        CountingListener kept = new CountingListener();
+        workspace.registerForModelEvents(kept);
+
+        // Wrapping the legacy listener must not keep it alive
+        for (int i = 0; i < 50 && workspace.getListenerCount() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, workspace.getListenerCount());
+
+        new Entity("Pokemon", workspace);
+        assertEquals(1, kept.count);
+    }
+
+    private static class CountingListener implements ModelEventListener {
+        int count;
+
+        @Override
+        public void modelChanged(ModelEvent event) {
+            count++;
+        }
+    }
+}
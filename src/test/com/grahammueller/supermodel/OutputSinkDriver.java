@@ -0,0 +1,162 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.gen.DirectorySink;
+import com.grahammueller.supermodel.gen.MemorySink;
+import com.grahammueller.supermodel.gen.ZipSink;
+import com.grahammueller.supermodel.gen.sqliteorm.ClassGenerator;
+import com.grahammueller.supermodel.gen.sqliteorm.GenerationReport;
+
+public class OutputSinkDriver {
+    private File dir;
+    private ModelWorkspace workspace;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("sink", "");
+        dir.delete();
+        dir.mkdirs();
+
+        workspace = new ModelWorkspace();
+
+        Entity trainer = new Entity("Trainer", workspace);
+        trainer.addAttribute("id", AttributeType.INTEGER);
+        trainer.setPrimaryKey("id", true);
+
+        Entity pokemon = new Entity("Pokemon", workspace);
+        pokemon.addAttribute("id", AttributeType.INTEGER);
+        pokemon.setPrimaryKey("id", true);
+        trainer.addRelationship("pokemon", pokemon);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+
+        dir.delete();
+    }
+
+    @Test
+    public void testDirectorySink() throws Exception {
+        DirectorySink sink = new DirectorySink(dir);
+
+        assertNull(sink.read("Missing.java"));
+
+        sink.write("Pokemon.java", "first".getBytes("UTF-8"));
+        sink.write("Pokemon.java", "second".getBytes("UTF-8"));
+
+        assertTrue(sink.exists("Pokemon.java"));
+        assertEquals("second", new String(sink.read("Pokemon.java"), "UTF-8"));
+
+        // Nothing left behind from writing through temporary files
+        assertEquals(Arrays.asList("Pokemon.java"), Arrays.asList(dir.list()));
+
+        assertTrue(sink.delete("Pokemon.java"));
+        assertFalse(sink.exists("Pokemon.java"));
+        assertFalse(sink.delete("Pokemon.java"));
+    }
+
+    @Test
+    public void testMemorySinkMatchesDirectory() throws Exception {
+        MemorySink memory = new MemorySink();
+
+        GenerationReport report = ClassGenerator.generateEntitiesFiles(workspace.snapshot(), memory, false, 1);
+        ClassGenerator.generateEntitiesFiles(workspace.snapshot(), dir, false, 1);
+
+        Map<String, byte[]> files = memory.getFiles();
+
+        assertEquals(2, report.getWrittenEntities().size());
+        assertEquals(Arrays.asList("Pokemon.java", "Trainer.java"), new ArrayList<String>(files.keySet()));
+
+        DirectorySink directory = new DirectorySink(dir);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            assertArrayEquals(file.getKey(), directory.read(file.getKey()), file.getValue());
+        }
+
+        // Without a manifest everything is generated again, but nothing differs
+        report = ClassGenerator.generateEntitiesFiles(workspace.snapshot(), memory, true, 1);
+        assertEquals(2, report.getUnchangedEntities().size());
+        assertFalse(memory.delete(".supermodel-manifest"));
+    }
+
+    @Test
+    public void testZipSink() throws Exception {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        ZipSink sink = new ZipSink(archive, "com/yourdomain/model");
+
+        ClassGenerator.generateEntitiesFiles(workspace.snapshot(), sink, false, 1);
+        sink.close();
+
+        MemorySink memory = new MemorySink();
+        ClassGenerator.generateEntitiesFiles(workspace.snapshot(), memory, false, 1);
+
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()));
+        List<String> names = new ArrayList<String>();
+
+        for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+            names.add(entry.getName());
+
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                contents.write(buffer, 0, read);
+            }
+
+            String name = entry.getName().substring("com/yourdomain/model/".length());
+            assertArrayEquals(name, memory.getFiles().get(name), contents.toByteArray());
+        }
+
+        in.close();
+
+        assertEquals(Arrays.asList("com/yourdomain/model/Trainer.java", "com/yourdomain/model/Pokemon.java"), names);
+        assertFalse(sink.delete("Gym.java"));
+    }
+
+    @Test
+    public void testZipSinkIgnoresThreadCount() throws Exception {
+        ModelWorkspace large = new ModelWorkspace();
+        Random random = new Random(42);
+        Entity[] entities = new Entity[300];
+
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = new Entity("Entity" + i, large);
+            entities[i].addAttribute("id", AttributeType.INTEGER);
+            entities[i].setPrimaryKey("id", true);
+        }
+
+        for (int i = 0; i < 900; i++) {
+            entities[random.nextInt(entities.length)].addRelationship("rltn" + i, entities[random.nextInt(entities.length)]);
+        }
+
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        ZipSink sink = new ZipSink(serial, "");
+        ClassGenerator.generateEntitiesFiles(large.snapshot(), sink, false, 1);
+        sink.close();
+
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        sink = new ZipSink(parallel, "");
+        ClassGenerator.generateEntitiesFiles(large.snapshot(), sink, false, 4);
+        sink.close();
+
+        assertArrayEquals(serial.toByteArray(), parallel.toByteArray());
+    }
+}
@@ -0,0 +1,158 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.entity.SegmentedModelFile;
+
+public class SegmentedModelFileDriver {
+    @Before
+    public void setUp() throws IOException {
+        _file = File.createTempFile("model", ".smsg");
+        _file.deleteOnExit();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ModelWorkspace workspace = buildModel(3);
+        SegmentedModelFile.create(_file, workspace).close();
+
+        ModelWorkspace opened = new ModelWorkspace();
+        SegmentedModelFile.open(_file, opened).close();
+
+        assertEquals(3, opened.getAllEntities().size());
+        for (Entity e : workspace.getAllEntities()) {
+            assertEquals(e.toString(), opened.getEntityByName(e.getName()).toString());
+        }
+    }
+
+    @Test
+    public void testSaveWritesOnlyChangedSegments() throws IOException {
+        SegmentedModelFile.create(_file, buildModel(200)).close();
+
+        ModelWorkspace opened = new ModelWorkspace();
+        SegmentedModelFile model = SegmentedModelFile.open(_file, opened);
+
+        Entity changed = opened.getEntityByName("Entity10");
+        changed.addAttribute("nickname", AttributeType.STRING);
+        Entity added = new Entity("Newcomer", opened);
+        added.addAttribute("id", AttributeType.INTEGER);
+        added.setPrimaryKey("id", true);
+        added.addRelationship("first", opened.getEntityByName("Entity0"));
+
+        assertEquals(2, model.getDirtyCount());
+        assertEquals(2, model.save());
+        assertEquals(0, model.getDirtyCount());
+
+        // Saving neither loaded the untouched Entities nor stopped them loading afterwards
+        Entity untouched = opened.getEntityByName("Entity150");
+        assertFalse(untouched.isLoaded());
+        assertEquals(2, untouched.getAttributes().size());
+
+        ModelWorkspace reopened = new ModelWorkspace();
+        SegmentedModelFile.open(_file, reopened).close();
+
+        assertEquals(201, reopened.getAllEntities().size());
+        for (Entity e : opened.getAllEntities()) {
+            assertEquals(e.toString(), reopened.getEntityByName(e.getName()).toString());
+        }
+
+        model.close();
+    }
+
+    @Test
+    public void testRenameOnlyRewritesIndex() throws IOException {
+        SegmentedModelFile model = SegmentedModelFile.create(_file, buildModel(5));
+        model.close();
+
+        ModelWorkspace opened = new ModelWorkspace();
+        model = SegmentedModelFile.open(_file, opened);
+
+        opened.getEntityByName("Entity0").setName("Renamed");
+        opened.removeEntity(opened.getEntityByName("Entity2"));
+
+        // Relationships to the removed Entity are dropped, which changes their sources
+        assertEquals(1, model.save());
+
+        ModelWorkspace reopened = new ModelWorkspace();
+        SegmentedModelFile.open(_file, reopened).close();
+
+        assertEquals("Renamed", reopened.getEntityByName("Entity1").getRelationships().get(0).getEntity().getName());
+        assertFalse(reopened.containsEntity("Entity2"));
+        assertTrue(reopened.getEntityByName("Entity3").getRelationships().isEmpty());
+        model.close();
+    }
+
+    @Test
+    public void testCorruptSegmentFailsOnLoad() throws IOException {
+        SegmentedModelFile.create(_file, buildModel(2)).close();
+
+        // The first segment follows the 5 byte header
+        RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+        raf.seek(7);
+        int b = raf.read();
+        raf.seek(7);
+        raf.write(b ^ 0xFF);
+        raf.close();
+
+        ModelWorkspace opened = new ModelWorkspace();
+        SegmentedModelFile.open(_file, opened).close();
+
+        try {
+            opened.getEntityByName("Entity0").getAttributes();
+            fail("Corrupt segment loaded");
+        }
+        catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage().contains("corrupt"));
+        }
+
+        assertEquals(2, opened.getEntityByName("Entity1").getAttributes().size());
+    }
+
+    @Test
+    public void testCorruptIndexFailsOnOpen() throws IOException {
+        SegmentedModelFile.create(_file, buildModel(2)).close();
+
+        RandomAccessFile raf = new RandomAccessFile(_file, "rw");
+        raf.seek(raf.length() - 20);
+        raf.write(0x7F);
+        raf.close();
+
+        try {
+            SegmentedModelFile.open(_file, new ModelWorkspace());
+            fail("Corrupt index opened");
+        }
+        catch (IOException ioe) {
+            assertEquals("Model file corrupt", ioe.getMessage());
+        }
+    }
+
+    /**
+     * Builds a chain of Entities, each related to the one before it
+     */
+    private ModelWorkspace buildModel(int count) {
+        ModelWorkspace workspace = new ModelWorkspace();
+
+        for (int i = 0; i < count; i++) {
+            Entity e = new Entity("Entity" + i, workspace);
+            e.addAttribute("id", AttributeType.INTEGER);
+            e.setPrimaryKey("id", true);
+            e.addAttribute("description", AttributeType.STRING);
+
+            if (i > 0) {
+                e.addRelationship("previous", workspace.getEntityByName("Entity" + (i - 1)));
+            }
+        }
+
+        return workspace;
+    }
+
+    private File _file;
+}
@@ -0,0 +1,166 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.entity.AttributeType;
+import com.grahammueller.supermodel.entity.Entity;
+import com.grahammueller.supermodel.entity.EntityManager;
+import com.grahammueller.supermodel.entity.ModelWorkspace;
+import com.grahammueller.supermodel.gen.sqliteorm.TableGenerator;
+import com.grahammueller.supermodel.gen.sqliteorm.TableImporter;
+
+public class TableImporterDriver {
+    private File database;
+
+    @Before
+    public void setUp() throws Exception {
+        EntityManager.clearRegistry();
+
+        database = File.createTempFile("import", ".db");
+        database.deleteOnExit();
+    }
+
+    @Test
+    public void testImportGeneratedTables() throws Exception {
+        Entity pokemon = new Entity("Pokemon");
+        pokemon.addAttribute("id", AttributeType.INTEGER);
+        pokemon.setPrimaryKey("id", true);
+        pokemon.addAttribute("nickname", AttributeType.STRING);
+        pokemon.addAttribute("image", AttributeType.BLOB);
+
+        Entity trainer = new Entity("Trainer");
+        trainer.addAttribute("id", AttributeType.INTEGER);
+        trainer.setPrimaryKey("id", true);
+        trainer.addAttribute("name", AttributeType.STRING);
+        pokemon.addRelationship("owner", trainer);
+        trainer.addRelationship("favorite", pokemon);
+
+        TableGenerator.generateTables(database.getParent(), database.getName());
+
+        ModelWorkspace workspace = new ModelWorkspace();
+        List<Entity> imported = TableImporter.importTables(workspace, database.getParent(), database.getName());
+
+        assertEquals(2, imported.size());
+
+        Entity importedPokemon = workspace.getEntityByName("Pokemon");
+        Entity importedTrainer = workspace.getEntityByName("Trainer");
+
+        // The relationship columns aren't Attributes
+        assertEquals(3, importedPokemon.getAttributes().size());
+        assertEquals("id", importedPokemon.getPrimaryKey().getName());
+        assertEquals(AttributeType.STRING, importedPokemon.getAttributes().get(1).getType());
+        assertEquals(AttributeType.BLOB, importedPokemon.getAttributes().get(2).getType());
+        assertEquals(2, importedTrainer.getAttributes().size());
+
+        assertEquals(1, importedPokemon.getRelationships().size());
+        assertSame(importedTrainer, importedPokemon.getRelationships().get(0).getEntity());
+        assertSame(importedPokemon, importedTrainer.getRelationships().get(0).getEntity());
+    }
+
+    @Test
+    public void testImportIgnoresDefaultLocale() throws Exception {
+        Entity item = new Entity("Item");
+        item.addAttribute("id", AttributeType.INTEGER);
+        item.setPrimaryKey("id", true);
+
+        Entity inventory = new Entity("Inventory");
+        inventory.addAttribute("id", AttributeType.INTEGER);
+        inventory.setPrimaryKey("id", true);
+        inventory.addRelationship("item", item);
+
+        ModelWorkspace workspace = new ModelWorkspace();
+        Locale locale = Locale.getDefault();
+
+        // Turkish cases i and I as dotted and dotless letters, which would lose the relationship columns
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            TableGenerator.generateTables(database.getParent(), database.getName());
+            TableImporter.importTables(workspace, database.getParent(), database.getName());
+        }
+        finally {
+            Locale.setDefault(locale);
+        }
+
+        Entity importedItem = workspace.getEntityByName("Item");
+        Entity importedInventory = workspace.getEntityByName("Inventory");
+
+        assertEquals(1, importedInventory.getAttributes().size());
+        assertEquals(1, importedInventory.getRelationships().size());
+        assertSame(importedItem, importedInventory.getRelationships().get(0).getEntity());
+    }
+
+    @Test
+    public void testImportForeignKeys() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+        Statement stmt = connection.createStatement();
+        stmt.execute("create table gym (id integer primary key, city varchar(40), opened datetime, tm_bonus boolean);");
+        stmt.execute("create table badge (id bigint primary key, awarded_by integer references gym(id), weight real);");
+        stmt.close();
+        connection.close();
+
+        TableImporter.importTables(database.getParent(), database.getName());
+
+        Entity gym = EntityManager.getEntityByName("Gym");
+        Entity badge = EntityManager.getEntityByName("Badge");
+
+        assertEquals(AttributeType.STRING, gym.getAttributes().get(1).getType());
+        assertEquals(AttributeType.DATE, gym.getAttributes().get(2).getType());
+        assertEquals(AttributeType.BOOLEAN, gym.getAttributes().get(3).getType());
+        assertEquals(AttributeType.LONG, badge.getPrimaryKey().getType());
+        assertEquals(AttributeType.DOUBLE, badge.getAttributes().get(1).getType());
+        assertEquals(2, badge.getAttributes().size());
+
+        assertEquals("badge", gym.getRelationships().get(0).getName());
+        assertSame(badge, gym.getRelationships().get(0).getEntity());
+    }
+
+    @Test
+    public void testOnlySqliteTablesAreSkipped() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+        Statement stmt = connection.createStatement();
+        stmt.execute("create table sqlitebackup (id integer primary key autoincrement, taken datetime);");
+        stmt.execute("insert into sqlitebackup (taken) values (null);");
+        stmt.close();
+        connection.close();
+
+        // Autoincrement creates sqlite_sequence, which isn't part of the model
+        List<Entity> imported = TableImporter.importTables(new ModelWorkspace(), database.getParent(), database.getName());
+
+        assertEquals(1, imported.size());
+        assertEquals("sqlitebackup", imported.get(0).getName().toLowerCase());
+    }
+
+    @Test
+    public void testImportManyTables() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            Entity e = new Entity("Entity" + i);
+            e.addAttribute("id", AttributeType.INTEGER);
+            e.setPrimaryKey("id", true);
+
+            if (i > 0) {
+                e.addRelationship("previous", EntityManager.getEntityByName("Entity" + (i - 1)));
+            }
+        }
+
+        TableGenerator.generateTables(database.getParent(), database.getName());
+
+        ModelWorkspace workspace = new ModelWorkspace();
+        TableImporter.importTables(workspace, database.getParent(), database.getName());
+
+        assertEquals(200, workspace.getAllEntities().size());
+        for (int i = 1; i < 200; i++) {
+            Entity e = workspace.getEntityByName("Entity" + i);
+            assertSame(workspace.getEntityByName("Entity" + (i - 1)), e.getRelationships().get(0).getEntity());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package test.com.grahammueller.supermodel;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import com.grahammueller.supermodel.gen.Template;
+
+public class TemplateDriver {
+    @Test
+    public void testRenderSlots() throws Exception {
+        Template template = Template.compile("    public void set${1:capitalized}(${0} ${1}) { this.${1} = ${1}; }\n");
+        StringBuilder out = new StringBuilder();
+
+        template.render(out, "int", "level");
+
+        assertEquals(2, template.getArity());
+        assertEquals("    public void setLevel(int level) { this.level = level; }\n", out.toString());
+    }
+
+    @Test
+    public void testModifiersAndLiterals() {
+        Template template = Template.compile("$$${0:lower}${1:capitalized} costs $$${2}");
+
+        assertEquals("$trainerId costs $5", template.format("Trainer", "id", "5"));
+        assertEquals("no slots", Template.compile("no slots").format());
+    }
+
+    @Test
+    public void testRenderingAppendsToExistingOutput() throws Exception {
+        Template template = Template.compile("${0};");
+        StringBuilder out = new StringBuilder("a;");
+
+        template.render(out, "b");
+        template.render(out, "c");
+
+        assertEquals("a;b;c;", out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongArgumentCount() throws Exception {
+        Template.compile("${0} ${1}").render(new StringBuilder(), "only one");
+    }
+
+    @Test
+    public void testMalformedTemplates() {
+        String[] patterns = { "${0", "$0", "${a}", "${0:upper}" };
+
+        for (String pattern : patterns) {
+            try {
+                Template.compile(pattern);
+                fail("Expected " + pattern + " to be rejected");
+            }
+            catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}